@@ -0,0 +1,53 @@
+package Jutjubic.RA56.config;
+
+import Jutjubic.RA56.service.BlobStore;
+import Jutjubic.RA56.service.S3BlobStore;
+import Jutjubic.RA56.service.ShardedLocalBlobStore;
+import java.net.URI;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+@Configuration
+public class BlobStoreConfig {
+
+	@Value("${app.storage.local.root:storage}")
+	private String localRoot;
+
+	@Bean
+	@ConditionalOnProperty(name = "app.storage.backend", havingValue = "local", matchIfMissing = true)
+	public BlobStore localBlobStore() {
+		return new ShardedLocalBlobStore(localRoot);
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "app.storage.backend", havingValue = "s3")
+	public BlobStore s3BlobStore(
+			@Value("${app.storage.s3.endpoint:}") String endpoint,
+			@Value("${app.storage.s3.region:us-east-1}") String region,
+			@Value("${app.storage.s3.bucket}") String bucket,
+			@Value("${app.storage.s3.access-key}") String accessKey,
+			@Value("${app.storage.s3.secret-key}") String secretKey,
+			@Value("${app.storage.s3.path-style:true}") boolean pathStyle,
+			@Value("${app.storage.s3.local-cache-max-mb:10240}") long localCacheMaxMb) {
+		S3ClientBuilder builder = S3Client.builder()
+				.region(Region.of(region))
+				.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+				.forcePathStyle(pathStyle)
+				// MinIO and other S3-compatible servers do not all accept the newer default checksums.
+				.requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+				.responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED);
+		if (!endpoint.isBlank()) {
+			builder.endpointOverride(URI.create(endpoint));
+		}
+		return new S3BlobStore(builder.build(), bucket, new ShardedLocalBlobStore(localRoot), localCacheMaxMb * 1024 * 1024);
+	}
+}
@@ -1,7 +1,11 @@
 package Jutjubic.RA56.config;
 
+import Jutjubic.RA56.service.TranscodingJobProducer;
+import Jutjubic.RA56.service.TranscodingPriorityService;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.annotation.EnableRabbit;
@@ -15,7 +19,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.amqp.autoconfigure.SimpleRabbitListenerContainerFactoryConfigurer;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @EnableRabbit
@@ -34,6 +40,18 @@ public class TranscodingMessagingConfig {
 	@Value("${app.transcoding.dlq}")
 	private String deadLetterQueueName;
 
+	@Value("${app.transcoding.chunk-queue}")
+	private String chunkQueueName;
+
+	@Value("${app.transcoding.chunk-routing-key}")
+	private String chunkRoutingKey;
+
+	@Value("${app.transcoding.retry.queue-prefix:transcoding.retry}")
+	private String retryQueuePrefix;
+
+	@Value("${app.transcoding.max-retries:3}")
+	private int maxRetries;
+
 	@Bean
 	public DirectExchange transcodingExchange() {
 		return new DirectExchange(exchangeName, true, false);
@@ -44,14 +62,50 @@ public class TranscodingMessagingConfig {
 		Map<String, Object> args = new HashMap<>();
 		args.put("x-dead-letter-exchange", exchangeName);
 		args.put("x-dead-letter-routing-key", deadLetterQueueName);
+		// Premieres close to their start are delivered ahead of the backlog.
+		args.put("x-max-priority", TranscodingPriorityService.MAX_PRIORITY);
 		return new Queue(queueName, true, false, false, args);
 	}
 
+	@Bean
+	public Queue transcodingChunkQueue() {
+		Map<String, Object> args = new HashMap<>();
+		args.put("x-dead-letter-exchange", exchangeName);
+		args.put("x-dead-letter-routing-key", deadLetterQueueName);
+		args.put("x-max-priority", TranscodingPriorityService.MAX_PRIORITY);
+		return new Queue(chunkQueueName, true, false, false, args);
+	}
+
 	@Bean
 	public Queue transcodingDeadLetterQueue() {
 		return new Queue(deadLetterQueueName, true);
 	}
 
+	/**
+	 * Delay queues for retries, one per backoff tier and message kind. They have no
+	 * consumers; an expired message is dead-lettered back to its work queue.
+	 */
+	@Bean
+	public Declarables transcodingRetryQueues(@Qualifier("transcodingExchange") DirectExchange transcodingExchange) {
+		List<Declarable> declarables = new ArrayList<>();
+		for (int tier = 1; tier <= TranscodingJobProducer.retryTiers(maxRetries); tier++) {
+			declareRetryQueue(declarables, transcodingExchange, TranscodingJobProducer.JOB_KIND, tier, routingKey);
+			declareRetryQueue(declarables, transcodingExchange, TranscodingJobProducer.CHUNK_KIND, tier, chunkRoutingKey);
+		}
+		return new Declarables(declarables);
+	}
+
+	private void declareRetryQueue(List<Declarable> declarables, DirectExchange exchange, String kind, int tier,
+			String targetRoutingKey) {
+		String name = TranscodingJobProducer.retryQueueName(retryQueuePrefix, kind, tier);
+		Map<String, Object> args = new HashMap<>();
+		args.put("x-dead-letter-exchange", exchangeName);
+		args.put("x-dead-letter-routing-key", targetRoutingKey);
+		Queue queue = new Queue(name, true, false, false, args);
+		declarables.add(queue);
+		declarables.add(BindingBuilder.bind(queue).to(exchange).with(name));
+	}
+
 	@Bean
 	public Binding transcodingBinding(
 			@Qualifier("transcodingQueue") Queue transcodingQueue,
@@ -59,6 +113,13 @@ public class TranscodingMessagingConfig {
 		return BindingBuilder.bind(transcodingQueue).to(transcodingExchange).with(routingKey);
 	}
 
+	@Bean
+	public Binding transcodingChunkBinding(
+			@Qualifier("transcodingChunkQueue") Queue transcodingChunkQueue,
+			@Qualifier("transcodingExchange") DirectExchange transcodingExchange) {
+		return BindingBuilder.bind(transcodingChunkQueue).to(transcodingExchange).with(chunkRoutingKey);
+	}
+
 	@Bean
 	public Binding transcodingDeadLetterBinding(
 			@Qualifier("transcodingDeadLetterQueue") Queue transcodingDeadLetterQueue,
@@ -1,20 +1,34 @@
 package Jutjubic.RA56.controller;
 
 import Jutjubic.RA56.dto.PopularityTop3Response;
+import Jutjubic.RA56.dto.RollupBackfillResponse;
+import Jutjubic.RA56.dto.TrendingResponse;
 import Jutjubic.RA56.service.PopularityEtlService;
+import Jutjubic.RA56.service.TrendingService;
+import Jutjubic.RA56.service.VideoViewRollupService;
+import java.time.LocalDate;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 @RequestMapping("/api/popularity")
 public class PopularityController {
 	private final PopularityEtlService popularityEtlService;
+	private final VideoViewRollupService videoViewRollupService;
+	private final TrendingService trendingService;
 
-	public PopularityController(PopularityEtlService popularityEtlService) {
+	public PopularityController(PopularityEtlService popularityEtlService,
+			VideoViewRollupService videoViewRollupService,
+			TrendingService trendingService) {
 		this.popularityEtlService = popularityEtlService;
+		this.videoViewRollupService = videoViewRollupService;
+		this.trendingService = trendingService;
 	}
 
 	@GetMapping("/latest")
@@ -24,4 +38,19 @@ public class PopularityController {
 				.map(ResponseEntity::ok)
 				.orElseGet(() -> ResponseEntity.noContent().build());
 	}
+
+	@GetMapping("/trending")
+	@PreAuthorize("hasRole('USER')")
+	public ResponseEntity<TrendingResponse> getTrending(
+			@RequestParam(value = "limit", required = false) Integer limit) {
+		return ResponseEntity.ok(trendingService.getTrending(limit));
+	}
+
+	@PostMapping("/rollup/backfill")
+	@PreAuthorize("hasRole('ADMIN')")
+	public ResponseEntity<RollupBackfillResponse> backfillRollup(
+			@RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+		return ResponseEntity.ok(videoViewRollupService.backfill(from, to));
+	}
 }
@@ -2,22 +2,31 @@ package Jutjubic.RA56.controller;
 
 import Jutjubic.RA56.dto.PremierDetailResponse;
 import Jutjubic.RA56.dto.PremiereVideoResponse;
+import Jutjubic.RA56.service.PremiereLivePlaylistService;
 import Jutjubic.RA56.service.VideoService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/premiers")
 public class PremierController {
+    private static final MediaType HLS_PLAYLIST = MediaType.parseMediaType("application/vnd.apple.mpegurl");
+
     private final VideoService videoService;
+    private final PremiereLivePlaylistService premiereLivePlaylistService;
 
-    public PremierController(VideoService videoService) {
+    public PremierController(VideoService videoService, PremiereLivePlaylistService premiereLivePlaylistService) {
         this.videoService = videoService;
+        this.premiereLivePlaylistService = premiereLivePlaylistService;
     }
 
     @GetMapping
@@ -29,4 +38,20 @@ public class PremierController {
     public ResponseEntity<PremierDetailResponse> getPremier(@PathVariable Long id) {
         return ResponseEntity.ok(videoService.getPremierById(id));
     }
+
+    /** Live playlists are the same for every viewer until the next segment airs, so shared caches may keep them until then. */
+    @GetMapping("/{id:\\d+}/live/{*resourcePath}")
+    public ResponseEntity<String> getLivePlaylist(@PathVariable Long id, @PathVariable String resourcePath) {
+        String normalizedPath = resourcePath.startsWith("/") ? resourcePath.substring(1) : resourcePath;
+        PremiereLivePlaylistService.LivePlaylist playlist =
+                premiereLivePlaylistService.render(id, normalizedPath, LocalDateTime.now());
+        if (playlist.etag() == null) {
+            return ResponseEntity.ok().contentType(HLS_PLAYLIST).cacheControl(CacheControl.noCache()).body(playlist.content());
+        }
+        return ResponseEntity.ok()
+                .contentType(HLS_PLAYLIST)
+                .cacheControl(CacheControl.maxAge(playlist.maxAgeSeconds(), TimeUnit.SECONDS).cachePublic())
+                .eTag(playlist.etag())
+                .body(playlist.content());
+    }
 }
@@ -0,0 +1,40 @@
+package Jutjubic.RA56.controller;
+
+import Jutjubic.RA56.dto.StorageMigrationResponse;
+import Jutjubic.RA56.dto.ThumbnailBackfillResponse;
+import Jutjubic.RA56.service.StorageMigrationService;
+import Jutjubic.RA56.service.ThumbnailVariantService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin/storage")
+public class StorageAdminController {
+	private final StorageMigrationService storageMigrationService;
+	private final ThumbnailVariantService thumbnailVariantService;
+
+	public StorageAdminController(StorageMigrationService storageMigrationService,
+			ThumbnailVariantService thumbnailVariantService) {
+		this.storageMigrationService = storageMigrationService;
+		this.thumbnailVariantService = thumbnailVariantService;
+	}
+
+	@PostMapping("/migrate")
+	@PreAuthorize("hasRole('ADMIN')")
+	public ResponseEntity<StorageMigrationResponse> migrate(
+			@RequestParam(value = "limit", defaultValue = "1000") int limit) {
+		return ResponseEntity.ok(storageMigrationService.migrate(limit));
+	}
+
+	@PostMapping("/thumbnail-variants")
+	@PreAuthorize("hasRole('ADMIN')")
+	public ResponseEntity<ThumbnailBackfillResponse> backfillThumbnailVariants(
+			@RequestParam(value = "afterId", defaultValue = "0") long afterId,
+			@RequestParam(value = "limit", defaultValue = "200") int limit) {
+		return ResponseEntity.ok(thumbnailVariantService.backfill(afterId, limit));
+	}
+}
@@ -0,0 +1,29 @@
+package Jutjubic.RA56.controller;
+
+import Jutjubic.RA56.dto.TranscodingDeadLetterResponse;
+import Jutjubic.RA56.service.TranscodingDeadLetterService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin/transcoding")
+public class TranscodingAdminController {
+	private final TranscodingDeadLetterService transcodingDeadLetterService;
+
+	public TranscodingAdminController(TranscodingDeadLetterService transcodingDeadLetterService) {
+		this.transcodingDeadLetterService = transcodingDeadLetterService;
+	}
+
+	@GetMapping("/dead-letters")
+	@PreAuthorize("hasRole('ADMIN')")
+	public ResponseEntity<List<TranscodingDeadLetterResponse>> listDeadLetters(
+			@RequestParam(value = "limit", defaultValue = "50") int limit) {
+		return ResponseEntity.ok(transcodingDeadLetterService.list(limit));
+	}
+}
@@ -1,21 +1,31 @@
 package Jutjubic.RA56.controller;
 
+import Jutjubic.RA56.dto.VideoFeedResponse;
 import Jutjubic.RA56.dto.VideoResponse;
 import Jutjubic.RA56.dto.TranscodingStatusResponse;
 import Jutjubic.RA56.dto.LikeResponse;
+import Jutjubic.RA56.dto.VideoUploadInitRequest;
+import Jutjubic.RA56.dto.VideoUploadStatusResponse;
 import Jutjubic.RA56.service.LikeService;
+import Jutjubic.RA56.service.MediaFileService;
+import Jutjubic.RA56.service.HlsSegmentCacheService;
+import Jutjubic.RA56.service.ThumbnailCacheService;
 import Jutjubic.RA56.service.VideoService;
-import org.springframework.core.io.Resource;
+import Jutjubic.RA56.service.VideoUploadService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.security.Principal;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 
 import java.util.List;
@@ -28,14 +38,39 @@ public class VideoController {
 
     private final VideoService videoService;
     private final LikeService likeService;
+    private final MediaFileService mediaFileService;
+    private final VideoUploadService videoUploadService;
+    private final ThumbnailCacheService thumbnailCacheService;
+    private final HlsSegmentCacheService hlsSegmentCacheService;
 
-    public VideoController(VideoService videoService, LikeService likeService) {
+    private static final String VIDEO_CACHE_CONTROL = "public, max-age=86400";
+
+    @Value("${app.videos.unbounded-list.enabled:false}")
+    private boolean unboundedListEnabled;
+
+    public VideoController(VideoService videoService, LikeService likeService, MediaFileService mediaFileService,
+            VideoUploadService videoUploadService, ThumbnailCacheService thumbnailCacheService,
+            HlsSegmentCacheService hlsSegmentCacheService) {
         this.videoService = videoService;
         this.likeService = likeService;
+        this.mediaFileService = mediaFileService;
+        this.videoUploadService = videoUploadService;
+        this.thumbnailCacheService = thumbnailCacheService;
+        this.hlsSegmentCacheService = hlsSegmentCacheService;
     }
 
     @GetMapping
+    public ResponseEntity<VideoFeedResponse> getVideoFeed(
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        return ResponseEntity.ok(videoService.getVideoFeed(after, limit));
+    }
+
+    @GetMapping(params = "unbounded=true")
     public ResponseEntity<List<VideoResponse>> getAllVideos() {
+        if (!unboundedListEnabled) {
+            throw new IllegalArgumentException("Unbounded video listing is disabled. Use the paginated feed.");
+        }
         List<VideoResponse> videos = videoService.getAllVideos();
         return ResponseEntity.ok(videos);
     }
@@ -53,25 +88,26 @@ public class VideoController {
     }
 
     @GetMapping("/play/{fileName:.+}")
-    public ResponseEntity<Resource> playVideo(@PathVariable String fileName, HttpServletRequest request) {
-        Resource resource = videoService.getVideoStream(fileName);
-
-        String contentType = "video/mp4";
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                .body(resource);
+    public void playVideo(@PathVariable String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path video = videoService.getVideoStream(fileName);
+        mediaFileService.serve(video, "video/mp4", VIDEO_CACHE_CONTROL, request, response);
     }
 
     @GetMapping("/hls/{fileName}/{*resourcePath}")
-    public ResponseEntity<Resource> getHlsResource(@PathVariable String fileName, @PathVariable String resourcePath) {
+    public void getHlsResource(@PathVariable String fileName, @PathVariable String resourcePath,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
         String normalizedPath = normalizeAdaptivePath(resourcePath);
-        Resource resource = videoService.getHlsResource(fileName, normalizedPath);
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(resolveAdaptiveContentType(normalizedPath)))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                .body(resource);
+        String contentType = resolveAdaptiveContentType(normalizedPath);
+        // Playlists and manifests change while a transcode runs and are revalidated with their ETag.
+        String lowerPath = normalizedPath.toLowerCase();
+        if (lowerPath.endsWith(".m3u8") || lowerPath.endsWith(".mpd")) {
+            Path resource = videoService.getHlsResource(fileName, normalizedPath);
+            mediaFileService.serve(resource, contentType, MediaFileService.CACHE_REVALIDATE, request, response);
+            return;
+        }
+        // Segments never change once written.
+        hlsSegmentCacheService.serve(fileName, normalizedPath, contentType, MediaFileService.CACHE_IMMUTABLE,
+                request, response);
     }
 
     @PostMapping("/upload")
@@ -103,6 +139,68 @@ public class VideoController {
         return ResponseEntity.accepted().body(videoResponse);
     }
 
+    @PostMapping("/uploads")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<VideoUploadStatusResponse> startUpload(
+            @Valid @RequestBody VideoUploadInitRequest request,
+            Principal principal) {
+        VideoUploadStatusResponse response = videoUploadService.startUpload(
+                request.getFileName(),
+                request.getContentType(),
+                request.getSizeBytes(),
+                principal.getName()
+        );
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<VideoUploadStatusResponse> getUploadStatus(@PathVariable String uploadId, Principal principal) {
+        return ResponseEntity.ok(videoUploadService.getStatus(uploadId, principal.getName()));
+    }
+
+    @PutMapping("/uploads/{uploadId}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<VideoUploadStatusResponse> uploadChunk(
+            @PathVariable String uploadId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request,
+            Principal principal) throws IOException {
+        // The raw body is streamed into the staging file; nothing is buffered in memory.
+        VideoUploadStatusResponse response = videoUploadService.appendChunk(
+                uploadId, offset, request.getInputStream(), principal.getName());
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/uploads/{uploadId}/finalize")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<VideoResponse> finalizeUpload(
+            @PathVariable String uploadId,
+            @RequestParam("title") String title,
+            @RequestParam("description") String description,
+            @RequestParam(value = "tags", required = false) String tags,
+            @RequestParam(value = "scheduledAt", required = false) String scheduledAt,
+            @RequestParam("durationSeconds") Long durationSeconds,
+            @RequestParam("latitude") Double latitude,
+            @RequestParam("longitude") Double longitude,
+            @RequestParam("thumbnail") MultipartFile thumbnail,
+            Principal principal) {
+
+        VideoResponse videoResponse = videoService.createVideoFromUpload(
+                uploadId,
+                title,
+                description,
+                tags,
+                scheduledAt,
+                durationSeconds,
+                latitude,
+                longitude,
+                thumbnail,
+                principal.getName()
+        );
+        return ResponseEntity.accepted().body(videoResponse);
+    }
+
     @PostMapping("/{id}/like")
     @PreAuthorize("hasRole('USER')")
     public ResponseEntity<LikeResponse> likeVideo(@PathVariable Long id, Principal principal) {
@@ -118,21 +216,15 @@ public class VideoController {
     }
 
     @GetMapping("/thumbnail/{fileName:.+}")
-    public ResponseEntity<Resource> getThumbnail(@PathVariable String fileName, HttpServletRequest request) {
-        Resource resource = videoService.getThumbnailResource(fileName);
-
-        String contentType = null;
-        try {
-            contentType = request.getServletContext().getMimeType(resource.getFile().getAbsolutePath());
-        } catch (IOException ex) {
-            // fallback
-            contentType = "application/octet-stream";
+    public void getThumbnail(@PathVariable String fileName,
+            @RequestParam(value = "w", required = false) Integer width,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (width != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
         }
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                .body(resource);
+        // Stored thumbnails are never rewritten; a changed thumbnail gets a new name.
+        thumbnailCacheService.serve(fileName, width, request.getHeader(HttpHeaders.ACCEPT),
+                MediaFileService.CACHE_IMMUTABLE, request, response);
     }
 
     private String resolveAdaptiveContentType(String path) {
@@ -143,6 +235,15 @@ public class VideoController {
         if (lower.endsWith(".ts")) {
             return "video/mp2t";
         }
+        if (lower.endsWith(".mpd")) {
+            return "application/dash+xml";
+        }
+        if (lower.endsWith(".m4s")) {
+            return "video/iso.segment";
+        }
+        if (lower.endsWith(".mp4")) {
+            return "video/mp4";
+        }
         return "application/octet-stream";
     }
 
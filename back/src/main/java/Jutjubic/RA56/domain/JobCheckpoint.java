@@ -0,0 +1,62 @@
+package Jutjubic.RA56.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * Keyset position of a batch job that walks a table in {@code (createdAt, id)} order,
+ * so a run that is interrupted continues where it stopped instead of starting over.
+ */
+@Entity
+@Table(name = "job_checkpoints")
+public class JobCheckpoint {
+
+	@Id
+	@Column(length = 80)
+	private String name;
+
+	private LocalDateTime cursorCreatedAt;
+
+	private Long cursorId;
+
+	@Column(nullable = false)
+	private LocalDateTime updatedAt;
+
+	public JobCheckpoint() {
+	}
+
+	public JobCheckpoint(String name) {
+		this.name = name;
+		this.updatedAt = LocalDateTime.now();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public LocalDateTime getCursorCreatedAt() {
+		return cursorCreatedAt;
+	}
+
+	public Long getCursorId() {
+		return cursorId;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	public void moveTo(LocalDateTime cursorCreatedAt, Long cursorId) {
+		this.cursorCreatedAt = cursorCreatedAt;
+		this.cursorId = cursorId;
+		this.updatedAt = LocalDateTime.now();
+	}
+
+	public boolean isAtStart() {
+		return cursorCreatedAt == null || cursorId == null;
+	}
+}
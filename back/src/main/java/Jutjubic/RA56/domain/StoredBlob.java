@@ -0,0 +1,79 @@
+package Jutjubic.RA56.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reference count for a content-addressed file. The key is the storage area plus the
+ * file name ({@code videos/<sha256>.mp4}); the file is deleted when the count drops to zero.
+ */
+@Entity
+@Table(
+		name = "stored_blobs",
+		indexes = {
+				@Index(name = "idx_stored_blobs_sha256", columnList = "sha256")
+		}
+)
+public class StoredBlob {
+
+	@Id
+	@Column(length = 120)
+	private String blobKey;
+
+	@Column(nullable = false, length = 64)
+	private String sha256;
+
+	@Column(nullable = false)
+	private Long sizeBytes;
+
+	@Column(nullable = false)
+	private Integer refCount;
+
+	@Column(nullable = false)
+	private LocalDateTime createdAt;
+
+	public String getBlobKey() {
+		return blobKey;
+	}
+
+	public void setBlobKey(String blobKey) {
+		this.blobKey = blobKey;
+	}
+
+	public String getSha256() {
+		return sha256;
+	}
+
+	public void setSha256(String sha256) {
+		this.sha256 = sha256;
+	}
+
+	public Long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	public void setSizeBytes(Long sizeBytes) {
+		this.sizeBytes = sizeBytes;
+	}
+
+	public Integer getRefCount() {
+		return refCount;
+	}
+
+	public void setRefCount(Integer refCount) {
+		this.refCount = refCount;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+}
@@ -0,0 +1,148 @@
+package Jutjubic.RA56.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(
+		name = "transcoding_chunks",
+		uniqueConstraints = @UniqueConstraint(
+				name = "uk_transcoding_chunks_job_id_chunk_index",
+				columnNames = { "job_id", "chunk_index" }
+		)
+)
+public class TranscodingChunk {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@ManyToOne(fetch = FetchType.LAZY, optional = false)
+	@JoinColumn(name = "job_id", nullable = false)
+	private TranscodingJob job;
+
+	@Column(name = "chunk_index", nullable = false)
+	private Integer chunkIndex;
+
+	@Column(nullable = false)
+	private Double startSeconds;
+
+	@Column(nullable = false)
+	private Double durationSeconds;
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 20)
+	private TranscodingJobStatus status;
+
+	@Column(nullable = false)
+	private Integer attempt;
+
+	@Column(columnDefinition = "TEXT")
+	private String lastError;
+
+	@Column(nullable = false)
+	private LocalDateTime createdAt;
+
+	@Column(nullable = false)
+	private LocalDateTime updatedAt;
+
+	public Long getId() {
+		return id;
+	}
+
+	public TranscodingJob getJob() {
+		return job;
+	}
+
+	public void setJob(TranscodingJob job) {
+		this.job = job;
+	}
+
+	public Integer getChunkIndex() {
+		return chunkIndex;
+	}
+
+	public void setChunkIndex(Integer chunkIndex) {
+		this.chunkIndex = chunkIndex;
+	}
+
+	public Double getStartSeconds() {
+		return startSeconds;
+	}
+
+	public void setStartSeconds(Double startSeconds) {
+		this.startSeconds = startSeconds;
+	}
+
+	public Double getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	public void setDurationSeconds(Double durationSeconds) {
+		this.durationSeconds = durationSeconds;
+	}
+
+	public TranscodingJobStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(TranscodingJobStatus status) {
+		this.status = status;
+	}
+
+	public Integer getAttempt() {
+		return attempt;
+	}
+
+	public void setAttempt(Integer attempt) {
+		this.attempt = attempt;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public LocalDateTime getUpdatedAt() {
+		return updatedAt;
+	}
+
+	@PrePersist
+	public void prePersist() {
+		LocalDateTime now = LocalDateTime.now();
+		this.createdAt = now;
+		this.updatedAt = now;
+		if (this.attempt == null) {
+			this.attempt = 0;
+		}
+		if (this.status == null) {
+			this.status = TranscodingJobStatus.PENDING;
+		}
+	}
+
+	@PreUpdate
+	public void preUpdate() {
+		this.updatedAt = LocalDateTime.now();
+	}
+}
@@ -41,6 +41,14 @@ public class TranscodingJob {
 	@Column(columnDefinition = "TEXT")
 	private String lastError;
 
+	// Null for jobs encoded in one ffmpeg run; set when the source was split into chunk sub-jobs.
+	private Integer totalChunks;
+
+	private Integer completedChunks;
+
+	// Set when the video's premiere started before this job completed; a miss is counted once.
+	private LocalDateTime deadlineMissedAt;
+
 	@Column(nullable = false)
 	private LocalDateTime createdAt;
 
@@ -91,6 +99,30 @@ public class TranscodingJob {
 		this.lastError = lastError;
 	}
 
+	public Integer getTotalChunks() {
+		return totalChunks;
+	}
+
+	public void setTotalChunks(Integer totalChunks) {
+		this.totalChunks = totalChunks;
+	}
+
+	public Integer getCompletedChunks() {
+		return completedChunks;
+	}
+
+	public void setCompletedChunks(Integer completedChunks) {
+		this.completedChunks = completedChunks;
+	}
+
+	public LocalDateTime getDeadlineMissedAt() {
+		return deadlineMissedAt;
+	}
+
+	public void setDeadlineMissedAt(LocalDateTime deadlineMissedAt) {
+		this.deadlineMissedAt = deadlineMissedAt;
+	}
+
 	public LocalDateTime getCreatedAt() {
 		return createdAt;
 	}
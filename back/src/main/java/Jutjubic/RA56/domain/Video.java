@@ -4,7 +4,13 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "videos")
+@Table(
+        name = "videos",
+        indexes = {
+                @Index(name = "idx_videos_created_at_id", columnList = "createdAt,id"),
+                @Index(name = "idx_videos_video_path", columnList = "videoPath")
+        }
+)
 public class Video {
 
     @Id
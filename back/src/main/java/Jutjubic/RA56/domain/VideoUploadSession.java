@@ -0,0 +1,90 @@
+package Jutjubic.RA56.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(
+		name = "video_upload_sessions",
+		indexes = {
+				@Index(name = "idx_video_upload_sessions_created_at", columnList = "createdAt")
+		}
+)
+public class VideoUploadSession {
+
+	@Id
+	@Column(length = 36)
+	private String id;
+
+	@Column(nullable = false)
+	private String ownerEmail;
+
+	@Column(nullable = false)
+	private String originalFileName;
+
+	@Column(nullable = false)
+	private String contentType;
+
+	@Column(nullable = false)
+	private Long sizeBytes;
+
+	@Column(nullable = false)
+	private LocalDateTime createdAt;
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getOwnerEmail() {
+		return ownerEmail;
+	}
+
+	public void setOwnerEmail(String ownerEmail) {
+		this.ownerEmail = ownerEmail;
+	}
+
+	public String getOriginalFileName() {
+		return originalFileName;
+	}
+
+	public void setOriginalFileName(String originalFileName) {
+		this.originalFileName = originalFileName;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public Long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	public void setSizeBytes(Long sizeBytes) {
+		this.sizeBytes = sizeBytes;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	@PrePersist
+	public void prePersist() {
+		if (this.createdAt == null) {
+			this.createdAt = LocalDateTime.now();
+		}
+	}
+}
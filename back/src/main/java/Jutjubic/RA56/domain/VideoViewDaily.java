@@ -0,0 +1,73 @@
+package Jutjubic.RA56.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.time.LocalDate;
+
+@Entity
+@Table(
+		name = "video_view_daily",
+		uniqueConstraints = @UniqueConstraint(
+				name = "uk_video_view_daily_video_id_view_date",
+				columnNames = { "video_id", "view_date" }
+		),
+		indexes = {
+				@Index(name = "idx_video_view_daily_view_date", columnList = "view_date")
+		}
+)
+public class VideoViewDaily {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "video_id", nullable = false)
+	private Video video;
+
+	@Column(name = "view_date", nullable = false)
+	private LocalDate viewDate;
+
+	@Column(name = "views_count", nullable = false)
+	private Long viewsCount;
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Video getVideo() {
+		return video;
+	}
+
+	public void setVideo(Video video) {
+		this.video = video;
+	}
+
+	public LocalDate getViewDate() {
+		return viewDate;
+	}
+
+	public void setViewDate(LocalDate viewDate) {
+		this.viewDate = viewDate;
+	}
+
+	public Long getViewsCount() {
+		return viewsCount;
+	}
+
+	public void setViewsCount(Long viewsCount) {
+		this.viewsCount = viewsCount;
+	}
+}
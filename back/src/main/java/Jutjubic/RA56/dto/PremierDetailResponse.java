@@ -9,6 +9,7 @@ public record PremierDetailResponse(
         String thumbnailUrl,
         String videoUrl,
         String hlsUrl,
+        String liveHlsUrl,
         LocalDateTime scheduledAt,
         long durationSeconds,
         long streamOffsetSeconds
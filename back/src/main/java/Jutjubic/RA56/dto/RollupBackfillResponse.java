@@ -0,0 +1,11 @@
+package Jutjubic.RA56.dto;
+
+import java.time.LocalDate;
+
+public record RollupBackfillResponse(
+		LocalDate fromInclusive,
+		LocalDate toExclusive,
+		int daysProcessed,
+		long rowsWritten
+) {
+}
@@ -0,0 +1,8 @@
+package Jutjubic.RA56.dto;
+
+public record StorageMigrationResponse(
+		int moved,
+		int skipped,
+		boolean remaining
+) {
+}
@@ -0,0 +1,4 @@
+package Jutjubic.RA56.dto;
+
+public record ThumbnailBackfillResponse(int generated, int failed, Long nextAfterId) {
+}
@@ -0,0 +1,10 @@
+package Jutjubic.RA56.dto;
+
+import java.time.LocalDateTime;
+
+public record ThumbnailCompressionCandidate(
+        Long id,
+        LocalDateTime createdAt,
+        String thumbnailPath
+) {
+}
@@ -0,0 +1,13 @@
+package Jutjubic.RA56.dto;
+
+public record TranscodingChunkMessage(
+		Long jobId,
+		Long videoId,
+		String videoFileName,
+		long sourceDurationSeconds,
+		int chunkIndex,
+		int totalChunks,
+		double startSeconds,
+		double durationSeconds
+) {
+}
@@ -0,0 +1,16 @@
+package Jutjubic.RA56.dto;
+
+import java.time.LocalDateTime;
+
+public record TranscodingDeadLetterResponse(
+		Long jobId,
+		Long videoId,
+		String videoFileName,
+		Integer chunkIndex,
+		String reason,
+		String sourceQueue,
+		LocalDateTime deadLetteredAt,
+		String jobStatus,
+		String lastError
+) {
+}
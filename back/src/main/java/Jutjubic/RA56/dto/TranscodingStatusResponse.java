@@ -5,6 +5,10 @@ public record TranscodingStatusResponse(
 		String status,
 		int progress,
 		boolean ready,
-		String message
+		String message,
+		double playableSeconds
 ) {
+	public TranscodingStatusResponse withPlayableSeconds(double seconds) {
+		return new TranscodingStatusResponse(videoId, status, progress, ready, message, seconds);
+	}
 }
@@ -0,0 +1,10 @@
+package Jutjubic.RA56.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record TrendingResponse(
+		LocalDateTime computedAt,
+		List<TrendingVideoResponse> videos
+) {
+}
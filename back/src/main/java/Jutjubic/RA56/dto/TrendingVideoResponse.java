@@ -0,0 +1,9 @@
+package Jutjubic.RA56.dto;
+
+public record TrendingVideoResponse(
+		Long videoId,
+		String title,
+		String thumbnailUrl,
+		double score
+) {
+}
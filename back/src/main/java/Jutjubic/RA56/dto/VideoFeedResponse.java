@@ -0,0 +1,9 @@
+package Jutjubic.RA56.dto;
+
+import java.util.List;
+
+public record VideoFeedResponse(
+        List<VideoResponse> videos,
+        String nextCursor
+) {
+}
@@ -0,0 +1,20 @@
+package Jutjubic.RA56.dto;
+
+import java.time.LocalDateTime;
+
+public record VideoFeedRow(
+        Long id,
+        String title,
+        String description,
+        String tags,
+        LocalDateTime createdAt,
+        LocalDateTime scheduledAt,
+        Long durationSeconds,
+        Boolean premiereEnabled,
+        Double latitude,
+        Double longitude,
+        String ownerUsername,
+        String thumbnailPath,
+        Long likesCount
+) {
+}
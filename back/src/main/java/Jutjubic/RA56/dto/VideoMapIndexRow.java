@@ -0,0 +1,14 @@
+package Jutjubic.RA56.dto;
+
+import java.time.LocalDateTime;
+
+public record VideoMapIndexRow(
+        Long id,
+        String title,
+        Double latitude,
+        Double longitude,
+        LocalDateTime createdAt,
+        Long views,
+        String thumbnailPath
+) {
+}
@@ -1,5 +1,7 @@
 package Jutjubic.RA56.dto;
 
+import java.io.Serializable;
+
 public record VideoMapResponse(
         Long id,
         String title,
@@ -7,5 +9,5 @@ public record VideoMapResponse(
         Double longitude,
         String thumbnailUrl,
         Long count
-) {
+) implements Serializable {
 }
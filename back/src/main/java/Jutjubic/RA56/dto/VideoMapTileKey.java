@@ -0,0 +1,12 @@
+package Jutjubic.RA56.dto;
+
+import java.io.Serializable;
+
+public record VideoMapTileKey(
+        int tileZoom,
+        int x,
+        int y,
+        boolean detail,
+        String period
+) implements Serializable {
+}
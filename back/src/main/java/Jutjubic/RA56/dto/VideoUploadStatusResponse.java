@@ -0,0 +1,9 @@
+package Jutjubic.RA56.dto;
+
+public record VideoUploadStatusResponse(
+		String uploadId,
+		long offset,
+		long sizeBytes,
+		boolean complete
+) {
+}
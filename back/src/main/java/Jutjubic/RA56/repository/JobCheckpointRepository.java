@@ -0,0 +1,9 @@
+package Jutjubic.RA56.repository;
+
+import Jutjubic.RA56.domain.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+}
@@ -0,0 +1,29 @@
+package Jutjubic.RA56.repository;
+
+import Jutjubic.RA56.domain.TranscodingChunk;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TranscodingChunkRepository extends JpaRepository<TranscodingChunk, Long> {
+
+	List<TranscodingChunk> findByJobIdOrderByChunkIndexAsc(Long jobId);
+
+	Optional<TranscodingChunk> findByJobIdAndChunkIndex(Long jobId, Integer chunkIndex);
+
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT c FROM TranscodingChunk c WHERE c.job.id = :jobId AND c.chunkIndex = :chunkIndex")
+	Optional<TranscodingChunk> findByJobIdAndChunkIndexForUpdate(@Param("jobId") Long jobId, @Param("chunkIndex") Integer chunkIndex);
+
+	@Modifying
+	@Query("DELETE FROM TranscodingChunk c WHERE c.job.id = :jobId")
+	int deleteByJobId(@Param("jobId") Long jobId);
+}
@@ -4,10 +4,13 @@ import Jutjubic.RA56.domain.TranscodingJob;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,7 +18,22 @@ public interface TranscodingJobRepository extends JpaRepository<TranscodingJob,
 
 	Optional<TranscodingJob> findByVideoId(Long videoId);
 
-	Optional<TranscodingJob> findByVideoVideoPath(String videoPath);
+	List<TranscodingJob> findAllByVideoVideoPath(String videoPath);
+
+	@Query("SELECT j FROM TranscodingJob j JOIN FETCH j.video v WHERE v.premiereEnabled = true "
+			+ "AND v.scheduledAt > :since AND v.scheduledAt <= :now "
+			+ "AND j.status <> Jutjubic.RA56.domain.TranscodingJobStatus.COMPLETED AND j.deadlineMissedAt IS NULL")
+	List<TranscodingJob> findUnreportedPremiereMisses(@Param("since") LocalDateTime since, @Param("now") LocalDateTime now);
+
+	@Query("SELECT DISTINCT v.videoPath FROM TranscodingJob j JOIN j.video v "
+			+ "WHERE j.status = Jutjubic.RA56.domain.TranscodingJobStatus.COMPLETED "
+			+ "AND j.updatedAt > :since AND j.updatedAt <= :until")
+	List<String> findVideoPathsCompletedBetween(@Param("since") LocalDateTime since, @Param("until") LocalDateTime until);
+
+	/** Marks a premiere miss unless another node already did; returns 1 for the one caller that claimed it. */
+	@Modifying
+	@Query("UPDATE TranscodingJob j SET j.deadlineMissedAt = :now WHERE j.id = :id AND j.deadlineMissedAt IS NULL")
+	int claimDeadlineMiss(@Param("id") Long id, @Param("now") LocalDateTime now);
 
 	@Lock(LockModeType.PESSIMISTIC_WRITE)
 	@Query("SELECT j FROM TranscodingJob j WHERE j.id = :id")
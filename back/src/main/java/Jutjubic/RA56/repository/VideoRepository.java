@@ -1,11 +1,12 @@
 package Jutjubic.RA56.repository;
 
 import Jutjubic.RA56.domain.Video;
+import Jutjubic.RA56.dto.ThumbnailCompressionCandidate;
+import Jutjubic.RA56.dto.VideoFeedRow;
 import Jutjubic.RA56.dto.VideoMapClusterRow;
+import Jutjubic.RA56.dto.VideoMapIndexRow;
 import Jutjubic.RA56.dto.VideoMapPoint;
-import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.query.Param;
@@ -13,26 +14,124 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
 public interface VideoRepository extends JpaRepository<Video, Long> {
 
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("SELECT v FROM Video v WHERE v.id = :id")
-    Video findOneByIdForUpdate(@Param("id") Long id);
+    List<Video> findAllByVideoPath(String videoPath);
 
-    Optional<Video> findByVideoPath(String videoPath);
+    @Query("""
+            SELECT new Jutjubic.RA56.dto.VideoFeedRow(
+                v.id,
+                v.title,
+                v.description,
+                v.tags,
+                v.createdAt,
+                v.scheduledAt,
+                v.durationSeconds,
+                v.premiereEnabled,
+                v.latitude,
+                v.longitude,
+                o.username,
+                v.thumbnailPath,
+                (SELECT COUNT(l) FROM VideoLike l WHERE l.video = v)
+            )
+            FROM Video v
+            JOIN v.owner o
+            ORDER BY v.createdAt DESC, v.id DESC
+            """)
+    List<VideoFeedRow> findFeedFirstPage(Pageable pageable);
+
+    @Query("""
+            SELECT new Jutjubic.RA56.dto.VideoFeedRow(
+                v.id,
+                v.title,
+                v.description,
+                v.tags,
+                v.createdAt,
+                v.scheduledAt,
+                v.durationSeconds,
+                v.premiereEnabled,
+                v.latitude,
+                v.longitude,
+                o.username,
+                v.thumbnailPath,
+                (SELECT COUNT(l) FROM VideoLike l WHERE l.video = v)
+            )
+            FROM Video v
+            JOIN v.owner o
+            WHERE v.createdAt < :createdAt
+               OR (v.createdAt = :createdAt AND v.id < :id)
+            ORDER BY v.createdAt DESC, v.id DESC
+            """)
+    List<VideoFeedRow> findFeedPageAfter(
+            @Param("createdAt") LocalDateTime createdAt,
+            @Param("id") Long id,
+            Pageable pageable
+    );
+
+    @Query("""
+            SELECT new Jutjubic.RA56.dto.VideoMapIndexRow(
+                v.id,
+                v.title,
+                v.latitude,
+                v.longitude,
+                v.createdAt,
+                v.views,
+                v.thumbnailPath
+            )
+            FROM Video v
+            WHERE v.id > :afterId
+            ORDER BY v.id ASC
+            """)
+    List<VideoMapIndexRow> findMapIndexRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("""
+            SELECT new Jutjubic.RA56.dto.VideoMapIndexRow(
+                v.id,
+                v.title,
+                v.latitude,
+                v.longitude,
+                v.createdAt,
+                v.views,
+                v.thumbnailPath
+            )
+            FROM Video v
+            WHERE v.createdAt >= :since AND v.id > :afterId
+            ORDER BY v.id ASC
+            """)
+    List<VideoMapIndexRow> findMapIndexRowsCreatedSince(
+            @Param("since") LocalDateTime since,
+            @Param("afterId") Long afterId,
+            Pageable pageable
+    );
+
+    List<Video> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    @Query("""
+            SELECT new Jutjubic.RA56.dto.ThumbnailCompressionCandidate(v.id, v.createdAt, v.thumbnailPath)
+            FROM Video v
+            WHERE v.createdAt <= :cutoff
+              AND (v.thumbnailCompressed IS NULL OR v.thumbnailCompressed = false)
+            ORDER BY v.createdAt ASC, v.id ASC
+            """)
+    List<ThumbnailCompressionCandidate> findUncompressedThumbnailsFirstPage(
+            @Param("cutoff") LocalDateTime cutoff,
+            Pageable pageable
+    );
 
     @Query("""
-            SELECT v
+            SELECT new Jutjubic.RA56.dto.ThumbnailCompressionCandidate(v.id, v.createdAt, v.thumbnailPath)
             FROM Video v
             WHERE v.createdAt <= :cutoff
               AND (v.thumbnailCompressed IS NULL OR v.thumbnailCompressed = false)
-            ORDER BY v.createdAt ASC
+              AND (v.createdAt > :createdAt OR (v.createdAt = :createdAt AND v.id > :id))
+            ORDER BY v.createdAt ASC, v.id ASC
             """)
-    List<Video> findOldUncompressedThumbnails(
+    List<ThumbnailCompressionCandidate> findUncompressedThumbnailsAfter(
             @Param("cutoff") LocalDateTime cutoff,
+            @Param("createdAt") LocalDateTime createdAt,
+            @Param("id") Long id,
             Pageable pageable
     );
 
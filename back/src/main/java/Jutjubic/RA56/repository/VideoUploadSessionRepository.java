@@ -0,0 +1,14 @@
+package Jutjubic.RA56.repository;
+
+import Jutjubic.RA56.domain.VideoUploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface VideoUploadSessionRepository extends JpaRepository<VideoUploadSession, String> {
+
+	List<VideoUploadSession> findByCreatedAtBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,29 @@
+package Jutjubic.RA56.repository;
+
+import Jutjubic.RA56.domain.VideoViewDaily;
+import Jutjubic.RA56.dto.VideoDailyViewsRow;
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface VideoViewDailyRepository extends JpaRepository<VideoViewDaily, Long> {
+	@Query(
+			value = """
+					SELECT d.video_id AS videoId,
+					       d.view_date AS viewDate,
+					       d.views_count AS viewsCount
+					FROM video_view_daily d
+					WHERE d.view_date >= :fromInclusive
+					  AND d.view_date < :toExclusive
+					""",
+			nativeQuery = true
+	)
+	List<VideoDailyViewsRow> findDailyViewCountsInRange(
+			@Param("fromInclusive") LocalDate fromInclusive,
+			@Param("toExclusive") LocalDate toExclusive
+	);
+}
@@ -1,10 +1,10 @@
 package Jutjubic.RA56.service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -18,23 +18,41 @@ import org.springframework.stereotype.Service;
 public class AdaptiveStreamingService {
 	private static final Logger logger = LoggerFactory.getLogger(AdaptiveStreamingService.class);
 
-	private final Path streamRoot;
+	public static final String MASTER_PLAYLIST = "master.m3u8";
+	/** Master playlist written before encoding starts; stands in for the master until the ladder is complete. */
+	public static final String PROGRESSIVE_PLAYLIST = "progressive.m3u8";
+	/** DASH manifest over the same segments, written for CMAF output only. */
+	public static final String DASH_MANIFEST = "manifest.mpd";
+	/** File name prefix of the per-variant files that segments are packed into once a transcode completes. */
+	public static final String SEGMENT_PACK_PREFIX = "pack_";
+	/**
+	 * Variant playlist addressing the packs. Only the published master references it; the
+	 * EVENT playlist progressive viewers already hold keeps its loose segments for a while.
+	 */
+	public static final String PACKED_PLAYLIST = "packed.m3u8";
+
+	private final BlobStore blobStore;
 	private final String ffmpegBinary;
 
-	public AdaptiveStreamingService(@Value("${app.ffmpeg.binary:ffmpeg}") String ffmpegBinary) {
-		this.streamRoot = Paths.get("storage/streams").toAbsolutePath().normalize();
+	public AdaptiveStreamingService(BlobStore blobStore, @Value("${app.ffmpeg.binary:ffmpeg}") String ffmpegBinary) {
+		this.blobStore = blobStore;
 		this.ffmpegBinary = ffmpegBinary;
-		try {
-			Files.createDirectories(streamRoot);
-		} catch (IOException ex) {
-			throw new RuntimeException("Failed to initialize adaptive stream storage directory.", ex);
-		}
+	}
+
+	/** Segment packs are only read in byte ranges and are large, so they are served from a memory mapping. */
+	public static boolean isSegmentPack(String resourcePath) {
+		return resourcePath.substring(resourcePath.lastIndexOf('/') + 1).startsWith(SEGMENT_PACK_PREFIX);
+	}
+
+	/** Store key of a video's HLS directory; HLS output is keyed by the video file name. */
+	public static String hlsKey(String videoFileName) {
+		return "streams/" + videoFileName + "/hls";
 	}
 
 	public void ensureAdaptiveStreams(String videoFileName, Path sourceVideoPath) {
-		Path hlsDir = getHlsDirectory(videoFileName);
-		Path hlsManifest = getHlsManifestPath(videoFileName);
-		boolean hlsReady = Files.exists(hlsManifest) && hasHlsSegments(hlsDir);
+		Path hlsDir = blobStore.localPath(hlsKey(videoFileName));
+		Path hlsManifest = hlsDir.resolve("master.m3u8");
+		boolean hlsReady = isHlsReady(videoFileName) && hasHlsSegments(hlsDir);
 		if (hlsReady) {
 			return;
 		}
@@ -47,6 +65,11 @@ public class AdaptiveStreamingService {
 
 		if (!hlsReady) {
 			runCommand(buildHlsCommand(sourceVideoPath, hlsManifest), hlsManifest.getParent());
+			try {
+				blobStore.publishTree(hlsKey(videoFileName));
+			} catch (IOException ex) {
+				throw new RuntimeException("Failed storing adaptive streams for video: " + videoFileName, ex);
+			}
 		}
 	}
 
@@ -59,28 +82,103 @@ public class AdaptiveStreamingService {
 		}
 	}
 
+	/**
+	 * Local file for an HLS resource, downloaded first when the store is remote. The file
+	 * may not exist. While a transcode is running the master playlist resolves to the
+	 * progressive one, whose variant playlists grow as segments are finished.
+	 */
 	public Path resolveHlsResource(String videoFileName, String resourcePath) {
-		return resolveResource(getHlsDirectory(videoFileName), resourcePath);
+		Path resource = resolveKey(hlsKey(videoFileName) + "/" + resourcePath);
+		if (MASTER_PLAYLIST.equals(resourcePath) && !Files.isRegularFile(resource)) {
+			Path progressive = resolveKey(hlsKey(videoFileName) + "/" + PROGRESSIVE_PLAYLIST);
+			if (Files.isRegularFile(progressive)) {
+				return progressive;
+			}
+		}
+		return resource;
 	}
 
-	public Path getHlsManifestPath(String videoFileName) {
-		return getHlsDirectory(videoFileName).resolve("master.m3u8");
+	/**
+	 * Seconds that can be played from the start right now: the shortest variant, since a
+	 * player may switch to any of them. Zero until every variant has its first segment.
+	 */
+	public double getPlayableSeconds(String videoFileName) {
+		try {
+			Path master = resolveHlsResource(videoFileName, MASTER_PLAYLIST);
+			if (!Files.isRegularFile(master)) {
+				return 0.0;
+			}
+			double playable = Double.MAX_VALUE;
+			for (String variant : variantPlaylists(Files.readString(master, StandardCharsets.UTF_8))) {
+				Path playlist = resolveHlsResource(videoFileName, variant);
+				if (!Files.isRegularFile(playlist)) {
+					return 0.0;
+				}
+				playable = Math.min(playable, segmentSeconds(Files.readString(playlist, StandardCharsets.UTF_8)));
+			}
+			return playable == Double.MAX_VALUE ? 0.0 : playable;
+		} catch (IOException | RuntimeException ex) {
+			// A playlist replaced mid-read just reports nothing playable until the next poll.
+			return 0.0;
+		}
 	}
 
-	private Path getVideoDir(String videoFileName) {
-		return streamRoot.resolve(videoFileName).normalize();
+	/** Variant playlist URIs listed by a master playlist, including alternate renditions such as a shared audio track. */
+	static List<String> variantPlaylists(String masterPlaylist) {
+		List<String> variants = new ArrayList<>();
+		for (String rawLine : masterPlaylist.split("\\R")) {
+			String line = rawLine.trim();
+			String uri = null;
+			if (line.startsWith("#EXT-X-MEDIA:") && line.contains("URI=\"")) {
+				int start = line.indexOf("URI=\"") + "URI=\"".length();
+				uri = line.substring(start, line.indexOf('"', start));
+			} else if (!line.isEmpty() && !line.startsWith("#")) {
+				uri = line;
+			}
+			if (uri != null && !variants.contains(uri)) {
+				variants.add(uri);
+			}
+		}
+		return variants;
 	}
 
-	private Path getHlsDirectory(String videoFileName) {
-		return getVideoDir(videoFileName).resolve("hls").normalize();
+	/** Sum of the {@code #EXTINF} durations in a media playlist. */
+	static double segmentSeconds(String mediaPlaylist) {
+		double seconds = 0.0;
+		for (String rawLine : mediaPlaylist.split("\\R")) {
+			String line = rawLine.trim();
+			if (!line.startsWith("#EXTINF:")) {
+				continue;
+			}
+			int comma = line.indexOf(',');
+			String value = line.substring("#EXTINF:".length(), comma < 0 ? line.length() : comma).trim();
+			try {
+				seconds += Double.parseDouble(value);
+			} catch (NumberFormatException ignored) {
+				// malformed entry, skip it
+			}
+		}
+		return seconds;
 	}
 
-	private Path resolveResource(Path root, String relativePath) {
-		Path resolved = root.resolve(relativePath).normalize();
-		if (!resolved.startsWith(root)) {
-			throw new IllegalArgumentException("Invalid adaptive stream resource path.");
+	private Path resolveKey(String key) {
+		try {
+			Path fetched = blobStore.fetch(key);
+			return fetched != null ? fetched : blobStore.localPath(key);
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("Invalid adaptive stream resource path.", ex);
+		} catch (IOException ex) {
+			throw new RuntimeException("Adaptive stream resource not found.", ex);
 		}
-		return resolved;
+	}
+
+	/** The master playlist is written last, so its presence means the whole ladder is in place. */
+	public boolean isHlsReady(String videoFileName) {
+		return blobStore.exists(hlsKey(videoFileName) + "/" + MASTER_PLAYLIST);
+	}
+
+	public Path getHlsManifestPath(String videoFileName) {
+		return resolveHlsResource(videoFileName, MASTER_PLAYLIST);
 	}
 
 	private boolean hasHlsSegments(Path hlsDir) {
@@ -0,0 +1,68 @@
+package Jutjubic.RA56.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reference counts for content-addressed files in {@code stored_blobs}. Placing and
+ * deleting a file happen inside the transaction that changes its count, while the
+ * row is locked, so a new reference can never see a file that a concurrent release is
+ * about to delete.
+ */
+@Service
+public class BlobReferenceService {
+	private static final String ACQUIRE_SQL = """
+			INSERT INTO stored_blobs (blob_key, sha256, size_bytes, ref_count, created_at)
+			VALUES (?, ?, ?, 1, ?)
+			ON CONFLICT (blob_key)
+			DO UPDATE SET ref_count = stored_blobs.ref_count + 1
+			""";
+	private static final String RELEASE_SQL =
+			"UPDATE stored_blobs SET ref_count = ref_count - 1 WHERE blob_key = ? RETURNING ref_count";
+	private static final String DELETE_SQL = "DELETE FROM stored_blobs WHERE blob_key = ? AND ref_count <= 0";
+	private static final String LOCK_SQL = "SELECT ref_count FROM stored_blobs WHERE blob_key = ? FOR UPDATE";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+
+	public BlobReferenceService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/** Adds a reference and runs {@code placeFile} while the row is locked. */
+	public void acquire(String blobKey, String sha256, long sizeBytes, Runnable placeFile) {
+		transactionTemplate.executeWithoutResult(status -> {
+			jdbcTemplate.update(ACQUIRE_SQL, blobKey, sha256, sizeBytes, Timestamp.valueOf(LocalDateTime.now()));
+			placeFile.run();
+		});
+	}
+
+	/**
+	 * Drops a reference and runs {@code deleteFile} if it was the last one. Files that
+	 * were never counted (stored before content addressing) are deleted right away.
+	 */
+	public boolean release(String blobKey, Runnable deleteFile) {
+		return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+			List<Integer> remaining = jdbcTemplate.queryForList(RELEASE_SQL, Integer.class, blobKey);
+			if (!remaining.isEmpty()) {
+				if (remaining.get(0) > 0) {
+					return false;
+				}
+				jdbcTemplate.update(DELETE_SQL, blobKey);
+			}
+			deleteFile.run();
+			return true;
+		}));
+	}
+
+	/** Locks the row until the caller's transaction ends; serializes decisions made per blob. */
+	public void lock(String blobKey) {
+		jdbcTemplate.queryForList(LOCK_SQL, Integer.class, blobKey);
+	}
+}
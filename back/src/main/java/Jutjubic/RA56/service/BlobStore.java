@@ -0,0 +1,34 @@
+package Jutjubic.RA56.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Storage for videos, thumbnails and HLS output. Keys are {@code <area>/<name>[/<path>]}
+ * ({@code videos/<file>}, {@code thumbnails/<file>}, {@code streams/<video>/hls/...}).
+ *
+ * <p>Stores are local-first: ffmpeg and sendfile need real files, so every object has
+ * a local path. Writers create the file at {@link #localPath} and then {@link #publish}
+ * it; readers call {@link #fetch}, which may download a remote object into that path.
+ */
+public interface BlobStore {
+
+	/** Where the object lives (or is cached) locally. Parent directories are not created. */
+	Path localPath(String key);
+
+	/** Returns a local file holding the object, or null when it does not exist. */
+	Path fetch(String key) throws IOException;
+
+	boolean exists(String key);
+
+	/** Makes the file written at {@link #localPath} durable in the store. */
+	void publish(String key) throws IOException;
+
+	/** Publishes every file below the local directory of {@code prefix}. */
+	void publishTree(String prefix) throws IOException;
+
+	void delete(String key) throws IOException;
+
+	/** A new empty file on the same file system as {@link #localPath}, so it can be moved into place. */
+	Path newTempFile() throws IOException;
+}
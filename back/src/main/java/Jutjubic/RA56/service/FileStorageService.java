@@ -1,37 +1,80 @@
 package Jutjubic.RA56.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.UUID;
+import java.util.regex.Pattern;
 import org.springframework.util.StringUtils;
 
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import java.net.MalformedURLException;
 
+/**
+ * Stores uploaded videos and thumbnails in the configured {@link BlobStore}. In
+ * content-addressed mode (the default) a file is named after the SHA-256 of its bytes,
+ * computed while it is written, and counted in {@code stored_blobs}: identical uploads
+ * share one file, and because HLS output is keyed by the video file name they share
+ * the transcoded streams as well.
+ */
 @Service
 public class FileStorageService {
 
-    private final Path videoStorageLocation;
-    private final Path thumbnailStorageLocation;
+    private static final String VIDEO_AREA = "videos/";
+    private static final String THUMBNAIL_AREA = "thumbnails/";
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("[0-9a-f]{64}(\\.[^/\\\\]*)?");
+    private static final Pattern THUMBNAIL_VARIANT_NAME = Pattern.compile(".*_w\\d+\\.(jpg|webp)");
+    static final List<String> THUMBNAIL_VARIANT_EXTENSIONS = List.of(".webp", ".jpg");
 
-    private static final long MAX_VIDEO_SIZE = 200 * 1024 * 1024; // 200MB
+    private final BlobStore blobStore;
+    private final BlobReferenceService blobReferenceService;
+    private final boolean contentAddressed;
+    private final List<Integer> thumbnailVariantWidths;
 
-    public FileStorageService() {
-        this.videoStorageLocation = Paths.get("storage/videos").toAbsolutePath().normalize();
-        this.thumbnailStorageLocation = Paths.get("storage/thumbnails").toAbsolutePath().normalize();
+    static final long MAX_VIDEO_SIZE = 200 * 1024 * 1024; // 200MB
 
-        try {
-            Files.createDirectories(this.videoStorageLocation);
-            Files.createDirectories(this.thumbnailStorageLocation);
-        } catch (Exception ex) {
-            throw new RuntimeException("Could not create the directory where the uploaded files will be stored.", ex);
-        }
+    public FileStorageService(
+            BlobStore blobStore,
+            BlobReferenceService blobReferenceService,
+            @Value("${app.storage.content-addressed:true}") boolean contentAddressed,
+            @Value("${app.thumbnails.variant-widths:160,320,640}") int[] thumbnailVariantWidths) {
+        this.blobStore = blobStore;
+        this.blobReferenceService = blobReferenceService;
+        this.contentAddressed = contentAddressed;
+        this.thumbnailVariantWidths = Arrays.stream(thumbnailVariantWidths).filter(width -> width > 0)
+                .sorted().distinct().boxed().toList();
+    }
+
+    /** Widths that resized copies of every thumbnail are generated at, ascending. */
+    public List<Integer> getThumbnailVariantWidths() {
+        return thumbnailVariantWidths;
+    }
+
+    /** {@code abc.png} at 320 as WebP is {@code abc_w320.webp}; variants live next to their original. */
+    public static String thumbnailVariantName(String fileName, int width, String extension) {
+        int dot = fileName.lastIndexOf('.');
+        String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+        return stem + "_w" + width + extension;
+    }
+
+    /** Names written by {@link #thumbnailVariantName}; variants never get variants of their own. */
+    public static boolean isThumbnailVariantName(String fileName) {
+        return THUMBNAIL_VARIANT_NAME.matcher(fileName).matches();
     }
 
     public String storeVideo(MultipartFile file) {
@@ -42,8 +85,8 @@ public class FileStorageService {
         if (file.getSize() > MAX_VIDEO_SIZE) {
             throw new RuntimeException("Failed to store file: Video size exceeds the limit of 200MB.");
         }
-        
-        return storeFile(file, this.videoStorageLocation);
+
+        return storeFile(file, VIDEO_AREA);
     }
 
     public String storeThumbnail(MultipartFile file) {
@@ -51,62 +94,221 @@ public class FileStorageService {
             throw new RuntimeException("Failed to store file: Invalid thumbnail format. Only image files are allowed.");
         }
 
-        return storeFile(file, this.thumbnailStorageLocation);
+        return storeFile(file, THUMBNAIL_AREA);
     }
 
-    private String storeFile(MultipartFile file, Path location) {
-        String originalFileName = StringUtils.cleanPath(file.getOriginalFilename());
-        String fileExtension = "";
+    /**
+     * Moves a fully received upload into video storage. The staging directory sits on
+     * the same volume, so this is a rename, not a copy; in content-addressed mode the
+     * staged file is hashed first and dropped if identical content is already stored.
+     */
+    public String adoptVideo(Path stagedFile, String originalFileName) {
+        if (contentAddressed) {
+            try {
+                MessageDigest digest = newDigest();
+                try (InputStream in = new DigestInputStream(Files.newInputStream(stagedFile), digest)) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+                String hash = HexFormat.of().formatHex(digest.digest());
+                return placeBlob(stagedFile, VIDEO_AREA, hash + extensionOf(originalFileName), hash);
+            } catch (IOException ex) {
+                throw new RuntimeException("Could not store file " + originalFileName + ". Please try again!", ex);
+            }
+        }
+
+        String fileName = newFileName(originalFileName);
         try {
-            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
-        } catch (Exception e) {
-            // ignore
+            moveIntoStore(stagedFile, VIDEO_AREA + fileName);
+            return fileName;
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + fileName + ". Please try again!", ex);
         }
-        String fileName = UUID.randomUUID().toString() + fileExtension;
+    }
 
+    /**
+     * Undoes {@link #adoptVideo}: gives the staging file its bytes back and drops the
+     * reference. A hard link keeps this a metadata operation even when the file is shared.
+     */
+    public void restageVideo(String fileName, Path stagingFile) throws IOException {
+        Path stored = resolveVideoPath(fileName);
+        Files.deleteIfExists(stagingFile);
         try {
-            if (fileName.contains("..")) {
-                throw new RuntimeException("Sorry! Filename contains invalid path sequence " + fileName);
-            }
+            Files.createLink(stagingFile, stored);
+        } catch (UnsupportedOperationException | IOException ex) {
+            Files.copy(stored, stagingFile);
+        }
+        deleteFile(fileName, true);
+    }
+
+    /** Serializes transcoding decisions for one video file until the caller's transaction ends. */
+    public void lockVideo(String fileName) {
+        blobReferenceService.lock(VIDEO_AREA + fileName);
+    }
 
-            Path targetLocation = location.resolve(fileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+    /** Local path to write a new thumbnail to; call {@link #publishThumbnail} once it is complete. */
+    public Path newThumbnailPath(String fileName) {
+        Path path = blobStore.localPath(THUMBNAIL_AREA + fileName);
+        try {
+            Files.createDirectories(path.getParent());
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the thumbnail directory.", ex);
+        }
+        return path;
+    }
 
-            return fileName;
+    public void publishThumbnail(String fileName) {
+        try {
+            blobStore.publish(THUMBNAIL_AREA + fileName);
         } catch (IOException ex) {
             throw new RuntimeException("Could not store file " + fileName + ". Please try again!", ex);
         }
     }
 
-    public void deleteFile(String fileName, boolean isVideo) {
+    private String storeFile(MultipartFile file, String area) {
+        Path incoming = null;
         try {
-            Path fileLocation = isVideo ? this.videoStorageLocation : this.thumbnailStorageLocation;
-            Path filePath = fileLocation.resolve(fileName).normalize();
-            if(Files.exists(filePath)) {
-                Files.delete(filePath);
+            incoming = blobStore.newTempFile();
+            MessageDigest digest = newDigest();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, incoming, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            if (!contentAddressed) {
+                String fileName = newFileName(file.getOriginalFilename());
+                moveIntoStore(incoming, area + fileName);
+                return fileName;
             }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            return placeBlob(incoming, area, hash + extensionOf(file.getOriginalFilename()), hash);
         } catch (IOException ex) {
-            System.err.println("Could not delete file: " + fileName);
+            throw new RuntimeException("Could not store file " + file.getOriginalFilename() + ". Please try again!", ex);
+        } finally {
+            if (incoming != null) {
+                try {
+                    Files.deleteIfExists(incoming);
+                } catch (IOException ignored) {
+                    // leftover temp files are harmless
+                }
+            }
         }
     }
 
-    public Resource loadFileAsResource(String fileName) {
+    private String placeBlob(Path source, String area, String fileName, String hash) throws IOException {
+        String key = area + fileName;
+        long sizeBytes = Files.size(source);
         try {
-            Path filePath = this.thumbnailStorageLocation.resolve(fileName).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
-            if (resource.exists()) {
-                return resource;
-            } else {
-                throw new RuntimeException("File not found " + fileName);
+            blobReferenceService.acquire(key, hash, sizeBytes, () -> {
+                try {
+                    if (blobStore.exists(key)) {
+                        Files.delete(source);
+                    } else {
+                        moveIntoStore(source, key);
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return fileName;
+    }
+
+    private void moveIntoStore(Path source, String key) throws IOException {
+        Path target = blobStore.localPath(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target);
+        }
+        blobStore.publish(key);
+    }
+
+    private String newFileName(String originalFileName) {
+        return UUID.randomUUID().toString() + extensionOf(originalFileName);
+    }
+
+    private String extensionOf(String originalFileName) {
+        String cleanName = StringUtils.cleanPath(originalFileName == null ? "" : originalFileName);
+        String fileExtension = "";
+        try {
+            fileExtension = cleanName.substring(cleanName.lastIndexOf("."));
+        } catch (Exception e) {
+            // ignore
+        }
+        if (fileExtension.contains("/") || fileExtension.contains("\\")) {
+            return "";
+        }
+        return fileExtension;
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available.", ex);
+        }
+    }
+
+    public void deleteFile(String fileName, boolean isVideo) {
+        String key = (isVideo ? VIDEO_AREA : THUMBNAIL_AREA) + fileName;
+        Runnable delete = () -> {
+            try {
+                blobStore.delete(key);
+                if (!isVideo) {
+                    for (int width : thumbnailVariantWidths) {
+                        for (String extension : THUMBNAIL_VARIANT_EXTENSIONS) {
+                            blobStore.delete(THUMBNAIL_AREA + thumbnailVariantName(fileName, width, extension));
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                System.err.println("Could not delete file: " + fileName);
             }
-        } catch (MalformedURLException ex) {
-            throw new RuntimeException("File not found " + fileName, ex);
+        };
+
+        if (!CONTENT_ADDRESSED_NAME.matcher(fileName).matches()) {
+            delete.run();
+            return;
         }
+        // Shared content is only removed with its last reference.
+        blobReferenceService.release(key, delete);
+    }
+
+    public Resource loadFileAsResource(String fileName) {
+        return asResource(resolveThumbnailPath(fileName), fileName);
     }
 
     public Resource loadVideoAsResource(String fileName) {
+        return asResource(resolveVideoPath(fileName), fileName);
+    }
+
+    /** Local file for the video, downloaded first when the store is remote. The file may not exist. */
+    public Path resolveVideoPath(String fileName) {
+        return resolve(VIDEO_AREA, fileName, "Invalid video path");
+    }
+
+    public Path resolveThumbnailPath(String fileName) {
+        return resolve(THUMBNAIL_AREA, fileName, "Invalid thumbnail path");
+    }
+
+    private Path resolve(String area, String fileName, String invalidMessage) {
+        if (fileName == null || fileName.contains("/") || fileName.contains("\\") || fileName.equals("..")) {
+            throw new IllegalArgumentException(invalidMessage);
+        }
+        try {
+            Path fetched = blobStore.fetch(area + fileName);
+            return fetched != null ? fetched : blobStore.localPath(area + fileName);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(invalidMessage, ex);
+        } catch (IOException ex) {
+            throw new RuntimeException("File not found " + fileName, ex);
+        }
+    }
+
+    private Resource asResource(Path filePath, String fileName) {
         try {
-            Path filePath = this.videoStorageLocation.resolve(fileName).normalize();
             Resource resource = new UrlResource(filePath.toUri());
             if (resource.exists()) {
                 return resource;
@@ -117,20 +319,4 @@ public class FileStorageService {
             throw new RuntimeException("File not found " + fileName, ex);
         }
     }
-
-    public Path resolveVideoPath(String fileName) {
-        Path filePath = this.videoStorageLocation.resolve(fileName).normalize();
-        if (!filePath.startsWith(this.videoStorageLocation)) {
-            throw new IllegalArgumentException("Invalid video path");
-        }
-        return filePath;
-    }
-
-    public Path resolveThumbnailPath(String fileName) {
-        Path filePath = this.thumbnailStorageLocation.resolve(fileName).normalize();
-        if (!filePath.startsWith(this.thumbnailStorageLocation)) {
-            throw new IllegalArgumentException("Invalid thumbnail path");
-        }
-        return filePath;
-    }
 }
@@ -0,0 +1,280 @@
+package Jutjubic.RA56.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * HLS segments kept in memory, keyed by (video, rendition, segment), so the segments
+ * every viewer of a popular video fetches are answered without the availability query,
+ * the storage lookup or a disk read. Segments are held in direct buffers within a byte
+ * budget, evicted least recently used, with the early segments of a video (its init
+ * segments and the first few media segments every playback starts with) evicted only
+ * when nothing else is left. Segment packs are kept as memory mappings, bounded by
+ * count and by mapped bytes, with the first pack of a rendition evicted last as well.
+ * Concurrent misses for one key share a single load.
+ *
+ * <p>Entries never go stale: segment and pack names are never reused for other
+ * content, and a video that was available once stays available.
+ */
+@Service
+public class HlsSegmentCacheService {
+	private static final Pattern EARLY_SEGMENT = Pattern.compile("^(?:segment_|c000_)(\\d+)\\.[a-z0-9]+$");
+	private static final Pattern FIRST_PACK = Pattern.compile("^" + AdaptiveStreamingService.SEGMENT_PACK_PREFIX + "0+\\.[a-z0-9]+$");
+
+	private final VideoService videoService;
+	private final MediaFileService mediaFileService;
+	private final long capacityBytes;
+	private final long maxEntryBytes;
+	private final int earlySegments;
+	private final int maxMappedPacks;
+	private final long maxMappedBytes;
+
+	private final LinkedHashMap<SegmentKey, MediaFileService.CachedMedia> buffered = new LinkedHashMap<>(256, 0.75f, true);
+	private final LinkedHashMap<SegmentKey, MediaFileService.CachedMedia> mapped = new LinkedHashMap<>(64, 0.75f, true);
+	private final Map<SegmentKey, CompletableFuture<Loaded>> loading = new ConcurrentHashMap<>();
+	private long sizeBytes;
+	private long mappedBytes;
+	private long evictions;
+
+	private final Counter hitCounter;
+	private final Counter missCounter;
+	private final Counter coalescedCounter;
+	private final Counter servedBytesCounter;
+
+	public HlsSegmentCacheService(
+			VideoService videoService,
+			MediaFileService mediaFileService,
+			MeterRegistry meterRegistry,
+			@Value("${app.hls.segment-cache.max-mb:256}") long capacityMb,
+			@Value("${app.hls.segment-cache.max-entry-kb:4096}") long maxEntryKb,
+			@Value("${app.hls.segment-cache.early-segments:3}") int earlySegments,
+			@Value("${app.hls.segment-cache.max-mapped-packs:256}") int maxMappedPacks,
+			@Value("${app.hls.segment-cache.max-mapped-mb:4096}") long maxMappedMb) {
+		this.videoService = videoService;
+		this.mediaFileService = mediaFileService;
+		this.capacityBytes = Math.max(0L, capacityMb) * 1024 * 1024;
+		this.maxEntryBytes = Math.min(Math.max(0L, maxEntryKb) * 1024, capacityBytes);
+		this.earlySegments = Math.max(0, earlySegments);
+		this.maxMappedPacks = Math.max(0, maxMappedPacks);
+		this.maxMappedBytes = Math.max(0L, maxMappedMb) * 1024 * 1024;
+
+		this.hitCounter = Counter.builder("app_hls_segment_cache_requests_total")
+				.tag("result", "hit")
+				.description("HLS segment requests answered from memory")
+				.register(meterRegistry);
+		this.missCounter = Counter.builder("app_hls_segment_cache_requests_total")
+				.tag("result", "miss")
+				.description("HLS segment requests that loaded the segment from storage")
+				.register(meterRegistry);
+		this.coalescedCounter = Counter.builder("app_hls_segment_cache_requests_total")
+				.tag("result", "coalesced")
+				.description("HLS segment requests that waited for another request loading the same segment")
+				.register(meterRegistry);
+		this.servedBytesCounter = Counter.builder("app_hls_segment_cache_served_bytes_total")
+				.description("Response body bytes of HLS segments answered from memory")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		Gauge.builder("app_hls_segment_cache_hit_ratio", this, cache -> cache.hitRatio())
+				.description("Share of HLS segment requests answered from memory since startup")
+				.register(meterRegistry);
+		Gauge.builder("app_hls_segment_cache_bytes", this, cache -> cache.sizeBytes())
+				.description("Off-heap bytes held by the HLS segment cache")
+				.register(meterRegistry);
+		Gauge.builder("app_hls_segment_cache_capacity_bytes", this, cache -> cache.capacityBytes)
+				.description("Configured HLS segment cache size")
+				.register(meterRegistry);
+		Gauge.builder("app_hls_segment_cache_entries", this, cache -> cache.entryCount())
+				.description("Segments held by the HLS segment cache")
+				.register(meterRegistry);
+		Gauge.builder("app_hls_segment_cache_mapped_packs", this, cache -> cache.mappedCount())
+				.description("Segment packs held as memory mappings")
+				.register(meterRegistry);
+		Gauge.builder("app_hls_segment_cache_mapped_bytes", this, cache -> cache.mappedBytes())
+				.description("Bytes of the segment packs held as memory mappings")
+				.register(meterRegistry);
+		FunctionCounter.builder("app_hls_segment_cache_evictions_total", this, cache -> cache.evictionCount())
+				.description("Segments evicted to stay within the cache size")
+				.register(meterRegistry);
+	}
+
+	public void serve(String fileName, String resourcePath, String contentType, String cacheControl,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		SegmentKey key = SegmentKey.of(fileName, resourcePath);
+		MediaFileService.CachedMedia cached = get(key);
+		if (cached != null) {
+			hitCounter.increment();
+			servedBytesCounter.increment(mediaFileService.serve(cached, cacheControl, request, response));
+			return;
+		}
+
+		Loaded loaded = load(key, fileName, resourcePath, contentType);
+		if (loaded.media() == null) {
+			// Larger than an entry may be: streamed from storage as before.
+			mediaFileService.serve(loaded.file(), contentType, cacheControl, request, response);
+			return;
+		}
+		servedBytesCounter.increment(mediaFileService.serve(loaded.media(), cacheControl, request, response));
+	}
+
+	/**
+	 * Loads a segment once for all requests that miss on it at the same time. The first
+	 * request runs the availability checks and reads the file; the others wait for its
+	 * result, including its exception.
+	 */
+	private Loaded load(SegmentKey key, String fileName, String resourcePath, String contentType) throws IOException {
+		CompletableFuture<Loaded> own = new CompletableFuture<>();
+		CompletableFuture<Loaded> inFlight = loading.putIfAbsent(key, own);
+		if (inFlight != null) {
+			coalescedCounter.increment();
+			return await(inFlight);
+		}
+		missCounter.increment();
+		try {
+			Path file = videoService.getHlsResource(fileName, resourcePath);
+			MediaFileService.CachedMedia media;
+			if (AdaptiveStreamingService.isSegmentPack(resourcePath)) {
+				media = mediaFileService.map(file, contentType);
+			} else {
+				media = Files.size(file) <= maxEntryBytes ? mediaFileService.read(file, contentType) : null;
+			}
+			if (media != null) {
+				put(key, media);
+			}
+			Loaded loaded = new Loaded(file, media);
+			own.complete(loaded);
+			return loaded;
+		} catch (IOException | RuntimeException ex) {
+			own.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			loading.remove(key, own);
+		}
+	}
+
+	private static Loaded await(CompletableFuture<Loaded> inFlight) throws IOException {
+		try {
+			return inFlight.join();
+		} catch (CompletionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException ioException) {
+				throw ioException;
+			}
+			if (cause instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new UncheckedIOException(new IOException("Loading HLS segment failed.", cause));
+		}
+	}
+
+	synchronized MediaFileService.CachedMedia get(SegmentKey key) {
+		MediaFileService.CachedMedia media = buffered.get(key);
+		return media != null ? media : mapped.get(key);
+	}
+
+	synchronized void put(SegmentKey key, MediaFileService.CachedMedia media) {
+		if (AdaptiveStreamingService.isSegmentPack(key.segment())) {
+			if (media.length() > maxMappedBytes) {
+				// Still served from its mapping, just not kept.
+				return;
+			}
+			MediaFileService.CachedMedia previous = mapped.put(key, media);
+			mappedBytes += media.length() - (previous == null ? 0 : previous.length());
+			mappedBytes -= evict(mapped, mappedBytes, maxMappedBytes, maxMappedPacks, key, false);
+			mappedBytes -= evict(mapped, mappedBytes, maxMappedBytes, maxMappedPacks, key, true);
+			return;
+		}
+		if (media.length() > maxEntryBytes) {
+			return;
+		}
+		MediaFileService.CachedMedia previous = buffered.put(key, media);
+		sizeBytes += media.length() - (previous == null ? 0 : previous.length());
+
+		// Access order: the head of the map is the least recently used entry. Early segments go last.
+		sizeBytes -= evict(buffered, sizeBytes, capacityBytes, Integer.MAX_VALUE, key, false);
+		sizeBytes -= evict(buffered, sizeBytes, capacityBytes, Integer.MAX_VALUE, key, true);
+	}
+
+	/** Evicts from the head of {@code entries} until both bounds hold; returns the bytes evicted. */
+	private long evict(LinkedHashMap<SegmentKey, MediaFileService.CachedMedia> entries, long size, long maxBytes,
+			int maxEntries, SegmentKey keep, boolean includeEarly) {
+		long evicted = 0;
+		Iterator<Map.Entry<SegmentKey, MediaFileService.CachedMedia>> eldest = entries.entrySet().iterator();
+		while ((size - evicted > maxBytes || entries.size() > maxEntries) && eldest.hasNext()) {
+			Map.Entry<SegmentKey, MediaFileService.CachedMedia> entry = eldest.next();
+			if (entry.getKey().equals(keep) || (!includeEarly && isEarly(entry.getKey().segment(), earlySegments))) {
+				continue;
+			}
+			evicted += entry.getValue().length();
+			eldest.remove();
+			evictions++;
+		}
+		return evicted;
+	}
+
+	/**
+	 * Init segments, the first {@code earlySegments} media segments of a rendition and its
+	 * first segment pack, which holds the segments every playback starts with.
+	 */
+	static boolean isEarly(String segment, int earlySegments) {
+		if (segment.endsWith(".mp4") || FIRST_PACK.matcher(segment).matches()) {
+			return true;
+		}
+		Matcher matcher = EARLY_SEGMENT.matcher(segment);
+		return matcher.matches() && Integer.parseInt(matcher.group(1)) < earlySegments;
+	}
+
+	synchronized long sizeBytes() {
+		return sizeBytes;
+	}
+
+	synchronized int entryCount() {
+		return buffered.size();
+	}
+
+	synchronized int mappedCount() {
+		return mapped.size();
+	}
+
+	synchronized long mappedBytes() {
+		return mappedBytes;
+	}
+
+	synchronized long evictionCount() {
+		return evictions;
+	}
+
+	private double hitRatio() {
+		double hits = hitCounter.count();
+		double total = hits + missCounter.count() + coalescedCounter.count();
+		return total == 0 ? 0.0 : hits / total;
+	}
+
+	record SegmentKey(String video, String rendition, String segment) {
+		static SegmentKey of(String fileName, String resourcePath) {
+			int slash = resourcePath.lastIndexOf('/');
+			return new SegmentKey(fileName, slash < 0 ? "" : resourcePath.substring(0, slash),
+					resourcePath.substring(slash + 1));
+		}
+	}
+
+	private record Loaded(Path file, MediaFileService.CachedMedia media) {
+	}
+}
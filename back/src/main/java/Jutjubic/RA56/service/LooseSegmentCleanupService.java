@@ -0,0 +1,48 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.repository.TranscodingJobRepository;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Deletes the loose segments of packed videos once the grace period after their
+ * transcode completed has passed, i.e. once progressive viewers that loaded the EVENT
+ * playlists before the master was published are done with them. Each run looks at the
+ * jobs that completed during the day before the grace period ended; every node may run
+ * it, deletions are idempotent.
+ */
+@Service
+public class LooseSegmentCleanupService {
+	private static final Logger logger = LoggerFactory.getLogger(LooseSegmentCleanupService.class);
+	private static final long LOOKBACK_MINUTES = 24 * 60;
+
+	private final TranscodingJobRepository transcodingJobRepository;
+	private final TranscodingWorkerService transcodingWorkerService;
+	private final long graceMinutes;
+
+	public LooseSegmentCleanupService(
+			TranscodingJobRepository transcodingJobRepository,
+			TranscodingWorkerService transcodingWorkerService,
+			@Value("${app.transcoding.pack.loose-segment-grace-minutes:180}") long graceMinutes) {
+		this.transcodingJobRepository = transcodingJobRepository;
+		this.transcodingWorkerService = transcodingWorkerService;
+		this.graceMinutes = Math.max(1L, graceMinutes);
+	}
+
+	@Scheduled(fixedDelayString = "${app.transcoding.pack.cleanup-interval-ms:900000}")
+	public void removeLooseSegments() {
+		LocalDateTime until = LocalDateTime.now().minusMinutes(graceMinutes);
+		for (String videoPath : transcodingJobRepository.findVideoPathsCompletedBetween(until.minusMinutes(LOOKBACK_MINUTES), until)) {
+			try {
+				transcodingWorkerService.removeLooseSegments(videoPath);
+			} catch (IOException | RuntimeException ex) {
+				logger.warn("Removing loose segments of {} failed: {}", videoPath, ex.getMessage());
+			}
+		}
+	}
+}
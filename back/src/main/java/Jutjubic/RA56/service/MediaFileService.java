@@ -0,0 +1,380 @@
+package Jutjubic.RA56.service;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+/**
+ * Writes media files to HTTP responses with byte-range support (single ranges as
+ * plain 206 responses, several ranges as {@code multipart/byteranges}), strong
+ * validators for conditional requests, and zero-copy transfers: Tomcat sendfile when
+ * the connector offers it, otherwise {@link FileChannel#transferTo} into the response.
+ * Small files can also be read once into a {@link CachedMedia} and served from memory,
+ * and large immutable files that are only read in ranges (segment packs) can be
+ * memory-mapped into one.
+ */
+@Service
+public class MediaFileService {
+	public static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+	public static final String CACHE_REVALIDATE = "no-cache";
+
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+	// Below this size a plain write is cheaper than setting up sendfile (same threshold as Tomcat's DefaultServlet).
+	private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+	private static final int MAX_RANGES = 16;
+
+	public void serve(Path file, String contentType, String cacheControl,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			throw new RuntimeException("Media file not found.");
+		}
+		long length = Files.size(file);
+		long lastModified = Files.getLastModifiedTime(file).toMillis();
+		String etag = etag(length, lastModified);
+
+		List<ByteRange> ranges = prepare(file.getFileName().toString(), length, etag, lastModified, cacheControl,
+				request, response);
+		if (ranges == null) {
+			return;
+		}
+		boolean head = HttpMethod.HEAD.matches(request.getMethod());
+
+		if (ranges.isEmpty()) {
+			response.setStatus(HttpServletResponse.SC_OK);
+			response.setContentType(contentType);
+			response.setContentLengthLong(length);
+			if (!head) {
+				sendRegion(file, 0, length, request, response);
+			}
+			return;
+		}
+
+		if (ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setContentType(contentType);
+			response.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange(length));
+			response.setContentLengthLong(range.length());
+			if (!head) {
+				sendRegion(file, range.start(), range.length(), request, response);
+			}
+			return;
+		}
+
+		String boundary = UUID.randomUUID().toString().replace("-", "");
+		List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+		long contentLength = 0;
+		for (ByteRange range : ranges) {
+			byte[] header = ("\r\n--" + boundary + "\r\n"
+					+ HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+					+ HttpHeaders.CONTENT_RANGE + ": " + range.contentRange(length) + "\r\n\r\n")
+					.getBytes(StandardCharsets.US_ASCII);
+			partHeaders.add(header);
+			contentLength += header.length + range.length();
+		}
+		byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+		contentLength += closing.length;
+
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		response.setContentType("multipart/byteranges; boundary=" + boundary);
+		response.setContentLengthLong(contentLength);
+		if (head) {
+			return;
+		}
+
+		ServletOutputStream out = response.getOutputStream();
+		WritableByteChannel target = Channels.newChannel(out);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (int i = 0; i < ranges.size(); i++) {
+				out.write(partHeaders.get(i));
+				transfer(channel, ranges.get(i).start(), ranges.get(i).length(), target);
+			}
+		}
+		out.write(closing);
+		out.flush();
+	}
+
+	/** Reads a whole file into a direct buffer, so serving it later never touches the filesystem. */
+	public CachedMedia read(Path file, String contentType) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			throw new RuntimeException("Media file not found.");
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Media file is too large to buffer.");
+			}
+			ByteBuffer data = ByteBuffer.allocateDirect((int) length);
+			while (data.hasRemaining() && channel.read(data) >= 0) {
+				// keep reading
+			}
+			data.flip();
+			long lastModified = Files.getLastModifiedTime(file).toMillis();
+			return new CachedMedia(file.getFileName().toString(), data.asReadOnlyBuffer(), contentType,
+					etag(data.remaining(), lastModified), lastModified);
+		}
+	}
+
+	/**
+	 * Maps a whole file read-only. The mapping holds no file descriptor and stays valid
+	 * after the file is closed, so serving from it later never opens, stat-s or reads the
+	 * file. Only for files that are never rewritten in place. Returns null for files of
+	 * 2 GiB or more, which do not fit one buffer.
+	 */
+	public CachedMedia map(Path file, String contentType) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			throw new RuntimeException("Media file not found.");
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				return null;
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			long lastModified = Files.getLastModifiedTime(file).toMillis();
+			return new CachedMedia(file.getFileName().toString(), data, contentType, etag(length, lastModified),
+					lastModified);
+		}
+	}
+
+	/**
+	 * Same headers and conditional handling as for files; several ranges fall back to the
+	 * whole body. Returns the number of body bytes written.
+	 */
+	public long serve(CachedMedia media, String cacheControl, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		long length = media.length();
+		List<ByteRange> ranges = prepare(media.fileName(), length, media.etag(), media.lastModified(), cacheControl,
+				request, response);
+		if (ranges == null) {
+			return 0;
+		}
+
+		ByteBuffer body = media.data().duplicate();
+		response.setContentType(media.contentType());
+		if (ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange(length));
+			body.position((int) range.start()).limit((int) (range.end() + 1));
+		} else {
+			response.setStatus(HttpServletResponse.SC_OK);
+		}
+		long sent = body.remaining();
+		response.setContentLengthLong(sent);
+		if (HttpMethod.HEAD.matches(request.getMethod())) {
+			return 0;
+		}
+
+		ServletOutputStream out = response.getOutputStream();
+		WritableByteChannel target = Channels.newChannel(out);
+		while (body.hasRemaining()) {
+			target.write(body);
+		}
+		out.flush();
+		return sent;
+	}
+
+	/**
+	 * Writes the validator and caching headers and evaluates the conditional and Range
+	 * headers. Returns {@code null} when the response is already complete (304 or 416),
+	 * otherwise the ranges to send, empty for the whole body.
+	 */
+	private List<ByteRange> prepare(String fileName, long length, String etag, long lastModified, String cacheControl,
+			HttpServletRequest request, HttpServletResponse response) {
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		response.setHeader(HttpHeaders.ETAG, etag);
+		response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + "\"");
+
+		if (isNotModified(request, etag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return null;
+		}
+
+		String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+		if (rangeHeader == null || !isIfRangeSatisfied(request, etag, lastModified)) {
+			return List.of();
+		}
+		List<ByteRange> ranges = parseRanges(rangeHeader, length);
+		if (ranges == null) {
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+		}
+		return ranges;
+	}
+
+	private static String etag(long length, long lastModified) {
+		return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+	}
+
+	/**
+	 * Parses a {@code bytes=} Range header. Returns an empty list when the header
+	 * should be ignored (other units, bad syntax, too many ranges), {@code null} when
+	 * no range is satisfiable, otherwise the sorted ranges with overlaps merged.
+	 */
+	static List<ByteRange> parseRanges(String header, long length) {
+		if (!header.startsWith("bytes=")) {
+			return List.of();
+		}
+		List<ByteRange> ranges = new ArrayList<>();
+		for (String part : header.substring("bytes=".length()).split(",")) {
+			String spec = part.trim();
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return List.of();
+			}
+			try {
+				String first = spec.substring(0, dash).trim();
+				String last = spec.substring(dash + 1).trim();
+				long start;
+				long end;
+				if (first.isEmpty()) {
+					long suffix = Long.parseLong(last);
+					if (suffix <= 0) {
+						continue;
+					}
+					start = Math.max(0, length - suffix);
+					end = length - 1;
+				} else {
+					start = Long.parseLong(first);
+					Long lastPosition = last.isEmpty() ? null : Long.parseLong(last);
+					if (lastPosition != null && lastPosition < start) {
+						return List.of();
+					}
+					end = lastPosition == null ? length - 1 : Math.min(lastPosition, length - 1);
+				}
+				if (start < length && start <= end) {
+					ranges.add(new ByteRange(start, end));
+				}
+			} catch (NumberFormatException ex) {
+				return List.of();
+			}
+		}
+		if (ranges.isEmpty()) {
+			return null;
+		}
+
+		ranges.sort(Comparator.comparingLong(ByteRange::start));
+		List<ByteRange> merged = new ArrayList<>();
+		ByteRange current = ranges.get(0);
+		for (int i = 1; i < ranges.size(); i++) {
+			ByteRange next = ranges.get(i);
+			if (next.start() <= current.end() + 1) {
+				current = new ByteRange(current.start(), Math.max(current.end(), next.end()));
+			} else {
+				merged.add(current);
+				current = next;
+			}
+		}
+		merged.add(current);
+		return merged.size() > MAX_RANGES ? List.of() : merged;
+	}
+
+	private boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+		String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			return matchesEtag(ifNoneMatch, etag);
+		}
+		long ifModifiedSince = readDateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+		// HTTP dates have second precision.
+		return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	private boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return ifRange.equals(etag);
+		}
+		long date = readDateHeader(request, HttpHeaders.IF_RANGE);
+		return date >= 0 && lastModified / 1000 == date / 1000;
+	}
+
+	private boolean matchesEtag(String header, String etag) {
+		for (String candidate : header.split(",")) {
+			String value = candidate.trim();
+			if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private long readDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException ex) {
+			return -1;
+		}
+	}
+
+	private void sendRegion(Path file, long start, long count, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		if (count >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			// Tomcat writes the region itself with FileChannel.transferTo once the handler returns.
+			request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, start + count);
+			return;
+		}
+		ServletOutputStream out = response.getOutputStream();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			transfer(channel, start, count, Channels.newChannel(out));
+		}
+		out.flush();
+	}
+
+	private void transfer(FileChannel channel, long start, long count, WritableByteChannel target) throws IOException {
+		long position = start;
+		long remaining = count;
+		while (remaining > 0) {
+			long written = channel.transferTo(position, remaining, target);
+			if (written <= 0) {
+				throw new IOException("Media file ended before the requested range.");
+			}
+			position += written;
+			remaining -= written;
+		}
+	}
+
+	/** A file's bytes and validators, held off-heap. {@code data} is read-only; readers work on a duplicate. */
+	public record CachedMedia(String fileName, ByteBuffer data, String contentType, String etag, long lastModified) {
+		public int length() {
+			return data.capacity();
+		}
+	}
+
+	record ByteRange(long start, long end) {
+		long length() {
+			return end - start + 1;
+		}
+
+		String contentRange(long total) {
+			return "bytes " + start + "-" + end + "/" + total;
+		}
+	}
+}
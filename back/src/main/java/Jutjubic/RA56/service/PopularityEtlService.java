@@ -7,7 +7,7 @@ import Jutjubic.RA56.dto.PopularityVideoResponse;
 import Jutjubic.RA56.dto.VideoDailyViewsRow;
 import Jutjubic.RA56.repository.PopularityTop3Repository;
 import Jutjubic.RA56.repository.VideoRepository;
-import Jutjubic.RA56.repository.VideoViewRepository;
+import Jutjubic.RA56.repository.VideoViewDailyRepository;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
@@ -24,7 +24,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class PopularityEtlService {
-	private final VideoViewRepository videoViewRepository;
+	private final VideoViewDailyRepository videoViewDailyRepository;
 	private final VideoRepository videoRepository;
 	private final PopularityTop3Repository popularityTop3Repository;
 
@@ -32,11 +32,11 @@ public class PopularityEtlService {
 	private String baseUrl;
 
 	public PopularityEtlService(
-			VideoViewRepository videoViewRepository,
+			VideoViewDailyRepository videoViewDailyRepository,
 			VideoRepository videoRepository,
 			PopularityTop3Repository popularityTop3Repository
 	) {
-		this.videoViewRepository = videoViewRepository;
+		this.videoViewDailyRepository = videoViewDailyRepository;
 		this.videoRepository = videoRepository;
 		this.popularityTop3Repository = popularityTop3Repository;
 	}
@@ -45,9 +45,7 @@ public class PopularityEtlService {
 	@Transactional
 	public void runDailyEtl() {
 		LocalDate today = LocalDate.now();
-		LocalDateTime fromInclusive = today.minusDays(7).atStartOfDay();
-		LocalDateTime toExclusive = today.atStartOfDay();
-		List<VideoDailyViewsRow> rows = videoViewRepository.findDailyViewCountsInRange(fromInclusive, toExclusive);
+		List<VideoDailyViewsRow> rows = videoViewDailyRepository.findDailyViewCountsInRange(today.minusDays(7), today);
 
 		Map<Long, Long> scoresByVideoId = new HashMap<>();
 		for (VideoDailyViewsRow row : rows) {
@@ -105,7 +103,7 @@ public class PopularityEtlService {
 		target.add(new PopularityVideoResponse(
 				video.getId(),
 				video.getTitle(),
-				baseUrl + "/api/videos/thumbnail/" + video.getThumbnailPath(),
+				ThumbnailVariantService.thumbnailUrl(baseUrl, video.getThumbnailPath(), ThumbnailVariantService.CARD_WIDTH),
 				score
 		));
 	}
@@ -0,0 +1,258 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.Video;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Simulated-live HLS for premieres: sliding-window media playlists cut from the VOD
+ * playlists by the time elapsed since {@code scheduledAt}. A segment joins the window
+ * once the premiere clock reaches its start, so at any moment every viewer gets the
+ * same playlist and players keep to the same live edge instead of seeking on their
+ * own. A playlist only changes when the next segment becomes available; it is cached
+ * by clients and proxies until then. Once the clock passes the end the final window
+ * is closed with an end tag.
+ */
+@Service
+public class PremiereLivePlaylistService {
+	private static final Pattern VARIANT_PLAYLIST = Pattern.compile("^[A-Za-z0-9_-]+/(?:index|packed)\\.m3u8$");
+	private static final int MAX_CACHED_PLAYLISTS = 64;
+	// Ended playlists never change again.
+	private static final long ENDED_MAX_AGE_SECONDS = 3600;
+
+	private final VideoService videoService;
+	private final AdaptiveStreamingService adaptiveStreamingService;
+	private final String baseUrl;
+	private final int windowSegments;
+
+	// Complete VOD playlists are read and parsed once for all viewers, until the file is replaced.
+	private final Map<String, ParsedPlaylist> parsed = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ParsedPlaylist> eldest) {
+			return size() > MAX_CACHED_PLAYLISTS;
+		}
+	};
+
+	public PremiereLivePlaylistService(
+			VideoService videoService,
+			AdaptiveStreamingService adaptiveStreamingService,
+			@Value("${app.base-url}") String baseUrl,
+			@Value("${app.premieres.live.window-segments:6}") int windowSegments) {
+		this.videoService = videoService;
+		this.adaptiveStreamingService = adaptiveStreamingService;
+		this.baseUrl = baseUrl;
+		this.windowSegments = Math.max(3, windowSegments);
+	}
+
+	public static String liveUrl(String baseUrl, Long videoId) {
+		return baseUrl + "/api/premiers/" + videoId + "/live/" + AdaptiveStreamingService.MASTER_PLAYLIST;
+	}
+
+	/**
+	 * The live master playlist, which is the VOD master (its variant URIs are relative,
+	 * so they resolve to the live variant playlists), or a live variant playlist.
+	 */
+	public LivePlaylist render(Long videoId, String resourcePath, LocalDateTime now) {
+		Video video = videoService.getStartedPremiere(videoId, now);
+		String videoPath = video.getVideoPath();
+		if (AdaptiveStreamingService.MASTER_PLAYLIST.equals(resourcePath)) {
+			String master = read(videoService.getHlsResource(videoPath, AdaptiveStreamingService.MASTER_PLAYLIST));
+			return new LivePlaylist(master, 0L, null);
+		}
+		if (!VARIANT_PLAYLIST.matcher(resourcePath).matches()) {
+			throw new IllegalArgumentException("Unknown live playlist.");
+		}
+
+		String variant = resourcePath.substring(0, resourcePath.indexOf('/'));
+		String playlistPath = resourcePath;
+		if (!Files.isRegularFile(adaptiveStreamingService.resolveHlsResource(videoPath, playlistPath))) {
+			// The EVENT playlist is removed some time after packing; a player that loaded the
+			// live master before the packed master was published continues on the packs.
+			playlistPath = variant + "/" + AdaptiveStreamingService.PACKED_PLAYLIST;
+		}
+		VodPlaylist vod = vodPlaylist(videoPath, playlistPath);
+		String segmentBaseUrl = baseUrl + "/api/videos/hls/" + videoPath + "/" + variant + "/";
+		double elapsedSeconds = Duration.between(video.getScheduledAt(), now).toMillis() / 1000.0;
+		return window(vod, segmentBaseUrl, elapsedSeconds, windowSegments);
+	}
+
+	/**
+	 * Playlists are replaced by atomic moves, so a changed modification time means new
+	 * content: a complete playlist is parsed again when it is rewritten, e.g. when a
+	 * stitched playlist is replaced while the transcode is being published.
+	 */
+	private VodPlaylist vodPlaylist(String videoPath, String resourcePath) {
+		String key = videoPath + "/" + resourcePath;
+		Path file = videoService.getHlsResource(videoPath, resourcePath);
+		FileTime modified = lastModified(file);
+		synchronized (parsed) {
+			ParsedPlaylist cached = parsed.get(key);
+			if (cached != null && cached.modified().equals(modified)) {
+				return cached.vod();
+			}
+		}
+		VodPlaylist vod = parse(read(file));
+		// A premiere whose transcode is still running is cut from the growing EVENT playlist.
+		if (vod.complete()) {
+			synchronized (parsed) {
+				parsed.put(key, new ParsedPlaylist(modified, vod));
+			}
+		}
+		return vod;
+	}
+
+	private static FileTime lastModified(Path playlist) {
+		try {
+			return Files.getLastModifiedTime(playlist);
+		} catch (IOException ex) {
+			throw new RuntimeException("Adaptive stream resource not found.", ex);
+		}
+	}
+
+	private static String read(Path playlist) {
+		try {
+			return Files.readString(playlist, StandardCharsets.UTF_8);
+		} catch (IOException ex) {
+			throw new RuntimeException("Adaptive stream resource not found.", ex);
+		}
+	}
+
+	static VodPlaylist parse(String playlist) {
+		int version = 3;
+		int targetDuration = TranscodingWorkerService.SEGMENT_SECONDS;
+		boolean complete = false;
+		List<LiveSegment> segments = new ArrayList<>();
+		double start = 0.0;
+		double duration = 0.0;
+		boolean discontinuity = false;
+		String map = null;
+		String byteRange = null;
+		for (String rawLine : playlist.split("\\R")) {
+			String line = rawLine.trim();
+			if (line.startsWith("#EXT-X-VERSION:")) {
+				version = Integer.parseInt(line.substring("#EXT-X-VERSION:".length()).trim());
+			} else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+				targetDuration = Integer.parseInt(line.substring("#EXT-X-TARGETDURATION:".length()).trim());
+			} else if (line.equals("#EXT-X-ENDLIST")) {
+				complete = true;
+			} else if (line.equals("#EXT-X-DISCONTINUITY")) {
+				discontinuity = true;
+			} else if (line.startsWith("#EXT-X-MAP:")) {
+				map = line;
+			} else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+				byteRange = line;
+			} else if (line.startsWith("#EXTINF:")) {
+				duration = AdaptiveStreamingService.segmentSeconds(line);
+			} else if (!line.isEmpty() && !line.startsWith("#")) {
+				segments.add(new LiveSegment(start, duration, discontinuity, map, byteRange, line));
+				start += duration;
+				discontinuity = false;
+				byteRange = null;
+			}
+		}
+		return new VodPlaylist(version, targetDuration, List.copyOf(segments), complete);
+	}
+
+	/**
+	 * The window at {@code elapsedSeconds}: the last {@code windowSegments} segments whose
+	 * start the clock has reached. Media and discontinuity sequence numbers count the
+	 * segments and discontinuities that slid out, and the init segment map in effect for
+	 * the first segment is repeated ahead of it. Segment URIs point at the VOD segments.
+	 */
+	static LivePlaylist window(VodPlaylist vod, String segmentBaseUrl, double elapsedSeconds, int windowSegments) {
+		List<LiveSegment> segments = vod.segments();
+		int available = 0;
+		while (available < segments.size() && segments.get(available).start() <= elapsedSeconds) {
+			available++;
+		}
+		double total = segments.isEmpty() ? 0.0 : segments.get(segments.size() - 1).end();
+		boolean ended = vod.complete() && elapsedSeconds >= total;
+		int first = Math.max(0, available - windowSegments);
+		int discontinuitySequence = 0;
+		for (int i = 0; i <= first && i < available; i++) {
+			if (segments.get(i).discontinuity()) {
+				discontinuitySequence++;
+			}
+		}
+
+		StringBuilder playlist = new StringBuilder();
+		playlist.append("#EXTM3U\n");
+		playlist.append("#EXT-X-VERSION:").append(vod.version()).append('\n');
+		playlist.append("#EXT-X-TARGETDURATION:").append(vod.targetDuration()).append('\n');
+		playlist.append("#EXT-X-MEDIA-SEQUENCE:").append(first).append('\n');
+		playlist.append("#EXT-X-DISCONTINUITY-SEQUENCE:").append(discontinuitySequence).append('\n');
+		String currentMap = first < available ? segments.get(first).map() : null;
+		if (currentMap != null) {
+			playlist.append(absoluteMap(currentMap, segmentBaseUrl)).append('\n');
+		}
+		for (int i = first; i < available; i++) {
+			LiveSegment segment = segments.get(i);
+			if (i > first && segment.discontinuity()) {
+				playlist.append("#EXT-X-DISCONTINUITY\n");
+			}
+			if (segment.map() != null && !segment.map().equals(currentMap)) {
+				currentMap = segment.map();
+				playlist.append(absoluteMap(currentMap, segmentBaseUrl)).append('\n');
+			}
+			playlist.append(String.format(Locale.ROOT, "#EXTINF:%.6f,\n", segment.duration()));
+			if (segment.byteRange() != null) {
+				playlist.append(segment.byteRange()).append('\n');
+			}
+			playlist.append(segmentBaseUrl).append(segment.uri()).append('\n');
+		}
+		if (ended) {
+			playlist.append("#EXT-X-ENDLIST\n");
+		}
+
+		long maxAgeSeconds;
+		if (ended) {
+			maxAgeSeconds = ENDED_MAX_AGE_SECONDS;
+		} else if (available < segments.size()) {
+			maxAgeSeconds = Math.max(1L, (long) Math.ceil(segments.get(available).start() - elapsedSeconds));
+		} else {
+			// Caught up with a transcode that is still running: poll like a player would.
+			maxAgeSeconds = 1L;
+		}
+		String etag = "\"" + first + "-" + available + (ended ? "-end" : "") + "\"";
+		return new LivePlaylist(playlist.toString(), maxAgeSeconds, etag);
+	}
+
+	private static String absoluteMap(String map, String segmentBaseUrl) {
+		int uriStart = map.indexOf("URI=\"");
+		if (uriStart < 0) {
+			return map;
+		}
+		int valueStart = uriStart + "URI=\"".length();
+		return map.substring(0, valueStart) + segmentBaseUrl + map.substring(valueStart);
+	}
+
+	/** {@code etag} is null for the master playlist, which is revalidated on every load. */
+	public record LivePlaylist(String content, long maxAgeSeconds, String etag) {
+	}
+
+	private record ParsedPlaylist(FileTime modified, VodPlaylist vod) {
+	}
+
+	record VodPlaylist(int version, int targetDuration, List<LiveSegment> segments, boolean complete) {
+	}
+
+	record LiveSegment(double start, double duration, boolean discontinuity, String map, String byteRange, String uri) {
+		double end() {
+			return start + duration;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package Jutjubic.RA56.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Keeps objects in an S3-compatible bucket (AWS S3, MinIO) under the same keys as the
+ * local store. A {@link ShardedLocalBlobStore} on the shared volume acts as the write
+ * buffer and read cache: files are written there, uploaded on publish, and downloaded
+ * back on the first read after eviction.
+ *
+ * <p>Local copies known to be in the bucket (published or downloaded by this process)
+ * are kept within {@code maxLocalBytes}, evicting the least recently read first. Files
+ * not yet published are never evicted, and neither are copies left over from before a
+ * restart, which this process has not seen in the bucket.
+ */
+public class S3BlobStore implements BlobStore {
+	private final S3Client client;
+	private final String bucket;
+	private final ShardedLocalBlobStore cache;
+	private final long maxLocalBytes;
+
+	// Access order: the head is the least recently read local copy.
+	private final LinkedHashMap<String, Long> durableCopies = new LinkedHashMap<>(256, 0.75f, true);
+	private long durableBytes;
+
+	public S3BlobStore(S3Client client, String bucket, ShardedLocalBlobStore cache, long maxLocalBytes) {
+		this.client = client;
+		this.bucket = bucket;
+		this.cache = cache;
+		this.maxLocalBytes = Math.max(0L, maxLocalBytes);
+	}
+
+	@Override
+	public Path localPath(String key) {
+		return cache.localPath(key);
+	}
+
+	@Override
+	public Path fetch(String key) throws IOException {
+		Path cached = cache.fetch(key);
+		if (cached != null) {
+			touch(key);
+			return cached;
+		}
+
+		Path target = cache.localPath(key);
+		Path temp = cache.newTempFile();
+		try (InputStream in = client.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build())) {
+			Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+			Files.createDirectories(target.getParent());
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			retain(key, Files.size(target));
+			return target;
+		} catch (NoSuchKeyException ex) {
+			return null;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	@Override
+	public boolean exists(String key) {
+		if (cache.exists(key)) {
+			return true;
+		}
+		try {
+			client.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+			return true;
+		} catch (NoSuchKeyException ex) {
+			return false;
+		} catch (S3Exception ex) {
+			if (ex.statusCode() == 404) {
+				return false;
+			}
+			throw ex;
+		}
+	}
+
+	@Override
+	public void publish(String key) throws IOException {
+		Path file = cache.localPath(key);
+		client.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(), RequestBody.fromFile(file));
+		retain(key, Files.size(file));
+	}
+
+	@Override
+	public void publishTree(String prefix) throws IOException {
+		Path dir = cache.localPath(prefix);
+		if (!Files.isDirectory(dir)) {
+			return;
+		}
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(dir)) {
+			files = paths.filter(Files::isRegularFile).toList();
+		}
+		for (Path file : files) {
+			String relative = dir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+			publish(prefix + "/" + relative);
+		}
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		client.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+		synchronized (durableCopies) {
+			Long size = durableCopies.remove(key);
+			durableBytes -= size == null ? 0L : size;
+		}
+		cache.delete(key);
+	}
+
+	@Override
+	public Path newTempFile() throws IOException {
+		return cache.newTempFile();
+	}
+
+	private void touch(String key) {
+		synchronized (durableCopies) {
+			durableCopies.get(key);
+		}
+	}
+
+	/**
+	 * Records a local copy that is also in the bucket, then deletes the least recently
+	 * read copies until the rest fit. A reader that already opened an evicted file keeps
+	 * reading it; the next fetch downloads it again.
+	 */
+	private void retain(String key, long size) throws IOException {
+		List<String> evicted = new ArrayList<>();
+		synchronized (durableCopies) {
+			Long previous = durableCopies.put(key, size);
+			durableBytes += size - (previous == null ? 0L : previous);
+			Iterator<Map.Entry<String, Long>> eldest = durableCopies.entrySet().iterator();
+			while (durableBytes > maxLocalBytes && eldest.hasNext()) {
+				Map.Entry<String, Long> entry = eldest.next();
+				if (entry.getKey().equals(key)) {
+					continue;
+				}
+				durableBytes -= entry.getValue();
+				evicted.add(entry.getKey());
+				eldest.remove();
+			}
+		}
+		for (String evictedKey : evicted) {
+			cache.delete(evictedKey);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package Jutjubic.RA56.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Local file system store that spreads entries over two levels of directories picked
+ * from a hash of the entry name ({@code videos/3f/a2/<name>}), keeping every directory
+ * small. Entries still in the old flat layout ({@code videos/<name>}) are found as well,
+ * so {@link StorageMigrationService} can move them while the application is running.
+ */
+public class ShardedLocalBlobStore implements BlobStore {
+	private final Path root;
+	private final Path tempDirectory;
+
+	public ShardedLocalBlobStore(String root) {
+		this.root = Paths.get(root).toAbsolutePath().normalize();
+		this.tempDirectory = this.root.resolve("tmp");
+		try {
+			Files.createDirectories(this.tempDirectory);
+		} catch (IOException ex) {
+			throw new RuntimeException("Could not create the storage directory " + this.root, ex);
+		}
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	@Override
+	public Path localPath(String key) {
+		BlobKey parsed = BlobKey.parse(key);
+		return resolveWithin(root.resolve(parsed.area()).resolve(shardOf(parsed.name())), parsed);
+	}
+
+	/** Location of the entry in the flat layout used before sharding. */
+	public Path legacyPath(String key) {
+		BlobKey parsed = BlobKey.parse(key);
+		return resolveWithin(root.resolve(parsed.area()), parsed);
+	}
+
+	@Override
+	public Path fetch(String key) {
+		Path sharded = localPath(key);
+		if (Files.exists(sharded)) {
+			return sharded;
+		}
+		Path legacy = legacyPath(key);
+		if (Files.exists(legacy)) {
+			return legacy;
+		}
+		// The migration may have moved the entry between the two checks.
+		return Files.exists(sharded) ? sharded : null;
+	}
+
+	@Override
+	public boolean exists(String key) {
+		return fetch(key) != null;
+	}
+
+	@Override
+	public void publish(String key) {
+		// The local path is the durable copy.
+	}
+
+	@Override
+	public void publishTree(String prefix) {
+		// The local path is the durable copy.
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		Files.deleteIfExists(localPath(key));
+		Files.deleteIfExists(legacyPath(key));
+	}
+
+	@Override
+	public Path newTempFile() throws IOException {
+		return Files.createTempFile(tempDirectory, "incoming-", ".tmp");
+	}
+
+	static String shardOf(String name) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(name.getBytes(StandardCharsets.UTF_8));
+			String hex = HexFormat.of().formatHex(hash, 0, 2);
+			return hex.substring(0, 2) + "/" + hex.substring(2, 4);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 is not available.", ex);
+		}
+	}
+
+	private Path resolveWithin(Path areaDir, BlobKey key) {
+		Path entry = areaDir.resolve(key.name()).normalize();
+		Path resolved = key.rest().isEmpty() ? entry : entry.resolve(key.rest()).normalize();
+		if (!areaDir.equals(entry.getParent()) || !resolved.startsWith(entry)) {
+			throw new IllegalArgumentException("Invalid storage key.");
+		}
+		return resolved;
+	}
+
+	record BlobKey(String area, String name, String rest) {
+		static BlobKey parse(String key) {
+			if (key == null || key.contains("\\")) {
+				throw new IllegalArgumentException("Invalid storage key.");
+			}
+			String[] parts = key.split("/", 3);
+			if (parts.length < 2 || !parts[0].matches("[a-z]+") || parts[1].isBlank()
+					|| parts[1].equals(".") || parts[1].equals("..")) {
+				throw new IllegalArgumentException("Invalid storage key.");
+			}
+			return new BlobKey(parts[0], parts[1], parts.length == 3 ? parts[2] : "");
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.StorageMigrationResponse;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Moves files from the old flat layout ({@code storage/videos/<name>},
+ * {@code storage/streams/<video>/}) into the configured {@link BlobStore} while the
+ * application keeps serving. Every entry is moved with one rename, and the local
+ * store looks in both layouts, so readers never miss a file. Stream directories
+ * without a master playlist are still being written and are left for a later run.
+ * Each call handles at most {@code limit} entries and can be repeated until nothing
+ * remains.
+ */
+@Service
+public class StorageMigrationService {
+	private static final Logger logger = LoggerFactory.getLogger(StorageMigrationService.class);
+
+	private static final List<String> AREAS = List.of("videos", "thumbnails", "streams");
+	private static final int MAX_LIMIT = 100_000;
+
+	private final BlobStore blobStore;
+	private final Path legacyRoot;
+
+	public StorageMigrationService(BlobStore blobStore, @Value("${app.storage.local.root:storage}") String legacyRoot) {
+		this.blobStore = blobStore;
+		this.legacyRoot = Paths.get(legacyRoot).toAbsolutePath().normalize();
+	}
+
+	public synchronized StorageMigrationResponse migrate(int limit) {
+		if (limit <= 0 || limit > MAX_LIMIT) {
+			throw new IllegalArgumentException("Migration limit must be between 1 and " + MAX_LIMIT + ".");
+		}
+
+		int moved = 0;
+		int skipped = 0;
+		for (String area : AREAS) {
+			Path areaDir = legacyRoot.resolve(area);
+			if (!Files.isDirectory(areaDir)) {
+				continue;
+			}
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(areaDir)) {
+				for (Path entry : entries) {
+					String name = entry.getFileName().toString();
+					if (!isLegacyEntry(area, entry, name)) {
+						continue;
+					}
+					if (name.startsWith(".") || (area.equals("streams") && !Files.exists(entry.resolve("hls/master.m3u8")))) {
+						skipped++;
+						continue;
+					}
+					if (moved >= limit) {
+						return new StorageMigrationResponse(moved, skipped, true);
+					}
+					if (moveEntry(area + "/" + name, entry, area.equals("streams"))) {
+						moved++;
+					} else {
+						skipped++;
+					}
+				}
+			} catch (IOException ex) {
+				throw new RuntimeException("Storage migration failed in " + areaDir, ex);
+			}
+		}
+		logger.info("Storage migration moved {} entries, skipped {}", moved, skipped);
+		return new StorageMigrationResponse(moved, skipped, false);
+	}
+
+	private boolean isLegacyEntry(String area, Path entry, String name) {
+		if (area.equals("streams")) {
+			// Shard directories are two hex characters; video directories are full file names.
+			return Files.isDirectory(entry) && !isShardDirectory(name);
+		}
+		return Files.isRegularFile(entry);
+	}
+
+	private boolean moveEntry(String key, Path entry, boolean directory) throws IOException {
+		Path target = blobStore.localPath(key);
+		if (target.equals(entry) || Files.exists(target)) {
+			return false;
+		}
+		Files.createDirectories(target.getParent());
+		try {
+			Files.move(entry, target, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			logger.warn("Skipping {}: it is not on the same file system as the store", entry);
+			return false;
+		}
+		if (directory) {
+			blobStore.publishTree(key);
+		} else {
+			blobStore.publish(key);
+		}
+		return true;
+	}
+
+	private static boolean isShardDirectory(String name) {
+		return name.length() == 2 && name.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+	}
+}
@@ -0,0 +1,142 @@
+package Jutjubic.RA56.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Thumbnail bytes kept in direct (off-heap) buffers together with their content type
+ * and validators, bounded by a byte budget and evicted least recently used. A hit is
+ * answered from memory without touching storage; the key is the stored file name the
+ * request resolves to, which is immutable, so entries never go stale. Files larger
+ * than the per-entry limit are streamed from disk and not cached.
+ */
+@Service
+public class ThumbnailCacheService {
+	private final ThumbnailVariantService thumbnailVariantService;
+	private final MediaFileService mediaFileService;
+	private final long capacityBytes;
+	private final long maxEntryBytes;
+
+	private final LinkedHashMap<String, MediaFileService.CachedMedia> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private long sizeBytes;
+	private long evictions;
+
+	private final Counter hitCounter;
+	private final Counter missCounter;
+
+	public ThumbnailCacheService(
+			ThumbnailVariantService thumbnailVariantService,
+			MediaFileService mediaFileService,
+			MeterRegistry meterRegistry,
+			@Value("${app.thumbnails.cache.max-mb:64}") long capacityMb,
+			@Value("${app.thumbnails.cache.max-entry-kb:512}") long maxEntryKb) {
+		this.thumbnailVariantService = thumbnailVariantService;
+		this.mediaFileService = mediaFileService;
+		this.capacityBytes = Math.max(0L, capacityMb) * 1024 * 1024;
+		this.maxEntryBytes = Math.min(Math.max(0L, maxEntryKb) * 1024, capacityBytes);
+
+		this.hitCounter = Counter.builder("app_thumbnail_cache_requests_total")
+				.tag("result", "hit")
+				.description("Thumbnail requests answered from the byte cache")
+				.register(meterRegistry);
+		this.missCounter = Counter.builder("app_thumbnail_cache_requests_total")
+				.tag("result", "miss")
+				.description("Thumbnail requests that read from storage")
+				.register(meterRegistry);
+		Gauge.builder("app_thumbnail_cache_hit_ratio", this, cache -> cache.hitRatio())
+				.description("Share of thumbnail requests answered from the byte cache since startup")
+				.register(meterRegistry);
+		Gauge.builder("app_thumbnail_cache_bytes", this, cache -> cache.sizeBytes())
+				.description("Off-heap bytes held by the thumbnail cache")
+				.register(meterRegistry);
+		Gauge.builder("app_thumbnail_cache_capacity_bytes", this, cache -> cache.capacityBytes)
+				.description("Configured thumbnail cache size")
+				.register(meterRegistry);
+		Gauge.builder("app_thumbnail_cache_entries", this, cache -> cache.entryCount())
+				.description("Thumbnails held by the byte cache")
+				.register(meterRegistry);
+		FunctionCounter.builder("app_thumbnail_cache_evictions_total", this, cache -> cache.evictionCount())
+				.description("Thumbnails evicted to stay within the cache size")
+				.register(meterRegistry);
+	}
+
+	public void serve(String fileName, Integer width, String accept, String cacheControl,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String key = thumbnailVariantService.servedName(fileName, width, accept);
+		MediaFileService.CachedMedia cached = get(key);
+		if (cached != null) {
+			hitCounter.increment();
+			mediaFileService.serve(cached, cacheControl, request, response);
+			return;
+		}
+		missCounter.increment();
+
+		ThumbnailVariantService.ThumbnailFile thumbnail = thumbnailVariantService.resolve(fileName, width, accept);
+		if (!Files.isRegularFile(thumbnail.path())) {
+			throw new RuntimeException("File not found " + fileName);
+		}
+		if (Files.size(thumbnail.path()) > maxEntryBytes) {
+			mediaFileService.serve(thumbnail.path(), thumbnail.contentType(), cacheControl, request, response);
+			return;
+		}
+		MediaFileService.CachedMedia media = mediaFileService.read(thumbnail.path(), thumbnail.contentType());
+		// A fallback to the original must not stand in for the variant once that exists.
+		if (key.equals(thumbnail.name())) {
+			put(key, media);
+		}
+		mediaFileService.serve(media, cacheControl, request, response);
+	}
+
+	synchronized MediaFileService.CachedMedia get(String key) {
+		return entries.get(key);
+	}
+
+	synchronized void put(String key, MediaFileService.CachedMedia media) {
+		if (media.length() > maxEntryBytes) {
+			return;
+		}
+		MediaFileService.CachedMedia previous = entries.put(key, media);
+		sizeBytes += media.length() - (previous == null ? 0 : previous.length());
+
+		// Access order: the head of the map is the least recently used entry.
+		Iterator<Map.Entry<String, MediaFileService.CachedMedia>> eldest = entries.entrySet().iterator();
+		while (sizeBytes > capacityBytes && eldest.hasNext()) {
+			Map.Entry<String, MediaFileService.CachedMedia> entry = eldest.next();
+			if (entry.getKey().equals(key)) {
+				continue;
+			}
+			sizeBytes -= entry.getValue().length();
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	synchronized long sizeBytes() {
+		return sizeBytes;
+	}
+
+	synchronized int entryCount() {
+		return entries.size();
+	}
+
+	synchronized long evictionCount() {
+		return evictions;
+	}
+
+	private double hitRatio() {
+		double hits = hitCounter.count();
+		double total = hits + missCounter.count();
+		return total == 0 ? 0.0 : hits / total;
+	}
+}
@@ -1,91 +1,285 @@
 package Jutjubic.RA56.service;
 
-import Jutjubic.RA56.domain.Video;
+import Jutjubic.RA56.domain.JobCheckpoint;
+import Jutjubic.RA56.dto.ThumbnailCompressionCandidate;
+import Jutjubic.RA56.repository.JobCheckpointRepository;
 import Jutjubic.RA56.repository.VideoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import net.coobird.thumbnailator.Thumbnails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Nightly recompression of old thumbnails. Candidates are paged by {@code (createdAt, id)}
+ * from a checkpoint stored in {@code job_checkpoints}, compressed in parallel on a bounded
+ * worker pool, and marked with one bulk update per batch. A file that fails is left
+ * behind by the cursor and retried on the next pass, which starts once a pass reaches
+ * the end.
+ */
 @Service
 public class ThumbnailCompressionService {
 
+    static final String CHECKPOINT_NAME = "thumbnail-compression";
+
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailCompressionService.class);
+
+    // The old path is part of the match so a thumbnail replaced meanwhile is left alone.
+    private static final String BULK_UPDATE_PREFIX = "UPDATE videos AS v SET thumbnail_path = c.new_path, "
+            + "thumbnail_compressed = true, thumbnail_compressed_at = ? FROM (VALUES ";
+    private static final String BULK_UPDATE_SUFFIX = ") AS c(id, old_path, new_path) "
+            + "WHERE v.id = c.id AND v.thumbnail_path = c.old_path RETURNING v.id";
+
     private final VideoRepository videoRepository;
     private final FileStorageService fileStorageService;
+    private final ThumbnailVariantService thumbnailVariantService;
+    private final JobCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService workers;
+    private final AtomicBoolean running = new AtomicBoolean();
 
-    @Value("${app.thumbnail-compression.older-than-days:30}")
-    private long olderThanDays;
+    private final long olderThanDays;
+    private final int batchSize;
+    private final double compressionQuality;
+    private final int workerCount;
 
-    @Value("${app.thumbnail-compression.batch-size:100}")
-    private int batchSize;
+    private final Counter compressedCounter;
+    private final Counter failedCounter;
+    private final Timer fileTimer;
+    private volatile double lastThroughputPerCore;
 
-    @Value("${app.thumbnail-compression.quality:0.75}")
-    private double compressionQuality;
-
-    public ThumbnailCompressionService(VideoRepository videoRepository, FileStorageService fileStorageService) {
+    public ThumbnailCompressionService(
+            VideoRepository videoRepository,
+            FileStorageService fileStorageService,
+            ThumbnailVariantService thumbnailVariantService,
+            JobCheckpointRepository checkpointRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.thumbnail-compression.older-than-days:30}") long olderThanDays,
+            @Value("${app.thumbnail-compression.batch-size:100}") int batchSize,
+            @Value("${app.thumbnail-compression.quality:0.75}") double compressionQuality,
+            @Value("${app.thumbnail-compression.workers:0}") int workers) {
         this.videoRepository = videoRepository;
         this.fileStorageService = fileStorageService;
+        this.thumbnailVariantService = thumbnailVariantService;
+        this.checkpointRepository = checkpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.olderThanDays = olderThanDays;
+        // Three bind parameters per row; stay well under the PostgreSQL limit of 65535.
+        this.batchSize = Math.max(1, Math.min(5_000, batchSize));
+        this.compressionQuality = compressionQuality;
+        this.workerCount = workers > 0 ? workers : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-compression-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.compressedCounter = Counter.builder("app_thumbnail_compression_compressed_total")
+                .description("Thumbnails recompressed by the nightly job")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("app_thumbnail_compression_failures_total")
+                .description("Thumbnails the nightly job could not recompress")
+                .register(meterRegistry);
+        this.fileTimer = Timer.builder("app_thumbnail_compression_file_duration")
+                .description("Time to recompress one thumbnail on a worker")
+                .register(meterRegistry);
+        Gauge.builder("app_thumbnail_compression_throughput_per_core", this, service -> service.lastThroughputPerCore)
+                .description("Thumbnails per second per worker thread in the last run")
+                .register(meterRegistry);
+        Gauge.builder("app_thumbnail_compression_workers", this, service -> service.workerCount)
+                .description("Size of the thumbnail compression worker pool")
+                .register(meterRegistry);
     }
 
     @Scheduled(cron = "${app.thumbnail-compression.cron:0 15 3 * * ?}")
     public void compressOldThumbnails() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            runPass();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void runPass() {
         LocalDateTime cutoff = LocalDateTime.now().minusDays(olderThanDays);
+        JobCheckpoint checkpoint = checkpointRepository.findById(CHECKPOINT_NAME)
+                .orElseGet(() -> new JobCheckpoint(CHECKPOINT_NAME));
+        long start = System.nanoTime();
+        int processed = 0;
 
-        while (true) {
-            List<Video> candidates = videoRepository.findOldUncompressedThumbnails(
-                    cutoff,
-                    PageRequest.of(0, batchSize)
-            );
+        while (!Thread.currentThread().isInterrupted()) {
+            List<ThumbnailCompressionCandidate> candidates = checkpoint.isAtStart()
+                    ? videoRepository.findUncompressedThumbnailsFirstPage(cutoff, PageRequest.of(0, batchSize))
+                    : videoRepository.findUncompressedThumbnailsAfter(cutoff, checkpoint.getCursorCreatedAt(),
+                            checkpoint.getCursorId(), PageRequest.of(0, batchSize));
             if (candidates.isEmpty()) {
-                return;
+                if (!checkpoint.isAtStart()) {
+                    // Nothing left behind the cursor: the next run starts a fresh pass.
+                    checkpoint.moveTo(null, null);
+                    checkpointRepository.save(checkpoint);
+                }
+                break;
             }
 
-            int compressedInBatch = 0;
-            for (Video video : candidates) {
-                if (compressOne(video)) {
-                    compressedInBatch++;
-                }
+            List<Compressed> compressed = compressBatch(candidates);
+            if (Thread.currentThread().isInterrupted()) {
+                // Shutting down mid-batch: keep what finished and leave the cursor so the rest is redone.
+                commitBatch(compressed, checkpoint);
+                break;
             }
+            ThumbnailCompressionCandidate last = candidates.get(candidates.size() - 1);
+            boolean passComplete = candidates.size() < batchSize;
+            checkpoint.moveTo(passComplete ? null : last.createdAt(), passComplete ? null : last.id());
+            commitBatch(compressed, checkpoint);
+            processed += candidates.size();
 
-            if (compressedInBatch == 0) {
-                return;
+            if (passComplete) {
+                break;
             }
         }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        if (processed > 0 && seconds > 0) {
+            lastThroughputPerCore = processed / seconds / workerCount;
+            logger.info("Thumbnail compression processed {} thumbnails in {} s on {} workers",
+                    processed, String.format("%.1f", seconds), workerCount);
+        }
     }
 
-    private boolean compressOne(Video video) {
-        String originalThumbnail = video.getThumbnailPath();
-        Path sourcePath = fileStorageService.resolveThumbnailPath(originalThumbnail);
-        if (!Files.exists(sourcePath)) {
-            System.err.println("Thumbnail compression skipped - source file missing: " + sourcePath);
-            return false;
+    private List<Compressed> compressBatch(List<ThumbnailCompressionCandidate> candidates) {
+        List<Future<Compressed>> futures = new ArrayList<>(candidates.size());
+        for (ThumbnailCompressionCandidate candidate : candidates) {
+            futures.add(workers.submit(() -> compressOne(candidate)));
         }
 
-        String compressedFileName = UUID.randomUUID() + "_cmp.jpg";
-        Path compressedPath = fileStorageService.resolveThumbnailPath(compressedFileName);
+        List<Compressed> compressed = new ArrayList<>(candidates.size());
+        for (Future<Compressed> future : futures) {
+            try {
+                Compressed result = future.get();
+                if (result != null) {
+                    compressed.add(result);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                futures.forEach(pending -> pending.cancel(true));
+                break;
+            } catch (ExecutionException ex) {
+                failedCounter.increment();
+                logger.warn("Thumbnail compression task failed: {}", ex.getCause().getMessage());
+            }
+        }
+        return compressed;
+    }
 
+    private Compressed compressOne(ThumbnailCompressionCandidate candidate) {
+        long start = System.nanoTime();
         try {
+            Path sourcePath = fileStorageService.resolveThumbnailPath(candidate.thumbnailPath());
+            if (!Files.exists(sourcePath)) {
+                failedCounter.increment();
+                logger.warn("Thumbnail compression skipped - source file missing: {}", sourcePath);
+                return null;
+            }
+
+            String compressedFileName = UUID.randomUUID() + "_cmp.jpg";
+            Path compressedPath = fileStorageService.newThumbnailPath(compressedFileName);
             Thumbnails.of(sourcePath.toFile())
                     .scale(1.0)
                     .outputFormat("jpg")
                     .outputQuality(compressionQuality)
                     .toFile(compressedPath.toFile());
-
-            video.setThumbnailPath(compressedFileName);
-            video.setThumbnailCompressed(true);
-            video.setThumbnailCompressedAt(LocalDateTime.now());
-            videoRepository.save(video);
-            return true;
+            fileStorageService.publishThumbnail(compressedFileName);
+            thumbnailVariantService.pregenerate(compressedFileName);
+            return new Compressed(candidate, compressedFileName);
         } catch (Exception ex) {
-            System.err.println("Failed to compress thumbnail for video id " + video.getId() + ": " + ex.getMessage());
-            return false;
+            failedCounter.increment();
+            logger.warn("Failed to compress thumbnail for video id {}: {}", candidate.id(), ex.getMessage());
+            return null;
+        } finally {
+            fileTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
+
+    /** Marks the batch with one statement and stores the checkpoint in the same transaction. */
+    private void commitBatch(List<Compressed> compressed, JobCheckpoint checkpoint) {
+        Set<Long> updated = new HashSet<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!compressed.isEmpty()) {
+                    StringBuilder sql = new StringBuilder(BULK_UPDATE_PREFIX);
+                    Object[] args = new Object[1 + compressed.size() * 3];
+                    args[0] = Timestamp.valueOf(LocalDateTime.now());
+                    for (int i = 0; i < compressed.size(); i++) {
+                        Compressed item = compressed.get(i);
+                        if (i > 0) {
+                            sql.append(", ");
+                        }
+                        sql.append("(?, ?, ?)");
+                        args[1 + i * 3] = item.candidate().id();
+                        args[2 + i * 3] = item.candidate().thumbnailPath();
+                        args[3 + i * 3] = item.fileName();
+                    }
+                    sql.append(BULK_UPDATE_SUFFIX);
+                    updated.addAll(jdbcTemplate.queryForList(sql.toString(), Long.class, args));
+                }
+                checkpointRepository.save(checkpoint);
+            });
+        } catch (RuntimeException ex) {
+            // The checkpoint did not move either; the next run redoes this batch.
+            compressed.forEach(item -> fileStorageService.deleteFile(item.fileName(), false));
+            throw ex;
+        }
+
+        for (Compressed item : compressed) {
+            if (updated.contains(item.candidate().id())) {
+                compressedCounter.increment();
+            } else {
+                fileStorageService.deleteFile(item.fileName(), false);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private record Compressed(ThumbnailCompressionCandidate candidate, String fileName) {
+    }
 }
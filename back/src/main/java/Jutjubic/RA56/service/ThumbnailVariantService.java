@@ -0,0 +1,234 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.Video;
+import Jutjubic.RA56.dto.ThumbnailBackfillResponse;
+import Jutjubic.RA56.repository.VideoRepository;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import javax.imageio.ImageIO;
+import net.coobird.thumbnailator.Thumbnails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Fixed-width copies of every thumbnail, so feed cards and map markers download a few
+ * kilobytes instead of the full upload. Variants are written when the thumbnail is
+ * stored, by the admin backfill, or on the first request that misses one. WebP is
+ * produced when an ImageIO WebP writer is on the classpath, JPEG always.
+ */
+@Service
+public class ThumbnailVariantService {
+	private static final Logger logger = LoggerFactory.getLogger(ThumbnailVariantService.class);
+
+	public static final int MARKER_WIDTH = 160;
+	public static final int CARD_WIDTH = 320;
+	public static final int DETAIL_WIDTH = 640;
+
+	private static final MediaType WEBP = MediaType.parseMediaType("image/webp");
+	private static final int MAX_BACKFILL_LIMIT = 1000;
+
+	private final FileStorageService fileStorageService;
+	private final VideoRepository videoRepository;
+	private final double quality;
+	private final boolean webpSupported;
+
+	public ThumbnailVariantService(
+			FileStorageService fileStorageService,
+			VideoRepository videoRepository,
+			@Value("${app.thumbnails.variant-quality:0.8}") double quality) {
+		this.fileStorageService = fileStorageService;
+		this.videoRepository = videoRepository;
+		this.quality = Math.min(1.0, Math.max(0.1, quality));
+		this.webpSupported = ImageIO.getImageWritersByMIMEType("image/webp").hasNext();
+	}
+
+	public static String thumbnailUrl(String baseUrl, String fileName, int width) {
+		return baseUrl + "/api/videos/thumbnail/" + fileName + "?w=" + width;
+	}
+
+	/**
+	 * Name of the stored file a thumbnail request is answered with: the original when no
+	 * width is asked for, otherwise the smallest variant at least {@code width} wide (the
+	 * largest when none is), in WebP if the client accepts it. A name that is itself a
+	 * variant is served as stored. Computed without touching storage, so it can key a cache.
+	 */
+	public String servedName(String fileName, Integer width, String accept) {
+		List<Integer> widths = fileStorageService.getThumbnailVariantWidths();
+		if (width == null || widths.isEmpty() || FileStorageService.isThumbnailVariantName(fileName)) {
+			return fileName;
+		}
+		if (width <= 0) {
+			throw new IllegalArgumentException("Thumbnail width must be positive.");
+		}
+		int variantWidth = widths.stream().filter(candidate -> candidate >= width).findFirst()
+				.orElse(widths.get(widths.size() - 1));
+		boolean webp = webpSupported && acceptsWebp(accept);
+		return FileStorageService.thumbnailVariantName(fileName, variantWidth, webp ? ".webp" : ".jpg");
+	}
+
+	/** The file for {@link #servedName}, generating the variants if they are missing. */
+	public ThumbnailFile resolve(String fileName, Integer width, String accept) {
+		String servedName = servedName(fileName, width, accept);
+		Path original = fileStorageService.resolveThumbnailPath(fileName);
+		if (servedName.equals(fileName)) {
+			return new ThumbnailFile(original, fileName, contentTypeOf(fileName));
+		}
+		if (!Files.isRegularFile(original)) {
+			throw new RuntimeException("File not found " + fileName);
+		}
+
+		Path variant = fileStorageService.resolveThumbnailPath(servedName);
+		if (!Files.isRegularFile(variant)) {
+			try {
+				generateVariants(fileName);
+			} catch (RuntimeException ex) {
+				logger.warn("Serving original thumbnail {}: {}", fileName, ex.getMessage());
+				return new ThumbnailFile(original, fileName, contentTypeOf(fileName));
+			}
+			variant = fileStorageService.resolveThumbnailPath(servedName);
+		}
+		return new ThumbnailFile(variant, servedName, contentTypeOf(servedName));
+	}
+
+	/** Writes any missing variants of a stored thumbnail. Returns how many were written. */
+	public int generateVariants(String fileName) {
+		if (FileStorageService.isThumbnailVariantName(fileName)) {
+			throw new IllegalArgumentException("Thumbnail variants are only generated for original uploads.");
+		}
+		Path original = fileStorageService.resolveThumbnailPath(fileName);
+		if (!Files.isRegularFile(original)) {
+			throw new RuntimeException("File not found " + fileName);
+		}
+
+		BufferedImage source = null;
+		int written = 0;
+		for (int width : fileStorageService.getThumbnailVariantWidths()) {
+			for (String extension : formats()) {
+				String variantName = FileStorageService.thumbnailVariantName(fileName, width, extension);
+				if (Files.isRegularFile(fileStorageService.resolveThumbnailPath(variantName))) {
+					continue;
+				}
+				try {
+					if (source == null) {
+						// Thumbnailator applies the EXIF orientation on the way in.
+						source = Thumbnails.of(original.toFile()).scale(1.0).asBufferedImage();
+					}
+					writeVariant(source, width, extension, variantName);
+					written++;
+				} catch (IOException ex) {
+					throw new RuntimeException("Could not generate thumbnail variant " + variantName, ex);
+				}
+			}
+		}
+		return written;
+	}
+
+	/** Upload-time generation; a thumbnail that cannot be decoded is kept and served as uploaded. */
+	public void pregenerate(String fileName) {
+		try {
+			generateVariants(fileName);
+		} catch (RuntimeException ex) {
+			logger.warn("Could not generate thumbnail variants for {}: {}", fileName, ex.getMessage());
+		}
+	}
+
+	/** Generates missing variants for up to {@code limit} videos with an id above {@code afterId}. */
+	public ThumbnailBackfillResponse backfill(long afterId, int limit) {
+		int batchSize = Math.max(1, Math.min(limit, MAX_BACKFILL_LIMIT));
+		List<Video> videos = videoRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, batchSize));
+
+		int generated = 0;
+		int failed = 0;
+		for (Video video : videos) {
+			if (video.getThumbnailPath() == null) {
+				continue;
+			}
+			try {
+				generated += generateVariants(video.getThumbnailPath());
+			} catch (RuntimeException ex) {
+				failed++;
+				logger.warn("Could not generate thumbnail variants for video {}: {}", video.getId(), ex.getMessage());
+			}
+		}
+		Long nextAfterId = videos.size() < batchSize ? null : videos.get(videos.size() - 1).getId();
+		return new ThumbnailBackfillResponse(generated, failed, nextAfterId);
+	}
+
+	private void writeVariant(BufferedImage source, int width, String extension, String variantName) throws IOException {
+		boolean jpeg = extension.equals(".jpg");
+		Path target = fileStorageService.newThumbnailPath(variantName);
+		Path temp = Files.createTempFile(target.getParent(), "variant-", ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				// Never upscale: a small original still gets a re-encoded copy under every width.
+				Thumbnails.of(jpeg ? flatten(source) : source)
+						.width(Math.min(width, source.getWidth()))
+						.outputFormat(jpeg ? "jpg" : "webp")
+						.outputQuality(quality)
+						.toOutputStream(out);
+			}
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		fileStorageService.publishThumbnail(variantName);
+	}
+
+	/** JPEG has no alpha channel; transparent areas become white instead of black. */
+	private BufferedImage flatten(BufferedImage source) {
+		if (!source.getColorModel().hasAlpha()) {
+			return source;
+		}
+		BufferedImage opaque = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = opaque.createGraphics();
+		try {
+			graphics.drawImage(source, 0, 0, Color.WHITE, null);
+		} finally {
+			graphics.dispose();
+		}
+		return opaque;
+	}
+
+	private List<String> formats() {
+		return webpSupported ? FileStorageService.THUMBNAIL_VARIANT_EXTENSIONS : List.of(".jpg");
+	}
+
+	private String contentTypeOf(String fileName) {
+		return MediaTypeFactory.getMediaType(fileName).map(MediaType::toString)
+				.orElse(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+	}
+
+	private boolean acceptsWebp(String accept) {
+		if (accept == null || accept.isBlank()) {
+			return false;
+		}
+		try {
+			// Only an explicit image/webp counts; */* clients get the JPEG every decoder handles.
+			return MediaType.parseMediaTypes(accept).stream()
+					.anyMatch(type -> type.equalsTypeAndSubtype(WEBP) && type.getQualityValue() > 0);
+		} catch (IllegalArgumentException ex) {
+			return false;
+		}
+	}
+
+	/** {@code name} is the stored file actually served: the original when a variant could not be generated. */
+	public record ThumbnailFile(Path path, String name, String contentType) {
+	}
+}
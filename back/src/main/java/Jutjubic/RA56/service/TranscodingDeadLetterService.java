@@ -0,0 +1,108 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.TranscodingJob;
+import Jutjubic.RA56.dto.TranscodingDeadLetterResponse;
+import Jutjubic.RA56.repository.TranscodingJobRepository;
+import com.rabbitmq.client.GetResponse;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only view of the transcoding dead-letter queue. Messages are fetched without
+ * acknowledgement and put back in their original order, so listing does not consume
+ * them.
+ */
+@Service
+public class TranscodingDeadLetterService {
+	private static final int MAX_LIMIT = 500;
+
+	private final RabbitTemplate rabbitTemplate;
+	private final TranscodingJobRepository transcodingJobRepository;
+	private final String deadLetterQueueName;
+	private final ObjectMapper objectMapper = JsonMapper.builder().build();
+
+	public TranscodingDeadLetterService(
+			RabbitTemplate rabbitTemplate,
+			TranscodingJobRepository transcodingJobRepository,
+			@Value("${app.transcoding.dlq}") String deadLetterQueueName) {
+		this.rabbitTemplate = rabbitTemplate;
+		this.transcodingJobRepository = transcodingJobRepository;
+		this.deadLetterQueueName = deadLetterQueueName;
+	}
+
+	public List<TranscodingDeadLetterResponse> list(int limit) {
+		int bounded = Math.max(1, Math.min(MAX_LIMIT, limit));
+		List<GetResponse> messages = rabbitTemplate.execute(channel -> {
+			List<GetResponse> fetched = new ArrayList<>();
+			try {
+				GetResponse response;
+				while (fetched.size() < bounded && (response = channel.basicGet(deadLetterQueueName, false)) != null) {
+					fetched.add(response);
+				}
+			} finally {
+				if (!fetched.isEmpty()) {
+					channel.basicNack(fetched.get(fetched.size() - 1).getEnvelope().getDeliveryTag(), true, true);
+				}
+			}
+			return fetched;
+		});
+
+		List<TranscodingDeadLetterResponse> deadLetters = new ArrayList<>();
+		for (GetResponse message : messages == null ? List.<GetResponse>of() : messages) {
+			deadLetters.add(toResponse(message));
+		}
+		return deadLetters;
+	}
+
+	private TranscodingDeadLetterResponse toResponse(GetResponse message) {
+		JsonNode body = parse(message.getBody());
+		Long jobId = body.hasNonNull("jobId") ? body.get("jobId").asLong() : null;
+		Long videoId = body.hasNonNull("videoId") ? body.get("videoId").asLong() : null;
+		String videoFileName = body.hasNonNull("videoFileName") ? body.get("videoFileName").asString() : null;
+		Integer chunkIndex = body.hasNonNull("chunkIndex") ? body.get("chunkIndex").asInt() : null;
+
+		Map<String, Object> death = firstDeath(message.getProps().getHeaders());
+		TranscodingJob job = jobId == null ? null : transcodingJobRepository.findById(jobId).orElse(null);
+		return new TranscodingDeadLetterResponse(
+				jobId,
+				videoId,
+				videoFileName,
+				chunkIndex,
+				death == null ? null : String.valueOf(death.get("reason")),
+				death == null ? null : String.valueOf(death.get("queue")),
+				death != null && death.get("time") instanceof Date time
+						? LocalDateTime.ofInstant(time.toInstant(), ZoneId.systemDefault())
+						: null,
+				job == null ? null : job.getStatus().name(),
+				job == null ? null : job.getLastError()
+		);
+	}
+
+	private JsonNode parse(byte[] body) {
+		try {
+			return objectMapper.readTree(body);
+		} catch (JacksonException ex) {
+			return objectMapper.createObjectNode();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> firstDeath(Map<String, Object> headers) {
+		if (headers == null || !(headers.get("x-death") instanceof List<?> deaths) || deaths.isEmpty()) {
+			return null;
+		}
+		return deaths.get(0) instanceof Map<?, ?> death ? (Map<String, Object>) death : null;
+	}
+}
@@ -2,17 +2,21 @@ package Jutjubic.RA56.service;
 
 import Jutjubic.RA56.domain.TranscodingJob;
 import Jutjubic.RA56.domain.TranscodingJobStatus;
+import Jutjubic.RA56.dto.TranscodingChunkMessage;
 import Jutjubic.RA56.dto.TranscodingJobMessage;
 import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 @Service
 public class TranscodingJobConsumer {
@@ -23,16 +27,34 @@ public class TranscodingJobConsumer {
 	private final FileStorageService fileStorageService;
 	private final TranscodingJobService transcodingJobService;
 	private final TranscodingJobProducer transcodingJobProducer;
+	private final TranscodingProgressRegistry progressRegistry;
+	private final TranscodingPriorityService priorityService;
+	private final MeterRegistry meterRegistry;
+	private final boolean chunkedEnabled;
+	private final int chunkSeconds;
+	private final long chunkedMinDurationSeconds;
 
 	public TranscodingJobConsumer(
 			TranscodingWorkerService transcodingWorkerService,
 			FileStorageService fileStorageService,
 			TranscodingJobService transcodingJobService,
-			TranscodingJobProducer transcodingJobProducer) {
+			TranscodingJobProducer transcodingJobProducer,
+			TranscodingProgressRegistry progressRegistry,
+			TranscodingPriorityService priorityService,
+			MeterRegistry meterRegistry,
+			@Value("${app.transcoding.chunked.enabled:true}") boolean chunkedEnabled,
+			@Value("${app.transcoding.chunked.chunk-seconds:60}") int chunkSeconds,
+			@Value("${app.transcoding.chunked.min-duration-seconds:120}") long chunkedMinDurationSeconds) {
 		this.transcodingWorkerService = transcodingWorkerService;
 		this.fileStorageService = fileStorageService;
 		this.transcodingJobService = transcodingJobService;
 		this.transcodingJobProducer = transcodingJobProducer;
+		this.progressRegistry = progressRegistry;
+		this.priorityService = priorityService;
+		this.meterRegistry = meterRegistry;
+		this.chunkedEnabled = chunkedEnabled;
+		this.chunkSeconds = Math.max(TranscodingWorkerService.SEGMENT_SECONDS, chunkSeconds);
+		this.chunkedMinDurationSeconds = chunkedMinDurationSeconds;
 	}
 
 	@RabbitListener(
@@ -52,34 +74,157 @@ public class TranscodingJobConsumer {
 			channel.basicAck(deliveryTag, false);
 			return;
 		}
+		progressRegistry.publishStatus(payload.jobId(), payload.videoId(), payload.videoFileName());
 
 		try {
 			Path sourcePath = fileStorageService.resolveVideoPath(payload.videoFileName());
 			long duration = Math.max(1L, payload.durationSeconds());
+			if (chunkedEnabled && duration >= chunkedMinDurationSeconds) {
+				splitAndPublishChunks(payload, sourcePath, duration);
+				channel.basicAck(deliveryTag, false);
+				return;
+			}
 			transcodingWorkerService.transcodeToHls(
 					payload.videoFileName(),
 					sourcePath,
 					duration,
-					progress -> transcodingJobService.updateProgress(payload.jobId(), progress)
+					progress -> progressRegistry.report(payload.jobId(), payload.videoId(), payload.videoFileName(), progress)
 			);
 			transcodingJobService.markCompleted(payload.jobId());
+			progressRegistry.publishStatus(payload.jobId(), payload.videoId(), payload.videoFileName());
 			channel.basicAck(deliveryTag, false);
 		} catch (Exception ex) {
+			progressRegistry.flush(payload.jobId());
 			boolean shouldRetry = transcodingJobService.markFailureAndCheckRetry(payload.jobId(), ex);
+			progressRegistry.publishStatus(payload.jobId(), payload.videoId(), payload.videoFileName());
 			logger.error("Transcoding failed for jobId={} videoId={}", payload.jobId(), payload.videoId(), ex);
+			if (!shouldRetry) {
+				deadLetter(channel, deliveryTag, TranscodingJobProducer.JOB_KIND);
+				return;
+			}
+			transcodingJobProducer.publishRetry(payload, priorityService.priorityForJob(payload.jobId()),
+					transcodingJobService.getAttempt(payload.jobId()));
+			channel.basicAck(deliveryTag, false);
+		}
+	}
+
+	/**
+	 * Encodes one chunk sub-job. Whichever consumer finishes the last chunk, on any
+	 * node, stitches the playlists and completes the job.
+	 */
+	@RabbitListener(
+			queues = "${app.transcoding.chunk-queue}",
+			containerFactory = "transcodingListenerContainerFactory",
+			concurrency = "2-4"
+	)
+	public void consumeChunk(TranscodingChunkMessage payload, Message message, Channel channel) throws IOException {
+		long deliveryTag = message.getMessageProperties().getDeliveryTag();
+		if (payload == null || payload.jobId() == null || payload.videoFileName() == null) {
 			channel.basicAck(deliveryTag, false);
-			if (shouldRetry) {
-				safeDelay(1500);
-				transcodingJobProducer.publish(payload);
+			return;
+		}
+
+		boolean redelivered = Boolean.TRUE.equals(message.getMessageProperties().getRedelivered());
+		boolean lastChunk;
+		if (transcodingJobService.startChunk(payload.jobId(), payload.chunkIndex(), redelivered) == null) {
+			// The node that completed the last chunk may have died before assembling; a redelivery picks it up.
+			if (!redelivered || !transcodingJobService.isAwaitingAssembly(payload.jobId())) {
+				channel.basicAck(deliveryTag, false);
+				return;
+			}
+			logger.warn("Resuming assembly of jobId={} videoId={} after a redelivered chunk", payload.jobId(), payload.videoId());
+			lastChunk = true;
+		} else {
+			try {
+				transcodingWorkerService.transcodeChunk(
+						payload.videoFileName(),
+						payload.chunkIndex(),
+						payload.startSeconds(),
+						payload.durationSeconds()
+				);
+				lastChunk = transcodingJobService.completeChunk(payload.jobId(), payload.chunkIndex());
+			} catch (Exception ex) {
+				boolean shouldRetry = transcodingJobService.markChunkFailureAndCheckRetry(payload.jobId(), payload.chunkIndex(), ex);
+				progressRegistry.publishStatus(payload.jobId(), payload.videoId(), payload.videoFileName());
+				logger.error("Transcoding chunk {}/{} failed for jobId={} videoId={}",
+						payload.chunkIndex() + 1, payload.totalChunks(), payload.jobId(), payload.videoId(), ex);
+				if (!shouldRetry) {
+					deadLetter(channel, deliveryTag, TranscodingJobProducer.CHUNK_KIND);
+					return;
+				}
+				transcodingJobProducer.publishChunkRetry(payload, priorityService.priorityForJob(payload.jobId()),
+						transcodingJobService.getChunkAttempt(payload.jobId(), payload.chunkIndex()));
+				channel.basicAck(deliveryTag, false);
+				return;
 			}
 		}
+
+		if (!lastChunk) {
+			try {
+				transcodingWorkerService.publishChunkProgress(payload.videoFileName());
+			} catch (Exception ex) {
+				// Only delays early playback; assembly writes the full playlists regardless.
+				logger.warn("Publishing partial playlists failed for jobId={}: {}", payload.jobId(), ex.getMessage());
+			}
+			progressRegistry.publishStatus(payload.jobId(), payload.videoId(), payload.videoFileName());
+		}
+
+		if (lastChunk) {
+			try {
+				transcodingWorkerService.assembleChunks(
+						payload.videoFileName(),
+						fileStorageService.resolveVideoPath(payload.videoFileName()),
+						payload.totalChunks()
+				);
+				transcodingJobService.markCompleted(payload.jobId());
+				progressRegistry.publishStatus(payload.jobId(), payload.videoId(), payload.videoFileName());
+			} catch (Exception ex) {
+				// Assembly failures retry the whole job, which splits the source again.
+				boolean shouldRetry = transcodingJobService.markFailureAndCheckRetry(payload.jobId(), ex);
+				progressRegistry.publishStatus(payload.jobId(), payload.videoId(), payload.videoFileName());
+				logger.error("Assembling chunks failed for jobId={} videoId={}", payload.jobId(), payload.videoId(), ex);
+				if (!shouldRetry) {
+					deadLetter(channel, deliveryTag, TranscodingJobProducer.CHUNK_KIND);
+					return;
+				}
+				transcodingJobProducer.publishRetry(new TranscodingJobMessage(
+						payload.jobId(),
+						payload.videoId(),
+						payload.videoFileName(),
+						payload.sourceDurationSeconds()
+				), priorityService.priorityForJob(payload.jobId()), transcodingJobService.getAttempt(payload.jobId()));
+			}
+		}
+		channel.basicAck(deliveryTag, false);
 	}
 
-	private void safeDelay(long millis) {
-		try {
-			TimeUnit.MILLISECONDS.sleep(millis);
-		} catch (InterruptedException ex) {
-			Thread.currentThread().interrupt();
+	private void splitAndPublishChunks(TranscodingJobMessage payload, Path sourcePath, long duration) {
+		List<TranscodingWorkerService.ChunkPlan> chunks =
+				transcodingWorkerService.splitIntoChunks(payload.videoFileName(), sourcePath, chunkSeconds);
+		transcodingJobService.registerChunks(payload.jobId(), chunks);
+		int priority = priorityService.priorityForJob(payload.jobId());
+		for (TranscodingWorkerService.ChunkPlan chunk : chunks) {
+			transcodingJobProducer.publishChunk(new TranscodingChunkMessage(
+					payload.jobId(),
+					payload.videoId(),
+					payload.videoFileName(),
+					duration,
+					chunk.index(),
+					chunks.size(),
+					chunk.startSeconds(),
+					chunk.durationSeconds()
+			), priority);
 		}
+		logger.info("Split jobId={} videoId={} into {} chunks", payload.jobId(), payload.videoId(), chunks.size());
+	}
+
+	/** Rejects a message that is out of retries; the work queue dead-letters it to the DLQ. */
+	private void deadLetter(Channel channel, long deliveryTag, String kind) throws IOException {
+		channel.basicNack(deliveryTag, false, false);
+		Counter.builder("app_transcoding_dead_letters_total")
+				.description("Transcoding messages sent to the dead-letter queue after their last retry")
+				.tag("kind", kind)
+				.register(meterRegistry)
+				.increment();
 	}
 }
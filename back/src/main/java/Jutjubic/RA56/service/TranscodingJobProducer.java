@@ -1,27 +1,121 @@
 package Jutjubic.RA56.service;
 
+import Jutjubic.RA56.dto.TranscodingChunkMessage;
 import Jutjubic.RA56.dto.TranscodingJobMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Publishes transcoding jobs and chunk sub-jobs. Retries are not slept on: they are
+ * parked in a per-attempt delay queue whose messages expire after an exponential
+ * backoff with jitter and are then dead-lettered back onto the work queue. Tiers are
+ * separate queues because RabbitMQ only expires messages at the head of a queue, so a
+ * short delay must never wait behind a long one.
+ */
 @Service
 public class TranscodingJobProducer {
 
+	public static final String JOB_KIND = "job";
+	public static final String CHUNK_KIND = "chunk";
+
 	private final RabbitTemplate rabbitTemplate;
 	private final String exchange;
 	private final String routingKey;
+	private final String chunkRoutingKey;
+	private final String retryQueuePrefix;
+	private final int retryTiers;
+	private final long baseDelayMs;
+	private final long maxDelayMs;
+	private final double jitter;
+	private final MeterRegistry meterRegistry;
 
 	public TranscodingJobProducer(
 			RabbitTemplate rabbitTemplate,
+			MeterRegistry meterRegistry,
 			@Value("${app.transcoding.exchange}") String exchange,
-			@Value("${app.transcoding.routing-key}") String routingKey) {
+			@Value("${app.transcoding.routing-key}") String routingKey,
+			@Value("${app.transcoding.chunk-routing-key}") String chunkRoutingKey,
+			@Value("${app.transcoding.retry.queue-prefix:transcoding.retry}") String retryQueuePrefix,
+			@Value("${app.transcoding.max-retries:3}") int maxRetries,
+			@Value("${app.transcoding.retry.base-delay-ms:2000}") long baseDelayMs,
+			@Value("${app.transcoding.retry.max-delay-ms:300000}") long maxDelayMs,
+			@Value("${app.transcoding.retry.jitter:0.2}") double jitter) {
 		this.rabbitTemplate = rabbitTemplate;
+		this.meterRegistry = meterRegistry;
 		this.exchange = exchange;
 		this.routingKey = routingKey;
+		this.chunkRoutingKey = chunkRoutingKey;
+		this.retryQueuePrefix = retryQueuePrefix;
+		this.retryTiers = retryTiers(maxRetries);
+		this.baseDelayMs = Math.max(1L, baseDelayMs);
+		this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+		this.jitter = Math.max(0.0, Math.min(1.0, jitter));
+	}
+
+	/** One delay tier per retry a job can get; the last failure is dead-lettered instead. */
+	public static int retryTiers(int maxRetries) {
+		return Math.max(1, maxRetries - 1);
+	}
+
+	public static String retryQueueName(String prefix, String kind, int tier) {
+		return prefix + "." + kind + "." + tier;
+	}
+
+	public void publish(TranscodingJobMessage message, int priority) {
+		rabbitTemplate.convertAndSend(exchange, routingKey, message, withPriority(priority, 0L));
+	}
+
+	public void publishChunk(TranscodingChunkMessage message, int priority) {
+		rabbitTemplate.convertAndSend(exchange, chunkRoutingKey, message, withPriority(priority, 0L));
+	}
+
+	/** Re-enqueues a failed job after the backoff for its {@code attempt}-th failure. */
+	public void publishRetry(TranscodingJobMessage message, int priority, int attempt) {
+		publishDelayed(JOB_KIND, message, priority, attempt);
+	}
+
+	public void publishChunkRetry(TranscodingChunkMessage message, int priority, int attempt) {
+		publishDelayed(CHUNK_KIND, message, priority, attempt);
+	}
+
+	private void publishDelayed(String kind, Object message, int priority, int attempt) {
+		int tier = Math.max(1, Math.min(retryTiers, attempt));
+		long delay = backoffMillis(attempt, baseDelayMs, maxDelayMs, jitter, ThreadLocalRandom.current().nextDouble());
+		rabbitTemplate.convertAndSend(exchange, retryQueueName(retryQueuePrefix, kind, tier), message,
+				withPriority(priority, delay));
+		Counter.builder("app_transcoding_retries_total")
+				.description("Transcoding jobs and chunks re-enqueued after a failure")
+				.tag("kind", kind)
+				.tag("attempt", String.valueOf(attempt))
+				.register(meterRegistry)
+				.increment();
+	}
+
+	/**
+	 * {@code base * 2^(attempt-1)} capped at {@code max}, spread by {@code ±jitter}
+	 * so jobs that failed together do not come back together.
+	 */
+	static long backoffMillis(int attempt, long baseMs, long maxMs, double jitter, double random) {
+		int exponent = Math.max(0, Math.min(30, attempt - 1));
+		long delay = Math.min(maxMs, baseMs << exponent);
+		double spread = 1.0 + jitter * (random * 2.0 - 1.0);
+		return Math.max(1L, Math.round(delay * spread));
 	}
 
-	public void publish(TranscodingJobMessage message) {
-		rabbitTemplate.convertAndSend(exchange, routingKey, message);
+	private MessagePostProcessor withPriority(int priority, long delayMs) {
+		int bounded = Math.max(0, Math.min(TranscodingPriorityService.MAX_PRIORITY, priority));
+		return amqpMessage -> {
+			amqpMessage.getMessageProperties().setPriority(bounded);
+			if (delayMs > 0) {
+				amqpMessage.getMessageProperties().setExpiration(String.valueOf(delayMs));
+			}
+			return amqpMessage;
+		};
 	}
 }
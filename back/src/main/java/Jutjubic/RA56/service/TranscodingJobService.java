@@ -1,24 +1,32 @@
 package Jutjubic.RA56.service;
 
+import Jutjubic.RA56.domain.TranscodingChunk;
 import Jutjubic.RA56.domain.TranscodingJob;
 import Jutjubic.RA56.domain.TranscodingJobStatus;
 import Jutjubic.RA56.domain.Video;
 import Jutjubic.RA56.dto.TranscodingStatusResponse;
+import Jutjubic.RA56.repository.TranscodingChunkRepository;
 import Jutjubic.RA56.repository.TranscodingJobRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Comparator;
+import java.util.List;
+
 @Service
 public class TranscodingJobService {
 
 	private final TranscodingJobRepository transcodingJobRepository;
+	private final TranscodingChunkRepository transcodingChunkRepository;
 	private final int maxRetries;
 
 	public TranscodingJobService(
 			TranscodingJobRepository transcodingJobRepository,
+			TranscodingChunkRepository transcodingChunkRepository,
 			@Value("${app.transcoding.max-retries:3}") int maxRetries) {
 		this.transcodingJobRepository = transcodingJobRepository;
+		this.transcodingChunkRepository = transcodingChunkRepository;
 		this.maxRetries = Math.max(1, maxRetries);
 	}
 
@@ -73,6 +81,7 @@ public class TranscodingJobService {
 		job.setProgress(100);
 		job.setLastError(null);
 		transcodingJobRepository.save(job);
+		settleWaitingJobs(job, TranscodingJobStatus.COMPLETED, null);
 	}
 
 	@Transactional
@@ -88,6 +97,7 @@ public class TranscodingJobService {
 			job.setStatus(TranscodingJobStatus.FAILED);
 			job.setProgress(Math.max(0, Math.min(99, safeProgress(job.getProgress()))));
 			transcodingJobRepository.save(job);
+			settleWaitingJobs(job, TranscodingJobStatus.FAILED, job.getLastError());
 			return false;
 		}
 
@@ -97,19 +107,151 @@ public class TranscodingJobService {
 		return true;
 	}
 
+	@Transactional
+	public void registerChunks(Long jobId, List<TranscodingWorkerService.ChunkPlan> plans) {
+		TranscodingJob job = transcodingJobRepository.findByIdForUpdate(jobId)
+				.orElseThrow(() -> new IllegalArgumentException("Transcoding job not found."));
+
+		// A retried job is split again from scratch.
+		transcodingChunkRepository.deleteByJobId(jobId);
+		for (TranscodingWorkerService.ChunkPlan plan : plans) {
+			TranscodingChunk chunk = new TranscodingChunk();
+			chunk.setJob(job);
+			chunk.setChunkIndex(plan.index());
+			chunk.setStartSeconds(plan.startSeconds());
+			chunk.setDurationSeconds(plan.durationSeconds());
+			chunk.setStatus(TranscodingJobStatus.PENDING);
+			chunk.setAttempt(0);
+			transcodingChunkRepository.save(chunk);
+		}
+		job.setTotalChunks(plans.size());
+		job.setCompletedChunks(0);
+		transcodingJobRepository.save(job);
+	}
+
+	/**
+	 * Claims a chunk for encoding. Returns null when the chunk is done, already taken
+	 * by another consumer, out of retries, or its job is no longer processing. A
+	 * redelivered message may reclaim a PROCESSING chunk whose consumer died.
+	 */
+	@Transactional
+	public TranscodingChunk startChunk(Long jobId, int chunkIndex, boolean redelivered) {
+		TranscodingChunk chunk = transcodingChunkRepository.findByJobIdAndChunkIndexForUpdate(jobId, chunkIndex)
+				.orElse(null);
+		if (chunk == null || chunk.getJob().getStatus() != TranscodingJobStatus.PROCESSING) {
+			return null;
+		}
+		if (chunk.getStatus() == TranscodingJobStatus.COMPLETED) {
+			return null;
+		}
+		if (chunk.getStatus() == TranscodingJobStatus.PROCESSING && !redelivered) {
+			return null;
+		}
+		if (chunk.getStatus() == TranscodingJobStatus.FAILED && safeAttempt(chunk.getAttempt()) >= maxRetries) {
+			return null;
+		}
+
+		chunk.setStatus(TranscodingJobStatus.PROCESSING);
+		chunk.setLastError(null);
+		return transcodingChunkRepository.save(chunk);
+	}
+
+	/**
+	 * Marks a chunk as encoded and returns true for exactly one caller: the one that
+	 * completed the last outstanding chunk, which then assembles the playlists.
+	 */
+	@Transactional
+	public boolean completeChunk(Long jobId, int chunkIndex) {
+		// The job row lock serializes completions coming from different nodes.
+		TranscodingJob job = transcodingJobRepository.findByIdForUpdate(jobId)
+				.orElseThrow(() -> new IllegalArgumentException("Transcoding job not found."));
+		TranscodingChunk chunk = transcodingChunkRepository.findByJobIdAndChunkIndexForUpdate(jobId, chunkIndex)
+				.orElseThrow(() -> new IllegalArgumentException("Transcoding chunk not found."));
+		if (chunk.getStatus() == TranscodingJobStatus.COMPLETED || job.getStatus() != TranscodingJobStatus.PROCESSING) {
+			return false;
+		}
+
+		chunk.setStatus(TranscodingJobStatus.COMPLETED);
+		chunk.setLastError(null);
+		transcodingChunkRepository.save(chunk);
+
+		int total = Math.max(1, job.getTotalChunks() == null ? 1 : job.getTotalChunks());
+		int completed = (job.getCompletedChunks() == null ? 0 : job.getCompletedChunks()) + 1;
+		job.setCompletedChunks(completed);
+		job.setProgress(Math.max(safeProgress(job.getProgress()), Math.max(1, Math.min(99, completed * 99 / total))));
+		transcodingJobRepository.save(job);
+		return completed >= total;
+	}
+
+	/**
+	 * True when every chunk of a still-processing job is encoded, i.e. the consumer that
+	 * completed the last chunk did not get to assemble the playlists.
+	 */
+	@Transactional(readOnly = true)
+	public boolean isAwaitingAssembly(Long jobId) {
+		return transcodingJobRepository.findById(jobId)
+				.filter(job -> job.getStatus() == TranscodingJobStatus.PROCESSING)
+				.filter(job -> job.getTotalChunks() != null && job.getTotalChunks() > 0)
+				.map(job -> job.getCompletedChunks() != null && job.getCompletedChunks() >= job.getTotalChunks())
+				.orElse(false);
+	}
+
+	@Transactional
+	public boolean markChunkFailureAndCheckRetry(Long jobId, int chunkIndex, Exception ex) {
+		TranscodingChunk chunk = transcodingChunkRepository.findByJobIdAndChunkIndexForUpdate(jobId, chunkIndex)
+				.orElseThrow(() -> new IllegalArgumentException("Transcoding chunk not found."));
+
+		int nextAttempt = safeAttempt(chunk.getAttempt()) + 1;
+		chunk.setAttempt(nextAttempt);
+		chunk.setLastError(safeError(ex));
+
+		if (nextAttempt >= maxRetries) {
+			chunk.setStatus(TranscodingJobStatus.FAILED);
+			transcodingChunkRepository.save(chunk);
+
+			TranscodingJob job = chunk.getJob();
+			job.setStatus(TranscodingJobStatus.FAILED);
+			job.setLastError("Chunk " + chunkIndex + " failed: " + safeError(ex));
+			transcodingJobRepository.save(job);
+			settleWaitingJobs(job, TranscodingJobStatus.FAILED, job.getLastError());
+			return false;
+		}
+
+		chunk.setStatus(TranscodingJobStatus.PENDING);
+		transcodingChunkRepository.save(chunk);
+		return true;
+	}
+
+	/** Failed attempts so far; picks the backoff tier of the next retry. */
+	@Transactional(readOnly = true)
+	public int getAttempt(Long jobId) {
+		return transcodingJobRepository.findById(jobId)
+				.map(job -> safeAttempt(job.getAttempt()))
+				.orElse(0);
+	}
+
+	@Transactional(readOnly = true)
+	public int getChunkAttempt(Long jobId, int chunkIndex) {
+		return transcodingChunkRepository.findByJobIdAndChunkIndex(jobId, chunkIndex)
+				.map(chunk -> safeAttempt(chunk.getAttempt()))
+				.orElse(0);
+	}
+
 	@Transactional(readOnly = true)
 	public TranscodingStatusResponse getVideoStatus(Long videoId) {
 		TranscodingJob job = transcodingJobRepository.findByVideoId(videoId)
 				.orElse(null);
 		if (job == null) {
-			return new TranscodingStatusResponse(videoId, "NOT_FOUND", 0, false, "Transcoding job not found.");
+			return new TranscodingStatusResponse(videoId, "NOT_FOUND", 0, false, "Transcoding job not found.", 0.0);
 		}
 
 		TranscodingJobStatus status = job.getStatus();
 		boolean ready = status == TranscodingJobStatus.COMPLETED;
 		String message = switch (status) {
 			case PENDING -> "Queued for transcoding.";
-			case PROCESSING -> "Transcoding is in progress.";
+			case PROCESSING -> job.getTotalChunks() == null
+					? "Transcoding is in progress."
+					: "Transcoding is in progress (" + safeProgress(job.getCompletedChunks()) + "/" + job.getTotalChunks() + " chunks).";
 			case COMPLETED -> "Transcoding completed.";
 			case FAILED -> job.getLastError() == null ? "Transcoding failed." : job.getLastError();
 		};
@@ -119,15 +261,15 @@ public class TranscodingJobService {
 				status.name(),
 				Math.max(0, Math.min(100, safeProgress(job.getProgress()))),
 				ready,
-				message
+				message,
+				0.0
 		);
 	}
 
 	@Transactional(readOnly = true)
 	public TranscodingJobStatus getStatusByVideoPath(String videoPath) {
-		return transcodingJobRepository.findByVideoVideoPath(videoPath)
-				.map(TranscodingJob::getStatus)
-				.orElse(null);
+		TranscodingJob job = findByVideoPath(videoPath);
+		return job == null ? null : job.getStatus();
 	}
 
 	@Transactional(readOnly = true)
@@ -135,9 +277,51 @@ public class TranscodingJobService {
 		return transcodingJobRepository.findByVideoId(videoId).orElse(null);
 	}
 
+	/**
+	 * Identical uploads share a video file, so several jobs can point at one path.
+	 * Returns the most advanced of them: completed, then in progress, then failed.
+	 */
 	@Transactional(readOnly = true)
 	public TranscodingJob findByVideoPath(String videoPath) {
-		return transcodingJobRepository.findByVideoVideoPath(videoPath).orElse(null);
+		return transcodingJobRepository.findAllByVideoVideoPath(videoPath).stream()
+				.min(Comparator.comparingInt(job -> statusRank(job.getStatus())))
+				.orElse(null);
+	}
+
+	@Transactional(readOnly = true)
+	public List<Long> findVideoIdsByVideoPath(String videoPath) {
+		return transcodingJobRepository.findAllByVideoVideoPath(videoPath).stream()
+				.map(job -> job.getVideo().getId())
+				.toList();
+	}
+
+	/** True when another job for the same file is queued or running; the caller's job can wait for it. */
+	@Transactional(readOnly = true)
+	public boolean hasActiveJobForVideoPath(String videoPath, Long excludeJobId) {
+		return transcodingJobRepository.findAllByVideoVideoPath(videoPath).stream()
+				.anyMatch(job -> !job.getId().equals(excludeJobId)
+						&& (job.getStatus() == TranscodingJobStatus.PENDING || job.getStatus() == TranscodingJobStatus.PROCESSING));
+	}
+
+	private void settleWaitingJobs(TranscodingJob job, TranscodingJobStatus status, String lastError) {
+		for (TranscodingJob waiting : transcodingJobRepository.findAllByVideoVideoPath(job.getVideo().getVideoPath())) {
+			if (waiting.getId().equals(job.getId()) || waiting.getStatus() != TranscodingJobStatus.PENDING) {
+				continue;
+			}
+			waiting.setStatus(status);
+			waiting.setProgress(status == TranscodingJobStatus.COMPLETED ? 100 : 0);
+			waiting.setLastError(lastError);
+			transcodingJobRepository.save(waiting);
+		}
+	}
+
+	private int statusRank(TranscodingJobStatus status) {
+		return switch (status) {
+			case COMPLETED -> 0;
+			case PROCESSING -> 1;
+			case PENDING -> 2;
+			case FAILED -> 3;
+		};
 	}
 
 	private int safeProgress(Integer progress) {
@@ -0,0 +1,111 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.TranscodingJob;
+import Jutjubic.RA56.domain.Video;
+import Jutjubic.RA56.repository.TranscodingJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Message priority for transcoding jobs on the RabbitMQ priority queues. A video's
+ * deadline is the moment it goes public ({@code scheduledAt}); the priority grows as
+ * the slack left after the estimated encode time shrinks, and premieres always rank
+ * above ordinary uploads. Premieres that start before their job completed are counted
+ * as deadline misses.
+ */
+@Service
+public class TranscodingPriorityService {
+	private static final Logger logger = LoggerFactory.getLogger(TranscodingPriorityService.class);
+
+	/** Declared as {@code x-max-priority} on the transcoding queues. */
+	public static final int MAX_PRIORITY = 9;
+	static final int ORDINARY_PRIORITY = 3;
+	static final int SCHEDULED_PRIORITY = 1;
+
+	private final TranscodingJobRepository transcodingJobRepository;
+	private final double encodeSecondsPerSourceSecond;
+	private final long missLookbackMinutes;
+	private final Counter deadlineMissCounter;
+
+	public TranscodingPriorityService(
+			TranscodingJobRepository transcodingJobRepository,
+			MeterRegistry meterRegistry,
+			@Value("${app.transcoding.priority.encode-seconds-per-source-second:1.5}") double encodeSecondsPerSourceSecond,
+			@Value("${app.transcoding.priority.miss-lookback-minutes:60}") long missLookbackMinutes) {
+		this.transcodingJobRepository = transcodingJobRepository;
+		this.encodeSecondsPerSourceSecond = Math.max(0.0, encodeSecondsPerSourceSecond);
+		this.missLookbackMinutes = Math.max(1L, missLookbackMinutes);
+		this.deadlineMissCounter = Counter.builder("app_transcoding_premiere_deadline_misses_total")
+				.description("Premieres that started before their HLS output was ready")
+				.register(meterRegistry);
+	}
+
+	public int priorityFor(Video video, LocalDateTime now) {
+		long durationSeconds = video.getDurationSeconds() == null ? 0L : video.getDurationSeconds();
+		return priorityFor(Boolean.TRUE.equals(video.getPremiereEnabled()), video.getScheduledAt(),
+				Math.round(durationSeconds * encodeSecondsPerSourceSecond), now);
+	}
+
+	/** Current priority of a job, recomputed for retries and chunk sub-jobs as its deadline gets closer. */
+	@Transactional(readOnly = true)
+	public int priorityForJob(Long jobId) {
+		return transcodingJobRepository.findById(jobId)
+				.map(job -> priorityFor(job.getVideo(), LocalDateTime.now()))
+				.orElse(ORDINARY_PRIORITY);
+	}
+
+	/**
+	 * Premieres rank 5 to 9 by slack, scheduled uploads 4 when they go public within the
+	 * hour and 1 otherwise, and uploads that are already public rank 3.
+	 */
+	static int priorityFor(boolean premiere, LocalDateTime deadline, long estimatedEncodeSeconds, LocalDateTime now) {
+		if (deadline == null || !deadline.isAfter(now)) {
+			return premiere ? MAX_PRIORITY : ORDINARY_PRIORITY;
+		}
+		Duration slack = Duration.between(now, deadline).minusSeconds(estimatedEncodeSeconds);
+		if (!premiere) {
+			return slack.compareTo(Duration.ofHours(1)) < 0 ? ORDINARY_PRIORITY + 1 : SCHEDULED_PRIORITY;
+		}
+		if (slack.isNegative() || slack.isZero()) {
+			return MAX_PRIORITY;
+		}
+		if (slack.compareTo(Duration.ofMinutes(15)) < 0) {
+			return 8;
+		}
+		if (slack.compareTo(Duration.ofHours(1)) < 0) {
+			return 7;
+		}
+		if (slack.compareTo(Duration.ofDays(1)) < 0) {
+			return 6;
+		}
+		return 5;
+	}
+
+	/** Counts each premiere that reached its start while its transcoding job was not completed, once. */
+	@Scheduled(fixedDelayString = "${app.transcoding.priority.miss-check-ms:30000}")
+	@Transactional
+	public void detectDeadlineMisses() {
+		LocalDateTime now = LocalDateTime.now();
+		List<TranscodingJob> missed = transcodingJobRepository.findUnreportedPremiereMisses(
+				now.minusMinutes(missLookbackMinutes), now);
+		for (TranscodingJob job : missed) {
+			// Every node runs this check; only the node whose update claims the row counts the miss.
+			if (transcodingJobRepository.claimDeadlineMiss(job.getId(), now) == 0) {
+				continue;
+			}
+			deadlineMissCounter.increment();
+			logger.warn("Premiere of videoId={} started at {} before transcoding finished (jobId={}, status={}, progress={}%)",
+					job.getVideo().getId(), job.getVideo().getScheduledAt(), job.getId(), job.getStatus(), job.getProgress());
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.TranscodingStatusResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live progress of the transcodes running on this node. ffmpeg reports progress many
+ * times a second; it is kept here, pushed to {@code /topic/videos/{id}/transcoding}
+ * whenever the percentage moves, and written to {@code transcoding_jobs} at most once
+ * per persist interval. State changes (completed, failed, chunk finished) are read back
+ * from the database and pushed as they happen.
+ */
+@Service
+public class TranscodingProgressRegistry {
+	private static final Logger logger = LoggerFactory.getLogger(TranscodingProgressRegistry.class);
+
+	private final TranscodingJobService transcodingJobService;
+	private final AdaptiveStreamingService adaptiveStreamingService;
+	private final SimpMessagingTemplate messagingTemplate;
+	private final long persistIntervalNanos;
+
+	private final Map<Long, Progress> running = new ConcurrentHashMap<>();
+
+	private final Counter reportedCounter;
+	private final Counter persistedCounter;
+
+	public TranscodingProgressRegistry(
+			TranscodingJobService transcodingJobService,
+			AdaptiveStreamingService adaptiveStreamingService,
+			SimpMessagingTemplate messagingTemplate,
+			MeterRegistry meterRegistry,
+			@Value("${app.transcoding.progress.persist-interval-seconds:5}") long persistIntervalSeconds) {
+		this.transcodingJobService = transcodingJobService;
+		this.adaptiveStreamingService = adaptiveStreamingService;
+		this.messagingTemplate = messagingTemplate;
+		this.persistIntervalNanos = TimeUnit.SECONDS.toNanos(Math.max(0L, persistIntervalSeconds));
+
+		this.reportedCounter = Counter.builder("app_transcoding_progress_updates_total")
+				.description("Progress changes reported by ffmpeg and pushed to clients")
+				.register(meterRegistry);
+		this.persistedCounter = Counter.builder("app_transcoding_progress_writes_total")
+				.description("Progress values written to the transcoding job row")
+				.register(meterRegistry);
+	}
+
+	public static String topicFor(Long videoId) {
+		return "/topic/videos/" + videoId + "/transcoding";
+	}
+
+	/** Records a progress line from ffmpeg. Only increases are kept, as the database did before. */
+	public void report(Long jobId, Long videoId, String videoFileName, int progress) {
+		int normalized = Math.max(1, Math.min(99, progress));
+		Progress entry = running.computeIfAbsent(jobId, id -> new Progress(videoId, System.nanoTime()));
+		boolean persist;
+		synchronized (entry) {
+			if (normalized <= entry.progress) {
+				return;
+			}
+			entry.progress = normalized;
+			long now = System.nanoTime();
+			persist = now - entry.persistedAt >= persistIntervalNanos;
+			if (persist) {
+				entry.persisted = normalized;
+				entry.persistedAt = now;
+			}
+		}
+		reportedCounter.increment();
+		if (persist) {
+			persist(jobId, normalized);
+		}
+		push(videoId, new TranscodingStatusResponse(videoId, "PROCESSING", normalized, false,
+				"Transcoding is in progress.", adaptiveStreamingService.getPlayableSeconds(videoFileName)));
+	}
+
+	/** Writes progress that has not reached the database yet, before the job changes state. */
+	public void flush(Long jobId) {
+		Progress entry = running.get(jobId);
+		if (entry == null) {
+			return;
+		}
+		int pending;
+		synchronized (entry) {
+			if (entry.progress <= entry.persisted) {
+				return;
+			}
+			pending = entry.progress;
+			entry.persisted = pending;
+			entry.persistedAt = System.nanoTime();
+		}
+		persist(jobId, pending);
+	}
+
+	/**
+	 * Pushes the job's state as stored after a state change. Finished jobs are dropped
+	 * from the registry; their outcome is also pushed to identical uploads whose jobs
+	 * waited on this one.
+	 */
+	public void publishStatus(Long jobId, Long videoId, String videoFileName) {
+		TranscodingStatusResponse status = withPlayableSeconds(overlay(transcodingJobService.getVideoStatus(videoId)), videoFileName);
+		push(videoId, status);
+		if ("PROCESSING".equals(status.status()) || "PENDING".equals(status.status())) {
+			return;
+		}
+		running.remove(jobId);
+		for (Long waitingVideoId : transcodingJobService.findVideoIdsByVideoPath(videoFileName)) {
+			if (!waitingVideoId.equals(videoId)) {
+				push(waitingVideoId, withPlayableSeconds(transcodingJobService.getVideoStatus(waitingVideoId), videoFileName));
+			}
+		}
+	}
+
+	/** A stored status with the newer in-memory progress of a job running on this node. */
+	public TranscodingStatusResponse overlay(TranscodingStatusResponse stored) {
+		if (!"PROCESSING".equals(stored.status())) {
+			return stored;
+		}
+		for (Progress entry : running.values()) {
+			if (!entry.videoId.equals(stored.videoId())) {
+				continue;
+			}
+			int live;
+			synchronized (entry) {
+				live = entry.progress;
+			}
+			if (live > stored.progress()) {
+				return new TranscodingStatusResponse(stored.videoId(), stored.status(), live, stored.ready(),
+						stored.message(), stored.playableSeconds());
+			}
+		}
+		return stored;
+	}
+
+	private TranscodingStatusResponse withPlayableSeconds(TranscodingStatusResponse status, String videoFileName) {
+		return "FAILED".equals(status.status())
+				? status
+				: status.withPlayableSeconds(adaptiveStreamingService.getPlayableSeconds(videoFileName));
+	}
+
+	private void persist(Long jobId, int progress) {
+		try {
+			transcodingJobService.updateProgress(jobId, progress);
+			persistedCounter.increment();
+		} catch (RuntimeException ex) {
+			logger.warn("Failed persisting progress for jobId={}: {}", jobId, ex.getMessage());
+		}
+	}
+
+	private void push(Long videoId, TranscodingStatusResponse status) {
+		try {
+			messagingTemplate.convertAndSend(topicFor(videoId), status);
+		} catch (MessagingException ex) {
+			// Clients still get the state from the status endpoint when they (re)subscribe.
+			logger.debug("Failed pushing transcoding status for videoId={}: {}", videoId, ex.getMessage());
+		}
+	}
+
+	private static final class Progress {
+		private final Long videoId;
+		private int progress;
+		private int persisted;
+		private long persistedAt;
+
+		private Progress(Long videoId, long startedAt) {
+			this.videoId = videoId;
+			this.persistedAt = startedAt;
+		}
+	}
+}
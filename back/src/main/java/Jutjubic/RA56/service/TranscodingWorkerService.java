@@ -1,76 +1,1182 @@
 package Jutjubic.RA56.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
+/**
+ * Transcodes uploads into an HLS rendition ladder in a single ffmpeg pass: the
+ * decoded video is split once and scaled per rung, keyframes are forced on segment
+ * boundaries so players can switch between variants, and a master playlist with
+ * BANDWIDTH/RESOLUTION/CODECS is written for the variants that were produced.
+ * Rungs taller than the source are skipped, so nothing is upscaled.
+ *
+ * <p>Long sources can instead be split into keyframe-aligned chunks that are encoded
+ * as separate sub-jobs and stitched into the same playlist layout afterwards.
+ *
+ * <p>Output is playable while it is produced: a progressive master playlist is written
+ * before encoding starts and the variant playlists are EVENT playlists that only grow,
+ * so players can start on the finished segments and keep polling for more.
+ *
+ * <p>A retried single-pass job resumes: the segments every variant already finished
+ * are kept, encoding restarts at the next segment boundary with an input seek, and the
+ * resumed segments are appended after a discontinuity once the run completes.
+ *
+ * <p>In CMAF packaging the segments are fragmented MP4 instead of MPEG-TS, audio is a
+ * single rendition shared by every video variant rather than muxed into each of them,
+ * and a DASH manifest is written next to the master playlist. Both protocols then
+ * reference the same {@code init_*.mp4} and {@code .m4s} files.
+ *
+ * <p>With packing enabled, a completed variant's segments are concatenated into a few
+ * {@code pack_NNN} files that the playlists address with {@code EXT-X-BYTERANGE}, so a
+ * long video is a handful of files per variant instead of thousands.
+ */
 @Service
 public class TranscodingWorkerService {
 
+	static final int SEGMENT_SECONDS = 4;
+	// High profile, level 4.2 (covers 1080p up to 60 fps) and AAC-LC.
+	static final String VIDEO_CODEC = "avc1.64002a";
+	static final String AUDIO_CODEC = "mp4a.40.2";
+	static final String AUDIO_ONLY_NAME = "audio";
+	static final String RESUME_PLAYLIST = "resume.m3u8";
+	static final String TS_PACKAGING = "ts";
+	static final String CMAF_PACKAGING = "cmaf";
+	// %v is replaced by the variant name; ffmpeg writes the init segment next to the variant playlist.
+	private static final String INIT_SEGMENT = "init_%v.mp4";
+
+	private static final Logger logger = LoggerFactory.getLogger(TranscodingWorkerService.class);
+
 	private final String ffmpegBinary;
-	private final Path streamRoot;
+	private final String ffprobeBinary;
+	private final List<Rendition> ladder;
+	private final int audioOnlyKbps;
+	private final boolean cmaf;
+	private final boolean packSegments;
+	private final long maxPackBytes;
+	private final BlobStore blobStore;
 
-	public TranscodingWorkerService(@Value("${app.ffmpeg.binary:ffmpeg}") String ffmpegBinary) {
+	public TranscodingWorkerService(
+			BlobStore blobStore,
+			@Value("${app.ffmpeg.binary:ffmpeg}") String ffmpegBinary,
+			@Value("${app.ffprobe.binary:}") String ffprobeBinary,
+			@Value("${app.transcoding.ladder:1080:5000:192,720:2800:128,480:1400:128,360:800:96}") String ladder,
+			@Value("${app.transcoding.audio-only-kbps:64}") int audioOnlyKbps,
+			@Value("${app.transcoding.packaging:ts}") String packaging,
+			@Value("${app.transcoding.pack.enabled:false}") boolean packSegments,
+			@Value("${app.transcoding.pack.max-mb:1024}") long maxPackMb) {
 		this.ffmpegBinary = ffmpegBinary;
-		this.streamRoot = Paths.get("storage/streams").toAbsolutePath().normalize();
+		this.ffprobeBinary = ffprobeBinary == null || ffprobeBinary.isBlank()
+				? siblingBinary(ffmpegBinary, "ffprobe")
+				: ffprobeBinary;
+		this.ladder = parseLadder(ladder);
+		this.audioOnlyKbps = Math.max(0, audioOnlyKbps);
+		this.cmaf = parsePackaging(packaging);
+		this.packSegments = packSegments;
+		// Packs stay below 2 GiB so each can be memory-mapped as a single buffer.
+		this.maxPackBytes = Math.max(1L, Math.min(2047L, maxPackMb)) * 1024L * 1024L;
+		this.blobStore = blobStore;
 	}
 
 	public void transcodeToHls(String videoFileName, Path sourcePath, long durationSeconds, IntConsumer onProgress) {
-		Path hlsDir = streamRoot.resolve(videoFileName).resolve("hls").normalize();
-		Path manifestPath = hlsDir.resolve("master.m3u8");
+		Path hlsDir = getHlsDirectory(videoFileName);
+
+		SourceInfo source = probeSource(sourcePath);
+		List<Rendition> renditions = selectRenditions(ladder, source.height());
+		boolean audioOnly = hasAudioVariant(source);
+		createVariantDirectories(hlsDir, renditions, audioOnly);
+		writeProgressivePlaylist(hlsDir, masterPlaylist(renditions, source));
+
+		List<String> variants = variantNames(renditions, audioOnly);
+		ResumePoint resume = findResumePoint(hlsDir, variants, segmentExtension());
+		if (resume == null) {
+			List<String> command = buildCommand(
+					List.of("-i", sourcePath.toString()),
+					hlsDir, renditions, source.hasAudio(), audioOnly,
+					"segment_", INIT_SEGMENT, "index.m3u8", "event"
+			);
+			runCommand(command, hlsDir, Math.max(1L, durationSeconds), onProgress);
+		} else if (!resume.complete()) {
+			resumeTranscode(videoFileName, sourcePath, durationSeconds, onProgress, hlsDir, renditions, source, audioOnly,
+					variants, resume);
+		}
+		publishStreams(videoFileName, renditions, source, audioOnly);
+	}
+
+	private void resumeTranscode(String videoFileName, Path sourcePath, long durationSeconds, IntConsumer onProgress,
+			Path hlsDir, List<Rendition> renditions, SourceInfo source, boolean audioOnly, List<String> variants,
+			ResumePoint resume) {
+		logger.info("Resuming transcode of {} after {} segments ({} s)", videoFileName, resume.segments(),
+				String.format("%.1f", resume.seconds()));
+		String offset = String.format(Locale.ROOT, "%.6f", resume.seconds());
+		try {
+			// Players only see the kept prefix until the resumed run is stitched on.
+			for (String variant : variants) {
+				writeAtomically(hlsDir.resolve(variant).resolve("index.m3u8"),
+						stitchPlaylists(List.of(resume.prefixes().get(variant)), false));
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed truncating HLS playlists for resume.", ex);
+		}
+
+		// Unique segment names: a client may already hold an immutable copy of a discarded segment.
+		String prefix = String.format("r%03d_", resume.segments());
+		List<String> command = buildCommand(
+				List.of("-ss", offset, "-i", sourcePath.toString(), "-output_ts_offset", offset),
+				hlsDir, renditions, source.hasAudio(), audioOnly,
+				prefix, prefix + INIT_SEGMENT, RESUME_PLAYLIST, "event"
+		);
+		long remaining = Math.max(1L, durationSeconds - (long) resume.seconds());
+		int done = (int) Math.min(99L, (long) resume.seconds() * 100L / Math.max(1L, durationSeconds));
+		runCommand(command, hlsDir, remaining, progress -> onProgress.accept(done + progress * (100 - done) / 100));
+
+		try {
+			for (String variant : variants) {
+				Path variantDir = hlsDir.resolve(variant);
+				Path resumed = variantDir.resolve(RESUME_PLAYLIST);
+				writeAtomically(variantDir.resolve("index.m3u8"), stitchPlaylists(List.of(
+						resume.prefixes().get(variant), Files.readString(resumed, StandardCharsets.UTF_8)), true));
+				Files.deleteIfExists(resumed);
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed stitching resumed HLS playlists.", ex);
+		}
+	}
+
+	/**
+	 * Where a previous attempt left off: the number of leading segments that every
+	 * variant lists and has on disk, their playlists cut to that prefix, and the media
+	 * time they cover. Null when there is nothing to keep, the variants disagree on
+	 * segment boundaries or the kept segments were packaged differently, in which case
+	 * the job is encoded from the start.
+	 */
+	static ResumePoint findResumePoint(Path hlsDir, List<String> variants, String segmentExtension) {
+		Map<String, List<String>> listed = new LinkedHashMap<>();
+		boolean allEnded = true;
+		int common = Integer.MAX_VALUE;
+		try {
+			for (String variant : variants) {
+				Path playlist = hlsDir.resolve(variant).resolve("index.m3u8");
+				if (!Files.isRegularFile(playlist)) {
+					return null;
+				}
+				String content = Files.readString(playlist, StandardCharsets.UTF_8);
+				allEnded &= content.contains("#EXT-X-ENDLIST");
+				List<String> entries = segmentEntries(content);
+				int present = 0;
+				while (present < entries.size() && segmentUri(entries.get(present)).endsWith(segmentExtension)
+						&& Files.isRegularFile(hlsDir.resolve(variant).resolve(segmentUri(entries.get(present))))) {
+					present++;
+				}
+				listed.put(variant, entries);
+				common = Math.min(common, present);
+			}
+		} catch (IOException ex) {
+			return null;
+		}
+		if (variants.isEmpty() || common == 0 || common == Integer.MAX_VALUE) {
+			return null;
+		}
+
+		double seconds = -1.0;
+		Map<String, String> prefixes = new LinkedHashMap<>();
+		for (Map.Entry<String, List<String>> entry : listed.entrySet()) {
+			List<String> prefix = entry.getValue().subList(0, common);
+			double covered = AdaptiveStreamingService.segmentSeconds(String.join("\n", prefix));
+			if (seconds >= 0 && Math.abs(covered - seconds) > 0.1 * common) {
+				return null;
+			}
+			seconds = seconds < 0 ? covered : Math.min(seconds, covered);
+			prefixes.put(entry.getKey(), String.join("\n", prefix) + "\n");
+		}
+		int kept = common;
+		boolean complete = allEnded && listed.values().stream().allMatch(entries -> entries.size() == kept);
+		return new ResumePoint(common, seconds, prefixes, complete);
+	}
+
+	/** Segment entries of a media playlist, each its tag lines plus the URI line. */
+	private static List<String> segmentEntries(String playlist) {
+		List<String> entries = new ArrayList<>();
+		StringBuilder pending = new StringBuilder();
+		for (String rawLine : playlist.split("\\R")) {
+			String line = rawLine.trim();
+			if (line.startsWith("#EXTINF:") || line.equals("#EXT-X-DISCONTINUITY") || line.startsWith("#EXT-X-MAP:")
+					|| line.startsWith("#EXT-X-BYTERANGE:")) {
+				pending.append(line).append('\n');
+			} else if (!line.isEmpty() && !line.startsWith("#")) {
+				entries.add(pending.append(line).toString());
+				pending.setLength(0);
+			}
+		}
+		return entries;
+	}
+
+	private static String segmentUri(String entry) {
+		return entry.substring(entry.lastIndexOf('\n') + 1);
+	}
+
+	/**
+	 * Cuts the source into chunks of roughly {@code chunkSeconds} without re-encoding.
+	 * Stream copy can only cut at keyframes, so every chunk starts on one and can be
+	 * encoded independently. Chunk files go to the video's work directory on shared
+	 * storage, where any node can pick them up.
+	 */
+	public List<ChunkPlan> splitIntoChunks(String videoFileName, Path sourcePath, int chunkSeconds) {
+		Path workDir = getWorkDirectory(videoFileName);
+		Path chunkList = workDir.resolve("chunks.csv");
+		try {
+			Files.createDirectories(workDir);
+			Files.deleteIfExists(chunkList);
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed creating transcoding work directory.", ex);
+		}
+
+		List<String> command = List.of(
+				ffmpegBinary,
+				"-y",
+				"-i", sourcePath.toString(),
+				"-map", "0:v:0",
+				"-map", "0:a:0?",
+				"-c", "copy",
+				"-f", "segment",
+				"-segment_time", String.valueOf(Math.max(SEGMENT_SECONDS, chunkSeconds)),
+				"-reset_timestamps", "1",
+				"-segment_list", chunkList.toString(),
+				"-segment_list_type", "csv",
+				workDir.resolve("chunk_%03d.mkv").toString()
+		);
+		runCommand(command, workDir, 1L, progress -> { });
+
+		List<ChunkPlan> chunks = new ArrayList<>();
+		try {
+			for (String line : Files.readAllLines(chunkList, StandardCharsets.UTF_8)) {
+				String[] parts = line.split(",");
+				if (parts.length < 3) {
+					continue;
+				}
+				double start = Double.parseDouble(parts[1].trim());
+				double end = Double.parseDouble(parts[2].trim());
+				chunks.add(new ChunkPlan(chunks.size(), start, Math.max(0.0, end - start)));
+			}
+		} catch (IOException | NumberFormatException ex) {
+			throw new RuntimeException("Failed reading the chunk list written by FFmpeg.", ex);
+		}
+		if (chunks.isEmpty()) {
+			throw new RuntimeException("FFmpeg produced no chunks for " + videoFileName + ".");
+		}
+
+		// Chunks finish out of order; publishChunkProgress fills the variant playlists as the prefix completes.
+		SourceInfo source = probeSource(sourcePath);
+		List<Rendition> renditions = selectRenditions(ladder, source.height());
+		boolean audioOnly = hasAudioVariant(source);
+		Path hlsDir = getHlsDirectory(videoFileName);
+		createVariantDirectories(hlsDir, renditions, audioOnly);
+		writeProgressivePlaylist(hlsDir, masterPlaylist(renditions, source));
+		return chunks;
+	}
+
+	/**
+	 * Encodes one chunk into every variant directory as {@code chunk_NNN.m3u8} plus
+	 * {@code cNNN_*} segments. Output timestamps are shifted by the chunk start so
+	 * the stitched playlist has one continuous timeline.
+	 */
+	public void transcodeChunk(String videoFileName, int chunkIndex, double startSeconds, double durationSeconds) {
+		Path hlsDir = getHlsDirectory(videoFileName);
+		Path chunkPath = getChunkSourcePath(videoFileName, chunkIndex);
+		if (!Files.exists(chunkPath)) {
+			throw new RuntimeException("Chunk source " + chunkPath.getFileName() + " is missing.");
+		}
+
+		SourceInfo source = probeSource(chunkPath);
+		List<Rendition> renditions = selectRenditions(ladder, source.height());
+		boolean audioOnly = hasAudioVariant(source);
+		createVariantDirectories(hlsDir, renditions, audioOnly);
+
+		String prefix = String.format("c%03d_", chunkIndex);
+		List<String> command = buildCommand(
+				List.of("-i", chunkPath.toString(), "-output_ts_offset", String.valueOf(startSeconds)),
+				hlsDir, renditions, source.hasAudio(), audioOnly,
+				prefix, prefix + INIT_SEGMENT, chunkPlaylistName(chunkIndex), "vod"
+		);
+		runCommand(command, hlsDir, Math.max(1L, (long) Math.ceil(durationSeconds)), progress -> { });
+	}
+
+	/**
+	 * Rewrites every variant's {@code index.m3u8} as an open EVENT playlist covering the
+	 * chunks finished so far from the start of the video. ffmpeg rewrites a chunk playlist
+	 * after every segment, so a chunk counts as finished only once it carries the end tag.
+	 * Chunks past the first unfinished one are left out until it finishes, so the playlist
+	 * only ever grows.
+	 */
+	public void publishChunkProgress(String videoFileName) {
+		Path hlsDir = getHlsDirectory(videoFileName);
+		Path progressive = hlsDir.resolve(AdaptiveStreamingService.PROGRESSIVE_PLAYLIST);
+		try (ProgressLock lock = lockProgress(videoFileName)) {
+			if (lock == null || !Files.exists(progressive)) {
+				return;
+			}
+			for (String variantPlaylist : AdaptiveStreamingService.variantPlaylists(Files.readString(progressive, StandardCharsets.UTF_8))) {
+				Path variantDir = hlsDir.resolve(variantPlaylist).getParent();
+				List<String> finished = new ArrayList<>();
+				for (int i = 0; Files.exists(variantDir.resolve(chunkPlaylistName(i))); i++) {
+					String chunkPlaylist = Files.readString(variantDir.resolve(chunkPlaylistName(i)), StandardCharsets.UTF_8);
+					if (!chunkPlaylist.contains("#EXT-X-ENDLIST")) {
+						break;
+					}
+					finished.add(chunkPlaylist);
+				}
+				if (!finished.isEmpty()) {
+					writeAtomically(variantDir.resolve("index.m3u8"), stitchPlaylists(finished, false));
+				}
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed publishing partial HLS playlists.", ex);
+		}
+	}
+
+	/**
+	 * Joins the per-chunk playlists of every variant into {@code index.m3u8}, writes
+	 * the master playlist and removes the chunk sources.
+	 */
+	public void assembleChunks(String videoFileName, Path sourcePath, int totalChunks) {
+		Path hlsDir = getHlsDirectory(videoFileName);
+		SourceInfo source = probeSource(sourcePath);
+		List<Rendition> renditions = selectRenditions(ladder, source.height());
+		boolean audioOnly = hasAudioVariant(source);
+
+		List<String> variants = variantNames(renditions, audioOnly);
+
+		try (ProgressLock ignored = lockProgress(videoFileName)) {
+			for (String variant : variants) {
+				Path variantDir = hlsDir.resolve(variant);
+				List<String> chunkPlaylists = new ArrayList<>(totalChunks);
+				for (int i = 0; i < totalChunks; i++) {
+					Path chunkPlaylist = variantDir.resolve(chunkPlaylistName(i));
+					if (!Files.exists(chunkPlaylist)) {
+						throw new RuntimeException("Chunk playlist " + variant + "/" + chunkPlaylist.getFileName() + " is missing.");
+					}
+					chunkPlaylists.add(Files.readString(chunkPlaylist, StandardCharsets.UTF_8));
+				}
+				writeAtomically(variantDir.resolve("index.m3u8"), stitchPlaylists(chunkPlaylists, true));
+				for (int i = 0; i < totalChunks; i++) {
+					Files.deleteIfExists(variantDir.resolve(chunkPlaylistName(i)));
+				}
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed stitching chunk playlists.", ex);
+		}
+
+		publishStreams(videoFileName, renditions, source, audioOnly);
+		deleteWorkDirectory(videoFileName);
+	}
+
+	/**
+	 * Concatenates chunk media playlists in order. A discontinuity tag separates the
+	 * chunks because each was encoded on its own (separate encoder priming, continuity
+	 * counters restart). Discontinuities inside a part are kept, as are the fMP4 init
+	 * segment maps, so every part keeps its own init segment. An incomplete list becomes
+	 * an EVENT playlist without an end tag.
+	 */
+	static String stitchPlaylists(List<String> chunkPlaylists, boolean complete) {
+		int targetDuration = SEGMENT_SECONDS;
+		boolean fragmented = false;
+		StringBuilder segments = new StringBuilder();
+		for (int i = 0; i < chunkPlaylists.size(); i++) {
+			if (i > 0) {
+				segments.append("#EXT-X-DISCONTINUITY\n");
+			}
+			for (String rawLine : chunkPlaylists.get(i).split("\\R")) {
+				String line = rawLine.trim();
+				if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+					targetDuration = Math.max(targetDuration, Integer.parseInt(line.substring("#EXT-X-TARGETDURATION:".length()).trim()));
+				} else if (line.startsWith("#EXTINF:") || line.equals("#EXT-X-DISCONTINUITY")
+						|| (!line.isEmpty() && !line.startsWith("#"))) {
+					segments.append(line).append('\n');
+				} else if (line.startsWith("#EXT-X-MAP:")) {
+					fragmented = true;
+					segments.append(line).append('\n');
+				}
+			}
+		}
+
+		return "#EXTM3U\n"
+				+ "#EXT-X-VERSION:" + (fragmented ? 7 : 3) + "\n"
+				+ "#EXT-X-TARGETDURATION:" + targetDuration + "\n"
+				+ "#EXT-X-MEDIA-SEQUENCE:0\n"
+				+ "#EXT-X-PLAYLIST-TYPE:" + (complete ? "VOD" : "EVENT") + "\n"
+				+ segments
+				+ (complete ? "#EXT-X-ENDLIST\n" : "");
+	}
+
+	public Path getChunkSourcePath(String videoFileName, int chunkIndex) {
+		return getWorkDirectory(videoFileName).resolve(String.format("chunk_%03d.mkv", chunkIndex));
+	}
+
+	public void deleteWorkDirectory(String videoFileName) {
+		Path workDir = getWorkDirectory(videoFileName);
+		if (!Files.exists(workDir)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(workDir)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.deleteIfExists(path);
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed removing transcoding work directory.", ex);
+		}
+	}
+
+	private Path getHlsDirectory(String videoFileName) {
+		return blobStore.localPath(AdaptiveStreamingService.hlsKey(videoFileName));
+	}
+
+	private Path getWorkDirectory(String videoFileName) {
+		// Chunk sources stay on the shared volume; they are scratch, never published.
+		return blobStore.localPath("streams/" + videoFileName + "/work");
+	}
+
+	/**
+	 * Packs the segments when enabled, stores the variant playlists, segments and, for
+	 * CMAF output, the DASH manifest, then the master playlist, which readers take as the
+	 * signal that the ladder is complete. The progressive playlist is removed once the
+	 * master has taken its place. The master of a packed ladder references the packed
+	 * playlists; the loose segments stay until {@link #removeLooseSegments}.
+	 */
+	private void publishStreams(String videoFileName, List<Rendition> renditions, SourceInfo source, boolean audioOnly) {
+		String hlsKey = AdaptiveStreamingService.hlsKey(videoFileName);
+		Path hlsDir = getHlsDirectory(videoFileName);
+		try {
+			Files.deleteIfExists(hlsDir.resolve(AdaptiveStreamingService.PROGRESSIVE_PLAYLIST));
+			Set<String> packedVariants = new LinkedHashSet<>();
+			if (packSegments) {
+				for (String variant : variantNames(renditions, audioOnly)) {
+					if (packSegments(hlsDir.resolve(variant), maxPackBytes)) {
+						packedVariants.add(variant);
+					}
+				}
+			}
+			if (cmaf) {
+				writeDashManifest(hlsDir, renditions, source, audioOnly);
+			}
+			blobStore.publishTree(hlsKey);
+			writeMasterPlaylist(hlsDir.resolve(AdaptiveStreamingService.MASTER_PLAYLIST),
+					referencePackedPlaylists(masterPlaylist(renditions, source), packedVariants));
+			blobStore.publish(hlsKey + "/" + AdaptiveStreamingService.MASTER_PLAYLIST);
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed storing HLS output.", ex);
+		}
+	}
+
+	/**
+	 * Concatenates the segments a complete variant playlist lists into {@code pack_NNN}
+	 * files of at most {@code maxPackBytes} (a segment never spans two packs) and writes
+	 * {@link AdaptiveStreamingService#PACKED_PLAYLIST}, which addresses them with
+	 * {@code EXT-X-BYTERANGE}. Init segments stay separate files. The EVENT playlist and
+	 * its segments are left untouched: progressive viewers may hold it without reloading,
+	 * since it already ends with {@code EXT-X-ENDLIST}. Returns whether the variant is
+	 * packed; one packed by an earlier attempt is left alone.
+	 */
+	static boolean packSegments(Path variantDir, long maxPackBytes) throws IOException {
+		Path packedPath = variantDir.resolve(AdaptiveStreamingService.PACKED_PLAYLIST);
+		if (Files.isRegularFile(packedPath)) {
+			return true;
+		}
+		String playlist = Files.readString(variantDir.resolve("index.m3u8"), StandardCharsets.UTF_8);
+
+		StringBuilder packed = new StringBuilder();
+		List<Path> segments = new ArrayList<>();
+		FileChannel pack = null;
+		Path packTemp = null;
+		Path packTarget = null;
+		int packIndex = -1;
+		long offset = 0;
+		try {
+			for (String rawLine : playlist.split("\\R")) {
+				String line = rawLine.trim();
+				if (line.startsWith("#EXT-X-VERSION:")) {
+					// EXT-X-BYTERANGE needs protocol version 4.
+					int version = Integer.parseInt(line.substring("#EXT-X-VERSION:".length()).trim());
+					packed.append("#EXT-X-VERSION:").append(Math.max(4, version)).append('\n');
+					continue;
+				}
+				if (line.isEmpty() || line.startsWith("#")) {
+					packed.append(rawLine).append('\n');
+					continue;
+				}
+				Path segment = variantDir.resolve(line);
+				long size = Files.size(segment);
+				if (pack == null || (offset > 0 && offset + size > maxPackBytes)) {
+					if (pack != null) {
+						pack.close();
+						Files.move(packTemp, packTarget, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					}
+					packIndex++;
+					String extension = line.substring(line.lastIndexOf('.'));
+					packTarget = variantDir.resolve(String.format("%s%03d%s", AdaptiveStreamingService.SEGMENT_PACK_PREFIX,
+							packIndex, extension));
+					packTemp = packTarget.resolveSibling(packTarget.getFileName() + "." + UUID.randomUUID() + ".tmp");
+					pack = FileChannel.open(packTemp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+					offset = 0;
+				}
+				try (FileChannel source = FileChannel.open(segment, StandardOpenOption.READ)) {
+					long copied = 0;
+					while (copied < size) {
+						long transferred = source.transferTo(copied, size - copied, pack);
+						if (transferred <= 0) {
+							throw new IOException("Segment " + segment.getFileName() + " ended while packing.");
+						}
+						copied += transferred;
+					}
+				}
+				packed.append("#EXT-X-BYTERANGE:").append(size).append('@').append(offset).append('\n');
+				packed.append(packTarget.getFileName()).append('\n');
+				segments.add(segment);
+				offset += size;
+			}
+			if (pack != null) {
+				pack.close();
+				Files.move(packTemp, packTarget, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				pack = null;
+			}
+		} finally {
+			if (pack != null) {
+				pack.close();
+				Files.deleteIfExists(packTemp);
+			}
+		}
+		if (segments.isEmpty()) {
+			return false;
+		}
+
+		writeAtomically(packedPath, packed.toString());
+		logger.info("Packed {} segments of {} into {} files", segments.size(), variantDir, packIndex + 1);
+		return true;
+	}
+
+	/** Points the master's entries for the packed variants at their packed playlists. */
+	static String referencePackedPlaylists(String masterPlaylist, Set<String> packedVariants) {
+		if (packedVariants.isEmpty()) {
+			return masterPlaylist;
+		}
+		StringBuilder rewritten = new StringBuilder(masterPlaylist.length());
+		for (String line : masterPlaylist.split("\\R")) {
+			for (String variant : packedVariants) {
+				String loose = variant + "/index.m3u8";
+				String packed = variant + "/" + AdaptiveStreamingService.PACKED_PLAYLIST;
+				if (line.equals(loose)) {
+					line = packed;
+				} else if (line.startsWith("#EXT-X-MEDIA:")) {
+					line = line.replace("URI=\"" + loose + "\"", "URI=\"" + packed + "\"");
+				}
+			}
+			rewritten.append(line).append('\n');
+		}
+		return rewritten.toString();
+	}
+
+	/**
+	 * Deletes the loose segments and EVENT playlists of a published video's packed
+	 * variants. Run once no viewer can still be playing from a playlist loaded before
+	 * the master was published. Returns how many segments were deleted.
+	 */
+	public int removeLooseSegments(String videoFileName) throws IOException {
+		String hlsKey = AdaptiveStreamingService.hlsKey(videoFileName);
+		Path master = blobStore.fetch(hlsKey + "/" + AdaptiveStreamingService.MASTER_PLAYLIST);
+		if (master == null) {
+			return 0;
+		}
+		int removed = 0;
+		String packedSuffix = "/" + AdaptiveStreamingService.PACKED_PLAYLIST;
+		for (String variantPlaylist : AdaptiveStreamingService.variantPlaylists(Files.readString(master, StandardCharsets.UTF_8))) {
+			if (!variantPlaylist.endsWith(packedSuffix)) {
+				continue;
+			}
+			String variantKey = hlsKey + "/" + variantPlaylist.substring(0, variantPlaylist.length() - packedSuffix.length());
+			Path loosePlaylist = blobStore.fetch(variantKey + "/index.m3u8");
+			if (loosePlaylist == null) {
+				continue;
+			}
+			for (String rawLine : Files.readAllLines(loosePlaylist, StandardCharsets.UTF_8)) {
+				String line = rawLine.trim();
+				if (!line.isEmpty() && !line.startsWith("#") && !AdaptiveStreamingService.isSegmentPack(line)) {
+					blobStore.delete(variantKey + "/" + line);
+					removed++;
+				}
+			}
+			// Last, so a run that fails part way finds the playlist again next time.
+			blobStore.delete(variantKey + "/index.m3u8");
+		}
+		if (removed > 0) {
+			logger.info("Removed {} loose segments of {} now served from packs", removed, videoFileName);
+		}
+		return removed;
+	}
+
+	private void writeDashManifest(Path hlsDir, List<Rendition> renditions, SourceInfo source, boolean audioOnly)
+			throws IOException {
+		Map<String, String> variantPlaylists = new LinkedHashMap<>();
+		for (String variant : variantNames(renditions, audioOnly)) {
+			Path variantDir = hlsDir.resolve(variant);
+			Path packed = variantDir.resolve(AdaptiveStreamingService.PACKED_PLAYLIST);
+			Path playlist = Files.isRegularFile(packed) ? packed : variantDir.resolve("index.m3u8");
+			variantPlaylists.put(variant, Files.readString(playlist, StandardCharsets.UTF_8));
+		}
+		String manifest = buildDashManifest(renditions, source, audioOnly ? cmafAudioKbps(renditions) : 0, variantPlaylists);
+		if (manifest == null) {
+			// HLS is still complete; only DASH clients go without this video.
+			logger.warn("Variant playlists of {} disagree on discontinuities; no DASH manifest written", hlsDir);
+			return;
+		}
+		writeAtomically(hlsDir.resolve(AdaptiveStreamingService.DASH_MANIFEST), manifest);
+	}
+
+	private void writeProgressivePlaylist(Path hlsDir, String masterPlaylist) {
+		try {
+			writeAtomically(hlsDir.resolve(AdaptiveStreamingService.PROGRESSIVE_PLAYLIST), masterPlaylist);
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed writing progressive HLS playlist.", ex);
+		}
+	}
 
+	/**
+	 * Serialises playlist rewrites for one video across chunk workers on any node; the
+	 * lock file lives in the shared work directory. Returns null once the work directory
+	 * is gone, i.e. the chunks were already assembled.
+	 */
+	private ProgressLock lockProgress(String videoFileName) throws IOException {
+		Path workDir = getWorkDirectory(videoFileName);
+		if (!Files.isDirectory(workDir)) {
+			return null;
+		}
+		FileChannel channel = FileChannel.open(workDir.resolve("progress.lock"),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			return new ProgressLock(channel, channel.lock());
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/** CMAF output always carries the audio as its own variant; MPEG-TS only when the audio-only rung is enabled. */
+	private boolean hasAudioVariant(SourceInfo source) {
+		return source.hasAudio() && (cmaf || audioOnlyKbps > 0);
+	}
+
+	private String masterPlaylist(List<Rendition> renditions, SourceInfo source) {
+		return cmaf
+				? buildCmafMasterPlaylist(renditions, source, cmafAudioKbps(renditions), audioOnlyKbps > 0)
+				: buildMasterPlaylist(renditions, source, audioOnlyKbps);
+	}
+
+	private String segmentExtension() {
+		return cmaf ? ".m4s" : ".ts";
+	}
+
+	static boolean parsePackaging(String value) {
+		String packaging = value == null ? TS_PACKAGING : value.trim().toLowerCase(Locale.ROOT);
+		if (CMAF_PACKAGING.equals(packaging)) {
+			return true;
+		}
+		if (TS_PACKAGING.equals(packaging)) {
+			return false;
+		}
+		throw new IllegalArgumentException("Transcoding packaging must be ts or cmaf: " + value);
+	}
+
+	/** The shared CMAF audio rendition is encoded at the best audio bitrate among the selected rungs. */
+	static int cmafAudioKbps(List<Rendition> renditions) {
+		return renditions.stream().mapToInt(Rendition::audioKbps).max().orElse(0);
+	}
+
+	private static List<String> variantNames(List<Rendition> renditions, boolean audioOnly) {
+		List<String> variants = new ArrayList<>();
+		for (Rendition rendition : renditions) {
+			variants.add(rendition.name());
+		}
+		if (audioOnly) {
+			variants.add(AUDIO_ONLY_NAME);
+		}
+		return variants;
+	}
+
+	private static String chunkPlaylistName(int chunkIndex) {
+		return String.format("chunk_%03d.m3u8", chunkIndex);
+	}
+
+	private void createVariantDirectories(Path hlsDir, List<Rendition> renditions, boolean audioOnly) {
 		try {
 			Files.createDirectories(hlsDir);
+			for (Rendition rendition : renditions) {
+				Files.createDirectories(hlsDir.resolve(rendition.name()));
+			}
+			if (audioOnly) {
+				Files.createDirectories(hlsDir.resolve(AUDIO_ONLY_NAME));
+			}
 		} catch (IOException ex) {
 			throw new RuntimeException("Failed creating transcoding directory.", ex);
 		}
+	}
+
+	/** Rungs no taller than the source; a source below the lowest rung is encoded once at its own height. */
+	static List<Rendition> selectRenditions(List<Rendition> ladder, int sourceHeight) {
+		List<Rendition> selected = new ArrayList<>();
+		for (Rendition rendition : ladder) {
+			if (rendition.height() <= sourceHeight) {
+				selected.add(rendition);
+			}
+		}
+		if (selected.isEmpty()) {
+			Rendition lowest = ladder.get(ladder.size() - 1);
+			int height = Math.max(2, sourceHeight - (sourceHeight % 2));
+			selected.add(new Rendition(height, lowest.videoKbps(), lowest.audioKbps()));
+		}
+		return selected;
+	}
+
+	static String buildMasterPlaylist(List<Rendition> renditions, SourceInfo source, int audioOnlyKbps) {
+		StringBuilder playlist = new StringBuilder();
+		playlist.append("#EXTM3U\n");
+		playlist.append("#EXT-X-VERSION:3\n");
+		playlist.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+		for (Rendition rendition : renditions) {
+			int audioKbps = source.hasAudio() ? rendition.audioKbps() : 0;
+			long average = (rendition.videoKbps() + audioKbps) * 1000L;
+			// Peak allows for the encoder maxrate and roughly 10% MPEG-TS overhead.
+			long peak = Math.round((rendition.maxrateKbps() + audioKbps) * 1000L * 1.1);
+			playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(peak)
+					.append(",AVERAGE-BANDWIDTH=").append(average)
+					.append(",RESOLUTION=").append(rendition.widthFor(source)).append('x').append(rendition.height())
+					.append(",CODECS=\"").append(VIDEO_CODEC);
+			if (source.hasAudio()) {
+				playlist.append(',').append(AUDIO_CODEC);
+			}
+			playlist.append("\"\n");
+			playlist.append(rendition.name()).append("/index.m3u8\n");
+		}
+		if (audioOnlyKbps > 0 && source.hasAudio()) {
+			long bandwidth = audioOnlyKbps * 1000L;
+			playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(Math.round(bandwidth * 1.1))
+					.append(",AVERAGE-BANDWIDTH=").append(bandwidth)
+					.append(",CODECS=\"").append(AUDIO_CODEC).append("\"\n");
+			playlist.append(AUDIO_ONLY_NAME).append("/index.m3u8\n");
+		}
+		return playlist.toString();
+	}
+
+	/**
+	 * Master playlist for CMAF output: video-only variants that all reference one audio
+	 * rendition group. The audio rendition is also listed as an audio-only variant when
+	 * {@code listAudioOnly} is set.
+	 */
+	static String buildCmafMasterPlaylist(List<Rendition> renditions, SourceInfo source, int audioKbps,
+			boolean listAudioOnly) {
+		boolean audio = source.hasAudio() && audioKbps > 0;
+		StringBuilder playlist = new StringBuilder();
+		playlist.append("#EXTM3U\n");
+		playlist.append("#EXT-X-VERSION:7\n");
+		playlist.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+		if (audio) {
+			playlist.append("#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"audio\",NAME=\"Audio\",DEFAULT=YES,AUTOSELECT=YES,URI=\"")
+					.append(AUDIO_ONLY_NAME).append("/index.m3u8\"\n");
+		}
+		int groupKbps = audio ? audioKbps : 0;
+		for (Rendition rendition : renditions) {
+			long average = (rendition.videoKbps() + groupKbps) * 1000L;
+			// Fragmented MP4 adds only a few percent on top of the encoder maxrate.
+			long peak = Math.round((rendition.maxrateKbps() + groupKbps) * 1000L * 1.05);
+			playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(peak)
+					.append(",AVERAGE-BANDWIDTH=").append(average)
+					.append(",RESOLUTION=").append(rendition.widthFor(source)).append('x').append(rendition.height())
+					.append(",CODECS=\"").append(VIDEO_CODEC);
+			if (audio) {
+				playlist.append(',').append(AUDIO_CODEC).append("\",AUDIO=\"audio\"\n");
+			} else {
+				playlist.append("\"\n");
+			}
+			playlist.append(rendition.name()).append("/index.m3u8\n");
+		}
+		if (audio && listAudioOnly) {
+			long bandwidth = audioKbps * 1000L;
+			playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(Math.round(bandwidth * 1.05))
+					.append(",AVERAGE-BANDWIDTH=").append(bandwidth)
+					.append(",CODECS=\"").append(AUDIO_CODEC).append("\",AUDIO=\"audio\"\n");
+			playlist.append(AUDIO_ONLY_NAME).append("/index.m3u8\n");
+		}
+		return playlist.toString();
+	}
+
+	/**
+	 * Static DASH manifest over the CMAF segments the HLS variant playlists list. Every
+	 * discontinuity (chunk or resume boundary) starts a new period with its own init
+	 * segment; segment timestamps were shifted onto the source timeline while encoding,
+	 * so each period's presentation time offset is its start. Returns null when the
+	 * variants do not share the same period layout.
+	 */
+	static String buildDashManifest(List<Rendition> renditions, SourceInfo source, int audioKbps,
+			Map<String, String> variantPlaylists) {
+		Map<String, List<DashPeriod>> periodsByVariant = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : variantPlaylists.entrySet()) {
+			periodsByVariant.put(entry.getKey(), dashPeriods(entry.getValue()));
+		}
+		List<DashPeriod> reference = periodsByVariant.get(renditions.get(0).name());
+		if (reference == null || reference.isEmpty()
+				|| periodsByVariant.values().stream().anyMatch(periods -> periods.size() != reference.size())) {
+			return null;
+		}
+		boolean audio = source.hasAudio() && audioKbps > 0 && periodsByVariant.containsKey(AUDIO_ONLY_NAME);
+
+		double total = reference.stream().mapToDouble(DashPeriod::seconds).sum();
+		StringBuilder mpd = new StringBuilder();
+		mpd.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		mpd.append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" profiles=\"urn:mpeg:dash:profile:isoff-main:2011\"")
+				.append(" type=\"static\" mediaPresentationDuration=\"").append(dashDuration(total))
+				.append("\" minBufferTime=\"PT").append(SEGMENT_SECONDS).append("S\">\n");
+		double start = 0.0;
+		for (int p = 0; p < reference.size(); p++) {
+			long offset = Math.round(start * 1000);
+			mpd.append("  <Period id=\"").append(p).append("\" start=\"").append(dashDuration(start)).append("\">\n");
+			mpd.append("    <AdaptationSet id=\"0\" contentType=\"video\" mimeType=\"video/mp4\" codecs=\"")
+					.append(VIDEO_CODEC).append("\" segmentAlignment=\"true\" startWithSAP=\"1\">\n");
+			for (Rendition rendition : renditions) {
+				mpd.append("      <Representation id=\"").append(rendition.name())
+						.append("\" bandwidth=\"").append(Math.round(rendition.maxrateKbps() * 1000L * 1.05))
+						.append("\" width=\"").append(rendition.widthFor(source))
+						.append("\" height=\"").append(rendition.height()).append("\">\n");
+				appendSegmentList(mpd, rendition.name(), periodsByVariant.get(rendition.name()).get(p), offset);
+				mpd.append("      </Representation>\n");
+			}
+			mpd.append("    </AdaptationSet>\n");
+			if (audio) {
+				mpd.append("    <AdaptationSet id=\"1\" contentType=\"audio\" mimeType=\"audio/mp4\" codecs=\"")
+						.append(AUDIO_CODEC).append("\" segmentAlignment=\"true\">\n");
+				mpd.append("      <Representation id=\"").append(AUDIO_ONLY_NAME)
+						.append("\" bandwidth=\"").append(Math.round(audioKbps * 1000L * 1.05)).append("\">\n");
+				appendSegmentList(mpd, AUDIO_ONLY_NAME, periodsByVariant.get(AUDIO_ONLY_NAME).get(p), offset);
+				mpd.append("      </Representation>\n");
+				mpd.append("    </AdaptationSet>\n");
+			}
+			mpd.append("  </Period>\n");
+			start += reference.get(p).seconds();
+		}
+		mpd.append("</MPD>\n");
+		return mpd.toString();
+	}
+
+	/** Splits a CMAF media playlist at its discontinuities; each part needs an init segment map. */
+	private static List<DashPeriod> dashPeriods(String playlist) {
+		List<DashPeriod> periods = new ArrayList<>();
+		String init = null;
+		List<String> uris = new ArrayList<>();
+		List<String> ranges = new ArrayList<>();
+		List<Double> durations = new ArrayList<>();
+		double duration = 0.0;
+		String range = null;
+		for (String rawLine : playlist.split("\\R")) {
+			String line = rawLine.trim();
+			if (line.equals("#EXT-X-DISCONTINUITY")) {
+				if (!uris.isEmpty()) {
+					periods.add(new DashPeriod(init, List.copyOf(uris), List.copyOf(ranges), List.copyOf(durations)));
+					uris.clear();
+					ranges.clear();
+					durations.clear();
+				}
+			} else if (line.startsWith("#EXT-X-MAP:")) {
+				int uriStart = line.indexOf("URI=\"");
+				init = uriStart < 0 ? null : line.substring(uriStart + 5, line.indexOf('"', uriStart + 5));
+			} else if (line.startsWith("#EXTINF:")) {
+				duration = AdaptiveStreamingService.segmentSeconds(line);
+			} else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+				// Packed segments are always written as length@offset; DASH wants first-last.
+				String[] parts = line.substring("#EXT-X-BYTERANGE:".length()).trim().split("@");
+				long length = Long.parseLong(parts[0]);
+				long start = parts.length > 1 ? Long.parseLong(parts[1]) : 0L;
+				range = start + "-" + (start + length - 1);
+			} else if (!line.isEmpty() && !line.startsWith("#")) {
+				uris.add(line);
+				ranges.add(range == null ? "" : range);
+				durations.add(duration);
+				range = null;
+			}
+		}
+		if (!uris.isEmpty()) {
+			periods.add(new DashPeriod(init, List.copyOf(uris), List.copyOf(ranges), List.copyOf(durations)));
+		}
+		return periods.stream().anyMatch(period -> period.init() == null) ? List.of() : periods;
+	}
+
+	/** Millisecond segment timeline; times are rounded from the running total so durations never drift. */
+	private static void appendSegmentList(StringBuilder mpd, String variant, DashPeriod period, long offset) {
+		mpd.append("        <SegmentList timescale=\"1000\" presentationTimeOffset=\"").append(offset).append("\">\n");
+		mpd.append("          <Initialization sourceURL=\"").append(variant).append('/').append(period.init()).append("\"/>\n");
+		mpd.append("          <SegmentTimeline>\n");
+		double elapsed = 0.0;
+		long time = offset;
+		long runStart = offset;
+		long runDuration = -1;
+		int repeat = 0;
+		for (double seconds : period.durations()) {
+			elapsed += seconds;
+			long next = offset + Math.round(elapsed * 1000);
+			long duration = next - time;
+			if (duration == runDuration) {
+				repeat++;
+			} else {
+				if (runDuration >= 0) {
+					appendTimelineEntry(mpd, runStart, runDuration, repeat);
+				}
+				runStart = time;
+				runDuration = duration;
+				repeat = 0;
+			}
+			time = next;
+		}
+		if (runDuration >= 0) {
+			appendTimelineEntry(mpd, runStart, runDuration, repeat);
+		}
+		mpd.append("          </SegmentTimeline>\n");
+		for (int i = 0; i < period.uris().size(); i++) {
+			mpd.append("          <SegmentURL media=\"").append(variant).append('/').append(period.uris().get(i)).append('"');
+			if (!period.ranges().get(i).isEmpty()) {
+				mpd.append(" mediaRange=\"").append(period.ranges().get(i)).append('"');
+			}
+			mpd.append("/>\n");
+		}
+		mpd.append("        </SegmentList>\n");
+	}
+
+	private static void appendTimelineEntry(StringBuilder mpd, long start, long duration, int repeat) {
+		mpd.append("            <S t=\"").append(start).append("\" d=\"").append(duration).append('"');
+		if (repeat > 0) {
+			mpd.append(" r=\"").append(repeat).append('"');
+		}
+		mpd.append("/>\n");
+	}
 
-		List<String> command = buildCommand(sourcePath, manifestPath);
-		runCommand(command, hlsDir, Math.max(1L, durationSeconds), onProgress);
+	private static String dashDuration(double seconds) {
+		return String.format(Locale.ROOT, "PT%.3fS", seconds);
 	}
 
-	private List<String> buildCommand(Path inputPath, Path manifestPath) {
-		Path hlsDir = manifestPath.getParent();
+	static List<Rendition> parseLadder(String value) {
+		List<Rendition> renditions = new ArrayList<>();
+		for (String rung : value.split(",")) {
+			String[] parts = rung.trim().split(":");
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("Invalid transcoding ladder rung: " + rung);
+			}
+			int height = Integer.parseInt(parts[0].trim());
+			if (height <= 0 || height % 2 != 0) {
+				throw new IllegalArgumentException("Ladder heights must be positive and even: " + rung);
+			}
+			renditions.add(new Rendition(height, Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim())));
+		}
+		if (renditions.isEmpty()) {
+			throw new IllegalArgumentException("Transcoding ladder must contain at least one rendition.");
+		}
+		renditions.sort(Comparator.comparingInt(Rendition::height).reversed());
+		return List.copyOf(renditions);
+	}
+
+	private List<String> buildCommand(List<String> inputArgs, Path hlsDir, List<Rendition> renditions, boolean hasAudio,
+			boolean audioOnly, String segmentPrefix, String initSegment, String playlistName, String playlistType) {
 		List<String> command = new ArrayList<>();
 		command.add(ffmpegBinary);
 		command.add("-y");
-		command.add("-i");
-		command.add(inputPath.toString());
-		command.add("-map");
-		command.add("0:v:0");
-		command.add("-map");
-		command.add("0:a?");
-		command.add("-c:v");
-		command.add("libx264");
-		command.add("-c:a");
-		command.add("aac");
+		command.addAll(inputArgs);
+
+		StringBuilder filter = new StringBuilder("[0:v:0]split=").append(renditions.size());
+		for (int i = 0; i < renditions.size(); i++) {
+			filter.append("[v").append(i).append(']');
+		}
+		for (int i = 0; i < renditions.size(); i++) {
+			filter.append(";[v").append(i).append("]scale=-2:").append(renditions.get(i).height())
+					.append("[v").append(i).append("out]");
+		}
+		command.add("-filter_complex");
+		command.add(filter.toString());
+
+		StringBuilder streamMap = new StringBuilder();
+		for (int i = 0; i < renditions.size(); i++) {
+			Rendition rendition = renditions.get(i);
+			command.add("-map");
+			command.add("[v" + i + "out]");
+			command.add("-c:v:" + i);
+			command.add("libx264");
+			command.add("-b:v:" + i);
+			command.add(rendition.videoKbps() + "k");
+			command.add("-maxrate:v:" + i);
+			command.add(rendition.maxrateKbps() + "k");
+			command.add("-bufsize:v:" + i);
+			command.add(rendition.videoKbps() * 2 + "k");
+			if (streamMap.length() > 0) {
+				streamMap.append(' ');
+			}
+			streamMap.append("v:").append(i);
+			if (hasAudio && !cmaf) {
+				command.add("-map");
+				command.add("0:a:0");
+				command.add("-c:a:" + i);
+				command.add("aac");
+				command.add("-b:a:" + i);
+				command.add(rendition.audioKbps() + "k");
+				streamMap.append(",a:").append(i);
+			}
+			streamMap.append(",name:").append(rendition.name());
+		}
+		if (audioOnly) {
+			// CMAF keeps one track per segment, so its only audio stream is the shared rendition.
+			int audioIndex = cmaf ? 0 : renditions.size();
+			command.add("-map");
+			command.add("0:a:0");
+			command.add("-c:a:" + audioIndex);
+			command.add("aac");
+			command.add("-b:a:" + audioIndex);
+			command.add((cmaf ? cmafAudioKbps(renditions) : audioOnlyKbps) + "k");
+			streamMap.append(" a:").append(audioIndex).append(",name:").append(AUDIO_ONLY_NAME);
+		}
+
 		command.add("-preset");
 		command.add("veryfast");
+		command.add("-profile:v");
+		command.add("high");
+		command.add("-level:v");
+		command.add("4.2");
+		// Keyframes on every segment boundary keep the variants switchable at each segment.
+		command.add("-force_key_frames");
+		command.add("expr:gte(t,n_forced*" + SEGMENT_SECONDS + ")");
+		command.add("-sc_threshold");
+		command.add("0");
 		command.add("-progress");
 		command.add("pipe:1");
 		command.add("-nostats");
 		command.add("-f");
 		command.add("hls");
 		command.add("-hls_time");
-		command.add("4");
+		command.add(String.valueOf(SEGMENT_SECONDS));
 		command.add("-hls_playlist_type");
-		command.add("vod");
+		command.add(playlistType);
+		// Segments are written under a temporary name and renamed, so a growing playlist never lists a partial file.
+		command.add("-hls_flags");
+		command.add("temp_file");
+		if (cmaf) {
+			command.add("-hls_segment_type");
+			command.add("fmp4");
+			command.add("-hls_fmp4_init_filename");
+			command.add(initSegment);
+		}
 		command.add("-hls_segment_filename");
-		command.add(hlsDir.resolve("segment_%03d.ts").toString());
-		command.add(manifestPath.toString());
+		command.add(hlsDir.resolve("%v").resolve(segmentPrefix + "%03d" + segmentExtension()).toString());
+		command.add("-var_stream_map");
+		command.add(streamMap.toString());
+		command.add(hlsDir.resolve("%v").resolve(playlistName).toString());
 		return command;
 	}
 
+	private SourceInfo probeSource(Path sourcePath) {
+		List<String> command = List.of(
+				ffprobeBinary,
+				"-v", "error",
+				"-show_entries", "stream=codec_type,width,height",
+				"-of", "default=noprint_wrappers=1",
+				sourcePath.toString()
+		);
+		ProcessBuilder processBuilder = new ProcessBuilder(command);
+		processBuilder.redirectErrorStream(true);
+
+		int width = 0;
+		int height = 0;
+		boolean hasAudio = false;
+		boolean inVideoStream = false;
+		try {
+			Process process = processBuilder.start();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith("codec_type=")) {
+						String type = line.substring("codec_type=".length()).trim();
+						inVideoStream = "video".equals(type) && height == 0;
+						hasAudio |= "audio".equals(type);
+					} else if (inVideoStream && line.startsWith("width=")) {
+						width = parseDimension(line.substring("width=".length()));
+					} else if (inVideoStream && line.startsWith("height=")) {
+						height = parseDimension(line.substring("height=".length()));
+					}
+				}
+			}
+			if (!process.waitFor(1, TimeUnit.MINUTES)) {
+				process.destroyForcibly();
+				throw new RuntimeException("FFprobe timed out.");
+			}
+			if (process.exitValue() != 0) {
+				throw new RuntimeException("FFprobe exited with code " + process.exitValue() + ".");
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed to start FFprobe process. Ensure ffprobe is installed next to ffmpeg or set app.ffprobe.binary.", ex);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("FFprobe process was interrupted.", ex);
+		}
+
+		if (width <= 0 || height <= 0) {
+			throw new RuntimeException("Source video has no readable video stream.");
+		}
+		return new SourceInfo(width, height, hasAudio);
+	}
+
+	private int parseDimension(String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException ex) {
+			return 0;
+		}
+	}
+
+	private void writeMasterPlaylist(Path manifestPath, String content) {
+		try {
+			writeAtomically(manifestPath, content);
+		} catch (IOException ex) {
+			throw new RuntimeException("Failed writing HLS master playlist.", ex);
+		}
+	}
+
+	private static void writeAtomically(Path target, String content) throws IOException {
+		Path tempFile = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+		Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static String siblingBinary(String ffmpegBinary, String name) {
+		int index = ffmpegBinary.lastIndexOf("ffmpeg");
+		if (index < 0) {
+			return name;
+		}
+		return ffmpegBinary.substring(0, index) + name + ffmpegBinary.substring(index + "ffmpeg".length());
+	}
+
 	private void runCommand(List<String> command, Path workingDirectory, long durationSeconds, IntConsumer onProgress) {
 		ProcessBuilder processBuilder = new ProcessBuilder(command);
 		processBuilder.directory(workingDirectory.toFile());
@@ -121,4 +1227,46 @@ public class TranscodingWorkerService {
 			throw new RuntimeException("Unable to read FFmpeg progress output.", ex);
 		}
 	}
+
+	record Rendition(int height, int videoKbps, int audioKbps) {
+		String name() {
+			return height + "p";
+		}
+
+		int maxrateKbps() {
+			return (int) Math.round(videoKbps * 1.07);
+		}
+
+		/** Same rounding as ffmpeg's {@code scale=-2:height}: nearest even width keeping the aspect ratio. */
+		int widthFor(SourceInfo source) {
+			return (int) Math.round((double) source.width() * height / (source.height() * 2.0)) * 2;
+		}
+	}
+
+	record SourceInfo(int width, int height, boolean hasAudio) {
+	}
+
+	private record DashPeriod(String init, List<String> uris, List<String> ranges, List<Double> durations) {
+		double seconds() {
+			return durations.stream().mapToDouble(Double::doubleValue).sum();
+		}
+	}
+
+	/** {@code complete} means the previous attempt finished encoding and only publishing is left. */
+	record ResumePoint(int segments, double seconds, Map<String, String> prefixes, boolean complete) {
+	}
+
+	private record ProgressLock(FileChannel channel, FileLock lock) implements AutoCloseable {
+		@Override
+		public void close() throws IOException {
+			try {
+				lock.release();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	public record ChunkPlan(int index, double startSeconds, double durationSeconds) {
+	}
 }
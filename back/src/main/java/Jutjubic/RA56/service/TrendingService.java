@@ -0,0 +1,211 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.TrendingResponse;
+import Jutjubic.RA56.dto.TrendingVideoResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * In-memory trending ranking fed by view events. Every video keeps an
+ * exponentially decayed view score (halved every {@code app.trending.half-life-minutes});
+ * a scheduled refresh rebuilds the top-K list with a bounded min-heap and reads only
+ * return that list. State is snapshotted to a local file so a restart resumes where
+ * the previous process stopped instead of starting empty.
+ */
+@Service
+public class TrendingService {
+	private static final Logger logger = LoggerFactory.getLogger(TrendingService.class);
+
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final double PRUNE_BELOW_SCORE = 0.01;
+
+	private final ConcurrentMap<Long, DecayedScore> scores = new ConcurrentHashMap<>();
+	private final double decayPerMs;
+	private final int topK;
+	private final Path snapshotPath;
+	private final String baseUrl;
+
+	private volatile TrendingResponse current = new TrendingResponse(LocalDateTime.now(), List.of());
+
+	public TrendingService(
+			@Value("${app.trending.half-life-minutes:360}") long halfLifeMinutes,
+			@Value("${app.trending.top-k:10}") int topK,
+			@Value("${app.trending.snapshot-path:storage/trending/snapshot.bin}") String snapshotPath,
+			@Value("${app.base-url}") String baseUrl) {
+		this.decayPerMs = Math.log(2) / (Math.max(1L, halfLifeMinutes) * 60_000.0);
+		this.topK = Math.max(1, topK);
+		this.snapshotPath = Paths.get(snapshotPath).toAbsolutePath().normalize();
+		this.baseUrl = baseUrl;
+	}
+
+	public void recordView(Long videoId, String title, String thumbnailPath) {
+		long now = System.currentTimeMillis();
+		DecayedScore score = scores.computeIfAbsent(videoId, id -> new DecayedScore(0.0, now, title, thumbnailPath));
+		score.add(1.0, now, decayPerMs);
+	}
+
+	public TrendingResponse getTrending(Integer limit) {
+		if (limit != null && limit <= 0) {
+			throw new IllegalArgumentException("Trending limit must be greater than zero.");
+		}
+		TrendingResponse snapshot = current;
+		if (limit == null || limit >= snapshot.videos().size()) {
+			return snapshot;
+		}
+		return new TrendingResponse(snapshot.computedAt(), snapshot.videos().subList(0, limit));
+	}
+
+	@Scheduled(fixedDelayString = "${app.trending.refresh-interval-ms:1000}")
+	public void refresh() {
+		long now = System.currentTimeMillis();
+		PriorityQueue<RankedVideo> heap = new PriorityQueue<>(topK + 1, Comparator.comparingDouble(RankedVideo::score));
+
+		for (Map.Entry<Long, DecayedScore> entry : scores.entrySet()) {
+			double value = entry.getValue().valueAt(now, decayPerMs);
+			if (value < PRUNE_BELOW_SCORE) {
+				// A view racing with removal is lost, which is irrelevant at this score.
+				scores.remove(entry.getKey(), entry.getValue());
+				continue;
+			}
+			if (heap.size() < topK) {
+				heap.add(new RankedVideo(entry.getKey(), value, entry.getValue()));
+			} else if (value > heap.peek().score()) {
+				heap.poll();
+				heap.add(new RankedVideo(entry.getKey(), value, entry.getValue()));
+			}
+		}
+
+		List<RankedVideo> ranked = new ArrayList<>(heap);
+		ranked.sort(Comparator.comparingDouble(RankedVideo::score).reversed()
+				.thenComparingLong(RankedVideo::videoId));
+
+		List<TrendingVideoResponse> videos = ranked.stream()
+				.map(video -> new TrendingVideoResponse(
+						video.videoId(),
+						video.state().title,
+						ThumbnailVariantService.thumbnailUrl(baseUrl, video.state().thumbnailPath, ThumbnailVariantService.CARD_WIDTH),
+						video.score()
+				))
+				.toList();
+		current = new TrendingResponse(LocalDateTime.now(), videos);
+	}
+
+	@PostConstruct
+	public void loadSnapshot() {
+		if (!Files.exists(snapshotPath)) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+			if (in.readInt() != SNAPSHOT_VERSION) {
+				logger.warn("Ignoring trending snapshot {} with unknown version", snapshotPath);
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				long videoId = in.readLong();
+				double value = in.readDouble();
+				long updatedAtMs = in.readLong();
+				String title = in.readUTF();
+				String thumbnailPath = in.readUTF();
+				scores.put(videoId, new DecayedScore(value, updatedAtMs, title, thumbnailPath));
+			}
+			refresh();
+			logger.info("Restored {} trending scores from {}", count, snapshotPath);
+		} catch (IOException ex) {
+			logger.warn("Failed reading trending snapshot {}, starting empty", snapshotPath, ex);
+			scores.clear();
+		}
+	}
+
+	@Scheduled(
+			fixedDelayString = "${app.trending.snapshot-interval-ms:60000}",
+			initialDelayString = "${app.trending.snapshot-interval-ms:60000}"
+	)
+	public void writeSnapshot() {
+		List<Map.Entry<Long, DecayedScore>> entries = new ArrayList<>(scores.entrySet());
+		try {
+			Files.createDirectories(snapshotPath.getParent());
+			// The scheduled write and the shutdown write may overlap; each gets its own temp file.
+			Path tempFile = Files.createTempFile(snapshotPath.getParent(), snapshotPath.getFileName() + ".", ".tmp");
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+					out.writeInt(SNAPSHOT_VERSION);
+					out.writeInt(entries.size());
+					for (Map.Entry<Long, DecayedScore> entry : entries) {
+						DecayedScore state = entry.getValue();
+						synchronized (state) {
+							out.writeLong(entry.getKey());
+							out.writeDouble(state.value);
+							out.writeLong(state.updatedAtMs);
+							out.writeUTF(state.title == null ? "" : state.title);
+							out.writeUTF(state.thumbnailPath == null ? "" : state.thumbnailPath);
+						}
+					}
+				}
+				Files.move(tempFile, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		} catch (IOException ex) {
+			logger.error("Failed writing trending snapshot {}", snapshotPath, ex);
+		}
+	}
+
+	@PreDestroy
+	public void snapshotOnShutdown() {
+		writeSnapshot();
+	}
+
+	private record RankedVideo(Long videoId, double score, DecayedScore state) {
+	}
+
+	private static final class DecayedScore {
+		private double value;
+		private long updatedAtMs;
+		private final String title;
+		private final String thumbnailPath;
+
+		private DecayedScore(double value, long updatedAtMs, String title, String thumbnailPath) {
+			this.value = value;
+			this.updatedAtMs = updatedAtMs;
+			this.title = title;
+			this.thumbnailPath = thumbnailPath;
+		}
+
+		private synchronized void add(double amount, long nowMs, double decayPerMs) {
+			value = decayed(nowMs, decayPerMs) + amount;
+			updatedAtMs = Math.max(updatedAtMs, nowMs);
+		}
+
+		private synchronized double valueAt(long nowMs, double decayPerMs) {
+			return decayed(nowMs, decayPerMs);
+		}
+
+		private double decayed(long nowMs, double decayPerMs) {
+			long elapsed = Math.max(0L, nowMs - updatedAtMs);
+			return value * Math.exp(-decayPerMs * elapsed);
+		}
+	}
+}
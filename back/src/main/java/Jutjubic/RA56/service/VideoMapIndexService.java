@@ -0,0 +1,464 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.Video;
+import Jutjubic.RA56.dto.VideoMapClusterRow;
+import Jutjubic.RA56.dto.VideoMapIndexRow;
+import Jutjubic.RA56.dto.VideoMapPoint;
+import Jutjubic.RA56.repository.VideoRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Resident spatial index of every video for the map endpoints.
+ *
+ * <p>Points are kept in one skip list ordered by the Morton (Z-order) code of their
+ * zoom-19 tile, so every map tile at every zoom is a contiguous key range. On top of
+ * that, zooms 0..{@value #MAX_AGGREGATE_ZOOM} keep a per-tile aggregate (count,
+ * coordinate sums and the most viewed video) so unfiltered cluster requests read one
+ * aggregate per tile instead of visiting points.
+ *
+ * <p>The index is loaded after startup, receives uploads from this node directly,
+ * picks up uploads from other nodes by polling for new ids, and is rebuilt
+ * periodically. Ids are assigned before commit, so a lower id can become visible after
+ * a higher one; each poll also re-reads the videos created within the overlap window. Until the first load finishes {@link #isReady()} is false and
+ * callers should query the database.
+ */
+@Service
+public class VideoMapIndexService {
+	private static final Logger logger = LoggerFactory.getLogger(VideoMapIndexService.class);
+
+	static final int MAX_ZOOM = 19;
+	static final int MAX_AGGREGATE_ZOOM = 14;
+	private static final int LOAD_CHUNK_SIZE = 5000;
+	private static final int MAX_SCAN_TILES = 256;
+
+	private final VideoRepository videoRepository;
+	private final Duration syncOverlap;
+	private final Object loadLock = new Object();
+
+	private volatile IndexState state;
+
+	public VideoMapIndexService(
+			VideoRepository videoRepository,
+			@Value("${app.video-map.index.sync-overlap-ms:300000}") long syncOverlapMs) {
+		this.videoRepository = videoRepository;
+		this.syncOverlap = Duration.ofMillis(Math.max(0L, syncOverlapMs));
+	}
+
+	public boolean isReady() {
+		return state != null;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void loadOnStartup() {
+		rebuild();
+	}
+
+	@Scheduled(
+			fixedDelayString = "${app.video-map.index.rebuild-interval-ms:3600000}",
+			initialDelayString = "${app.video-map.index.rebuild-interval-ms:3600000}"
+	)
+	public void rebuild() {
+		synchronized (loadLock) {
+			long started = System.currentTimeMillis();
+			IndexState fresh = new IndexState();
+			fresh.syncedId = load(fresh, 0L, cursor -> videoRepository.findMapIndexRowsAfter(cursor, PageRequest.of(0, LOAD_CHUNK_SIZE)));
+			state = fresh;
+			logger.info("Video map index loaded {} videos in {} ms", fresh.byId.size(), System.currentTimeMillis() - started);
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${app.video-map.index.sync-interval-ms:10000}")
+	public void syncNewVideos() {
+		synchronized (loadLock) {
+			IndexState current = state;
+			if (current != null) {
+				LocalDateTime since = LocalDateTime.now().minus(syncOverlap);
+				load(current, 0L, cursor -> videoRepository.findMapIndexRowsCreatedSince(
+						since, cursor, PageRequest.of(0, LOAD_CHUNK_SIZE)));
+				current.syncedId = Math.max(current.syncedId, load(current, current.syncedId,
+						cursor -> videoRepository.findMapIndexRowsAfter(cursor, PageRequest.of(0, LOAD_CHUNK_SIZE))));
+			}
+		}
+	}
+
+	public void add(Video video) {
+		IndexState current = state;
+		if (current == null) {
+			return;
+		}
+		current.add(new VideoMapIndexRow(
+				video.getId(),
+				video.getTitle(),
+				video.getLatitude(),
+				video.getLongitude(),
+				video.getCreatedAt(),
+				video.getViews(),
+				video.getThumbnailPath()
+		));
+	}
+
+	public void addViews(Long videoId, long delta) {
+		IndexState current = state;
+		if (current != null) {
+			current.addViews(videoId, delta);
+		}
+	}
+
+	public List<VideoMapPoint> findPoints(double minLat, double maxLat, double minLng, double maxLng, LocalDateTime startDate) {
+		IndexState current = requireState();
+		List<VideoMapPoint> result = new ArrayList<>();
+		current.forEachInTileRange(
+				MAX_ZOOM,
+				lngToTileX(minLng, MAX_ZOOM),
+				lngToTileX(maxLng, MAX_ZOOM),
+				latToTileY(maxLat, MAX_ZOOM),
+				latToTileY(minLat, MAX_ZOOM),
+				entry -> {
+					if (entry.latitude < minLat || entry.latitude > maxLat
+							|| entry.longitude < minLng || entry.longitude > maxLng) {
+						return;
+					}
+					if (startDate != null && entry.createdAt.isBefore(startDate)) {
+						return;
+					}
+					result.add(new VideoMapPoint(entry.id, entry.title, entry.latitude, entry.longitude, entry.thumbnailPath));
+				}
+		);
+		return result;
+	}
+
+	public List<VideoMapClusterRow> findTileClusters(int tileZoom, int minX, int maxX, int minY, int maxY, LocalDateTime startDate) {
+		IndexState current = requireState();
+		if (startDate == null && tileZoom <= MAX_AGGREGATE_ZOOM) {
+			return current.readAggregates(tileZoom, minX, maxX, minY, maxY);
+		}
+
+		Map<Long, TileAggregate> clusters = new HashMap<>();
+		current.forEachInTileRange(tileZoom, minX, maxX, minY, maxY, entry -> {
+			if (startDate != null && entry.createdAt.isBefore(startDate)) {
+				return;
+			}
+			int shift = MAX_ZOOM - tileZoom;
+			clusters.computeIfAbsent(tileKey(entry.tileX >> shift, entry.tileY >> shift), key -> new TileAggregate())
+					.add(entry);
+		});
+		List<VideoMapClusterRow> result = new ArrayList<>(clusters.size());
+		for (TileAggregate aggregate : clusters.values()) {
+			VideoMapClusterRow row = aggregate.toRow();
+			if (row != null) {
+				result.add(row);
+			}
+		}
+		return result;
+	}
+
+	private IndexState requireState() {
+		IndexState current = state;
+		if (current == null) {
+			throw new IllegalStateException("Video map index is not loaded yet.");
+		}
+		return current;
+	}
+
+	/** Adds every page {@code query} returns, paging by id; returns the highest id read. */
+	private long load(IndexState target, long afterId, LongFunction<List<VideoMapIndexRow>> query) {
+		long cursor = afterId;
+		while (true) {
+			List<VideoMapIndexRow> rows = query.apply(cursor);
+			for (VideoMapIndexRow row : rows) {
+				target.add(row);
+				cursor = Math.max(cursor, row.id());
+			}
+			if (rows.size() < LOAD_CHUNK_SIZE) {
+				return cursor;
+			}
+		}
+	}
+
+	static int lngToTileX(double lng, int zoom) {
+		return clampTile((int) Math.floor((lng + 180) / 360 * (1 << zoom)), zoom);
+	}
+
+	static int latToTileY(double lat, int zoom) {
+		double latRad = Math.toRadians(lat);
+		double y = (1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * (1 << zoom);
+		if (Double.isNaN(y)) {
+			return lat > 0 ? 0 : (1 << zoom) - 1;
+		}
+		return clampTile((int) Math.floor(y), zoom);
+	}
+
+	private static int clampTile(int value, int zoom) {
+		return Math.max(0, Math.min((1 << zoom) - 1, value));
+	}
+
+	private static long tileKey(int x, int y) {
+		return ((long) x << 32) | (y & 0xffffffffL);
+	}
+
+	/** Interleaves the bits of x and y (x in the odd positions) into a Z-order code. */
+	static long morton(int x, int y) {
+		return spreadBits(x) << 1 | spreadBits(y);
+	}
+
+	private static long spreadBits(int value) {
+		long v = value & 0xffffffffL;
+		v = (v | (v << 16)) & 0x0000ffff0000ffffL;
+		v = (v | (v << 8)) & 0x00ff00ff00ff00ffL;
+		v = (v | (v << 4)) & 0x0f0f0f0f0f0f0f0fL;
+		v = (v | (v << 2)) & 0x3333333333333333L;
+		v = (v | (v << 1)) & 0x5555555555555555L;
+		return v;
+	}
+
+	private static final class IndexState {
+		private final ConcurrentMap<Long, IndexedVideo> byId = new ConcurrentHashMap<>();
+		private final ConcurrentSkipListMap<PointKey, IndexedVideo> points = new ConcurrentSkipListMap<>();
+		private final List<ConcurrentMap<Long, TileAggregate>> aggregates = new ArrayList<>(MAX_AGGREGATE_ZOOM + 1);
+		// Highest id read from the database; local inserts do not raise it, they may be ahead of other nodes' commits.
+		private long syncedId;
+
+		private IndexState() {
+			for (int zoom = 0; zoom <= MAX_AGGREGATE_ZOOM; zoom++) {
+				aggregates.add(new ConcurrentHashMap<>());
+			}
+		}
+
+		private void add(VideoMapIndexRow row) {
+			if (row.id() == null || row.latitude() == null || row.longitude() == null) {
+				return;
+			}
+			IndexedVideo video = new IndexedVideo(row);
+			if (byId.putIfAbsent(video.id, video) != null) {
+				return;
+			}
+			points.put(new PointKey(morton(video.tileX, video.tileY), video.id), video);
+			for (int zoom = 0; zoom <= MAX_AGGREGATE_ZOOM; zoom++) {
+				int shift = MAX_ZOOM - zoom;
+				aggregates.get(zoom)
+						.computeIfAbsent(tileKey(video.tileX >> shift, video.tileY >> shift), key -> new TileAggregate())
+						.add(video);
+			}
+		}
+
+		private void addViews(Long videoId, long delta) {
+			IndexedVideo video = byId.get(videoId);
+			if (video == null) {
+				return;
+			}
+			video.views.addAndGet(delta);
+			for (int zoom = 0; zoom <= MAX_AGGREGATE_ZOOM; zoom++) {
+				int shift = MAX_ZOOM - zoom;
+				TileAggregate aggregate = aggregates.get(zoom).get(tileKey(video.tileX >> shift, video.tileY >> shift));
+				if (aggregate != null) {
+					aggregate.offerRepresentative(video);
+				}
+			}
+		}
+
+		private List<VideoMapClusterRow> readAggregates(int zoom, int minX, int maxX, int minY, int maxY) {
+			ConcurrentMap<Long, TileAggregate> tiles = aggregates.get(zoom);
+			List<VideoMapClusterRow> result = new ArrayList<>();
+			long requestedTiles = (long) (maxX - minX + 1) * (maxY - minY + 1);
+			if (requestedTiles <= tiles.size()) {
+				for (int x = minX; x <= maxX; x++) {
+					for (int y = minY; y <= maxY; y++) {
+						TileAggregate aggregate = tiles.get(tileKey(x, y));
+						VideoMapClusterRow row = aggregate == null ? null : aggregate.toRow();
+						if (row != null) {
+							result.add(row);
+						}
+					}
+				}
+				return result;
+			}
+
+			for (Map.Entry<Long, TileAggregate> entry : tiles.entrySet()) {
+				int x = (int) (entry.getKey() >>> 32);
+				int y = (int) (long) entry.getKey();
+				if (x < minX || x > maxX || y < minY || y > maxY) {
+					continue;
+				}
+				VideoMapClusterRow row = entry.getValue().toRow();
+				if (row != null) {
+					result.add(row);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Visits every point whose tile at {@code zoom} lies in the given range. Wide
+		 * ranges are walked at a coarser zoom so at most {@value #MAX_SCAN_TILES} key
+		 * ranges are opened; points are then filtered by their exact tile.
+		 */
+		private void forEachInTileRange(int zoom, int minX, int maxX, int minY, int maxY, Consumer<IndexedVideo> consumer) {
+			int scanZoom = zoom;
+			int scanMinX = minX;
+			int scanMaxX = maxX;
+			int scanMinY = minY;
+			int scanMaxY = maxY;
+			while (scanZoom > 0 && (long) (scanMaxX - scanMinX + 1) * (scanMaxY - scanMinY + 1) > MAX_SCAN_TILES) {
+				scanZoom--;
+				scanMinX >>= 1;
+				scanMaxX >>= 1;
+				scanMinY >>= 1;
+				scanMaxY >>= 1;
+			}
+
+			int shift = MAX_ZOOM - zoom;
+			int rangeShift = 2 * (MAX_ZOOM - scanZoom);
+			for (int x = scanMinX; x <= scanMaxX; x++) {
+				for (int y = scanMinY; y <= scanMaxY; y++) {
+					long from = morton(x, y) << rangeShift;
+					long to = (morton(x, y) + 1) << rangeShift;
+					ConcurrentNavigableMap<PointKey, IndexedVideo> tile = points.subMap(
+							new PointKey(from, Long.MIN_VALUE), true,
+							new PointKey(to, Long.MIN_VALUE), false);
+					for (IndexedVideo video : tile.values()) {
+						int tileX = video.tileX >> shift;
+						int tileY = video.tileY >> shift;
+						if (tileX >= minX && tileX <= maxX && tileY >= minY && tileY <= maxY) {
+							consumer.accept(video);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private record PointKey(long morton, long videoId) implements Comparable<PointKey> {
+		private static final Comparator<PointKey> ORDER = Comparator.comparingLong(PointKey::morton)
+				.thenComparingLong(PointKey::videoId);
+
+		@Override
+		public int compareTo(PointKey other) {
+			return ORDER.compare(this, other);
+		}
+	}
+
+	private static final class IndexedVideo {
+		private final Long id;
+		private final String title;
+		private final double latitude;
+		private final double longitude;
+		private final LocalDateTime createdAt;
+		private final AtomicLong views;
+		private final String thumbnailPath;
+		private final int tileX;
+		private final int tileY;
+
+		private IndexedVideo(VideoMapIndexRow row) {
+			this.id = row.id();
+			this.title = row.title();
+			this.latitude = row.latitude();
+			this.longitude = row.longitude();
+			this.createdAt = row.createdAt() == null ? LocalDateTime.MIN : row.createdAt();
+			this.views = new AtomicLong(row.views() == null ? 0L : row.views());
+			this.thumbnailPath = row.thumbnailPath();
+			this.tileX = lngToTileX(longitude, MAX_ZOOM);
+			this.tileY = latToTileY(latitude, MAX_ZOOM);
+		}
+	}
+
+	/** Same representative rule as the SQL cluster query: most views, then lowest id. */
+	private static final class TileAggregate {
+		private long count;
+		private double latitudeSum;
+		private double longitudeSum;
+		private IndexedVideo representative;
+
+		private synchronized void add(IndexedVideo video) {
+			count++;
+			latitudeSum += video.latitude;
+			longitudeSum += video.longitude;
+			offerRepresentative(video);
+		}
+
+		private synchronized void offerRepresentative(IndexedVideo video) {
+			if (representative == null) {
+				representative = video;
+				return;
+			}
+			long candidateViews = video.views.get();
+			long currentViews = representative.views.get();
+			if (candidateViews > currentViews || (candidateViews == currentViews && video.id < representative.id)) {
+				representative = video;
+			}
+		}
+
+		private synchronized VideoMapClusterRow toRow() {
+			if (count == 0 || representative == null) {
+				return null;
+			}
+			return new ClusterRow(
+					representative.id,
+					representative.title,
+					latitudeSum / count,
+					longitudeSum / count,
+					representative.thumbnailPath,
+					count
+			);
+		}
+	}
+
+	private record ClusterRow(
+			Long id,
+			String title,
+			Double latitude,
+			Double longitude,
+			String thumbnailPath,
+			Long videoCount
+	) implements VideoMapClusterRow {
+		@Override
+		public Long getId() {
+			return id;
+		}
+
+		@Override
+		public String getTitle() {
+			return title;
+		}
+
+		@Override
+		public Double getLatitude() {
+			return latitude;
+		}
+
+		@Override
+		public Double getLongitude() {
+			return longitude;
+		}
+
+		@Override
+		public String getThumbnailPath() {
+			return thumbnailPath;
+		}
+
+		@Override
+		public Long getVideoCount() {
+			return videoCount;
+		}
+	}
+}
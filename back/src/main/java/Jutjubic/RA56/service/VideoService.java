@@ -2,7 +2,6 @@ package Jutjubic.RA56.service;
 
 import Jutjubic.RA56.domain.User;
 import Jutjubic.RA56.domain.Video;
-import Jutjubic.RA56.domain.VideoView;
 import Jutjubic.RA56.domain.TranscodingJob;
 import Jutjubic.RA56.domain.TranscodingJobStatus;
 import Jutjubic.RA56.dto.PremierDetailResponse;
@@ -11,23 +10,28 @@ import Jutjubic.RA56.dto.TranscodingJobMessage;
 import Jutjubic.RA56.dto.TranscodingStatusResponse;
 import Jutjubic.RA56.dto.UploadEventJsonMessage;
 import Jutjubic.RA56.dto.VideoDetailResponse;
+import Jutjubic.RA56.dto.VideoFeedResponse;
+import Jutjubic.RA56.dto.VideoFeedRow;
 import Jutjubic.RA56.dto.VideoMapClusterRow;
 import Jutjubic.RA56.dto.VideoMapPoint;
 import Jutjubic.RA56.dto.VideoMapResponse;
+import Jutjubic.RA56.dto.VideoMapTileKey;
 import Jutjubic.RA56.dto.VideoResponse;
 import Jutjubic.RA56.proto.UploadEventProto;
 import Jutjubic.RA56.repository.VideoLikeRepository;
 import Jutjubic.RA56.repository.UserRepository;
 import Jutjubic.RA56.repository.VideoRepository;
-import Jutjubic.RA56.repository.VideoViewRepository;
 import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.beans.factory.annotation.Value;
 
@@ -39,14 +43,15 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
-import org.springframework.core.io.UrlResource;
-import java.net.MalformedURLException;
 
 @Service
 public class VideoService {
@@ -58,9 +63,17 @@ public class VideoService {
     private final CacheManager cacheManager;
     private final AdaptiveStreamingService adaptiveStreamingService;
     private final TranscodingJobService transcodingJobService;
+    private final TranscodingProgressRegistry transcodingProgressRegistry;
     private final TranscodingJobProducer transcodingJobProducer;
+    private final TranscodingPriorityService transcodingPriorityService;
     private final UploadEventProducer uploadEventProducer;
-    private final VideoViewRepository videoViewRepository;
+    private final VideoViewCounterService videoViewCounterService;
+    private final VideoViewIngestService videoViewIngestService;
+    private final TrendingService trendingService;
+    private final VideoMapIndexService videoMapIndexService;
+    private final VideoUploadService videoUploadService;
+    private final ThumbnailVariantService thumbnailVariantService;
+    private final TransactionTemplate transactionTemplate;
     
     @Value("${app.base-url}") 
     private String baseUrl; 
@@ -72,9 +85,17 @@ public class VideoService {
             CacheManager cacheManager,
             AdaptiveStreamingService adaptiveStreamingService,
             TranscodingJobService transcodingJobService,
+            TranscodingProgressRegistry transcodingProgressRegistry,
             TranscodingJobProducer transcodingJobProducer,
+            TranscodingPriorityService transcodingPriorityService,
             UploadEventProducer uploadEventProducer,
-            VideoViewRepository videoViewRepository) {
+            VideoViewCounterService videoViewCounterService,
+            VideoViewIngestService videoViewIngestService,
+            TrendingService trendingService,
+            VideoMapIndexService videoMapIndexService,
+            VideoUploadService videoUploadService,
+            ThumbnailVariantService thumbnailVariantService,
+            PlatformTransactionManager transactionManager) {
         this.videoRepository = videoRepository;
         this.fileStorageService = fileStorageService;
         this.userRepository = userRepository;
@@ -82,34 +103,97 @@ public class VideoService {
         this.cacheManager = cacheManager;
         this.adaptiveStreamingService = adaptiveStreamingService;
         this.transcodingJobService = transcodingJobService;
+        this.transcodingProgressRegistry = transcodingProgressRegistry;
         this.transcodingJobProducer = transcodingJobProducer;
+        this.transcodingPriorityService = transcodingPriorityService;
         this.uploadEventProducer = uploadEventProducer;
-        this.videoViewRepository = videoViewRepository;
+        this.videoViewCounterService = videoViewCounterService;
+        this.videoViewIngestService = videoViewIngestService;
+        this.trendingService = trendingService;
+        this.videoMapIndexService = videoMapIndexService;
+        this.videoUploadService = videoUploadService;
+        this.thumbnailVariantService = thumbnailVariantService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    private static final int DEFAULT_FEED_LIMIT = 20;
+    private static final int MAX_FEED_LIMIT = 100;
+
     public List<VideoResponse> getAllVideos() {
-        return videoRepository.findAll(Sort.by(Sort.Direction.DESC, "createdAt")).stream()
-                .map(video -> {
-                    String thumbnailUrl = this.baseUrl + "/api/videos/thumbnail/" + video.getThumbnailPath(); 
-                    long likesCount = likeRepository.countByVideoId(video.getId());
-                    LocalDateTime scheduledAt = video.getScheduledAt() == null ? video.getCreatedAt() : video.getScheduledAt();
-                    return new VideoResponse(
-                            video.getId(),
-                            video.getTitle(),
-                            video.getDescription(),
-                            video.getTags(),
-                            video.getCreatedAt(),
-                            scheduledAt,
-                            resolveDurationSeconds(video),
-                            isPremiereEnabled(video),
-                            video.getLatitude(),
-                            video.getLongitude(),
-                            video.getOwner().getUsername(),
-                            thumbnailUrl,
-                            likesCount
-                    );
-                })
+        return videoRepository.findFeedFirstPage(Pageable.unpaged()).stream()
+                .map(this::toVideoResponse)
+                .collect(Collectors.toList());
+    }
+
+    public VideoFeedResponse getVideoFeed(String after, Integer limit) {
+        int resolvedLimit = resolveFeedLimit(limit);
+        Pageable pageable = PageRequest.of(0, resolvedLimit);
+
+        List<VideoFeedRow> rows;
+        if (after == null || after.isBlank()) {
+            rows = videoRepository.findFeedFirstPage(pageable);
+        } else {
+            FeedCursor cursor = parseFeedCursor(after);
+            rows = videoRepository.findFeedPageAfter(cursor.createdAt(), cursor.id(), pageable);
+        }
+
+        List<VideoResponse> videos = rows.stream()
+                .map(this::toVideoResponse)
                 .collect(Collectors.toList());
+
+        String nextCursor = null;
+        if (rows.size() == resolvedLimit) {
+            VideoFeedRow last = rows.get(rows.size() - 1);
+            nextCursor = last.createdAt() + "," + last.id();
+        }
+        return new VideoFeedResponse(videos, nextCursor);
+    }
+
+    private VideoResponse toVideoResponse(VideoFeedRow row) {
+        String thumbnailUrl = ThumbnailVariantService.thumbnailUrl(this.baseUrl, row.thumbnailPath(), ThumbnailVariantService.CARD_WIDTH);
+        LocalDateTime scheduledAt = row.scheduledAt() == null ? row.createdAt() : row.scheduledAt();
+        return new VideoResponse(
+                row.id(),
+                row.title(),
+                row.description(),
+                row.tags(),
+                row.createdAt(),
+                scheduledAt,
+                resolveDurationSeconds(row.durationSeconds()),
+                isPremiereEnabled(row.premiereEnabled(), row.scheduledAt(), row.createdAt()),
+                row.latitude(),
+                row.longitude(),
+                row.ownerUsername(),
+                thumbnailUrl,
+                row.likesCount() == null ? 0L : row.likesCount()
+        );
+    }
+
+    private int resolveFeedLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_FEED_LIMIT;
+        }
+        if (limit <= 0 || limit > MAX_FEED_LIMIT) {
+            throw new IllegalArgumentException("Feed limit must be between 1 and " + MAX_FEED_LIMIT + ".");
+        }
+        return limit;
+    }
+
+    private FeedCursor parseFeedCursor(String after) {
+        int separator = after.lastIndexOf(',');
+        if (separator <= 0 || separator == after.length() - 1) {
+            throw new IllegalArgumentException("Invalid feed cursor. Expected <createdAt,id>.");
+        }
+        try {
+            LocalDateTime createdAt = LocalDateTime.parse(after.substring(0, separator).trim());
+            Long id = Long.parseLong(after.substring(separator + 1).trim());
+            return new FeedCursor(createdAt, id);
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid feed cursor. Expected <createdAt,id>.");
+        }
+    }
+
+    private record FeedCursor(LocalDateTime createdAt, Long id) {
     }
 
     public List<PremiereVideoResponse> getPremieres() {
@@ -121,7 +205,7 @@ public class VideoService {
                         video.getId(),
                         video.getTitle(),
                         video.getDescription(),
-                        this.baseUrl + "/api/videos/thumbnail/" + video.getThumbnailPath(),
+                        ThumbnailVariantService.thumbnailUrl(this.baseUrl, video.getThumbnailPath(), ThumbnailVariantService.CARD_WIDTH),
                         video.getScheduledAt() == null ? video.getCreatedAt() : video.getScheduledAt(),
                         resolveDurationSeconds(video)
                 ))
@@ -130,50 +214,114 @@ public class VideoService {
 
     private static final int DETAIL_ZOOM_MIN = 14;
     private static final int MEDIUM_ZOOM_MIN = 12;
+    private static final int MAX_MAP_ZOOM = 19;
+    private static final String VIDEO_MAP_CACHE = "video-map-tiles";
+    private static final List<String> MAP_PERIODS = List.of("all", "30days", "currentYear");
+    private static final int MAX_CACHED_TILES_PER_REQUEST = 1024;
 
-    @Cacheable(value = "video-map-tiles", key = "#tileZoom + ':' + #minX + ':' + #maxX + ':' + #minY + ':' + #maxY + ':' + #zoom + ':' + #period")
     public List<VideoMapResponse> getVideosForMapTiles(int tileZoom, int minX, int maxX, int minY, int maxY, int zoom, String period) {
         int resolvedZoom = clampZoom(zoom);
         int resolvedTileZoom = clampZoom(tileZoom);
 
-        int safeMinX = Math.min(minX, maxX);
-        int safeMaxX = Math.max(minX, maxX);
-        int safeMinY = Math.min(minY, maxY);
-        int safeMaxY = Math.max(minY, maxY);
+        int safeMinX = clampTileCoord(Math.min(minX, maxX), resolvedTileZoom);
+        int safeMaxX = clampTileCoord(Math.max(minX, maxX), resolvedTileZoom);
+        int safeMinY = clampTileCoord(Math.min(minY, maxY), resolvedTileZoom);
+        int safeMaxY = clampTileCoord(Math.max(minY, maxY), resolvedTileZoom);
+
+        String resolvedPeriod = resolveMapPeriod(period);
+        LocalDateTime startDate = resolveMapStartDate(resolvedPeriod);
+        boolean detail = resolvedZoom >= DETAIL_ZOOM_MIN;
+
+        Cache videoMapCache = cacheManager.getCache(VIDEO_MAP_CACHE);
+        long tileCount = (long) (safeMaxX - safeMinX + 1) * (safeMaxY - safeMinY + 1);
+        if (videoMapCache == null || tileCount > MAX_CACHED_TILES_PER_REQUEST) {
+            return loadMapTiles(detail, resolvedTileZoom, safeMinX, safeMaxX, safeMinY, safeMaxY, startDate);
+        }
+
+        // Serve every tile that is already cached; load the rest with one query over their bounding range.
+        List<VideoMapResponse> result = new ArrayList<>();
+        Map<VideoMapTileKey, ArrayList<VideoMapResponse>> missing = new HashMap<>();
+        int missMinX = Integer.MAX_VALUE;
+        int missMaxX = Integer.MIN_VALUE;
+        int missMinY = Integer.MAX_VALUE;
+        int missMaxY = Integer.MIN_VALUE;
+        for (int x = safeMinX; x <= safeMaxX; x++) {
+            for (int y = safeMinY; y <= safeMaxY; y++) {
+                VideoMapTileKey key = new VideoMapTileKey(resolvedTileZoom, x, y, detail, resolvedPeriod);
+                Cache.ValueWrapper cached = videoMapCache.get(key);
+                if (cached != null && cached.get() instanceof List<?> tile) {
+                    for (Object item : tile) {
+                        result.add((VideoMapResponse) item);
+                    }
+                    continue;
+                }
+                missing.put(key, new ArrayList<>());
+                missMinX = Math.min(missMinX, x);
+                missMaxX = Math.max(missMaxX, x);
+                missMinY = Math.min(missMinY, y);
+                missMaxY = Math.max(missMaxY, y);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<VideoMapResponse> loaded = loadMapTiles(detail, resolvedTileZoom, missMinX, missMaxX, missMinY, missMaxY, startDate);
+            for (VideoMapResponse item : loaded) {
+                VideoMapTileKey key = new VideoMapTileKey(
+                        resolvedTileZoom,
+                        clampTileCoord(lngToTileX(item.longitude(), resolvedTileZoom), resolvedTileZoom),
+                        clampTileCoord(latToTileY(item.latitude(), resolvedTileZoom), resolvedTileZoom),
+                        detail,
+                        resolvedPeriod
+                );
+                // Items of already cached tiles inside the bounding range are skipped, they were served above.
+                ArrayList<VideoMapResponse> tile = missing.get(key);
+                if (tile != null) {
+                    tile.add(item);
+                }
+            }
+            for (Map.Entry<VideoMapTileKey, ArrayList<VideoMapResponse>> entry : missing.entrySet()) {
+                videoMapCache.put(entry.getKey(), entry.getValue());
+                result.addAll(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private String resolveMapPeriod(String period) {
+        return period != null && MAP_PERIODS.contains(period) ? period : "all";
+    }
 
-        safeMinX = clampTileCoord(safeMinX, resolvedTileZoom);
-        safeMaxX = clampTileCoord(safeMaxX, resolvedTileZoom);
-        safeMinY = clampTileCoord(safeMinY, resolvedTileZoom);
-        safeMaxY = clampTileCoord(safeMaxY, resolvedTileZoom);
+    private LocalDateTime resolveMapStartDate(String period) {
+        switch (period) {
+            case "30days":
+                return LocalDateTime.now().minusDays(30);
+            case "currentYear":
+                return LocalDateTime.now().withDayOfYear(1).withHour(0).withMinute(0).withSecond(0);
+            case "all":
+            default:
+                return null;
+        }
+    }
 
-        double minLng = tileXToLng(safeMinX, resolvedTileZoom);
-        double maxLng = tileXToLng(safeMaxX + 1, resolvedTileZoom);
-        double maxLat = tileYToLat(safeMinY, resolvedTileZoom);
-        double minLat = tileYToLat(safeMaxY + 1, resolvedTileZoom);
+    private List<VideoMapResponse> loadMapTiles(boolean detail, int tileZoom, int minX, int maxX, int minY, int maxY, LocalDateTime startDate) {
+        double minLng = tileXToLng(minX, tileZoom);
+        double maxLng = tileXToLng(maxX + 1, tileZoom);
+        double maxLat = tileYToLat(minY, tileZoom);
+        double minLat = tileYToLat(maxY + 1, tileZoom);
 
         double safeMinLat = Math.min(minLat, maxLat);
         double safeMaxLat = Math.max(minLat, maxLat);
         double safeMinLng = Math.min(minLng, maxLng);
         double safeMaxLng = Math.max(minLng, maxLng);
-        
-        LocalDateTime startDate = null; 
-        
-        switch(period) {
-        	case "30days":
-        		startDate = LocalDateTime.now().minusDays(30); 
-        		break; 
-        	case "currentYear":
-        		startDate = LocalDateTime.now().withDayOfYear(1).withHour(0).withMinute(0).withSecond(0); 
-        		break; 
-        	case "all": 
-        	default: 
-        		break; 
-        }
-
-        if (resolvedZoom >= DETAIL_ZOOM_MIN) {
+
+        if (detail) {
         	List<VideoMapPoint> points; 
         	
-        	if (startDate == null) {
+        	if (videoMapIndexService.isReady()) {
+        		points = videoMapIndexService.findPoints(
+        				safeMinLat, safeMaxLat, safeMinLng, safeMaxLng, startDate
+        		);
+        	} else if (startDate == null) {
         		points = videoRepository.findMapPoints(
         				safeMinLat, safeMaxLat, safeMinLng, safeMaxLng
         		);
@@ -187,7 +335,7 @@ public class VideoService {
             return points.stream()
                     .filter(point -> Objects.nonNull(point.latitude()) && Objects.nonNull(point.longitude()))
                     .map(point -> {
-                        String thumbnailUrl = this.baseUrl + "/api/videos/thumbnail/" + point.thumbnailPath();
+                        String thumbnailUrl = ThumbnailVariantService.thumbnailUrl(this.baseUrl, point.thumbnailPath(), ThumbnailVariantService.MARKER_WIDTH);
                         return new VideoMapResponse(
                                 point.id(),
                                 point.title(),
@@ -200,19 +348,21 @@ public class VideoService {
                     .collect(Collectors.toList());
         }
 
-        List<VideoMapClusterRow> points = videoRepository.findMapTilePoints(
-                safeMinLat,
-                safeMaxLat,
-                safeMinLng,
-                safeMaxLng,
-                resolvedTileZoom,
-                startDate
-        );
+        List<VideoMapClusterRow> points = videoMapIndexService.isReady()
+                ? videoMapIndexService.findTileClusters(tileZoom, minX, maxX, minY, maxY, startDate)
+                : videoRepository.findMapTilePoints(
+                        safeMinLat,
+                        safeMaxLat,
+                        safeMinLng,
+                        safeMaxLng,
+                        tileZoom,
+                        startDate
+                );
 
         return points.stream()
                 .filter(point -> Objects.nonNull(point.getLatitude()) && Objects.nonNull(point.getLongitude()))
                 .map(point -> {
-                    String thumbnailUrl = this.baseUrl + "/api/videos/thumbnail/" + point.getThumbnailPath();
+                    String thumbnailUrl = ThumbnailVariantService.thumbnailUrl(this.baseUrl, point.getThumbnailPath(), ThumbnailVariantService.MARKER_WIDTH);
                     return new VideoMapResponse(
                             point.getId(),
                             point.getTitle(),
@@ -267,24 +417,21 @@ public class VideoService {
         return (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * Math.pow(2, zoom));
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public VideoDetailResponse getVideoById(Long id, String userEmail) {
-        Video video = videoRepository.findOneByIdForUpdate(id);
-        if (video == null) {
-            throw new RuntimeException("Video not found with id: " + id);
-        }
+        Video video = videoRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Video not found with id: " + id));
 
         LocalDateTime now = LocalDateTime.now();
         if (isPremiereEnabled(video) && !isPremiereExpired(video, now)) {
             throw new IllegalStateException("Video is available only through premiere until the broadcast ends.");
         }
 
-        long currentViews = video.getViews() == null ? 0L : video.getViews();
-        video.setViews(currentViews + 1);
-        videoRepository.save(video);
-        videoViewRepository.save(new VideoView(video, LocalDateTime.now()));
+        recordView(video, now);
+        long storedViews = video.getViews() == null ? 0L : video.getViews();
+        long views = storedViews + videoViewCounterService.getPendingViews(video.getId());
 
-        String thumbnailUrl = this.baseUrl + "/api/videos/thumbnail/" + video.getThumbnailPath();
+        String thumbnailUrl = ThumbnailVariantService.thumbnailUrl(this.baseUrl, video.getThumbnailPath(), ThumbnailVariantService.DETAIL_WIDTH);
         
         String videoUrl = this.baseUrl + "/api/videos/play/" + video.getVideoPath();
         String hlsUrl = this.baseUrl + "/api/videos/hls/" + video.getVideoPath() + "/master.m3u8";
@@ -304,7 +451,7 @@ public class VideoService {
                 video.getTitle(),
                 video.getDescription(),
                 video.getTags(),
-                video.getViews(),
+                views,
                 video.getCreatedAt(),
                 video.getLatitude(),
                 video.getLongitude(),
@@ -317,12 +464,10 @@ public class VideoService {
         );
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public PremierDetailResponse getPremierById(Long id) {
-        Video video = videoRepository.findOneByIdForUpdate(id);
-        if (video == null) {
-            throw new RuntimeException("Video not found with id: " + id);
-        }
+        Video video = videoRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Video not found with id: " + id));
 
         LocalDateTime scheduledAt = video.getScheduledAt() == null ? video.getCreatedAt() : video.getScheduledAt();
         long durationSeconds = resolveDurationSeconds(video);
@@ -340,15 +485,13 @@ public class VideoService {
             throw new IllegalStateException("Premiere has ended.");
         }
 
-        long currentViews = video.getViews() == null ? 0L : video.getViews();
-        video.setViews(currentViews + 1);
-        videoRepository.save(video);
-        videoViewRepository.save(new VideoView(video, LocalDateTime.now()));
+        recordView(video, now);
 
         long streamOffsetSeconds = computeStreamOffsetSeconds(scheduledAt, now);
-        String thumbnailUrl = this.baseUrl + "/api/videos/thumbnail/" + video.getThumbnailPath();
+        String thumbnailUrl = ThumbnailVariantService.thumbnailUrl(this.baseUrl, video.getThumbnailPath(), ThumbnailVariantService.DETAIL_WIDTH);
         String videoUrl = this.baseUrl + "/api/videos/play/" + video.getVideoPath();
         String hlsUrl = this.baseUrl + "/api/videos/hls/" + video.getVideoPath() + "/master.m3u8";
+        String liveHlsUrl = PremiereLivePlaylistService.liveUrl(this.baseUrl, video.getId());
 
         return new PremierDetailResponse(
                 video.getId(),
@@ -357,36 +500,103 @@ public class VideoService {
                 thumbnailUrl,
                 videoUrl,
                 hlsUrl,
+                liveHlsUrl,
                 scheduledAt,
                 durationSeconds,
                 streamOffsetSeconds
         );
     }
 
-    @Transactional(rollbackFor = Exception.class)
-    public VideoResponse createVideo(String title, String description, String tags, String scheduledAtValue, Long durationSeconds, Double latitude, Double longitude, MultipartFile thumbnailFile, MultipartFile videoFile, String username) {
-        if (latitude == null || longitude == null) {
-            throw new RuntimeException("Location coordinates are required.");
+    /** A premiere that has started; its live playlists stay available after it ends so players can finish. */
+    @Transactional(readOnly = true)
+    public Video getStartedPremiere(Long id, LocalDateTime now) {
+        Video video = videoRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Video not found with id: " + id));
+        if (!isPremiereEnabled(video)) {
+            throw new IllegalStateException("Video is not a premiere.");
         }
-        if (durationSeconds == null || durationSeconds <= 0) {
-            throw new IllegalArgumentException("Video duration must be greater than zero.");
+        if (now.isBefore(video.getScheduledAt())) {
+            throw new IllegalStateException("Premiere has not started yet.");
         }
+        return video;
+    }
 
-        User user = userRepository.findByEmailIgnoreCase(username)
-                .orElseThrow(() -> new RuntimeException("User not found with username: " + username));
+    public VideoResponse createVideo(String title, String description, String tags, String scheduledAtValue, Long durationSeconds, Double latitude, Double longitude, MultipartFile thumbnailFile, MultipartFile videoFile, String username) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime scheduledAt = validateNewVideo(scheduledAtValue, durationSeconds, latitude, longitude, now);
 
         String thumbnailFileName = null;
         String videoFileName = null;
 
         try {
             thumbnailFileName = fileStorageService.storeThumbnail(thumbnailFile);
+            thumbnailVariantService.pregenerate(thumbnailFileName);
             videoFileName = fileStorageService.storeVideo(videoFile);
-            LocalDateTime now = LocalDateTime.now();
-            boolean hasScheduledAt = scheduledAtValue != null && !scheduledAtValue.isBlank();
-            LocalDateTime scheduledAt = parseScheduledAtOrNow(scheduledAtValue, now, durationSeconds);
-            if (hasScheduledAt && scheduledAt.isBefore(now)) {
-                throw new IllegalArgumentException("Scheduled date cannot be in the past.");
+            return persistNewVideo(title, description, tags, thumbnailFileName, videoFileName, now, scheduledAt,
+                    scheduledAtValue, durationSeconds, latitude, longitude, videoFile.getSize(), username);
+        } catch (Exception e) {
+            if (thumbnailFileName != null) {
+                fileStorageService.deleteFile(thumbnailFileName, false);
+            }
+            if (videoFileName != null) {
+                fileStorageService.deleteFile(videoFileName, true);
+            }
+            throw new RuntimeException("Failed to create video. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finishes a resumable upload: the staged file is renamed into video storage and the
+     * row is written in a short transaction. If that fails the file goes back to staging,
+     * so the client can retry the finalize without uploading again.
+     */
+    public VideoResponse createVideoFromUpload(String uploadId, String title, String description, String tags, String scheduledAtValue, Long durationSeconds, Double latitude, Double longitude, MultipartFile thumbnailFile, String username) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime scheduledAt = validateNewVideo(scheduledAtValue, durationSeconds, latitude, longitude, now);
+
+        String thumbnailFileName = fileStorageService.storeThumbnail(thumbnailFile);
+        String videoFileName = null;
+        try {
+            thumbnailVariantService.pregenerate(thumbnailFileName);
+            videoFileName = videoUploadService.promote(uploadId, username);
+            long sizeBytes = Files.size(fileStorageService.resolveVideoPath(videoFileName));
+            VideoResponse response = persistNewVideo(title, description, tags, thumbnailFileName, videoFileName, now,
+                    scheduledAt, scheduledAtValue, durationSeconds, latitude, longitude, sizeBytes, username);
+            videoUploadService.discard(uploadId);
+            return response;
+        } catch (Exception e) {
+            fileStorageService.deleteFile(thumbnailFileName, false);
+            if (videoFileName != null) {
+                videoUploadService.restore(uploadId, videoFileName);
             }
+            if (e instanceof IllegalArgumentException || e instanceof IllegalStateException || e instanceof AccessDeniedException) {
+                throw (RuntimeException) e;
+            }
+            throw new RuntimeException("Failed to create video. " + e.getMessage(), e);
+        }
+    }
+
+    private LocalDateTime validateNewVideo(String scheduledAtValue, Long durationSeconds, Double latitude, Double longitude, LocalDateTime now) {
+        if (latitude == null || longitude == null) {
+            throw new RuntimeException("Location coordinates are required.");
+        }
+        if (durationSeconds == null || durationSeconds <= 0) {
+            throw new IllegalArgumentException("Video duration must be greater than zero.");
+        }
+        boolean hasScheduledAt = scheduledAtValue != null && !scheduledAtValue.isBlank();
+        LocalDateTime scheduledAt = parseScheduledAtOrNow(scheduledAtValue, now, durationSeconds);
+        if (hasScheduledAt && scheduledAt.isBefore(now)) {
+            throw new IllegalArgumentException("Scheduled date cannot be in the past.");
+        }
+        return scheduledAt;
+    }
+
+    // Files are already in place; the transaction only writes rows and registers the after-commit hooks.
+    private VideoResponse persistNewVideo(String title, String description, String tags, String thumbnailFileName, String videoFileName, LocalDateTime now, LocalDateTime scheduledAt, String scheduledAtValue, Long durationSeconds, Double latitude, Double longitude, long sizeBytes, String username) {
+        boolean hasScheduledAt = scheduledAtValue != null && !scheduledAtValue.isBlank();
+        return transactionTemplate.execute(status -> {
+            User user = userRepository.findByEmailIgnoreCase(username)
+                    .orElseThrow(() -> new RuntimeException("User not found with username: " + username));
 
             Video video = new Video(
                     title,
@@ -403,14 +613,20 @@ public class VideoService {
                     user
             );
 
+            // Identical uploads share a file name and with it the HLS output; the lock keeps
+            // two concurrent uploads of the same content from both starting a transcode.
+            fileStorageService.lockVideo(videoFileName);
             Video savedVideo = videoRepository.save(video);
             TranscodingJob job = transcodingJobService.createPendingJob(savedVideo);
-            enqueueTranscodingAfterCommit(job, savedVideo);
-            enqueueUploadEventAfterCommit(savedVideo, videoFile.getSize());
+            if (adaptiveStreamingService.isHlsReady(videoFileName)) {
+                transcodingJobService.markCompleted(job.getId());
+            } else if (!transcodingJobService.hasActiveJobForVideoPath(videoFileName, job.getId())) {
+                enqueueTranscodingAfterCommit(job, savedVideo);
+            }
+            enqueueUploadEventAfterCommit(savedVideo, sizeBytes);
+            updateVideoMapAfterCommit(savedVideo);
 
-            evictVideoMapCacheFor(savedVideo);
-            
-            String thumbnailUrl = this.baseUrl + "/api/videos/thumbnail/" + savedVideo.getThumbnailPath();
+            String thumbnailUrl = ThumbnailVariantService.thumbnailUrl(this.baseUrl, savedVideo.getThumbnailPath(), ThumbnailVariantService.CARD_WIDTH);
 
             return new VideoResponse(
                 savedVideo.getId(),
@@ -427,81 +643,47 @@ public class VideoService {
                 thumbnailUrl,
                 0L
             );
-
-        } catch (Exception e) {
-            if (thumbnailFileName != null) {
-                fileStorageService.deleteFile(thumbnailFileName, false);
-            }
-            if (videoFileName != null) {
-                fileStorageService.deleteFile(videoFileName, true);
-            }
-            throw new RuntimeException("Failed to create video. " + e.getMessage(), e);
-        }
+        });
     }
 
     private void evictVideoMapCacheFor(Video video) {
-        Cache videoMapCache = cacheManager.getCache("video-map-tiles");
-        if (videoMapCache != null) {
-            if (video.getLatitude() == null || video.getLongitude() == null) {
-                videoMapCache.clear();
-                return;
-            }
-
-            Object nativeCache = videoMapCache.getNativeCache();
-            if (nativeCache instanceof javax.cache.Cache<?, ?> jcache) {
-                for (javax.cache.Cache.Entry<?, ?> entry : jcache) {
-                    Object keyObj = entry.getKey();
-                    if (!(keyObj instanceof String key)) {
-                        continue;
-                    }
-                    if (shouldEvictMapKeyForVideo(key, video.getLatitude(), video.getLongitude())) {
-                        videoMapCache.evict(key);
-                    }
-                }
-                return;
-            }
-
+        Cache videoMapCache = cacheManager.getCache(VIDEO_MAP_CACHE);
+        if (videoMapCache == null) {
+            return;
+        }
+        if (video.getLatitude() == null || video.getLongitude() == null) {
             videoMapCache.clear();
+            return;
         }
-    }
 
-    private boolean shouldEvictMapKeyForVideo(String key, double latitude, double longitude) {
-        String[] parts = key.split(":");
-        if (parts.length < 7) {
-            return false;
-        }
-        try {
-            int tileZoom = Integer.parseInt(parts[0]);
-            int minX = Integer.parseInt(parts[1]);
-            int maxX = Integer.parseInt(parts[2]);
-            int minY = Integer.parseInt(parts[3]);
-            int maxY = Integer.parseInt(parts[4]);
-            int tileX = lngToTileX(longitude, tileZoom);
-            int tileY = latToTileY(latitude, tileZoom);
-            return tileX >= Math.min(minX, maxX)
-                    && tileX <= Math.max(minX, maxX)
-                    && tileY >= Math.min(minY, maxY)
-                    && tileY <= Math.max(minY, maxY);
-        } catch (NumberFormatException ex) {
-            return false;
+        // Only the tile holding the video at each zoom can change: a fixed number of keyed evictions.
+        for (int tileZoom = 0; tileZoom <= MAX_MAP_ZOOM; tileZoom++) {
+            int tileX = clampTileCoord(lngToTileX(video.getLongitude(), tileZoom), tileZoom);
+            int tileY = clampTileCoord(latToTileY(video.getLatitude(), tileZoom), tileZoom);
+            for (String period : MAP_PERIODS) {
+                videoMapCache.evict(new VideoMapTileKey(tileZoom, tileX, tileY, true, period));
+                videoMapCache.evict(new VideoMapTileKey(tileZoom, tileX, tileY, false, period));
+            }
         }
     }
 
-    @Cacheable(value = "thumbnails", unless = "#result == null")
-    public Resource getThumbnailResource(String fileName) {
-        return fileStorageService.loadFileAsResource(fileName);
-    }
-
-    public Resource getVideoStream(String fileName) {
+    public Path getVideoStream(String fileName) {
         ensureVideoAvailableNow(fileName);
-        return fileStorageService.loadVideoAsResource(fileName);
+        Path video = fileStorageService.resolveVideoPath(fileName);
+        if (!Files.isRegularFile(video)) {
+            throw new RuntimeException("File not found " + fileName);
+        }
+        return video;
     }
 
-    public Resource getHlsResource(String fileName, String resourcePath) {
+    public Path getHlsResource(String fileName, String resourcePath) {
         ensureVideoAvailableNow(fileName);
         ensureAdaptiveResourceReady(fileName, resourcePath);
         Path resource = adaptiveStreamingService.resolveHlsResource(fileName, resourcePath);
-        return asResource(resource);
+        if (!Files.isRegularFile(resource)) {
+            throw new RuntimeException("Adaptive stream resource not found.");
+        }
+        return resource;
     }
 
     private void ensureAdaptiveResourceReady(String fileName, String resourcePath) {
@@ -522,40 +704,40 @@ public class VideoService {
 
     @Transactional(readOnly = true)
     public TranscodingStatusResponse getTranscodingStatus(Long videoId) {
-        TranscodingStatusResponse response = transcodingJobService.getVideoStatus(videoId);
-        if (!"NOT_FOUND".equals(response.status())) {
+        Video video = videoRepository.findById(videoId).orElse(null);
+        // Progress is written to the job row only every few seconds; the registry has the live value.
+        TranscodingStatusResponse response = transcodingProgressRegistry.overlay(transcodingJobService.getVideoStatus(videoId));
+        if (video == null) {
             return response;
         }
+        if ("NOT_FOUND".equals(response.status())) {
+            response = adaptiveStreamingService.isHlsReady(video.getVideoPath())
+                    ? new TranscodingStatusResponse(videoId, "COMPLETED", 100, true, "Transcoding completed.", 0.0)
+                    : new TranscodingStatusResponse(videoId, "PENDING", 0, false, "Queued for transcoding.", 0.0);
+        }
+        if ("FAILED".equals(response.status())) {
+            return response;
+        }
+        // Segments are served as soon as ffmpeg finishes them, so playback can start before the job completes.
+        return response.withPlayableSeconds(adaptiveStreamingService.getPlayableSeconds(video.getVideoPath()));
+    }
 
-        return videoRepository.findById(videoId)
-                .map(video -> {
-                    Path manifest = adaptiveStreamingService.getHlsManifestPath(video.getVideoPath());
-                    if (Files.exists(manifest)) {
-                        return new TranscodingStatusResponse(videoId, "COMPLETED", 100, true, "Transcoding completed.");
-                    }
-                    return new TranscodingStatusResponse(videoId, "PENDING", 0, false, "Queued for transcoding.");
-                })
-                .orElse(response);
+    private void recordView(Video video, LocalDateTime viewedAt) {
+        videoViewCounterService.recordView(video.getId());
+        videoViewIngestService.enqueue(video.getId(), viewedAt);
+        trendingService.recordView(video.getId(), video.getTitle(), video.getThumbnailPath());
     }
 
     private void ensureVideoAvailableNow(String fileName) {
-        videoRepository.findByVideoPath(fileName).ifPresent(video -> {
+        // Identical uploads share a file; it can be streamed once any of them is public.
+        List<Video> videos = videoRepository.findAllByVideoPath(fileName);
+        LocalDateTime now = LocalDateTime.now();
+        boolean available = videos.isEmpty() || videos.stream().anyMatch(video -> {
             LocalDateTime scheduledAt = video.getScheduledAt() == null ? video.getCreatedAt() : video.getScheduledAt();
-            if (LocalDateTime.now().isBefore(scheduledAt)) {
-                throw new IllegalStateException("Video is not available before the scheduled time.");
-            }
+            return !now.isBefore(scheduledAt);
         });
-    }
-
-    private Resource asResource(Path path) {
-        try {
-            Resource resource = new UrlResource(path.toUri());
-            if (!resource.exists()) {
-                throw new RuntimeException("Adaptive stream resource not found.");
-            }
-            return resource;
-        } catch (MalformedURLException ex) {
-            throw new RuntimeException("Invalid adaptive stream resource path.", ex);
+        if (!available) {
+            throw new IllegalStateException("Video is not available before the scheduled time.");
         }
     }
 
@@ -583,16 +765,17 @@ public class VideoService {
                 video.getVideoPath(),
                 resolveDurationSeconds(video)
         );
+        int priority = transcodingPriorityService.priorityFor(video, LocalDateTime.now());
 
         if (!TransactionSynchronizationManager.isSynchronizationActive()) {
-            transcodingJobProducer.publish(message);
+            transcodingJobProducer.publish(message, priority);
             return;
         }
 
         TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
             @Override
             public void afterCommit() {
-                transcodingJobProducer.publish(message);
+                transcodingJobProducer.publish(message, priority);
             }
         });
     }
@@ -632,6 +815,25 @@ public class VideoService {
         });
     }
 
+    private void updateVideoMapAfterCommit(Video video) {
+        Runnable updateTask = () -> {
+            videoMapIndexService.add(video);
+            evictVideoMapCacheFor(video);
+        };
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            updateTask.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                updateTask.run();
+            }
+        });
+    }
+
     private long toEpochMillis(LocalDateTime value) {
         if (value == null) {
             return Instant.now().toEpochMilli();
@@ -640,21 +842,29 @@ public class VideoService {
     }
 
     private long resolveDurationSeconds(Video video) {
-        if (video.getDurationSeconds() == null || video.getDurationSeconds() <= 0) {
+        return resolveDurationSeconds(video.getDurationSeconds());
+    }
+
+    private long resolveDurationSeconds(Long durationSeconds) {
+        if (durationSeconds == null || durationSeconds <= 0) {
             return 1L;
         }
-        return video.getDurationSeconds();
+        return durationSeconds;
     }
 
     private boolean isPremiereEnabled(Video video) {
-        if (!Boolean.TRUE.equals(video.getPremiereEnabled())) {
+        return isPremiereEnabled(video.getPremiereEnabled(), video.getScheduledAt(), video.getCreatedAt());
+    }
+
+    private boolean isPremiereEnabled(Boolean premiereEnabled, LocalDateTime scheduledAt, LocalDateTime createdAt) {
+        if (!Boolean.TRUE.equals(premiereEnabled)) {
             return false;
         }
-        if (video.getScheduledAt() == null || video.getCreatedAt() == null) {
+        if (scheduledAt == null || createdAt == null) {
             return false;
         }
         // Guard for legacy rows where unscheduled uploads were represented as past scheduled times.
-        return !video.getScheduledAt().isBefore(video.getCreatedAt());
+        return !scheduledAt.isBefore(createdAt);
     }
 
     private long computeStreamOffsetSeconds(LocalDateTime scheduledAt, LocalDateTime now) {
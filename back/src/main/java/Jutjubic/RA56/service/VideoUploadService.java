@@ -0,0 +1,193 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.VideoUploadSession;
+import Jutjubic.RA56.dto.VideoUploadStatusResponse;
+import Jutjubic.RA56.repository.VideoUploadSessionRepository;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Resumable video uploads. A session is opened with the final size, chunks are
+ * appended at an explicit offset straight from the request body into a staging file
+ * on the storage volume, and the bytes already on disk are the resume point: a client
+ * whose connection dropped asks for the offset and continues from there. Staging and
+ * video storage share a volume, so finishing an upload is a rename.
+ */
+@Service
+public class VideoUploadService {
+	private static final Logger logger = LoggerFactory.getLogger(VideoUploadService.class);
+
+	private final VideoUploadSessionRepository sessionRepository;
+	private final FileStorageService fileStorageService;
+	private final Path stagingLocation;
+	private final long sessionTtlHours;
+
+	public VideoUploadService(
+			VideoUploadSessionRepository sessionRepository,
+			FileStorageService fileStorageService,
+			@Value("${app.uploads.staging-dir:storage/uploads}") String stagingDir,
+			@Value("${app.uploads.session-ttl-hours:24}") long sessionTtlHours) {
+		this.sessionRepository = sessionRepository;
+		this.fileStorageService = fileStorageService;
+		this.sessionTtlHours = Math.max(1L, sessionTtlHours);
+		this.stagingLocation = Paths.get(stagingDir).toAbsolutePath().normalize();
+		try {
+			Files.createDirectories(this.stagingLocation);
+		} catch (IOException ex) {
+			throw new RuntimeException("Could not create the upload staging directory.", ex);
+		}
+	}
+
+	public VideoUploadStatusResponse startUpload(String fileName, String contentType, long sizeBytes, String ownerEmail) {
+		if (!"video/mp4".equals(contentType)) {
+			throw new IllegalArgumentException("Invalid video format. Only MP4 is allowed.");
+		}
+		if (sizeBytes <= 0 || sizeBytes > FileStorageService.MAX_VIDEO_SIZE) {
+			throw new IllegalArgumentException("Video size must be between 1 byte and 200MB.");
+		}
+
+		VideoUploadSession session = new VideoUploadSession();
+		session.setId(UUID.randomUUID().toString());
+		session.setOwnerEmail(ownerEmail);
+		session.setOriginalFileName(fileName);
+		session.setContentType(contentType);
+		session.setSizeBytes(sizeBytes);
+		sessionRepository.save(session);
+		return new VideoUploadStatusResponse(session.getId(), 0L, sizeBytes, false);
+	}
+
+	public VideoUploadStatusResponse getStatus(String uploadId, String ownerEmail) {
+		VideoUploadSession session = requireSession(uploadId, ownerEmail);
+		long offset = currentOffset(uploadId);
+		return new VideoUploadStatusResponse(uploadId, offset, session.getSizeBytes(), offset == session.getSizeBytes());
+	}
+
+	/**
+	 * Appends the body at {@code offset}, which must equal the bytes already received.
+	 * Whatever arrives before a disconnect stays on disk and counts toward the offset.
+	 */
+	public VideoUploadStatusResponse appendChunk(String uploadId, long offset, InputStream body, String ownerEmail) {
+		VideoUploadSession session = requireSession(uploadId, ownerEmail);
+		long sizeBytes = session.getSizeBytes();
+		Path stagingFile = stagingPath(uploadId);
+
+		try (FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			// The lock also works across containers sharing the volume on one host.
+			FileLock lock = channel.tryLock();
+			if (lock == null) {
+				throw new IllegalStateException("Another chunk of this upload is being written.");
+			}
+			try {
+				long current = channel.size();
+				if (offset != current) {
+					throw new IllegalStateException("Upload offset mismatch. Expected offset " + current + ".");
+				}
+
+				ReadableByteChannel source = Channels.newChannel(body);
+				long position = current;
+				while (position < sizeBytes) {
+					long written = channel.transferFrom(source, position, sizeBytes - position);
+					if (written <= 0) {
+						break;
+					}
+					position += written;
+				}
+				channel.force(false);
+
+				if (position == sizeBytes && body.read() != -1) {
+					throw new IllegalArgumentException("Chunk exceeds the declared upload size.");
+				}
+				return new VideoUploadStatusResponse(uploadId, position, sizeBytes, position == sizeBytes);
+			} finally {
+				lock.release();
+			}
+		} catch (IOException ex) {
+			throw new RuntimeException("Upload interrupted. Resume from the current offset.", ex);
+		}
+	}
+
+	/** Moves a complete upload into video storage and returns its stored file name. The session is kept until {@link #discard}. */
+	public String promote(String uploadId, String ownerEmail) {
+		VideoUploadSession session = requireSession(uploadId, ownerEmail);
+		if (currentOffset(uploadId) != session.getSizeBytes()) {
+			throw new IllegalStateException("Upload is not complete.");
+		}
+		return fileStorageService.adoptVideo(stagingPath(uploadId), session.getOriginalFileName());
+	}
+
+	/** Puts a promoted file back into staging so a failed finalize can be retried without re-uploading. */
+	public void restore(String uploadId, String videoFileName) {
+		if (!Files.exists(fileStorageService.resolveVideoPath(videoFileName))) {
+			return;
+		}
+		try {
+			fileStorageService.restageVideo(videoFileName, stagingPath(uploadId));
+		} catch (IOException ex) {
+			logger.error("Could not return video {} to upload {}", videoFileName, uploadId, ex);
+		}
+	}
+
+	public void discard(String uploadId) {
+		sessionRepository.deleteById(uploadId);
+		try {
+			Files.deleteIfExists(stagingPath(uploadId));
+		} catch (IOException ex) {
+			logger.warn("Could not delete staging file for upload {}", uploadId, ex);
+		}
+	}
+
+	@Scheduled(cron = "${app.uploads.cleanup-cron:0 30 * * * ?}")
+	public void discardExpiredUploads() {
+		LocalDateTime cutoff = LocalDateTime.now().minusHours(sessionTtlHours);
+		int discarded = 0;
+		for (VideoUploadSession session : sessionRepository.findByCreatedAtBefore(cutoff)) {
+			discard(session.getId());
+			discarded++;
+		}
+		if (discarded > 0) {
+			logger.info("Discarded {} expired upload sessions", discarded);
+		}
+	}
+
+	private VideoUploadSession requireSession(String uploadId, String ownerEmail) {
+		VideoUploadSession session = sessionRepository.findById(uploadId)
+				.orElseThrow(() -> new IllegalArgumentException("Upload session not found."));
+		if (!session.getOwnerEmail().equalsIgnoreCase(ownerEmail)) {
+			throw new AccessDeniedException("Upload session belongs to another user.");
+		}
+		return session;
+	}
+
+	private long currentOffset(String uploadId) {
+		try {
+			Path stagingFile = stagingPath(uploadId);
+			return Files.exists(stagingFile) ? Files.size(stagingFile) : 0L;
+		} catch (IOException ex) {
+			throw new RuntimeException("Could not read upload progress.", ex);
+		}
+	}
+
+	private Path stagingPath(String uploadId) {
+		Path path = stagingLocation.resolve(uploadId + ".part").normalize();
+		if (!path.startsWith(stagingLocation)) {
+			throw new IllegalArgumentException("Invalid upload id.");
+		}
+		return path;
+	}
+}
@@ -0,0 +1,82 @@
+package Jutjubic.RA56.service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Accumulates view increments per video in striped counters and periodically
+ * applies them to {@code videos.views} in one batched statement, so concurrent
+ * viewers of the same video never wait on its row lock. Stored counts lag by at
+ * most one flush interval ({@code app.video-views.flush-interval-ms}).
+ */
+@Service
+public class VideoViewCounterService {
+	private static final Logger logger = LoggerFactory.getLogger(VideoViewCounterService.class);
+
+	private static final String FLUSH_SQL = "UPDATE videos SET views = COALESCE(views, 0) + ? WHERE id = ?";
+
+	private final ConcurrentMap<Long, LongAdder> pendingViews = new ConcurrentHashMap<>();
+	private final JdbcTemplate jdbcTemplate;
+	private final VideoMapIndexService videoMapIndexService;
+
+	public VideoViewCounterService(JdbcTemplate jdbcTemplate, VideoMapIndexService videoMapIndexService) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.videoMapIndexService = videoMapIndexService;
+	}
+
+	public void recordView(Long videoId) {
+		pendingViews.computeIfAbsent(videoId, id -> new LongAdder()).increment();
+	}
+
+	public long getPendingViews(Long videoId) {
+		LongAdder adder = pendingViews.get(videoId);
+		return adder == null ? 0L : adder.sum();
+	}
+
+	@Scheduled(
+			fixedDelayString = "${app.video-views.flush-interval-ms:5000}",
+			initialDelayString = "${app.video-views.flush-interval-ms:5000}"
+	)
+	public void flush() {
+		List<Object[]> batch = new ArrayList<>();
+		for (Map.Entry<Long, LongAdder> entry : pendingViews.entrySet()) {
+			long delta = entry.getValue().sumThenReset();
+			if (delta > 0) {
+				batch.add(new Object[] { delta, entry.getKey() });
+			}
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		try {
+			jdbcTemplate.batchUpdate(FLUSH_SQL, batch);
+		} catch (RuntimeException ex) {
+			logger.error("Failed flushing {} pending view counters, keeping them for the next run", batch.size(), ex);
+			for (Object[] row : batch) {
+				pendingViews.computeIfAbsent((Long) row[1], id -> new LongAdder()).add((Long) row[0]);
+			}
+			return;
+		}
+
+		// Map clusters pick the most viewed video per tile; keep the index in step with the stored counts.
+		for (Object[] row : batch) {
+			videoMapIndexService.addViews((Long) row[1], (Long) row[0]);
+		}
+	}
+
+	@PreDestroy
+	public void flushOnShutdown() {
+		flush();
+	}
+}
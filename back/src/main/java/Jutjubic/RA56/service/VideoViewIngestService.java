@@ -0,0 +1,236 @@
+package Jutjubic.RA56.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Hands view events to a bounded in-process queue that a single writer thread
+ * drains into {@code video_views} with multi-row INSERT statements, updating the
+ * {@code video_view_daily} rollup in the same transaction. When the
+ * queue is full the configured {@link OverflowPolicy} decides whether callers
+ * wait (backpressure) or events are dropped. Remaining events are written on
+ * shutdown.
+ */
+@Service
+public class VideoViewIngestService {
+	private static final Logger logger = LoggerFactory.getLogger(VideoViewIngestService.class);
+
+	private static final String INSERT_PREFIX = "INSERT INTO video_views (video_id, viewed_at) VALUES ";
+	private static final long RETRY_BACKOFF_MS = 1000L;
+
+	public enum OverflowPolicy {
+		BLOCK,
+		DROP_NEWEST,
+		DROP_OLDEST
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+	private final VideoViewRollupService videoViewRollupService;
+	private final TransactionTemplate transactionTemplate;
+	private final BlockingQueue<ViewEvent> queue;
+	private final int batchSize;
+	private final long maxWaitMs;
+	private final long offerTimeoutMs;
+	private final OverflowPolicy overflowPolicy;
+	private final Timer flushTimer;
+	private final Counter insertedCounter;
+	private final Counter droppedCounter;
+	private final Counter failedFlushCounter;
+
+	private final List<ViewEvent> inFlight = new ArrayList<>();
+
+	private volatile boolean running;
+	private Thread writerThread;
+
+	public VideoViewIngestService(
+			JdbcTemplate jdbcTemplate,
+			VideoViewRollupService videoViewRollupService,
+			PlatformTransactionManager transactionManager,
+			MeterRegistry meterRegistry,
+			@Value("${app.video-views.ingest.queue-capacity:50000}") int queueCapacity,
+			@Value("${app.video-views.ingest.batch-size:1000}") int batchSize,
+			@Value("${app.video-views.ingest.max-wait-ms:500}") long maxWaitMs,
+			@Value("${app.video-views.ingest.offer-timeout-ms:50}") long offerTimeoutMs,
+			@Value("${app.video-views.ingest.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.videoViewRollupService = videoViewRollupService;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+		// Two bind parameters per row; stay well under the PostgreSQL limit of 65535.
+		this.batchSize = Math.max(1, Math.min(10_000, batchSize));
+		this.maxWaitMs = Math.max(1L, maxWaitMs);
+		this.offerTimeoutMs = Math.max(0L, offerTimeoutMs);
+		this.overflowPolicy = overflowPolicy;
+
+		Gauge.builder("app_video_views_queue_depth", queue, BlockingQueue::size)
+				.description("View events waiting to be written to video_views")
+				.register(meterRegistry);
+		this.flushTimer = Timer.builder("app_video_views_flush_latency")
+				.description("Time spent writing one batch of view events")
+				.register(meterRegistry);
+		this.insertedCounter = Counter.builder("app_video_views_inserted_total")
+				.description("View events written to video_views")
+				.register(meterRegistry);
+		this.droppedCounter = Counter.builder("app_video_views_dropped_total")
+				.description("View events dropped because the ingest queue was full")
+				.register(meterRegistry);
+		this.failedFlushCounter = Counter.builder("app_video_views_flush_failures_total")
+				.description("Failed attempts to write a batch of view events")
+				.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void start() {
+		running = true;
+		writerThread = new Thread(this::runWriter, "video-view-ingest");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		if (writerThread != null) {
+			writerThread.interrupt();
+			try {
+				writerThread.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		List<ViewEvent> remaining = new ArrayList<>();
+		if (writerThread == null || !writerThread.isAlive()) {
+			// The writer has stopped; whatever it was holding goes out first, then the queue backlog.
+			remaining.addAll(inFlight);
+			inFlight.clear();
+		} else {
+			// Still inside a write: its batch stays with the writer, only the queue backlog is flushed here.
+			logger.warn("View ingest writer did not stop in time; leaving its in-flight batch to it");
+		}
+		queue.drainTo(remaining);
+		for (int from = 0; from < remaining.size(); from += batchSize) {
+			List<ViewEvent> batch = remaining.subList(from, Math.min(remaining.size(), from + batchSize));
+			if (!writeBatch(batch)) {
+				logger.error("Lost {} view events on shutdown", remaining.size() - from);
+				return;
+			}
+		}
+	}
+
+	public void enqueue(Long videoId, LocalDateTime viewedAt) {
+		ViewEvent event = new ViewEvent(videoId, viewedAt);
+		switch (overflowPolicy) {
+			case BLOCK -> {
+				try {
+					if (!queue.offer(event, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+						droppedCounter.increment();
+					}
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					droppedCounter.increment();
+				}
+			}
+			case DROP_NEWEST -> {
+				if (!queue.offer(event)) {
+					droppedCounter.increment();
+				}
+			}
+			case DROP_OLDEST -> {
+				while (!queue.offer(event)) {
+					if (queue.poll() != null) {
+						droppedCounter.increment();
+					}
+				}
+			}
+		}
+	}
+
+	private void runWriter() {
+		while (running) {
+			try {
+				if (inFlight.isEmpty()) {
+					ViewEvent first = queue.poll(maxWaitMs, TimeUnit.MILLISECONDS);
+					if (first == null) {
+						continue;
+					}
+					inFlight.add(first);
+				}
+				queue.drainTo(inFlight, batchSize - inFlight.size());
+				if (writeBatch(inFlight)) {
+					inFlight.clear();
+				} else {
+					TimeUnit.MILLISECONDS.sleep(RETRY_BACKOFF_MS);
+				}
+			} catch (InterruptedException ex) {
+				if (!running) {
+					break;
+				}
+			}
+		}
+	}
+
+	private boolean writeBatch(List<ViewEvent> batch) {
+		if (batch.isEmpty()) {
+			return true;
+		}
+
+		StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + batch.size() * 8);
+		sql.append(INSERT_PREFIX);
+		Object[] args = new Object[batch.size() * 2];
+		Map<VideoViewRollupService.DailyKey, Long> dailyCounts = new HashMap<>();
+		for (int i = 0; i < batch.size(); i++) {
+			ViewEvent event = batch.get(i);
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append("(?, ?)");
+			args[i * 2] = event.videoId();
+			args[i * 2 + 1] = Timestamp.valueOf(event.viewedAt());
+			dailyCounts.merge(
+					new VideoViewRollupService.DailyKey(event.videoId(), event.viewedAt().toLocalDate()),
+					1L,
+					Long::sum
+			);
+		}
+
+		long start = System.nanoTime();
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				jdbcTemplate.update(sql.toString(), args);
+				videoViewRollupService.addDailyCounts(dailyCounts);
+			});
+			insertedCounter.increment(batch.size());
+			return true;
+		} catch (RuntimeException ex) {
+			failedFlushCounter.increment();
+			logger.error("Failed writing {} view events, will retry", batch.size(), ex);
+			return false;
+		} finally {
+			flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private record ViewEvent(Long videoId, LocalDateTime viewedAt) {
+	}
+}
@@ -0,0 +1,93 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.RollupBackfillResponse;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Maintains {@code video_view_daily}, one row per (video, day) holding that day's
+ * view count. The ingest writer adds its batch totals in the same transaction as
+ * the raw {@code video_views} rows; {@link #backfill} rebuilds older days from the
+ * raw table one day per statement.
+ */
+@Service
+public class VideoViewRollupService {
+	private static final Logger logger = LoggerFactory.getLogger(VideoViewRollupService.class);
+
+	private static final String UPSERT_PREFIX = "INSERT INTO video_view_daily (video_id, view_date, views_count) VALUES ";
+	private static final String UPSERT_INCREMENT_SUFFIX = """
+			 ON CONFLICT (video_id, view_date)
+			 DO UPDATE SET views_count = video_view_daily.views_count + EXCLUDED.views_count
+			""";
+	private static final String BACKFILL_DAY_SQL = """
+			INSERT INTO video_view_daily (video_id, view_date, views_count)
+			SELECT vv.video_id, CAST(? AS DATE), COUNT(*)
+			FROM video_views vv
+			WHERE vv.viewed_at >= ?
+			  AND vv.viewed_at < ?
+			GROUP BY vv.video_id
+			ON CONFLICT (video_id, view_date)
+			DO UPDATE SET views_count = EXCLUDED.views_count
+			""";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public VideoViewRollupService(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	public void addDailyCounts(Map<DailyKey, Long> counts) {
+		if (counts.isEmpty()) {
+			return;
+		}
+
+		StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+		Object[] args = new Object[counts.size() * 3];
+		int i = 0;
+		for (Map.Entry<DailyKey, Long> entry : counts.entrySet()) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append("(?, ?, ?)");
+			args[i * 3] = entry.getKey().videoId();
+			args[i * 3 + 1] = Date.valueOf(entry.getKey().viewDate());
+			args[i * 3 + 2] = entry.getValue();
+			i++;
+		}
+		sql.append(UPSERT_INCREMENT_SUFFIX);
+		jdbcTemplate.update(sql.toString(), args);
+	}
+
+	public RollupBackfillResponse backfill(LocalDate fromInclusive, LocalDate toExclusive) {
+		if (fromInclusive == null || toExclusive == null || !fromInclusive.isBefore(toExclusive)) {
+			throw new IllegalArgumentException("Backfill range must have from before to.");
+		}
+		if (toExclusive.isAfter(LocalDate.now())) {
+			// Today's row is still being incremented by the ingest writer; recounting it could race.
+			throw new IllegalArgumentException("Backfill range cannot include today.");
+		}
+
+		int days = 0;
+		long rows = 0;
+		for (LocalDate day = fromInclusive; day.isBefore(toExclusive); day = day.plusDays(1)) {
+			rows += jdbcTemplate.update(
+					BACKFILL_DAY_SQL,
+					Date.valueOf(day),
+					Timestamp.valueOf(day.atStartOfDay()),
+					Timestamp.valueOf(day.plusDays(1).atStartOfDay())
+			);
+			days++;
+		}
+		logger.info("Rebuilt video_view_daily for {} days ({} rows) from {} to {}", days, rows, fromInclusive, toExclusive);
+		return new RollupBackfillResponse(fromInclusive, toExclusive, days, rows);
+	}
+
+	public record DailyKey(Long videoId, LocalDate viewDate) {
+	}
+}
@@ -0,0 +1,128 @@
+package Jutjubic.RA56.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class HlsSegmentCacheServiceTests {
+	@TempDir
+	Path hlsDir;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	private VideoService videoService;
+	private HlsSegmentCacheService cacheService;
+
+	@BeforeEach
+	void setUp() {
+		videoService = Mockito.mock(VideoService.class);
+		Mockito.when(videoService.getHlsResource(Mockito.eq("v.mp4"), Mockito.anyString()))
+				.thenAnswer(invocation -> hlsDir.resolve(invocation.<String>getArgument(1)));
+		cacheService = new HlsSegmentCacheService(videoService, new MediaFileService(), meterRegistry, 1, 512, 1, 4, 1);
+	}
+
+	@AfterEach
+	void shutDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void concurrentMissesShareOneLoadAndLaterHitsSkipStorage() throws Exception {
+		write("720p/segment_000.ts", 1024);
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Mockito.when(videoService.getHlsResource("v.mp4", "720p/segment_000.ts")).thenAnswer(invocation -> {
+			loading.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			return hlsDir.resolve("720p/segment_000.ts");
+		});
+
+		List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+		responses.add(executor.submit(() -> serve("720p/segment_000.ts")));
+		Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 3; i++) {
+			responses.add(executor.submit(() -> serve("720p/segment_000.ts")));
+		}
+		while (meterRegistry.get("app_hls_segment_cache_requests_total").tag("result", "coalesced").counter().count() < 3) {
+			Thread.sleep(5);
+		}
+		release.countDown();
+		for (Future<MockHttpServletResponse> response : responses) {
+			Assertions.assertEquals(1024, response.get(5, TimeUnit.SECONDS).getContentAsByteArray().length);
+		}
+
+		MockHttpServletRequest ranged = new MockHttpServletRequest("GET", "/");
+		ranged.addHeader(HttpHeaders.RANGE, "bytes=0-99");
+		MockHttpServletResponse hit = new MockHttpServletResponse();
+		cacheService.serve("v.mp4", "720p/segment_000.ts", "video/mp2t", MediaFileService.CACHE_IMMUTABLE, ranged, hit);
+
+		Assertions.assertEquals(206, hit.getStatus());
+		Mockito.verify(videoService, Mockito.times(1)).getHlsResource("v.mp4", "720p/segment_000.ts");
+		Assertions.assertEquals(1.0, meterRegistry.get("app_hls_segment_cache_requests_total").tag("result", "hit").counter().count());
+		// Four full responses answered from the loaded buffer, then the ranged hit.
+		Assertions.assertEquals(4 * 1024.0 + 100.0, meterRegistry.get("app_hls_segment_cache_served_bytes_total").counter().count());
+	}
+
+	@Test
+	void evictsLaterSegmentsBeforeEarlyOnes() throws Exception {
+		write("720p/segment_000.ts", 400 * 1024);
+		write("720p/segment_007.ts", 400 * 1024);
+		write("720p/segment_008.ts", 400 * 1024);
+
+		serve("720p/segment_000.ts");
+		serve("720p/segment_007.ts");
+		serve("720p/segment_008.ts");
+
+		HlsSegmentCacheService.SegmentKey early = HlsSegmentCacheService.SegmentKey.of("v.mp4", "720p/segment_000.ts");
+		Assertions.assertNotNull(cacheService.get(early));
+		Assertions.assertNull(cacheService.get(HlsSegmentCacheService.SegmentKey.of("v.mp4", "720p/segment_007.ts")));
+		Assertions.assertNotNull(cacheService.get(HlsSegmentCacheService.SegmentKey.of("v.mp4", "720p/segment_008.ts")));
+		Assertions.assertTrue(HlsSegmentCacheService.isEarly("init_720p.mp4", 1));
+		Assertions.assertFalse(HlsSegmentCacheService.isEarly("c001_000.m4s", 1));
+	}
+
+	@Test
+	void boundsMappedPacksByBytesKeepingTheFirstPack() throws Exception {
+		write("720p/pack_000.ts", 400 * 1024);
+		write("720p/pack_001.ts", 400 * 1024);
+		write("720p/pack_002.ts", 400 * 1024);
+
+		serve("720p/pack_000.ts");
+		serve("720p/pack_001.ts");
+		serve("720p/pack_002.ts");
+
+		Assertions.assertNotNull(cacheService.get(HlsSegmentCacheService.SegmentKey.of("v.mp4", "720p/pack_000.ts")));
+		Assertions.assertNull(cacheService.get(HlsSegmentCacheService.SegmentKey.of("v.mp4", "720p/pack_001.ts")));
+		Assertions.assertNotNull(cacheService.get(HlsSegmentCacheService.SegmentKey.of("v.mp4", "720p/pack_002.ts")));
+		Assertions.assertEquals(800.0 * 1024, meterRegistry.get("app_hls_segment_cache_mapped_bytes").gauge().value());
+	}
+
+	private MockHttpServletResponse serve(String resourcePath) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		cacheService.serve("v.mp4", resourcePath, "video/mp2t", MediaFileService.CACHE_IMMUTABLE,
+				new MockHttpServletRequest("GET", "/"), response);
+		return response;
+	}
+
+	private void write(String resourcePath, int size) throws Exception {
+		Path path = hlsDir.resolve(resourcePath);
+		Files.createDirectories(path.getParent());
+		Files.write(path, new byte[size]);
+	}
+}
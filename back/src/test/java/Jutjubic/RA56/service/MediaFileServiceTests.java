@@ -0,0 +1,120 @@
+package Jutjubic.RA56.service;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class MediaFileServiceTests {
+	private final MediaFileService mediaFileService = new MediaFileService();
+
+	@TempDir
+	Path tempDir;
+
+	private Path file;
+
+	@BeforeEach
+	void writeFile() throws Exception {
+		file = tempDir.resolve("segment_000.ts");
+		Files.writeString(file, "0123456789abcdefghij", StandardCharsets.US_ASCII);
+	}
+
+	@Test
+	void servesWholeFileWithValidators() throws Exception {
+		MockHttpServletResponse response = serve(new MockHttpServletRequest("GET", "/"));
+
+		Assertions.assertEquals(200, response.getStatus());
+		Assertions.assertEquals("0123456789abcdefghij", response.getContentAsString());
+		Assertions.assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+		Assertions.assertNotNull(response.getHeader(HttpHeaders.ETAG));
+		Assertions.assertNotNull(response.getHeader(HttpHeaders.LAST_MODIFIED));
+	}
+
+	@Test
+	void servesSingleRangeAsPartialContent() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader(HttpHeaders.RANGE, "bytes=5-9");
+
+		MockHttpServletResponse response = serve(request);
+
+		Assertions.assertEquals(206, response.getStatus());
+		Assertions.assertEquals("56789", response.getContentAsString());
+		Assertions.assertEquals("bytes 5-9/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+	}
+
+	@Test
+	void servesRangeOfMappedPack() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader(HttpHeaders.RANGE, "bytes=10-14");
+
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		long sent = mediaFileService.serve(mediaFileService.map(file, "video/mp2t"), MediaFileService.CACHE_IMMUTABLE,
+				request, response);
+
+		Assertions.assertEquals(206, response.getStatus());
+		Assertions.assertEquals("abcde", response.getContentAsString());
+		Assertions.assertEquals("bytes 10-14/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+		Assertions.assertEquals(5, sent);
+	}
+
+	@Test
+	void servesSeveralRangesAsMultipart() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader(HttpHeaders.RANGE, "bytes=0-1,-3");
+
+		MockHttpServletResponse response = serve(request);
+
+		Assertions.assertEquals(206, response.getStatus());
+		Assertions.assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+		String body = response.getContentAsString();
+		Assertions.assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+		Assertions.assertTrue(body.contains("Content-Range: bytes 17-19/20\r\n\r\nhij\r\n"));
+		Assertions.assertEquals(body.length(), response.getContentLengthLong());
+	}
+
+	@Test
+	void rejectsUnsatisfiableRange() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader(HttpHeaders.RANGE, "bytes=50-");
+
+		MockHttpServletResponse response = serve(request);
+
+		Assertions.assertEquals(416, response.getStatus());
+		Assertions.assertEquals("bytes */20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+	}
+
+	@Test
+	void answersMatchingEtagWithNotModified() throws Exception {
+		String etag = serve(new MockHttpServletRequest("GET", "/")).getHeader(HttpHeaders.ETAG);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+
+		MockHttpServletResponse response = serve(request);
+
+		Assertions.assertEquals(304, response.getStatus());
+		Assertions.assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	void mergesOverlappingRanges() {
+		List<MediaFileService.ByteRange> ranges = MediaFileService.parseRanges("bytes=10-19,0-4,3-8", 20);
+
+		Assertions.assertEquals(
+				List.of(new MediaFileService.ByteRange(0, 8), new MediaFileService.ByteRange(10, 19)),
+				ranges
+		);
+	}
+
+	private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		mediaFileService.serve(file, "video/mp2t", MediaFileService.CACHE_IMMUTABLE, request, response);
+		return response;
+	}
+}
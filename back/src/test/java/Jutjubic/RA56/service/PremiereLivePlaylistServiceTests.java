@@ -0,0 +1,84 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.Video;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+public class PremiereLivePlaylistServiceTests {
+	private static final String BASE = "http://localhost/api/videos/hls/v.mp4/720p/";
+
+	private final PremiereLivePlaylistService.VodPlaylist vod = PremiereLivePlaylistService.parse(
+			"#EXTM3U\n#EXT-X-VERSION:7\n#EXT-X-TARGETDURATION:4\n#EXT-X-PLAYLIST-TYPE:VOD\n"
+					+ "#EXT-X-MAP:URI=\"init_720p.mp4\"\n"
+					+ "#EXTINF:4.000000,\n#EXT-X-BYTERANGE:100@0\npack_000.m4s\n"
+					+ "#EXTINF:4.000000,\n#EXT-X-BYTERANGE:100@100\npack_000.m4s\n"
+					+ "#EXT-X-DISCONTINUITY\n#EXT-X-MAP:URI=\"c001_init_720p.mp4\"\n"
+					+ "#EXTINF:4.000000,\n#EXT-X-BYTERANGE:100@200\npack_000.m4s\n"
+					+ "#EXTINF:2.000000,\n#EXT-X-BYTERANGE:50@300\npack_000.m4s\n#EXT-X-ENDLIST\n");
+
+	@Test
+	void everyViewerGetsTheSameWindowUntilTheNextSegmentAirs() {
+		PremiereLivePlaylistService.LivePlaylist early = PremiereLivePlaylistService.window(vod, BASE, 4.2, 3);
+		PremiereLivePlaylistService.LivePlaylist later = PremiereLivePlaylistService.window(vod, BASE, 7.9, 3);
+
+		Assertions.assertEquals(early, new PremiereLivePlaylistService.LivePlaylist(later.content(), 4L, later.etag()));
+		Assertions.assertEquals(1L, later.maxAgeSeconds());
+		Assertions.assertTrue(early.content().contains("#EXT-X-MEDIA-SEQUENCE:0\n#EXT-X-DISCONTINUITY-SEQUENCE:0\n"
+				+ "#EXT-X-MAP:URI=\"" + BASE + "init_720p.mp4\"\n#EXTINF:4.000000,\n#EXT-X-BYTERANGE:100@0\n" + BASE + "pack_000.m4s\n"));
+		Assertions.assertFalse(early.content().contains("@200"));
+		Assertions.assertFalse(early.content().contains("#EXT-X-ENDLIST"));
+	}
+
+	@Test
+	void slidesPastDiscontinuitiesAndEndsAfterTheLastSegment() {
+		PremiereLivePlaylistService.LivePlaylist sliding = PremiereLivePlaylistService.window(vod, BASE, 12.5, 1);
+
+		Assertions.assertTrue(sliding.content().contains("#EXT-X-MEDIA-SEQUENCE:3\n#EXT-X-DISCONTINUITY-SEQUENCE:1\n"
+				+ "#EXT-X-MAP:URI=\"" + BASE + "c001_init_720p.mp4\"\n#EXTINF:2.000000,\n#EXT-X-BYTERANGE:50@300\n"));
+		Assertions.assertFalse(sliding.content().contains("#EXT-X-DISCONTINUITY\n"));
+		Assertions.assertFalse(sliding.content().contains("#EXT-X-ENDLIST"));
+
+		PremiereLivePlaylistService.LivePlaylist ended = PremiereLivePlaylistService.window(vod, BASE, 14.0, 3);
+		Assertions.assertTrue(ended.content().endsWith("#EXT-X-ENDLIST\n"));
+		Assertions.assertTrue(ended.content().contains("#EXT-X-BYTERANGE:100@100\n" + BASE + "pack_000.m4s\n"
+				+ "#EXT-X-DISCONTINUITY\n#EXT-X-MAP:URI=\"" + BASE + "c001_init_720p.mp4\"\n"));
+		Assertions.assertNotEquals(sliding.etag(), ended.etag());
+	}
+
+	@Test
+	void rereadsReplacedPlaylistsAndFallsBackToPacksOnceTheEventPlaylistIsGone(@TempDir Path hlsDir) throws Exception {
+		LocalDateTime start = LocalDateTime.of(2025, 6, 1, 20, 0);
+		Video video = new Video();
+		video.setVideoPath("v.mp4");
+		video.setScheduledAt(start);
+		VideoService videoService = Mockito.mock(VideoService.class);
+		AdaptiveStreamingService adaptiveStreamingService = Mockito.mock(AdaptiveStreamingService.class);
+		Mockito.when(videoService.getStartedPremiere(Mockito.eq(1L), Mockito.any())).thenReturn(video);
+		Mockito.when(videoService.getHlsResource(Mockito.eq("v.mp4"), Mockito.anyString()))
+				.thenAnswer(invocation -> hlsDir.resolve(invocation.<String>getArgument(1)));
+		Mockito.when(adaptiveStreamingService.resolveHlsResource(Mockito.eq("v.mp4"), Mockito.anyString()))
+				.thenAnswer(invocation -> hlsDir.resolve(invocation.<String>getArgument(1)));
+		PremiereLivePlaylistService service =
+				new PremiereLivePlaylistService(videoService, adaptiveStreamingService, "http://localhost", 3);
+		Path loose = Files.createDirectories(hlsDir.resolve("720p")).resolve("index.m3u8");
+		String complete = "#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXTINF:4.000000,\n%s\n#EXT-X-ENDLIST\n";
+		Files.writeString(loose, complete.formatted("segment_000.ts"));
+		Files.setLastModifiedTime(loose, FileTime.fromMillis(1_000));
+
+		Assertions.assertTrue(service.render(1L, "720p/index.m3u8", start.plusSeconds(1)).content().contains("/segment_000.ts\n"));
+
+		Files.writeString(loose, complete.formatted("c000_000.ts"));
+		Files.setLastModifiedTime(loose, FileTime.fromMillis(2_000));
+		Assertions.assertTrue(service.render(1L, "720p/index.m3u8", start.plusSeconds(1)).content().contains("/c000_000.ts\n"));
+
+		Files.delete(loose);
+		Files.writeString(hlsDir.resolve("720p/packed.m3u8"), complete.formatted("#EXT-X-BYTERANGE:10@0\npack_000.ts"));
+		Assertions.assertTrue(service.render(1L, "720p/index.m3u8", start.plusSeconds(1)).content().contains("/pack_000.ts\n"));
+	}
+}
@@ -0,0 +1,186 @@
+package Jutjubic.RA56.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+/** Runs the store against a minimal in-process S3 endpoint (path-style PUT/GET/HEAD/DELETE, as MinIO serves). */
+public class S3BlobStoreTests {
+	private static final String BUCKET = "videos-bucket";
+
+	@TempDir
+	Path root;
+
+	private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+	private HttpServer server;
+	private S3Client client;
+	private S3BlobStore blobStore;
+
+	@BeforeEach
+	void startStandIn() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::handle);
+		server.start();
+
+		client = S3Client.builder()
+				.endpointOverride(URI.create("http://127.0.0.1:" + server.getAddress().getPort()))
+				.region(Region.US_EAST_1)
+				.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access", "secret")))
+				.forcePathStyle(true)
+				.requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+				.responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED)
+				.build();
+		blobStore = new S3BlobStore(client, BUCKET, new ShardedLocalBlobStore(root.toString()), 10);
+	}
+
+	@AfterEach
+	void stopStandIn() {
+		client.close();
+		server.stop(0);
+	}
+
+	@Test
+	void publishesTreesAndReadsBackAfterCacheEviction() throws Exception {
+		Path segment = blobStore.localPath("streams/clip.mp4/hls/720p/segment_000.ts");
+		Files.createDirectories(segment.getParent());
+		Files.writeString(segment, "segment-bytes", StandardCharsets.UTF_8);
+
+		blobStore.publishTree("streams/clip.mp4/hls");
+		Assertions.assertArrayEquals("segment-bytes".getBytes(StandardCharsets.UTF_8),
+				objects.get("streams/clip.mp4/hls/720p/segment_000.ts"));
+
+		Files.delete(segment);
+		Assertions.assertTrue(blobStore.exists("streams/clip.mp4/hls/720p/segment_000.ts"));
+		Path fetched = blobStore.fetch("streams/clip.mp4/hls/720p/segment_000.ts");
+		Assertions.assertEquals(segment, fetched);
+		Assertions.assertEquals("segment-bytes", Files.readString(fetched, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void missingAndDeletedObjectsAreReportedAsAbsent() throws Exception {
+		Assertions.assertFalse(blobStore.exists("videos/missing.mp4"));
+		Assertions.assertNull(blobStore.fetch("videos/missing.mp4"));
+
+		Path video = blobStore.localPath("videos/clip.mp4");
+		Files.createDirectories(video.getParent());
+		Files.writeString(video, "video", StandardCharsets.UTF_8);
+		blobStore.publish("videos/clip.mp4");
+		blobStore.delete("videos/clip.mp4");
+
+		Assertions.assertFalse(objects.containsKey("videos/clip.mp4"));
+		Assertions.assertFalse(blobStore.exists("videos/clip.mp4"));
+	}
+
+	@Test
+	void evictsLeastRecentlyReadLocalCopiesBeyondTheBudget() throws Exception {
+		Path first = write("thumbnails/a.jpg", "aaaaaa");
+		blobStore.publish("thumbnails/a.jpg");
+		Path second = write("thumbnails/b.jpg", "bbbbbb");
+		Path unpublished = write("thumbnails/c.jpg", "cccccc");
+		blobStore.publish("thumbnails/b.jpg");
+
+		Assertions.assertFalse(Files.exists(first));
+		Assertions.assertTrue(Files.exists(second));
+		Assertions.assertTrue(Files.exists(unpublished));
+
+		Assertions.assertEquals("aaaaaa", Files.readString(blobStore.fetch("thumbnails/a.jpg"), StandardCharsets.UTF_8));
+		Assertions.assertFalse(Files.exists(second));
+	}
+
+	private Path write(String key, String content) throws IOException {
+		Path path = blobStore.localPath(key);
+		Files.createDirectories(path.getParent());
+		Files.writeString(path, content, StandardCharsets.UTF_8);
+		return path;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String prefix = "/" + BUCKET + "/";
+		String path = exchange.getRequestURI().getPath();
+		String key = path.startsWith(prefix) ? path.substring(prefix.length()) : null;
+		exchange.getResponseHeaders().add("Content-Type", "application/xml");
+		if (key == null) {
+			exchange.sendResponseHeaders(400, -1);
+			exchange.close();
+			return;
+		}
+
+		switch (exchange.getRequestMethod()) {
+			case "PUT" -> {
+				byte[] body = exchange.getRequestBody().readAllBytes();
+				String payloadHash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+				objects.put(key, payloadHash != null && payloadHash.startsWith("STREAMING-") ? decodeAwsChunked(body) : body);
+				exchange.getResponseHeaders().add("ETag", "\"etag\"");
+				exchange.sendResponseHeaders(200, -1);
+			}
+			case "GET", "HEAD" -> {
+				byte[] body = objects.get(key);
+				if (body == null) {
+					byte[] error = ("<Error><Code>NoSuchKey</Code><Message>missing</Message><Key>" + key + "</Key></Error>")
+							.getBytes(StandardCharsets.UTF_8);
+					if (exchange.getRequestMethod().equals("HEAD")) {
+						exchange.sendResponseHeaders(404, -1);
+					} else {
+						exchange.sendResponseHeaders(404, error.length);
+						exchange.getResponseBody().write(error);
+					}
+				} else {
+					exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+					exchange.getResponseHeaders().add("ETag", "\"etag\"");
+					if (exchange.getRequestMethod().equals("HEAD")) {
+						exchange.getResponseHeaders().add("Content-Length", String.valueOf(body.length));
+						exchange.sendResponseHeaders(200, -1);
+					} else {
+						exchange.sendResponseHeaders(200, body.length);
+						exchange.getResponseBody().write(body);
+					}
+				}
+			}
+			case "DELETE" -> {
+				objects.remove(key);
+				exchange.sendResponseHeaders(204, -1);
+			}
+			default -> exchange.sendResponseHeaders(405, -1);
+		}
+		exchange.close();
+	}
+
+	// Signed uploads over plain HTTP arrive as "<hex size>;chunk-signature=...\r\n<data>\r\n" frames.
+	private static byte[] decodeAwsChunked(byte[] body) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int position = 0;
+		while (position < body.length) {
+			int lineEnd = position;
+			while (body[lineEnd] != '\r') {
+				lineEnd++;
+			}
+			String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+			int size = Integer.parseInt(header.split(";")[0], 16);
+			if (size == 0) {
+				break;
+			}
+			out.write(body, lineEnd + 2, size);
+			position = lineEnd + 2 + size + 2;
+		}
+		return out.toByteArray();
+	}
+}
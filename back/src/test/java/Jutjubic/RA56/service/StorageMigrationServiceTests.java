@@ -0,0 +1,63 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.StorageMigrationResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class StorageMigrationServiceTests {
+	@TempDir
+	Path root;
+
+	private ShardedLocalBlobStore blobStore;
+	private StorageMigrationService migrationService;
+
+	@BeforeEach
+	void setUp() {
+		blobStore = new ShardedLocalBlobStore(root.toString());
+		migrationService = new StorageMigrationService(blobStore, root.toString());
+	}
+
+	@Test
+	void shardsKeysByNameHash() {
+		Path path = blobStore.localPath("streams/clip.mp4/hls/720p/segment_000.ts");
+
+		String shard = ShardedLocalBlobStore.shardOf("clip.mp4");
+		Assertions.assertEquals(root.resolve("streams").resolve(shard).resolve("clip.mp4/hls/720p/segment_000.ts"), path);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> blobStore.localPath("streams/clip.mp4/../../x"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> blobStore.localPath("../videos/clip.mp4"));
+	}
+
+	@Test
+	void movesFlatLayoutIntoShardsWhileLegacyPathsStayReadable() throws Exception {
+		write(root.resolve("videos/clip.mp4"), "video");
+		write(root.resolve("streams/clip.mp4/hls/master.m3u8"), "#EXTM3U");
+		write(root.resolve("streams/running.mp4/hls/720p/index.m3u8"), "#EXTM3U");
+
+		Assertions.assertEquals(root.resolve("videos/clip.mp4"), blobStore.fetch("videos/clip.mp4"));
+
+		StorageMigrationResponse first = migrationService.migrate(1);
+		Assertions.assertEquals(1, first.moved());
+		Assertions.assertTrue(first.remaining());
+
+		StorageMigrationResponse second = migrationService.migrate(100);
+		Assertions.assertEquals(1, second.moved());
+		Assertions.assertFalse(second.remaining());
+		// The stream without a master playlist is still being written.
+		Assertions.assertEquals(1, second.skipped());
+
+		Assertions.assertEquals(blobStore.localPath("videos/clip.mp4"), blobStore.fetch("videos/clip.mp4"));
+		Assertions.assertTrue(Files.exists(blobStore.localPath("streams/clip.mp4/hls/master.m3u8")));
+		Assertions.assertTrue(Files.exists(root.resolve("streams/running.mp4")));
+		Assertions.assertEquals(0, migrationService.migrate(100).moved());
+	}
+
+	private void write(Path path, String content) throws Exception {
+		Files.createDirectories(path.getParent());
+		Files.writeString(path, content, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,100 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.repository.VideoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ThumbnailCacheServiceTests {
+	@TempDir
+	Path root;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private FileStorageService fileStorageService;
+	private ThumbnailCacheService cacheService;
+
+	@BeforeEach
+	void setUp() {
+		fileStorageService = new FileStorageService(new ShardedLocalBlobStore(root.toString()),
+				Mockito.mock(BlobReferenceService.class), false, new int[] {320});
+		ThumbnailVariantService variantService =
+				new ThumbnailVariantService(fileStorageService, Mockito.mock(VideoRepository.class), 0.8);
+		cacheService = new ThumbnailCacheService(variantService, new MediaFileService(), meterRegistry, 1, 512);
+	}
+
+	@Test
+	void hitsAreServedWithoutTouchingStorage() throws Exception {
+		Path stored = write("a.png", 1024);
+
+		MockHttpServletResponse first = serve("a.png", null);
+		Files.delete(stored);
+		MockHttpServletResponse second = serve("a.png", null);
+
+		Assertions.assertEquals(200, second.getStatus());
+		Assertions.assertEquals("image/png", second.getContentType());
+		Assertions.assertArrayEquals(first.getContentAsByteArray(), second.getContentAsByteArray());
+		Assertions.assertEquals(first.getHeader(HttpHeaders.ETAG), second.getHeader(HttpHeaders.ETAG));
+
+		MockHttpServletRequest conditional = new MockHttpServletRequest("GET", "/");
+		conditional.addHeader(HttpHeaders.IF_NONE_MATCH, first.getHeader(HttpHeaders.ETAG));
+		MockHttpServletResponse notModified = new MockHttpServletResponse();
+		cacheService.serve("a.png", null, null, MediaFileService.CACHE_IMMUTABLE, conditional, notModified);
+		Assertions.assertEquals(304, notModified.getStatus());
+
+		Assertions.assertEquals(2.0, meterRegistry.get("app_thumbnail_cache_requests_total").tag("result", "hit").counter().count());
+		Assertions.assertEquals(1024.0, meterRegistry.get("app_thumbnail_cache_bytes").gauge().value());
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedToStayWithinCapacity() throws Exception {
+		write("a.png", 400 * 1024);
+		write("b.png", 400 * 1024);
+		write("c.png", 400 * 1024);
+
+		serve("a.png", null);
+		serve("b.png", null);
+		serve("a.png", null);
+		serve("c.png", null);
+
+		Assertions.assertNotNull(cacheService.get("a.png"));
+		Assertions.assertNull(cacheService.get("b.png"));
+		Assertions.assertNotNull(cacheService.get("c.png"));
+		Assertions.assertTrue(cacheService.sizeBytes() <= 1024 * 1024);
+		Assertions.assertEquals(1.0, meterRegistry.get("app_thumbnail_cache_evictions_total").functionCounter().count());
+	}
+
+	@Test
+	void originalServedInPlaceOfAFailedVariantIsNotCachedAsTheVariant() throws Exception {
+		write("broken.png", 1024);
+
+		MockHttpServletResponse fallback = serve("broken.png", 320);
+
+		Assertions.assertEquals(200, fallback.getStatus());
+		Assertions.assertEquals("image/png", fallback.getContentType());
+		Assertions.assertNull(cacheService.get("broken_w320.jpg"));
+	}
+
+	private Path write(String fileName, int size) throws Exception {
+		Path path = fileStorageService.newThumbnailPath(fileName);
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) (i * 31);
+		}
+		return Files.write(path, bytes);
+	}
+
+	private MockHttpServletResponse serve(String fileName, Integer width) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		cacheService.serve(fileName, width, null, MediaFileService.CACHE_IMMUTABLE,
+				new MockHttpServletRequest("GET", "/"), response);
+		return response;
+	}
+}
@@ -0,0 +1,90 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.JobCheckpoint;
+import Jutjubic.RA56.dto.ThumbnailCompressionCandidate;
+import Jutjubic.RA56.repository.JobCheckpointRepository;
+import Jutjubic.RA56.repository.VideoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ThumbnailCompressionServiceTests {
+	private static final LocalDateTime CREATED = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@TempDir
+	Path root;
+
+	private final VideoRepository videoRepository = Mockito.mock(VideoRepository.class);
+	private final JobCheckpointRepository checkpointRepository = Mockito.mock(JobCheckpointRepository.class);
+	private final JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private FileStorageService fileStorageService;
+	private ThumbnailCompressionService compressionService;
+
+	@BeforeEach
+	void setUp() {
+		fileStorageService = new FileStorageService(new ShardedLocalBlobStore(root.toString()),
+				Mockito.mock(BlobReferenceService.class), false, new int[] {160});
+		ThumbnailVariantService variantService = new ThumbnailVariantService(fileStorageService, videoRepository, 0.8);
+		compressionService = new ThumbnailCompressionService(videoRepository, fileStorageService, variantService,
+				checkpointRepository, jdbcTemplate, Mockito.mock(PlatformTransactionManager.class), meterRegistry,
+				30, 2, 0.75, 2);
+		when(checkpointRepository.findById(ThumbnailCompressionService.CHECKPOINT_NAME)).thenReturn(Optional.empty());
+	}
+
+	@AfterEach
+	void tearDown() {
+		compressionService.shutdown();
+	}
+
+	@Test
+	void pagesPastFailuresAndMarksEachBatchWithOneUpdate() throws Exception {
+		writeImage("a.png");
+		writeImage("c.png");
+		ThumbnailCompressionCandidate a = new ThumbnailCompressionCandidate(1L, CREATED, "a.png");
+		ThumbnailCompressionCandidate missing = new ThumbnailCompressionCandidate(2L, CREATED, "missing.png");
+		ThumbnailCompressionCandidate c = new ThumbnailCompressionCandidate(3L, CREATED.plusHours(1), "c.png");
+		when(videoRepository.findUncompressedThumbnailsFirstPage(any(), any())).thenReturn(List.of(a, missing));
+		when(videoRepository.findUncompressedThumbnailsAfter(any(), eq(CREATED), eq(2L), any())).thenReturn(List.of(c));
+		when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any(Object[].class))).thenReturn(List.of(1L, 3L));
+
+		compressionService.compressOldThumbnails();
+
+		// The failed row is behind the cursor and not fetched again in this pass.
+		verify(videoRepository, times(1)).findUncompressedThumbnailsFirstPage(any(), any());
+		verify(jdbcTemplate, times(2)).queryForList(anyString(), eq(Long.class), any(Object[].class));
+
+		ArgumentCaptor<JobCheckpoint> saved = ArgumentCaptor.forClass(JobCheckpoint.class);
+		verify(checkpointRepository, times(2)).save(saved.capture());
+		Assertions.assertTrue(saved.getValue().isAtStart());
+
+		Assertions.assertEquals(2.0, meterRegistry.get("app_thumbnail_compression_compressed_total").counter().count());
+		Assertions.assertEquals(1.0, meterRegistry.get("app_thumbnail_compression_failures_total").counter().count());
+		Assertions.assertTrue(meterRegistry.get("app_thumbnail_compression_throughput_per_core").gauge().value() > 0);
+	}
+
+	private void writeImage(String fileName) throws Exception {
+		BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+		ImageIO.write(image, "png", fileStorageService.newThumbnailPath(fileName).toFile());
+	}
+}
@@ -0,0 +1,76 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.repository.VideoRepository;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+public class ThumbnailVariantServiceTests {
+	@TempDir
+	Path root;
+
+	private FileStorageService fileStorageService;
+	private ThumbnailVariantService variantService;
+
+	@BeforeEach
+	void setUp() {
+		fileStorageService = new FileStorageService(new ShardedLocalBlobStore(root.toString()),
+				Mockito.mock(BlobReferenceService.class), false, new int[] {320, 160});
+		variantService = new ThumbnailVariantService(fileStorageService, Mockito.mock(VideoRepository.class), 0.8);
+	}
+
+	@Test
+	void servesSmallestVariantCoveringRequestedWidth() throws Exception {
+		writeImage("cover.png", 1280, 720);
+
+		ThumbnailVariantService.ThumbnailFile card = variantService.resolve("cover.png", 200, "image/avif,image/webp,*/*");
+		BufferedImage image = ImageIO.read(card.path().toFile());
+		Assertions.assertEquals(320, image.getWidth());
+		Assertions.assertEquals(180, image.getHeight());
+		Assertions.assertTrue(Files.size(card.path()) < Files.size(fileStorageService.resolveThumbnailPath("cover.png")));
+
+		ThumbnailVariantService.ThumbnailFile largest = variantService.resolve("cover.png", 2000, null);
+		Assertions.assertEquals(320, ImageIO.read(largest.path().toFile()).getWidth());
+		Assertions.assertEquals(fileStorageService.resolveThumbnailPath("cover.png"),
+				variantService.resolve("cover.png", null, null).path());
+	}
+
+	@Test
+	void doesNotUpscaleAndDeletesVariantsWithOriginal() throws Exception {
+		writeImage("tiny.png", 100, 50);
+
+		Assertions.assertEquals(2, variantService.generateVariants("tiny.png"));
+		Assertions.assertEquals(0, variantService.generateVariants("tiny.png"));
+		Path variant = variantService.resolve("tiny.png", 320, null).path();
+		Assertions.assertEquals(100, ImageIO.read(variant.toFile()).getWidth());
+
+		fileStorageService.deleteFile("tiny.png", false);
+		Assertions.assertFalse(Files.exists(variant));
+	}
+
+	@Test
+	void servesVariantsAsStoredWithoutDerivingFurtherVariants() throws Exception {
+		writeImage("cover.png", 1280, 720);
+		Path card = variantService.resolve("cover.png", 320, null).path();
+
+		Assertions.assertEquals(card, variantService.resolve("cover_w320.jpg", 160, null).path());
+		Assertions.assertFalse(Files.exists(fileStorageService.resolveThumbnailPath("cover_w320_w160.jpg")));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> variantService.generateVariants("cover_w320.jpg"));
+	}
+
+	private void writeImage(String fileName, int width, int height) throws Exception {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, ((x * 7 + y * 13) % 256) << 16 | (x % 256) << 8 | 0xff000000);
+			}
+		}
+		ImageIO.write(image, "png", fileStorageService.newThumbnailPath(fileName).toFile());
+	}
+}
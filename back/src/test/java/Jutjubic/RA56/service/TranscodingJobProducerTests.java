@@ -0,0 +1,46 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.TranscodingJobMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+public class TranscodingJobProducerTests {
+	private final RabbitTemplate rabbitTemplate = Mockito.mock(RabbitTemplate.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final TranscodingJobProducer producer = new TranscodingJobProducer(rabbitTemplate, meterRegistry,
+			"transcoding.exchange", "transcoding.job", "transcoding.chunk", "transcoding.retry", 4, 1000, 3000, 0.2);
+
+	@Test
+	void backoffDoublesUpToTheCapWithinJitter() {
+		Assertions.assertEquals(1000, TranscodingJobProducer.backoffMillis(1, 1000, 3000, 0.2, 0.5));
+		Assertions.assertEquals(2000, TranscodingJobProducer.backoffMillis(2, 1000, 3000, 0.2, 0.5));
+		Assertions.assertEquals(3000, TranscodingJobProducer.backoffMillis(3, 1000, 3000, 0.2, 0.5));
+		Assertions.assertEquals(1600, TranscodingJobProducer.backoffMillis(2, 1000, 3000, 0.2, 0.0));
+		Assertions.assertEquals(2400, TranscodingJobProducer.backoffMillis(2, 1000, 3000, 0.2, 1.0));
+	}
+
+	@Test
+	void retryIsParkedInItsTierQueueWithAnExpiration() {
+		producer.publishRetry(new TranscodingJobMessage(1L, 2L, "v.mp4", 60), 7, 5);
+
+		ArgumentCaptor<MessagePostProcessor> postProcessor = ArgumentCaptor.forClass(MessagePostProcessor.class);
+		verify(rabbitTemplate).convertAndSend(eq("transcoding.exchange"), eq("transcoding.retry.job.3"), any(Object.class),
+				postProcessor.capture());
+		MessageProperties properties = postProcessor.getValue().postProcessMessage(new Message(new byte[0])).getMessageProperties();
+		Assertions.assertEquals(7, properties.getPriority());
+		long expiration = Long.parseLong(properties.getExpiration());
+		Assertions.assertTrue(expiration >= 2400 && expiration <= 3600);
+		Assertions.assertEquals(1.0, meterRegistry.get("app_transcoding_retries_total").tag("attempt", "5").counter().count());
+	}
+}
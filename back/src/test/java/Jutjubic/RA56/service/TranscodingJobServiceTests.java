@@ -0,0 +1,76 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.TranscodingJob;
+import Jutjubic.RA56.domain.TranscodingJobStatus;
+import Jutjubic.RA56.domain.Video;
+import Jutjubic.RA56.repository.TranscodingChunkRepository;
+import Jutjubic.RA56.repository.TranscodingJobRepository;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.mockito.Mockito.when;
+
+public class TranscodingJobServiceTests {
+	private static final String SHARED_PATH = "0f".repeat(32) + ".mp4";
+
+	private final TranscodingJobRepository jobRepository = Mockito.mock(TranscodingJobRepository.class);
+	private final TranscodingJobService jobService =
+			new TranscodingJobService(jobRepository, Mockito.mock(TranscodingChunkRepository.class), 3);
+
+	@Test
+	void findByVideoPathPrefersCompletedJobAmongDuplicates() {
+		TranscodingJob failed = job(1L, TranscodingJobStatus.FAILED);
+		TranscodingJob completed = job(2L, TranscodingJobStatus.COMPLETED);
+		when(jobRepository.findAllByVideoVideoPath(SHARED_PATH)).thenReturn(List.of(failed, completed));
+
+		Assertions.assertSame(completed, jobService.findByVideoPath(SHARED_PATH));
+	}
+
+	@Test
+	void completingJobAlsoCompletesDuplicatesWaitingForIt() {
+		TranscodingJob running = job(1L, TranscodingJobStatus.PROCESSING);
+		TranscodingJob waiting = job(2L, TranscodingJobStatus.PENDING);
+		when(jobRepository.findById(1L)).thenReturn(Optional.of(running));
+		when(jobRepository.findAllByVideoVideoPath(SHARED_PATH)).thenReturn(List.of(running, waiting));
+
+		Assertions.assertTrue(jobService.hasActiveJobForVideoPath(SHARED_PATH, 2L));
+
+		jobService.markCompleted(1L);
+
+		Assertions.assertEquals(TranscodingJobStatus.COMPLETED, running.getStatus());
+		Assertions.assertEquals(TranscodingJobStatus.COMPLETED, waiting.getStatus());
+		Assertions.assertEquals(100, waiting.getProgress());
+	}
+
+	@Test
+	void jobWithEveryChunkDoneButStillProcessingAwaitsAssembly() {
+		TranscodingJob running = job(1L, TranscodingJobStatus.PROCESSING);
+		running.setTotalChunks(3);
+		running.setCompletedChunks(3);
+		when(jobRepository.findById(1L)).thenReturn(Optional.of(running));
+
+		Assertions.assertTrue(jobService.isAwaitingAssembly(1L));
+
+		running.setCompletedChunks(2);
+		Assertions.assertFalse(jobService.isAwaitingAssembly(1L));
+		running.setCompletedChunks(3);
+		running.setStatus(TranscodingJobStatus.COMPLETED);
+		Assertions.assertFalse(jobService.isAwaitingAssembly(1L));
+	}
+
+	private TranscodingJob job(Long id, TranscodingJobStatus status) {
+		Video video = new Video();
+		video.setVideoPath(SHARED_PATH);
+		TranscodingJob job = new TranscodingJob();
+		ReflectionTestUtils.setField(job, "id", id);
+		job.setVideo(video);
+		job.setStatus(status);
+		job.setProgress(0);
+		job.setAttempt(0);
+		return job;
+	}
+}
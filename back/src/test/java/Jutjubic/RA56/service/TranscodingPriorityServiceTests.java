@@ -0,0 +1,66 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.TranscodingJob;
+import Jutjubic.RA56.domain.TranscodingJobStatus;
+import Jutjubic.RA56.domain.Video;
+import Jutjubic.RA56.repository.TranscodingJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class TranscodingPriorityServiceTests {
+	private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 20, 0);
+
+	private final TranscodingJobRepository jobRepository = Mockito.mock(TranscodingJobRepository.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final TranscodingPriorityService priorityService =
+			new TranscodingPriorityService(jobRepository, meterRegistry, 1.5, 60);
+
+	@Test
+	void premiereCloseToStartOutranksBacklog() {
+		Video premiere = video(true, NOW.plusMinutes(5), 600L);
+		Video later = video(true, NOW.plusDays(3), 600L);
+		Video ordinary = video(false, NOW.minusSeconds(600), 600L);
+		Video scheduled = video(false, NOW.plusDays(1), 600L);
+
+		// Five minutes left but fifteen minutes of estimated encoding: already at risk.
+		Assertions.assertEquals(TranscodingPriorityService.MAX_PRIORITY, priorityService.priorityFor(premiere, NOW));
+		Assertions.assertEquals(5, priorityService.priorityFor(later, NOW));
+		Assertions.assertEquals(TranscodingPriorityService.ORDINARY_PRIORITY, priorityService.priorityFor(ordinary, NOW));
+		Assertions.assertEquals(TranscodingPriorityService.SCHEDULED_PRIORITY, priorityService.priorityFor(scheduled, NOW));
+		Assertions.assertEquals(7, TranscodingPriorityService.priorityFor(true, NOW.plusMinutes(40), 0, NOW));
+	}
+
+	@Test
+	void countsEachMissedPremiereOnce() {
+		TranscodingJob job = new TranscodingJob();
+		job.setVideo(video(true, NOW, 60L));
+		job.setStatus(TranscodingJobStatus.PROCESSING);
+		ReflectionTestUtils.setField(job, "id", 1L);
+		when(jobRepository.findUnreportedPremiereMisses(any(), any())).thenReturn(List.of(job));
+		// The second run finds the row already claimed, as it would after another node's check.
+		when(jobRepository.claimDeadlineMiss(eq(1L), any())).thenReturn(1).thenReturn(0);
+
+		priorityService.detectDeadlineMisses();
+		priorityService.detectDeadlineMisses();
+
+		Mockito.verify(jobRepository, Mockito.times(2)).claimDeadlineMiss(eq(1L), any());
+		Assertions.assertEquals(1.0, meterRegistry.get("app_transcoding_premiere_deadline_misses_total").counter().count());
+	}
+
+	private Video video(boolean premiere, LocalDateTime scheduledAt, Long durationSeconds) {
+		Video video = new Video();
+		video.setPremiereEnabled(premiere);
+		video.setScheduledAt(scheduledAt);
+		video.setDurationSeconds(durationSeconds);
+		return video;
+	}
+}
@@ -0,0 +1,63 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.TranscodingStatusResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TranscodingProgressRegistryTests {
+	private final TranscodingJobService jobService = Mockito.mock(TranscodingJobService.class);
+	private final AdaptiveStreamingService streamingService = Mockito.mock(AdaptiveStreamingService.class);
+	private final SimpMessagingTemplate messagingTemplate = Mockito.mock(SimpMessagingTemplate.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final TranscodingProgressRegistry registry =
+			new TranscodingProgressRegistry(jobService, streamingService, messagingTemplate, meterRegistry, 3600);
+
+	@Test
+	void pushesEveryChangeButPersistsOnlyOnFlush() {
+		for (int progress : new int[] {5, 5, 12, 9, 40}) {
+			registry.report(1L, 7L, "v.mp4", progress);
+		}
+
+		verify(messagingTemplate, times(3)).convertAndSend(eq("/topic/videos/7/transcoding"), any(Object.class));
+		verify(jobService, never()).updateProgress(any(), anyInt());
+
+		TranscodingStatusResponse stored = new TranscodingStatusResponse(7L, "PROCESSING", 1, false, "Transcoding is in progress.", 0.0);
+		Assertions.assertEquals(40, registry.overlay(stored).progress());
+
+		registry.flush(1L);
+		registry.flush(1L);
+		verify(jobService, times(1)).updateProgress(1L, 40);
+		Assertions.assertEquals(1.0, meterRegistry.get("app_transcoding_progress_writes_total").counter().count());
+	}
+
+	@Test
+	void finishedJobIsDroppedAndPushedToWaitingUploads() {
+		registry.report(1L, 7L, "v.mp4", 50);
+		when(jobService.getVideoStatus(7L)).thenReturn(new TranscodingStatusResponse(7L, "COMPLETED", 100, true, "Transcoding completed.", 0.0));
+		when(jobService.getVideoStatus(8L)).thenReturn(new TranscodingStatusResponse(8L, "COMPLETED", 100, true, "Transcoding completed.", 0.0));
+		when(jobService.findVideoIdsByVideoPath("v.mp4")).thenReturn(List.of(7L, 8L));
+		when(streamingService.getPlayableSeconds("v.mp4")).thenReturn(12.0);
+
+		registry.publishStatus(1L, 7L, "v.mp4");
+
+		ArgumentCaptor<Object> pushed = ArgumentCaptor.forClass(Object.class);
+		verify(messagingTemplate).convertAndSend(eq("/topic/videos/8/transcoding"), pushed.capture());
+		Assertions.assertEquals(12.0, ((TranscodingStatusResponse) pushed.getValue()).playableSeconds());
+
+		TranscodingStatusResponse stored = new TranscodingStatusResponse(7L, "PROCESSING", 1, false, "Transcoding is in progress.", 0.0);
+		Assertions.assertEquals(1, registry.overlay(stored).progress());
+	}
+}
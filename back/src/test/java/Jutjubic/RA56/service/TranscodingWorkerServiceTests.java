@@ -0,0 +1,225 @@
+package Jutjubic.RA56.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TranscodingWorkerServiceTests {
+	private final List<TranscodingWorkerService.Rendition> ladder =
+			TranscodingWorkerService.parseLadder("480:1400:128,1080:5000:192,720:2800:128,360:800:96");
+
+	@Test
+	void neverUpscalesBeyondSource() {
+		List<TranscodingWorkerService.Rendition> selected = TranscodingWorkerService.selectRenditions(ladder, 720);
+
+		Assertions.assertEquals(List.of(720, 480, 360), selected.stream().map(TranscodingWorkerService.Rendition::height).toList());
+	}
+
+	@Test
+	void encodesTinySourceOnceAtItsOwnHeight() {
+		List<TranscodingWorkerService.Rendition> selected = TranscodingWorkerService.selectRenditions(ladder, 241);
+
+		Assertions.assertEquals(1, selected.size());
+		Assertions.assertEquals(240, selected.get(0).height());
+		Assertions.assertEquals(800, selected.get(0).videoKbps());
+	}
+
+	@Test
+	void masterPlaylistListsVariantsAndAudioOnly() {
+		TranscodingWorkerService.SourceInfo source = new TranscodingWorkerService.SourceInfo(1280, 720, true);
+		List<TranscodingWorkerService.Rendition> selected = TranscodingWorkerService.selectRenditions(ladder, 720);
+
+		String playlist = TranscodingWorkerService.buildMasterPlaylist(selected, source, 64);
+
+		Assertions.assertTrue(playlist.startsWith("#EXTM3U\n"));
+		Assertions.assertTrue(playlist.contains("AVERAGE-BANDWIDTH=2928000,RESOLUTION=1280x720,CODECS=\"avc1.64002a,mp4a.40.2\"\n720p/index.m3u8\n"));
+		Assertions.assertTrue(playlist.contains("RESOLUTION=854x480"));
+		Assertions.assertTrue(playlist.contains("CODECS=\"mp4a.40.2\"\naudio/index.m3u8\n"));
+		Assertions.assertFalse(playlist.contains("1080p"));
+	}
+
+	@Test
+	void stitchesChunkPlaylistsWithDiscontinuities() {
+		String first = "#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:4\n#EXT-X-MEDIA-SEQUENCE:0\n"
+				+ "#EXT-X-PLAYLIST-TYPE:VOD\n#EXTINF:4.000000,\nc000_000.ts\n#EXTINF:2.500000,\nc000_001.ts\n#EXT-X-ENDLIST\n";
+		String second = "#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:5\n#EXT-X-MEDIA-SEQUENCE:0\n"
+				+ "#EXT-X-PLAYLIST-TYPE:VOD\n#EXTINF:4.600000,\nc001_000.ts\n#EXT-X-ENDLIST\n";
+
+		String stitched = TranscodingWorkerService.stitchPlaylists(List.of(first, second), true);
+
+		Assertions.assertEquals(
+				"#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:5\n#EXT-X-MEDIA-SEQUENCE:0\n#EXT-X-PLAYLIST-TYPE:VOD\n"
+						+ "#EXTINF:4.000000,\nc000_000.ts\n#EXTINF:2.500000,\nc000_001.ts\n"
+						+ "#EXT-X-DISCONTINUITY\n#EXTINF:4.600000,\nc001_000.ts\n#EXT-X-ENDLIST\n",
+				stitched
+		);
+	}
+
+	@Test
+	void partialStitchIsAnOpenEventPlaylist() {
+		String first = "#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXTINF:4.000000,\nc000_000.ts\n#EXTINF:3.500000,\nc000_001.ts\n#EXT-X-ENDLIST\n";
+
+		String stitched = TranscodingWorkerService.stitchPlaylists(List.of(first), false);
+
+		Assertions.assertTrue(stitched.contains("#EXT-X-PLAYLIST-TYPE:EVENT\n"));
+		Assertions.assertFalse(stitched.contains("#EXT-X-ENDLIST"));
+		Assertions.assertEquals(7.5, AdaptiveStreamingService.segmentSeconds(stitched), 1e-9);
+		Assertions.assertEquals(List.of("720p/index.m3u8", "audio/index.m3u8"),
+				AdaptiveStreamingService.variantPlaylists("#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=1\n720p/index.m3u8\n"
+						+ "#EXT-X-STREAM-INF:BANDWIDTH=2\naudio/index.m3u8\n"));
+	}
+
+	@Test
+	void resumesAfterSegmentsEveryVariantFinished(@TempDir Path hlsDir) throws Exception {
+		writeVariant(hlsDir, "720p", 3, 3);
+		// The audio variant listed a third segment whose file never made it to disk.
+		writeVariant(hlsDir, "audio", 3, 2);
+
+		TranscodingWorkerService.ResumePoint resume = TranscodingWorkerService.findResumePoint(hlsDir, List.of("720p", "audio"), ".ts");
+
+		Assertions.assertEquals(2, resume.segments());
+		Assertions.assertEquals(8.0, resume.seconds(), 1e-9);
+		Assertions.assertFalse(resume.complete());
+
+		String stitched = TranscodingWorkerService.stitchPlaylists(List.of(resume.prefixes().get("720p"),
+				"#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXTINF:2.0,\nr002_000.ts\n#EXT-X-ENDLIST\n"), true);
+		Assertions.assertTrue(stitched.contains("segment_001.ts\n#EXT-X-DISCONTINUITY\n#EXTINF:2.0,\nr002_000.ts\n"));
+		Assertions.assertFalse(stitched.contains("segment_002.ts"));
+		Assertions.assertNull(TranscodingWorkerService.findResumePoint(hlsDir, List.of("720p", "480p"), ".ts"));
+		// Segments packaged as MPEG-TS are not resumed into CMAF output.
+		Assertions.assertNull(TranscodingWorkerService.findResumePoint(hlsDir, List.of("720p", "audio"), ".m4s"));
+	}
+
+	@Test
+	void cmafVariantsShareOneAudioRenditionAcrossHlsAndDash() {
+		TranscodingWorkerService.SourceInfo source = new TranscodingWorkerService.SourceInfo(1280, 720, true);
+		List<TranscodingWorkerService.Rendition> selected = TranscodingWorkerService.selectRenditions(ladder, 720);
+		int audioKbps = TranscodingWorkerService.cmafAudioKbps(selected);
+
+		String master = TranscodingWorkerService.buildCmafMasterPlaylist(selected, source, audioKbps, false);
+
+		Assertions.assertEquals(128, audioKbps);
+		Assertions.assertTrue(master.contains("#EXT-X-VERSION:7\n"));
+		Assertions.assertTrue(master.contains("CODECS=\"avc1.64002a,mp4a.40.2\",AUDIO=\"audio\"\n720p/index.m3u8\n"));
+		Assertions.assertEquals(List.of("audio/index.m3u8", "720p/index.m3u8", "480p/index.m3u8", "360p/index.m3u8"),
+				AdaptiveStreamingService.variantPlaylists(master));
+
+		// A resumed run: kept prefix, then the resumed segments with their own init segment.
+		String video = "#EXTM3U\n#EXT-X-MAP:URI=\"init_%s.mp4\"\n#EXTINF:4.000000,\nsegment_000.m4s\n#EXTINF:4.000000,\nsegment_001.m4s\n"
+				+ "#EXT-X-DISCONTINUITY\n#EXT-X-MAP:URI=\"r002_init_%s.mp4\"\n#EXTINF:2.5,\nr002_000.m4s\n#EXT-X-ENDLIST\n";
+		Map<String, String> playlists = new LinkedHashMap<>();
+		for (String variant : List.of("720p", "480p", "360p", "audio")) {
+			playlists.put(variant, String.format(video, variant, variant));
+		}
+
+		String mpd = TranscodingWorkerService.buildDashManifest(selected, source, audioKbps, playlists);
+
+		Assertions.assertTrue(mpd.contains("mediaPresentationDuration=\"PT10.500S\""));
+		Assertions.assertTrue(mpd.contains("<Period id=\"1\" start=\"PT8.000S\">"));
+		Assertions.assertTrue(mpd.contains("<Initialization sourceURL=\"720p/init_720p.mp4\"/>\n"
+				+ "          <SegmentTimeline>\n            <S t=\"0\" d=\"4000\" r=\"1\"/>\n"));
+		Assertions.assertTrue(mpd.contains("presentationTimeOffset=\"8000\">\n          <Initialization sourceURL=\"audio/r002_init_audio.mp4\"/>\n"
+				+ "          <SegmentTimeline>\n            <S t=\"8000\" d=\"2500\"/>\n          </SegmentTimeline>\n"
+				+ "          <SegmentURL media=\"audio/r002_000.m4s\"/>\n"));
+
+		String stitched = TranscodingWorkerService.stitchPlaylists(List.of(playlists.get("720p")), true);
+		Assertions.assertTrue(stitched.startsWith("#EXTM3U\n#EXT-X-VERSION:7\n"));
+		Assertions.assertTrue(stitched.contains("#EXT-X-DISCONTINUITY\n#EXT-X-MAP:URI=\"r002_init_720p.mp4\"\n#EXTINF:2.5,\n"));
+
+		playlists.put("audio", "#EXTM3U\n#EXT-X-MAP:URI=\"init_audio.mp4\"\n#EXTINF:10.5,\nsegment_000.m4s\n");
+		Assertions.assertNull(TranscodingWorkerService.buildDashManifest(selected, source, audioKbps, playlists));
+	}
+
+	@Test
+	void packsSegmentsIntoByteRangesOfAtMostTheLimit(@TempDir Path hlsDir) throws Exception {
+		writeVariant(hlsDir, "720p", 3, 3);
+		Path variantDir = hlsDir.resolve("720p");
+		Files.write(variantDir.resolve("segment_001.ts"), new byte[] {2, 3});
+
+		String eventPlaylist = Files.readString(variantDir.resolve("index.m3u8"));
+
+		Assertions.assertTrue(TranscodingWorkerService.packSegments(variantDir, 3));
+
+		String playlist = Files.readString(variantDir.resolve(AdaptiveStreamingService.PACKED_PLAYLIST));
+		Assertions.assertTrue(playlist.contains("#EXTINF:4.000000,\n#EXT-X-BYTERANGE:1@0\npack_000.ts\n"
+				+ "#EXTINF:4.000000,\n#EXT-X-BYTERANGE:2@1\npack_000.ts\n#EXTINF:4.000000,\n#EXT-X-BYTERANGE:1@0\npack_001.ts\n"));
+		Assertions.assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(variantDir.resolve("pack_000.ts")));
+		Assertions.assertArrayEquals(new byte[] {1}, Files.readAllBytes(variantDir.resolve("pack_001.ts")));
+		Assertions.assertEquals(12.0, AdaptiveStreamingService.segmentSeconds(playlist), 1e-9);
+		// Viewers holding the EVENT playlist keep playing its segments.
+		Assertions.assertEquals(eventPlaylist, Files.readString(variantDir.resolve("index.m3u8")));
+		Assertions.assertTrue(Files.exists(variantDir.resolve("segment_000.ts")));
+
+		// A retried publish finds the variant already packed.
+		Assertions.assertTrue(TranscodingWorkerService.packSegments(variantDir, 3));
+		Assertions.assertEquals(playlist, Files.readString(variantDir.resolve(AdaptiveStreamingService.PACKED_PLAYLIST)));
+		Assertions.assertEquals("#EXTM3U\n#EXT-X-MEDIA:TYPE=AUDIO,URI=\"audio/packed.m3u8\"\n720p/packed.m3u8\n480p/index.m3u8\n",
+				TranscodingWorkerService.referencePackedPlaylists(
+						"#EXTM3U\n#EXT-X-MEDIA:TYPE=AUDIO,URI=\"audio/index.m3u8\"\n720p/index.m3u8\n480p/index.m3u8\n",
+						Set.of("720p", "audio")));
+	}
+
+	@Test
+	void removesLooseSegmentsOfPackedVariantsOnly(@TempDir Path root) throws Exception {
+		ShardedLocalBlobStore blobStore = new ShardedLocalBlobStore(root.toString());
+		Path hlsDir = blobStore.localPath(AdaptiveStreamingService.hlsKey("v.mp4"));
+		writeVariant(hlsDir, "720p", 2, 2);
+		writeVariant(hlsDir, "480p", 2, 2);
+		TranscodingWorkerService.packSegments(hlsDir.resolve("720p"), 1024);
+		Files.writeString(hlsDir.resolve(AdaptiveStreamingService.MASTER_PLAYLIST), "#EXTM3U\n720p/packed.m3u8\n480p/index.m3u8\n");
+		TranscodingWorkerService worker = new TranscodingWorkerService(blobStore, "ffmpeg", "ffprobe",
+				"720:2800:128", 64, "ts", true, 1024);
+
+		Assertions.assertEquals(2, worker.removeLooseSegments("v.mp4"));
+
+		Assertions.assertFalse(Files.exists(hlsDir.resolve("720p/segment_000.ts")));
+		Assertions.assertFalse(Files.exists(hlsDir.resolve("720p/index.m3u8")));
+		Assertions.assertTrue(Files.exists(hlsDir.resolve("720p/pack_000.ts")));
+		Assertions.assertTrue(Files.exists(hlsDir.resolve("480p/segment_000.ts")));
+		Assertions.assertEquals(0, worker.removeLooseSegments("v.mp4"));
+	}
+
+	@Test
+	void publishesChunksOnlyUpToTheFirstUnfinishedOne(@TempDir Path root) throws Exception {
+		ShardedLocalBlobStore blobStore = new ShardedLocalBlobStore(root.toString());
+		Path hlsDir = blobStore.localPath(AdaptiveStreamingService.hlsKey("v.mp4"));
+		Files.createDirectories(blobStore.localPath("streams/v.mp4/work"));
+		Path variantDir = Files.createDirectories(hlsDir.resolve("720p"));
+		Files.writeString(hlsDir.resolve(AdaptiveStreamingService.PROGRESSIVE_PLAYLIST), "#EXTM3U\n720p/index.m3u8\n");
+		Files.writeString(variantDir.resolve("chunk_000.m3u8"),
+				"#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXTINF:4.000000,\nc000_000.ts\n#EXT-X-ENDLIST\n");
+		// Chunk 1 is still encoding: ffmpeg has written its playlist but not the end tag yet.
+		Files.writeString(variantDir.resolve("chunk_001.m3u8"), "#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXTINF:4.000000,\nc001_000.ts\n");
+		Files.writeString(variantDir.resolve("chunk_002.m3u8"),
+				"#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXTINF:4.000000,\nc002_000.ts\n#EXT-X-ENDLIST\n");
+		TranscodingWorkerService worker = new TranscodingWorkerService(blobStore, "ffmpeg", "ffprobe",
+				"720:2800:128", 64, "ts", false, 1024);
+
+		worker.publishChunkProgress("v.mp4");
+
+		String published = Files.readString(variantDir.resolve("index.m3u8"));
+		Assertions.assertTrue(published.contains("c000_000.ts\n"));
+		Assertions.assertFalse(published.contains("c001_000.ts"));
+		Assertions.assertFalse(published.contains("c002_000.ts"));
+		Assertions.assertFalse(published.contains("#EXT-X-ENDLIST"));
+	}
+
+	private void writeVariant(Path hlsDir, String variant, int listed, int onDisk) throws Exception {
+		Path dir = Files.createDirectories(hlsDir.resolve(variant));
+		StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-TARGETDURATION:4\n#EXT-X-PLAYLIST-TYPE:EVENT\n");
+		for (int i = 0; i < listed; i++) {
+			String segment = String.format("segment_%03d.ts", i);
+			playlist.append("#EXTINF:4.000000,\n").append(segment).append('\n');
+			if (i < onDisk) {
+				Files.write(dir.resolve(segment), new byte[] {1});
+			}
+		}
+		Files.writeString(dir.resolve("index.m3u8"), playlist.toString());
+	}
+}
@@ -0,0 +1,54 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.TrendingResponse;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TrendingServiceTests {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void keepsOnlyTopKOrderedByScore() {
+		TrendingService service = newService(2);
+		view(service, 1L, 1);
+		view(service, 2L, 5);
+		view(service, 3L, 3);
+
+		service.refresh();
+		TrendingResponse trending = service.getTrending(null);
+
+		Assertions.assertEquals(2, trending.videos().size());
+		Assertions.assertEquals(2L, trending.videos().get(0).videoId());
+		Assertions.assertEquals(3L, trending.videos().get(1).videoId());
+		Assertions.assertEquals(1, service.getTrending(1).videos().size());
+		Assertions.assertThrows(IllegalArgumentException.class, () -> service.getTrending(0));
+	}
+
+	@Test
+	void restoresScoresFromSnapshot() {
+		TrendingService first = newService(10);
+		view(first, 7L, 4);
+		first.writeSnapshot();
+
+		TrendingService restarted = newService(10);
+		restarted.loadSnapshot();
+		TrendingResponse trending = restarted.getTrending(null);
+
+		Assertions.assertEquals(1, trending.videos().size());
+		Assertions.assertEquals(7L, trending.videos().get(0).videoId());
+		Assertions.assertEquals(4.0, trending.videos().get(0).score(), 0.01);
+	}
+
+	private TrendingService newService(int topK) {
+		return new TrendingService(360, topK, tempDir.resolve("trending.bin").toString(), "http://localhost");
+	}
+
+	private void view(TrendingService service, Long videoId, int times) {
+		for (int i = 0; i < times; i++) {
+			service.recordView(videoId, "video-" + videoId, "thumb.jpg");
+		}
+	}
+}
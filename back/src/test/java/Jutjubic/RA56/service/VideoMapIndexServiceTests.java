@@ -0,0 +1,107 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.dto.VideoMapClusterRow;
+import Jutjubic.RA56.dto.VideoMapIndexRow;
+import Jutjubic.RA56.dto.VideoMapPoint;
+import Jutjubic.RA56.repository.VideoRepository;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class VideoMapIndexServiceTests {
+	private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 15, 12, 0);
+
+	@Mock
+	private VideoRepository videoRepository;
+
+	private VideoMapIndexService indexService;
+
+	@BeforeEach
+	void loadIndex() {
+		indexService = new VideoMapIndexService(videoRepository, 300_000);
+		List<VideoMapIndexRow> rows = List.of(
+				new VideoMapIndexRow(1L, "Novi Sad", 45.2671, 19.8335, NOW.minusDays(100), 10L, "a.jpg"),
+				new VideoMapIndexRow(2L, "Novi Sad centar", 45.2551, 19.8451, NOW.minusDays(2), 50L, "b.jpg"),
+				new VideoMapIndexRow(3L, "Beograd", 44.8125, 20.4612, NOW.minusDays(1), 5L, "c.jpg")
+		);
+		when(videoRepository.findMapIndexRowsAfter(eq(0L), any(Pageable.class))).thenReturn(rows);
+		indexService.rebuild();
+	}
+
+	@Test
+	void findsPointsInsideBoundingBoxAndPeriod() {
+		List<VideoMapPoint> all = indexService.findPoints(45.0, 45.5, 19.5, 20.0, null);
+		Assertions.assertEquals(List.of(1L, 2L), all.stream().map(VideoMapPoint::id).sorted().toList());
+
+		List<VideoMapPoint> recent = indexService.findPoints(45.0, 45.5, 19.5, 20.0, NOW.minusDays(30));
+		Assertions.assertEquals(List.of(2L), recent.stream().map(VideoMapPoint::id).toList());
+	}
+
+	@Test
+	void aggregatedClustersMatchScannedClusters() {
+		int zoom = 8;
+		int minX = VideoMapIndexService.lngToTileX(19.0, zoom);
+		int maxX = VideoMapIndexService.lngToTileX(21.0, zoom);
+		int minY = VideoMapIndexService.latToTileY(46.0, zoom);
+		int maxY = VideoMapIndexService.latToTileY(44.0, zoom);
+
+		List<VideoMapClusterRow> aggregated = sorted(indexService.findTileClusters(zoom, minX, maxX, minY, maxY, null));
+		List<VideoMapClusterRow> scanned = sorted(indexService.findTileClusters(zoom, minX, maxX, minY, maxY, LocalDateTime.MIN));
+
+		Assertions.assertEquals(2, aggregated.size());
+		Assertions.assertEquals(aggregated.size(), scanned.size());
+		for (int i = 0; i < aggregated.size(); i++) {
+			Assertions.assertEquals(aggregated.get(i).getId(), scanned.get(i).getId());
+			Assertions.assertEquals(aggregated.get(i).getVideoCount(), scanned.get(i).getVideoCount());
+		}
+		// Novi Sad tile is represented by its most viewed video.
+		Assertions.assertEquals(2L, aggregated.get(0).getId());
+		Assertions.assertEquals(2L, aggregated.get(0).getVideoCount());
+	}
+
+	@Test
+	void viewDeltasCanChangeTileRepresentative() {
+		indexService.addViews(1L, 100L);
+
+		int zoom = 8;
+		int x = VideoMapIndexService.lngToTileX(19.84, zoom);
+		int y = VideoMapIndexService.latToTileY(45.26, zoom);
+		List<VideoMapClusterRow> clusters = indexService.findTileClusters(zoom, x, x, y, y, null);
+
+		Assertions.assertEquals(1, clusters.size());
+		Assertions.assertEquals(1L, clusters.get(0).getId());
+	}
+
+	@Test
+	void syncPicksUpLowerIdsThatCommitAfterHigherOnes() {
+		VideoMapIndexRow committedFirst = new VideoMapIndexRow(5L, "Nis", 43.32, 21.89, NOW, 0L, "e.jpg");
+		VideoMapIndexRow committedLater = new VideoMapIndexRow(4L, "Subotica", 46.1, 19.66, NOW, 0L, "d.jpg");
+		when(videoRepository.findMapIndexRowsCreatedSince(any(), eq(0L), any(Pageable.class)))
+				.thenReturn(List.of(committedFirst))
+				.thenReturn(List.of(committedLater, committedFirst));
+		when(videoRepository.findMapIndexRowsAfter(eq(3L), any(Pageable.class))).thenReturn(List.of(committedFirst));
+		when(videoRepository.findMapIndexRowsAfter(eq(5L), any(Pageable.class))).thenReturn(List.of());
+
+		indexService.syncNewVideos();
+		indexService.syncNewVideos();
+
+		Assertions.assertEquals(List.of(1L, 2L, 3L, 4L, 5L),
+				indexService.findPoints(-90, 90, -180, 180, null).stream().map(VideoMapPoint::id).sorted().toList());
+	}
+
+	private static List<VideoMapClusterRow> sorted(List<VideoMapClusterRow> rows) {
+		return rows.stream().sorted(Comparator.comparing(VideoMapClusterRow::getVideoCount).reversed()).toList();
+	}
+}
@@ -0,0 +1,79 @@
+package Jutjubic.RA56.service;
+
+import Jutjubic.RA56.domain.VideoUploadSession;
+import Jutjubic.RA56.dto.VideoUploadStatusResponse;
+import Jutjubic.RA56.repository.VideoUploadSessionRepository;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.security.access.AccessDeniedException;
+
+import static org.mockito.Mockito.when;
+
+public class VideoUploadServiceTests {
+	private static final String OWNER = "owner@example.com";
+
+	@TempDir
+	Path stagingDir;
+
+	private VideoUploadService uploadService;
+
+	@BeforeEach
+	void setUp() {
+		VideoUploadSessionRepository repository = Mockito.mock(VideoUploadSessionRepository.class);
+		VideoUploadSession session = new VideoUploadSession();
+		session.setId("upload-1");
+		session.setOwnerEmail(OWNER);
+		session.setOriginalFileName("clip.mp4");
+		session.setContentType("video/mp4");
+		session.setSizeBytes(10L);
+		when(repository.findById("upload-1")).thenReturn(Optional.of(session));
+
+		uploadService = new VideoUploadService(repository, Mockito.mock(FileStorageService.class), stagingDir.toString(), 24);
+	}
+
+	@Test
+	void resumesFromBytesAlreadyOnDisk() throws Exception {
+		VideoUploadStatusResponse first = uploadService.appendChunk("upload-1", 0, body("01234"), OWNER);
+		Assertions.assertEquals(5L, first.offset());
+		Assertions.assertFalse(first.complete());
+
+		Assertions.assertEquals(5L, uploadService.getStatus("upload-1", OWNER).offset());
+
+		VideoUploadStatusResponse second = uploadService.appendChunk("upload-1", 5, body("56789"), OWNER);
+		Assertions.assertTrue(second.complete());
+		Assertions.assertEquals("0123456789", Files.readString(stagingDir.resolve("upload-1.part")));
+	}
+
+	@Test
+	void rejectsChunkAtWrongOffset() {
+		uploadService.appendChunk("upload-1", 0, body("01234"), OWNER);
+
+		IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class,
+				() -> uploadService.appendChunk("upload-1", 0, body("01234"), OWNER));
+		Assertions.assertTrue(ex.getMessage().contains("5"));
+	}
+
+	@Test
+	void rejectsBytesBeyondDeclaredSize() {
+		Assertions.assertThrows(IllegalArgumentException.class,
+				() -> uploadService.appendChunk("upload-1", 0, body("0123456789X"), OWNER));
+	}
+
+	@Test
+	void rejectsOtherUsers() {
+		Assertions.assertThrows(AccessDeniedException.class,
+				() -> uploadService.getStatus("upload-1", "someone@example.com"));
+	}
+
+	private ByteArrayInputStream body(String value) {
+		return new ByteArrayInputStream(value.getBytes(StandardCharsets.US_ASCII));
+	}
+}
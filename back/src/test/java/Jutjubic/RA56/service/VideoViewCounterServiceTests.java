@@ -0,0 +1,66 @@
+package Jutjubic.RA56.service;
+
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class VideoViewCounterServiceTests {
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private VideoMapIndexService videoMapIndexService;
+
+	@InjectMocks
+	private VideoViewCounterService counterService;
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void flushesAggregatedDeltasInOneBatch() {
+		counterService.recordView(1L);
+		counterService.recordView(1L);
+		counterService.recordView(2L);
+
+		Assertions.assertEquals(2L, counterService.getPendingViews(1L));
+
+		counterService.flush();
+
+		ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+		verify(jdbcTemplate).batchUpdate(anyString(), captor.capture());
+		List<Object[]> batch = captor.getValue();
+		Assertions.assertEquals(2, batch.size());
+		long total = batch.stream().mapToLong(row -> (Long) row[0]).sum();
+		Assertions.assertEquals(3L, total);
+		Assertions.assertEquals(0L, counterService.getPendingViews(1L));
+	}
+
+	@Test
+	void failedFlushKeepsPendingViews() {
+		counterService.recordView(7L);
+		when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new RuntimeException("db down"));
+
+		counterService.flush();
+
+		Assertions.assertEquals(1L, counterService.getPendingViews(7L));
+	}
+
+	@Test
+	void emptyFlushSkipsDatabase() {
+		counterService.flush();
+
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+	}
+}
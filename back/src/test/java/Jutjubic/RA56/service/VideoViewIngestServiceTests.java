@@ -0,0 +1,67 @@
+package Jutjubic.RA56.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class VideoViewIngestServiceTests {
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private VideoViewRollupService videoViewRollupService;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void shutdownWritesQueuedEventsAsMultiRowInserts() {
+		VideoViewIngestService service = newService(10, 2, VideoViewIngestService.OverflowPolicy.BLOCK);
+		LocalDateTime now = LocalDateTime.now();
+		service.enqueue(1L, now);
+		service.enqueue(2L, now);
+		service.enqueue(3L, now);
+
+		service.stop();
+
+		ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+		verify(jdbcTemplate, times(2)).update(sql.capture(), any(Object[].class));
+		Assertions.assertTrue(sql.getAllValues().get(0).endsWith("(?, ?), (?, ?)"));
+		Assertions.assertTrue(sql.getAllValues().get(1).endsWith("VALUES (?, ?)"));
+		verify(videoViewRollupService, times(2)).addDailyCounts(anyMap());
+	}
+
+	@Test
+	void dropNewestPolicyCountsOverflow() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		VideoViewIngestService service = new VideoViewIngestService(
+				jdbcTemplate, videoViewRollupService, transactionManager, registry, 1, 10, 100, 0, VideoViewIngestService.OverflowPolicy.DROP_NEWEST);
+		LocalDateTime now = LocalDateTime.now();
+		service.enqueue(1L, now);
+		service.enqueue(2L, now);
+
+		Assertions.assertEquals(1.0, registry.get("app_video_views_dropped_total").counter().count());
+		Assertions.assertEquals(1.0, registry.get("app_video_views_queue_depth").gauge().value());
+
+		service.stop();
+		verify(jdbcTemplate).update(anyString(), any(Object[].class));
+	}
+
+	private VideoViewIngestService newService(int capacity, int batchSize, VideoViewIngestService.OverflowPolicy policy) {
+		return new VideoViewIngestService(jdbcTemplate, videoViewRollupService, transactionManager, new SimpleMeterRegistry(), capacity, batchSize, 100, 0, policy);
+	}
+}
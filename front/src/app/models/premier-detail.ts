@@ -5,6 +5,7 @@ export interface PremierDetail {
   thumbnailUrl: string;
   videoUrl: string;
   hlsUrl: string;
+  liveHlsUrl: string;
   scheduledAt: string;
   durationSeconds: number;
   streamOffsetSeconds: number;
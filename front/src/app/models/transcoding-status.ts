@@ -3,5 +3,6 @@ export interface TranscodingStatus {
   status: 'PENDING' | 'PROCESSING' | 'COMPLETED' | 'FAILED' | 'NOT_FOUND';
   progress: number;
   ready: boolean;
+  playableSeconds: number;
   message: string;
 }
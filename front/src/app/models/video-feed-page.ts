@@ -0,0 +1,4 @@
+export interface VideoFeedPage {
+  videos: any[];
+  nextCursor: string | null;
+}
@@ -0,0 +1,6 @@
+export interface VideoUploadStatus {
+  uploadId: string;
+  offset: number;
+  sizeBytes: number;
+  complete: boolean;
+}
@@ -0,0 +1,74 @@
+import { Injectable } from '@angular/core';
+import { Observable, interval } from 'rxjs';
+import { Client, IMessage } from '@stomp/stompjs';
+import { TranscodingStatus } from '../models/transcoding-status';
+import { VideoService } from './video.service';
+
+@Injectable({
+  providedIn: 'root'
+})
+export class TranscodingStatusService {
+  private readonly wsUrl = 'ws://localhost:8080/ws';
+  private readonly pollIntervalMs = 15000;
+
+  constructor(private videoService: VideoService) { }
+
+  /**
+   * Emits the transcoding status of a video as the server pushes it. The current status is
+   * fetched over HTTP on every (re)connect so nothing pushed while disconnected is missed.
+   * Pushes only reach viewers connected to the node that runs the transcode, so the status
+   * is also polled at a low rate until the video is COMPLETED or FAILED.
+   */
+  watch(videoId: number): Observable<TranscodingStatus> {
+    return new Observable<TranscodingStatus>((subscriber) => {
+      const emit = (status: TranscodingStatus) => {
+        subscriber.next(status);
+        if (status.status === 'COMPLETED' || status.status === 'FAILED') {
+          poll.unsubscribe();
+        }
+      };
+      const poll = interval(this.pollIntervalMs).subscribe(() => {
+        this.videoService.getTranscodingStatus(videoId).subscribe({
+          next: emit,
+          // A failed poll is retried on the next tick.
+          error: () => undefined
+        });
+      });
+      const client = new Client({
+        brokerURL: this.wsUrl,
+        reconnectDelay: 3000,
+        debug: () => undefined,
+        onConnect: () => {
+          client.subscribe(`/topic/videos/${videoId}/transcoding`, (message: IMessage) => {
+            const parsed = this.safeParse(message.body);
+            if (parsed) {
+              emit(parsed);
+            }
+          });
+          this.videoService.getTranscodingStatus(videoId).subscribe({
+            next: emit,
+            error: (error) => subscriber.error(error)
+          });
+        },
+        onStompError: (frame) => {
+          subscriber.error(new Error(frame.headers['message'] ?? 'STOMP connection error.'));
+        }
+      });
+
+      client.activate();
+      return () => {
+        poll.unsubscribe();
+        client.deactivate();
+      };
+    });
+  }
+
+  private safeParse(payload: string): TranscodingStatus | null {
+    try {
+      const parsed = JSON.parse(payload) as TranscodingStatus;
+      return parsed && typeof parsed.progress === 'number' ? parsed : null;
+    } catch {
+      return null;
+    }
+  }
+}
@@ -1,9 +1,11 @@
 import { HttpClient, HttpHeaders } from '@angular/common/http';
 import { Injectable } from '@angular/core';
-import { Observable } from 'rxjs';
+import { Observable, firstValueFrom } from 'rxjs';
 import { PremierDetail } from '../models/premier-detail';
 import { PremiereVideo } from '../models/premiere-video';
 import { TranscodingStatus } from '../models/transcoding-status';
+import { VideoFeedPage } from '../models/video-feed-page';
+import { VideoUploadStatus } from '../models/video-upload-status';
 
 @Injectable({
   providedIn: 'root'
@@ -12,11 +14,18 @@ export class VideoService {
   private readonly baseUrl = 'http://localhost:8080/api/videos';
   private readonly premierUrl = 'http://localhost:8080/api/premiers';
   private readonly tokenKey = 'ra56.jwt';
+  private readonly uploadKeyPrefix = 'ra56.upload.';
+  private readonly chunkSize = 5 * 1024 * 1024;
+  private readonly maxChunkRetries = 5;
 
   constructor(private http: HttpClient) {}
 
-  getAllVideos(): Observable<any[]> {
-    return this.http.get<any[]>(this.baseUrl);
+  getVideoFeed(after: string | null = null, limit: number = 20): Observable<VideoFeedPage> {
+    const params: { [key: string]: string } = { limit: limit.toString() };
+    if (after) {
+      params['after'] = after;
+    }
+    return this.http.get<VideoFeedPage>(this.baseUrl, { params });
   }
 
   getVideoById(id: number): Observable<any> {
@@ -54,6 +63,77 @@ export class VideoService {
     return this.http.post(`${this.baseUrl}/upload`, formData, { headers: headers });
   }
 
+  /**
+   * Sends the video in chunks to a resumable upload session, then finalizes it with the
+   * metadata form. A dropped chunk is retried from the offset the server reports, and the
+   * session id is kept per file so a reload picks up where the previous attempt stopped.
+   */
+  uploadResumable(video: File, metadata: FormData, onProgress: (percent: number) => void): Promise<any> {
+    return this.runResumableUpload(video, metadata, onProgress);
+  }
+
+  private async runResumableUpload(video: File, metadata: FormData, onProgress: (percent: number) => void): Promise<any> {
+    const headers = this.authHeaders();
+    const fileKey = `${this.uploadKeyPrefix}${video.name}:${video.size}:${video.lastModified}`;
+
+    let status = await this.findUploadSession(localStorage.getItem(fileKey), headers);
+    if (!status) {
+      status = await firstValueFrom(this.http.post<VideoUploadStatus>(`${this.baseUrl}/uploads`, {
+        fileName: video.name,
+        contentType: video.type || 'video/mp4',
+        sizeBytes: video.size
+      }, { headers }));
+      localStorage.setItem(fileKey, status.uploadId);
+    }
+
+    const uploadId = status.uploadId;
+    let offset = status.offset;
+    let failures = 0;
+    onProgress(Math.floor((offset / video.size) * 100));
+
+    while (offset < video.size) {
+      const chunk = video.slice(offset, Math.min(video.size, offset + this.chunkSize));
+      try {
+        status = await firstValueFrom(this.http.put<VideoUploadStatus>(`${this.baseUrl}/uploads/${uploadId}`, chunk, {
+          headers: headers.set('Content-Type', 'application/octet-stream'),
+          params: { offset: offset.toString() }
+        }));
+        failures = 0;
+      } catch (error) {
+        if (++failures > this.maxChunkRetries) {
+          throw error;
+        }
+        await new Promise((resolve) => setTimeout(resolve, 1000 * failures));
+        // Part of the chunk may have landed; continue from whatever the server holds.
+        status = await firstValueFrom(this.http.get<VideoUploadStatus>(`${this.baseUrl}/uploads/${uploadId}`, { headers }));
+      }
+      offset = status.offset;
+      onProgress(Math.floor((offset / video.size) * 100));
+    }
+
+    const response = await firstValueFrom(this.http.post(`${this.baseUrl}/uploads/${uploadId}/finalize`, metadata, { headers }));
+    localStorage.removeItem(fileKey);
+    return response;
+  }
+
+  private async findUploadSession(uploadId: string | null, headers: HttpHeaders): Promise<VideoUploadStatus | null> {
+    if (!uploadId) {
+      return null;
+    }
+    try {
+      return await firstValueFrom(this.http.get<VideoUploadStatus>(`${this.baseUrl}/uploads/${uploadId}`, { headers }));
+    } catch {
+      return null;
+    }
+  }
+
+  private authHeaders(): HttpHeaders {
+    const token = localStorage.getItem(this.tokenKey);
+    return new HttpHeaders({
+      'Authorization': `Bearer ${token}`
+    });
+  }
+
   getPremieres(): Observable<PremiereVideo[]> {
     return this.http.get<PremiereVideo[]>(this.premierUrl);
   }
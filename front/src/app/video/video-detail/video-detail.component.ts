@@ -7,6 +7,7 @@ import { CommentPage } from '../../models/comment-page';
 import { CommentService } from '../../services/comment.service';
 import { VideoService } from '../../services/video.service';
 import { TranscodingStatus } from '../../models/transcoding-status';
+import { TranscodingStatusService } from '../../services/transcoding-status.service';
 import { WatchPartyRoom } from '../../models/watch-party-room';
 import { WatchPartyService } from '../../services/watch-party.service';
 
@@ -51,8 +52,8 @@ export class VideoDetailComponent implements OnInit, AfterViewInit, OnDestroy {
   watchPartyConnected = false;
   watchPartyError: string | null = null;
   watchPartyStatus: string | null = null;
-  private transcodingPollId: ReturnType<typeof setInterval> | null = null;
   private routeSub?: Subscription;
+  private transcodingSub?: Subscription;
   private watchPartyRoomSub?: Subscription;
   private watchPartyConnectedSub?: Subscription;
   private watchPartyErrorSub?: Subscription;
@@ -62,6 +63,7 @@ export class VideoDetailComponent implements OnInit, AfterViewInit, OnDestroy {
     public authService: AuthService,
     private commentService: CommentService,
     private videoService: VideoService,
+    private transcodingStatusService: TranscodingStatusService,
     private watchPartyService: WatchPartyService
   ) { }
 
@@ -99,7 +101,7 @@ export class VideoDetailComponent implements OnInit, AfterViewInit, OnDestroy {
 
   ngOnDestroy(): void {
     this.destroyPlayers();
-    this.stopTranscodingPolling();
+    this.stopTranscodingUpdates();
     this.routeSub?.unsubscribe();
     this.watchPartyRoomSub?.unsubscribe();
     this.watchPartyConnectedSub?.unsubscribe();
@@ -316,47 +318,44 @@ export class VideoDetailComponent implements OnInit, AfterViewInit, OnDestroy {
     });
   }
 
-  private startTranscodingPolling(): void {
+  private startTranscodingUpdates(): void {
     if (!this.videoId) {
       return;
     }
 
-    this.stopTranscodingPolling();
-
-    const load = () => {
-      this.videoService.getTranscodingStatus(this.videoId as number).subscribe({
-        next: (status) => {
-          this.transcodingStatus = status;
-          this.transcodingProgress = Math.max(0, Math.min(100, status.progress ?? 0));
-          this.transcodingMessage = status.message ?? 'Transcoding in progress.';
-          this.isTranscodingReady = status.ready;
-
-          if (status.ready) {
-            this.stopTranscodingPolling();
-            this.setupAdaptivePlayback();
-            return;
-          }
-
-          if (status.status === 'FAILED') {
-            this.stopTranscodingPolling();
-            this.errorMessage = status.message || 'Transcoding failed.';
-          }
-        },
-        error: () => {
-          this.transcodingMessage = 'Unable to load transcoding status.';
+    this.stopTranscodingUpdates();
+
+    this.transcodingSub = this.transcodingStatusService.watch(this.videoId).subscribe({
+      next: (status) => {
+        this.transcodingStatus = status;
+        this.transcodingProgress = Math.max(0, Math.min(100, status.progress ?? 0));
+        this.transcodingMessage = status.message ?? 'Transcoding in progress.';
+        // Playback can start on the finished segments while the rest is still encoding.
+        const wasReady = this.isTranscodingReady;
+        this.isTranscodingReady = status.ready || (status.playableSeconds ?? 0) > 0;
+        if (!wasReady && this.isTranscodingReady) {
+          this.setupAdaptivePlayback();
+        }
+
+        if (status.ready) {
+          this.stopTranscodingUpdates();
+          return;
         }
-      });
-    };
 
-    load();
-    this.transcodingPollId = setInterval(load, 2000);
+        if (status.status === 'FAILED') {
+          this.stopTranscodingUpdates();
+          this.errorMessage = status.message || 'Transcoding failed.';
+        }
+      },
+      error: () => {
+        this.transcodingMessage = 'Unable to load transcoding status.';
+      }
+    });
   }
 
-  private stopTranscodingPolling(): void {
-    if (this.transcodingPollId) {
-      clearInterval(this.transcodingPollId);
-      this.transcodingPollId = null;
-    }
+  private stopTranscodingUpdates(): void {
+    this.transcodingSub?.unsubscribe();
+    this.transcodingSub = undefined;
   }
 
   private loadVideo(id: number): void {
@@ -366,7 +365,7 @@ export class VideoDetailComponent implements OnInit, AfterViewInit, OnDestroy {
     this.commentsError = null;
     this.likeError = null;
     this.watchPartyStatus = null;
-    this.stopTranscodingPolling();
+    this.stopTranscodingUpdates();
     this.isTranscodingReady = false;
     this.transcodingProgress = 0;
     this.transcodingMessage = 'Preparing transcoding...';
@@ -384,7 +383,7 @@ export class VideoDetailComponent implements OnInit, AfterViewInit, OnDestroy {
         this.video = data;
         this.likesCount = data.likesCount ?? 0;
         this.likedByUser = !!data.likedByUser;
-        this.startTranscodingPolling();
+        this.startTranscodingUpdates();
       },
       error: (error) => {
         this.errorMessage = `Failed to load video: ${error.message}`;
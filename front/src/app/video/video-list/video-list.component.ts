@@ -10,17 +10,33 @@ export class VideoListComponent implements OnInit {
   
   videos: any[] = [];
   errorMessage: string | null = null;
+  nextCursor: string | null = null;
+  loadingMore = false;
 
   constructor(private videoService: VideoService) { }
 
   ngOnInit(): void {
-    this.videoService.getAllVideos().subscribe({
-      next: (data) => {
+    this.loadPage(null);
+  }
+
+  loadMore(): void {
+    if (this.nextCursor && !this.loadingMore) {
+      this.loadPage(this.nextCursor);
+    }
+  }
+
+  private loadPage(after: string | null): void {
+    this.loadingMore = true;
+    this.videoService.getVideoFeed(after).subscribe({
+      next: (page) => {
         const now = Date.now();
-        this.videos = data.filter((video) => this.isVideoAvailableOnHome(video, now));
+        this.videos = this.videos.concat(page.videos.filter((video) => this.isVideoAvailableOnHome(video, now)));
+        this.nextCursor = page.nextCursor;
+        this.loadingMore = false;
       },
       error: (error) => {
         this.errorMessage = `Failed to load videos: ${error.message}`;
+        this.loadingMore = false;
         console.error(error);
       }
     });
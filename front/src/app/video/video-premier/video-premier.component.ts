@@ -38,6 +38,8 @@ export class VideoPremierComponent implements OnInit, AfterViewInit, OnDestroy {
 
   private maxReachedTime = 0;
   private initialOffset = 0;
+  // The server's live playlist already keeps every viewer on the same segment; no client-side seeking then.
+  private serverClock = false;
   private syncTimer: number | null = null;
   private hlsInstance: any = null;
   private viewReady = false;
@@ -118,6 +120,12 @@ export class VideoPremierComponent implements OnInit, AfterViewInit, OnDestroy {
       return;
     }
 
+    if (this.serverClock) {
+      this.maxReachedTime = player.currentTime;
+      void player.play().catch(() => {});
+      return;
+    }
+
     const target = Math.max(0, Math.min(this.getExpectedOffsetSeconds(), Math.max(0, duration - 0.5)));
     player.currentTime = target;
     this.maxReachedTime = target;
@@ -131,7 +139,7 @@ export class VideoPremierComponent implements OnInit, AfterViewInit, OnDestroy {
     }
 
     const expected = this.getExpectedOffsetSeconds();
-    if (Math.abs(player.currentTime - expected) > 2.0) {
+    if (!this.serverClock && Math.abs(player.currentTime - expected) > 2.0) {
       player.currentTime = expected;
     }
 
@@ -200,7 +208,7 @@ export class VideoPremierComponent implements OnInit, AfterViewInit, OnDestroy {
       }
 
       const expected = this.getExpectedOffsetSeconds();
-      if (Math.abs(player.currentTime - expected) > 2.0) {
+      if (!this.serverClock && Math.abs(player.currentTime - expected) > 2.0) {
         player.currentTime = expected;
       }
 
@@ -230,6 +238,7 @@ export class VideoPremierComponent implements OnInit, AfterViewInit, OnDestroy {
     }
 
     const player = this.playerRef.nativeElement;
+    const liveHlsUrl = this.premier.liveHlsUrl;
     const hlsUrl = this.premier.hlsUrl;
     const fallbackMp4Url = this.premier.videoUrl;
     const currentSrc = player.currentSrc || player.src;
@@ -240,6 +249,21 @@ export class VideoPremierComponent implements OnInit, AfterViewInit, OnDestroy {
 
     this.destroyPlayers();
 
+    const attachVod = () => {
+      this.serverClock = false;
+      if (hlsUrl) {
+        this.attachHls(player, hlsUrl, () => this.attachNative(player, fallbackMp4Url));
+        return;
+      }
+      this.attachNative(player, fallbackMp4Url);
+    };
+
+    if (liveHlsUrl) {
+      this.serverClock = true;
+      this.attachHls(player, liveHlsUrl, attachVod);
+      return;
+    }
+
     if (hlsUrl) {
       this.attachHls(player, hlsUrl, () => this.attachNative(player, fallbackMp4Url));
       return;
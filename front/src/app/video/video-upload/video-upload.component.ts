@@ -22,6 +22,7 @@ export class VideoUploadComponent implements OnDestroy {
 
   errorMessage: string | null = null;
   successMessage: string | null = null;
+  uploadProgress: number | null = null;
 
   showMap: boolean = false;
   private map: L.Map | null = null;
@@ -89,22 +90,25 @@ export class VideoUploadComponent implements OnDestroy {
     formData.append('latitude', this.latitude.toString());
     formData.append('longitude', this.longitude.toString());
     formData.append('thumbnail', this.selectedThumbnail);
-    formData.append('video', this.selectedVideo);
 
     this.errorMessage = null;
     this.successMessage = null;
+    this.uploadProgress = 0;
 
-    this.videoService.upload(formData).subscribe({
-      next: (response) => {
+    this.videoService.uploadResumable(this.selectedVideo, formData, (percent) => {
+      this.uploadProgress = percent;
+    })
+      .then(() => {
+        this.uploadProgress = null;
         this.successMessage = 'Upload accepted. Transcoding is queued and will start shortly.';
         setTimeout(() => {
           this.router.navigate(['/home']);
         }, 2000);
-      },
-      error: (error) => {
-        this.errorMessage = `Upload failed: ${error.error?.message || error.message}`;
-      }
-    });
+      })
+      .catch((error) => {
+        this.uploadProgress = null;
+        this.errorMessage = `Upload failed: ${error.error?.message || error.message}. Submit again to resume.`;
+      });
   }
 
   openMap(): void {